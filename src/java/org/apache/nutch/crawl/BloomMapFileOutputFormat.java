@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BloomMapFile;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Writes {@link BloomMapFile}s: MapFiles with a Bloom filter of all keys in
+ * the file <code>bloom</code> of the MapFile directory. The output can be
+ * read as MapFile, the filters of a CrawlDb are read by
+ * {@link CrawlDbBloomFilter}. Size and error rate of the filters are set by
+ * the properties <code>io.mapfile.bloom.size</code> and
+ * <code>io.mapfile.bloom.error.rate</code>.
+ */
+public class BloomMapFileOutputFormat extends MapFileOutputFormat {
+
+  @Override
+  public RecordWriter<WritableComparable<?>, Writable> getRecordWriter(
+      TaskAttemptContext context) throws IOException {
+    Configuration conf = context.getConfiguration();
+    CompressionCodec codec = null;
+    CompressionType compressionType = CompressionType.NONE;
+    if (getCompressOutput(context)) {
+      compressionType = SequenceFileOutputFormat
+          .getOutputCompressionType(context);
+      Class<?> codecClass = getOutputCompressorClass(context,
+          DefaultCodec.class);
+      codec = (CompressionCodec) ReflectionUtils.newInstance(codecClass, conf);
+    }
+    Path file = getDefaultWorkFile(context, "");
+    final BloomMapFile.Writer out = new BloomMapFile.Writer(conf, file,
+        MapFile.Writer.keyClass(context.getOutputKeyClass().asSubclass(
+            WritableComparable.class)),
+        SequenceFile.Writer.valueClass(context.getOutputValueClass()),
+        SequenceFile.Writer.compression(compressionType, codec),
+        SequenceFile.Writer.progressable(context));
+
+    return new RecordWriter<WritableComparable<?>, Writable>() {
+      @Override
+      public void write(WritableComparable<?> key, Writable value)
+          throws IOException {
+        out.append(key, value);
+      }
+
+      @Override
+      public void close(TaskAttemptContext context) throws IOException {
+        out.close();
+      }
+    };
+  }
+
+}
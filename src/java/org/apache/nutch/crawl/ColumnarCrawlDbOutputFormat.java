@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+/**
+ * Writes a CrawlDb in columnar format, one file per reducer. Entries are
+ * grouped into blocks of <code>crawldb.columnar.block.size</code> entries,
+ * every field of {@link CrawlDatum} is stored in a separate column compressed
+ * by <code>crawldb.columnar.codec</code>. The files are read by
+ * {@link CrawlDbInputFormat}.
+ */
+public class ColumnarCrawlDbOutputFormat extends
+    FileOutputFormat<Text, CrawlDatum> {
+
+  @Override
+  public RecordWriter<Text, CrawlDatum> getRecordWriter(
+      TaskAttemptContext context) throws IOException {
+    Configuration conf = context.getConfiguration();
+    Path file = getDefaultWorkFile(context, "");
+    FileSystem fs = file.getFileSystem(conf);
+    final ColumnarCrawlDbWriter writer = new ColumnarCrawlDbWriter(
+        fs.create(file, false), conf);
+
+    return new RecordWriter<Text, CrawlDatum>() {
+      @Override
+      public void write(Text key, CrawlDatum value) throws IOException {
+        writer.append(key, value);
+      }
+
+      @Override
+      public void close(TaskAttemptContext context) throws IOException {
+        writer.close();
+      }
+    };
+  }
+
+}
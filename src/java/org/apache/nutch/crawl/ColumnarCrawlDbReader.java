@@ -0,0 +1,379 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import static org.apache.nutch.crawl.ColumnarCrawlDbWriter.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Reads CrawlDb entries written by {@link ColumnarCrawlDbWriter}. Only the
+ * columns selected by {@link CrawlDbInputFormat#setColumns(Configuration,
+ * String...)} are decompressed, fields of columns not read are left at their
+ * default values (0, <code>null</code> or empty). Blocks and entries not
+ * matching the status, fetch time or score restrictions set in
+ * {@link CrawlDbInputFormat} are skipped. Not thread-safe.
+ */
+class ColumnarCrawlDbReader {
+
+  private final FSDataInputStream in;
+  private final long length;
+  private final byte version;
+  private final CompressionCodec codec;
+  private final boolean[] columns = new boolean[NUM_COLUMNS];
+  /** allowed statuses or null */
+  private final long[] statusBits;
+  private final long skipFetchTimeAfter;
+  private final long skipFetchTimeUntil;
+  private final float minScore;
+
+  private final DataInputBuffer[] columnData = new DataInputBuffer[NUM_COLUMNS];
+  private final int[] compressedLengths = new int[NUM_COLUMNS];
+  private final int[] rawLengths = new int[NUM_COLUMNS];
+  private final long[] blockStatusBits = new long[4];
+  private int remaining = 0;
+  private boolean eof = false;
+
+  private long blocksRead = 0;
+  private long blocksSkipped = 0;
+
+  /** Check whether a file is in columnar format by its first bytes. */
+  static boolean isColumnar(FileSystem fs, Path file) throws IOException {
+    if (!fs.isFile(file) || fs.getFileStatus(file).getLen() < MAGIC.length) {
+      return false;
+    }
+    byte[] magic = new byte[MAGIC.length];
+    try (FSDataInputStream in = fs.open(file)) {
+      in.readFully(magic);
+    }
+    return Arrays.equals(magic, MAGIC);
+  }
+
+  /**
+   * @return the files of a CrawlDb directory sorted by name, or null if the
+   *         CrawlDb is not in columnar format
+   */
+  static Path[] getFiles(FileSystem fs, Path dir) throws IOException {
+    FileStatus[] stats = fs.listStatus(dir, path -> {
+      String name = path.getName();
+      return !name.startsWith("_") && !name.startsWith(".");
+    });
+    if (stats.length == 0 || !isColumnar(fs, stats[0].getPath())) {
+      return null;
+    }
+    Path[] files = new Path[stats.length];
+    for (int i = 0; i < stats.length; i++) {
+      files[i] = stats[i].getPath();
+    }
+    Arrays.sort(files);
+    return files;
+  }
+
+  /**
+   * Look up an entry in a file sorted by URL.
+   *
+   * @return true if the entry was found
+   */
+  static boolean get(FileSystem fs, Path file, Text url, CrawlDatum datum,
+      Configuration conf) throws IOException {
+    ColumnarCrawlDbReader reader = new ColumnarCrawlDbReader(fs, file, conf);
+    try {
+      Text key = new Text();
+      while (reader.next(key, datum)) {
+        int c = key.compareTo(url);
+        if (c == 0) {
+          return true;
+        } else if (c > 0) {
+          break;
+        }
+      }
+      return false;
+    } finally {
+      reader.close();
+    }
+  }
+
+  ColumnarCrawlDbReader(FileSystem fs, Path file, Configuration conf)
+      throws IOException {
+    length = fs.getFileStatus(file).getLen();
+    in = fs.open(file);
+    byte[] magic = new byte[MAGIC.length];
+    in.readFully(magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      in.close();
+      throw new IOException(file + " is not a columnar CrawlDb file");
+    }
+    version = in.readByte();
+    if (version > VERSION) {
+      in.close();
+      throw new IOException("Unknown version " + version + " of " + file);
+    }
+    String codecName = Text.readString(in);
+    try {
+      codec = (CompressionCodec) ReflectionUtils.newInstance(
+          conf.getClassByName(codecName), conf);
+    } catch (ClassNotFoundException e) {
+      in.close();
+      throw new IOException("Unknown compression codec " + codecName, e);
+    }
+
+    String[] names = conf.getTrimmedStrings(CrawlDbInputFormat.COLUMNS);
+    if (names.length == 0) {
+      Arrays.fill(columns, true);
+    } else {
+      columns[URL] = true;
+      for (String name : names) {
+        int i = Arrays.asList(COLUMN_NAMES).indexOf(name);
+        if (i < 0) {
+          in.close();
+          throw new IllegalArgumentException("Unknown CrawlDb column " + name);
+        }
+        columns[i] = true;
+      }
+    }
+
+    String[] statuses = conf.getTrimmedStrings(CrawlDbInputFormat.STATUS);
+    if (statuses.length == 0) {
+      statusBits = null;
+    } else {
+      statusBits = new long[4];
+      for (String status : statuses) {
+        int s = Integer.parseInt(status) & 0xff;
+        statusBits[s >>> 6] |= 1L << s;
+      }
+      columns[STATUS] = true;
+    }
+
+    skipFetchTimeAfter = conf.getLong(
+        CrawlDbInputFormat.SKIP_FETCH_TIME_AFTER, Long.MAX_VALUE);
+    skipFetchTimeUntil = conf.getLong(
+        CrawlDbInputFormat.SKIP_FETCH_TIME_UNTIL, Long.MIN_VALUE);
+    if (skipFetchTimeAfter < skipFetchTimeUntil) {
+      columns[FETCH_TIME] = true;
+    }
+    minScore = conf.getFloat(CrawlDbInputFormat.MIN_SCORE,
+        Float.NEGATIVE_INFINITY);
+    if (minScore > Float.NEGATIVE_INFINITY) {
+      columns[SCORE] = true;
+    }
+
+    for (int i = 0; i < NUM_COLUMNS; i++) {
+      columnData[i] = new DataInputBuffer();
+    }
+  }
+
+  /**
+   * Read the next entry which matches the restrictions.
+   *
+   * @return false if there are no more entries
+   */
+  boolean next(Text url, CrawlDatum datum) throws IOException {
+    while (true) {
+      if (remaining == 0 && !readBlock()) {
+        return false;
+      }
+      remaining--;
+      if (readEntry(url, datum)) {
+        return true;
+      }
+    }
+  }
+
+  private boolean readEntry(Text url, CrawlDatum datum) throws IOException {
+    url.readFields(columnData[URL]);
+    boolean accept = true;
+    if (columns[STATUS]) {
+      int status = columnData[STATUS].readByte();
+      datum.setStatus(status);
+      status &= 0xff;
+      if (statusBits != null
+          && (statusBits[status >>> 6] & (1L << status)) == 0) {
+        accept = false;
+      }
+    } else {
+      datum.setStatus(0);
+    }
+    if (columns[FETCH_TIME]) {
+      long fetchTime = columnData[FETCH_TIME].readLong();
+      datum.setFetchTime(fetchTime);
+      if (fetchTime > skipFetchTimeAfter && fetchTime <= skipFetchTimeUntil) {
+        accept = false;
+      }
+    } else {
+      datum.setFetchTime(0);
+    }
+    datum.setRetriesSinceFetch(columns[RETRIES] ? columnData[RETRIES]
+        .readByte() : 0);
+    datum.setFetchInterval(columns[FETCH_INTERVAL] ? columnData[FETCH_INTERVAL]
+        .readInt() : 0);
+    if (columns[SCORE]) {
+      float score = columnData[SCORE].readFloat();
+      datum.setScore(score);
+      if (score < minScore) {
+        accept = false;
+      }
+    } else {
+      datum.setScore(0.0f);
+    }
+    datum.setModifiedTime(columns[MODIFIED_TIME] ? columnData[MODIFIED_TIME]
+        .readLong() : 0);
+    byte[] signature = null;
+    if (columns[SIGNATURE]) {
+      int len = WritableUtils.readVInt(columnData[SIGNATURE]) - 1;
+      if (len >= 0) {
+        signature = new byte[len];
+        columnData[SIGNATURE].readFully(signature);
+      }
+    }
+    datum.setSignature(signature);
+    if (columns[METADATA] && version > 1) {
+      if (accept) {
+        datum.readMetaData(columnData[METADATA]);
+      } else {
+        CrawlDatumMetaData.skip(columnData[METADATA]);
+      }
+    } else if (columns[METADATA]) {
+      // version 1: length-prefixed MapWritable
+      int len = WritableUtils.readVInt(columnData[METADATA]);
+      if (len == 0) {
+        datum.clearMetaData();
+      } else if (accept) {
+        int end = columnData[METADATA].getPosition() + len;
+        MapWritable meta = new MapWritable();
+        meta.readFields(columnData[METADATA]);
+        datum.setMetaData(meta);
+        if (columnData[METADATA].getPosition() != end) {
+          throw new IOException("Corrupted metadata of " + url);
+        }
+      } else {
+        columnData[METADATA].skipBytes(len);
+      }
+    } else {
+      datum.clearMetaData();
+    }
+    return accept;
+  }
+
+  /**
+   * Read the next block which may contain entries matching the restrictions.
+   *
+   * @return false if there are no more blocks
+   */
+  private boolean readBlock() throws IOException {
+    while (!eof) {
+      int size = in.readInt();
+      if (size == 0) {
+        eof = true;
+        break;
+      }
+      long minFetchTime = in.readLong();
+      long maxFetchTime = in.readLong();
+      in.readFloat(); // min. score
+      float maxScore = in.readFloat();
+      boolean skip = (minFetchTime > skipFetchTimeAfter
+          && maxFetchTime <= skipFetchTimeUntil) || maxScore < minScore;
+      boolean anyStatus = false;
+      for (int i = 0; i < blockStatusBits.length; i++) {
+        blockStatusBits[i] = in.readLong();
+        if (statusBits != null && (blockStatusBits[i] & statusBits[i]) != 0) {
+          anyStatus = true;
+        }
+      }
+      if (statusBits != null && !anyStatus) {
+        skip = true;
+      }
+      long blockLength = 0;
+      for (int i = 0; i < NUM_COLUMNS; i++) {
+        compressedLengths[i] = in.readInt();
+        rawLengths[i] = in.readInt();
+        blockLength += compressedLengths[i];
+      }
+      if (skip) {
+        in.seek(in.getPos() + blockLength);
+        blocksSkipped++;
+        continue;
+      }
+      for (int i = 0; i < NUM_COLUMNS; i++) {
+        if (columns[i]) {
+          readColumn(i);
+        } else {
+          in.seek(in.getPos() + compressedLengths[i]);
+        }
+      }
+      remaining = size;
+      blocksRead++;
+      return true;
+    }
+    return false;
+  }
+
+  private void readColumn(int column) throws IOException {
+    byte[] compressed = new byte[compressedLengths[column]];
+    in.readFully(compressed);
+    byte[] raw = new byte[rawLengths[column]];
+    Decompressor decompressor = CodecPool.getDecompressor(codec);
+    try {
+      InputStream cin = codec.createInputStream(new ByteArrayInputStream(
+          compressed), decompressor);
+      IOUtils.readFully(cin, raw, 0, raw.length);
+    } finally {
+      CodecPool.returnDecompressor(decompressor);
+    }
+    columnData[column].reset(raw, raw.length);
+  }
+
+  /** @return position in the file */
+  long getPos() throws IOException {
+    return in.getPos();
+  }
+
+  /** @return length of the file */
+  long getLength() {
+    return length;
+  }
+
+  long getBlocksRead() {
+    return blocksRead;
+  }
+
+  long getBlocksSkipped() {
+    return blocksSkipped;
+  }
+
+  void close() throws IOException {
+    in.close();
+  }
+
+}
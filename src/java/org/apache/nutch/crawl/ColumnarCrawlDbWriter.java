@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Writes CrawlDb entries in columnar format. Entries are grouped into blocks,
+ * within a block every field of {@link CrawlDatum} is stored in a separate,
+ * compressed column. The block header holds the number of entries, the
+ * min./max. fetch time and score, the set of statuses and the length of every
+ * column, so that {@link ColumnarCrawlDbReader} can skip entire blocks and
+ * the columns of fields not needed.
+ *
+ * <pre>
+ * file   := MAGIC VERSION codec-class-name block* 0
+ * block  := num-entries min-fetch-time max-fetch-time min-score max-score
+ *           status-bits[4] (compressed-length raw-length)[NUM_COLUMNS]
+ *           column-data[NUM_COLUMNS]
+ * </pre>
+ */
+class ColumnarCrawlDbWriter {
+
+  static final byte[] MAGIC = { 'N', 'C', 'D', 'B' };
+  /**
+   * version 2 stores the metadata encoded by {@link CrawlDatumMetaData},
+   * version 1 as {@link org.apache.hadoop.io.MapWritable}
+   */
+  static final byte VERSION = 2;
+
+  public static final String BLOCK_SIZE = "crawldb.columnar.block.size";
+  public static final String CODEC = "crawldb.columnar.codec";
+
+  /* column indexes, the URL is always the first column */
+  static final int URL = 0;
+  static final int STATUS = 1;
+  static final int FETCH_TIME = 2;
+  static final int RETRIES = 3;
+  static final int FETCH_INTERVAL = 4;
+  static final int SCORE = 5;
+  static final int MODIFIED_TIME = 6;
+  static final int SIGNATURE = 7;
+  static final int METADATA = 8;
+  static final int NUM_COLUMNS = 9;
+
+  static final String[] COLUMN_NAMES = { "url", "status", "fetchTime",
+      "retries", "fetchInterval", "score", "modifiedTime", "signature",
+      "metadata" };
+
+  private final DataOutputStream out;
+  private final CompressionCodec codec;
+  private final int blockSize;
+  private final DataOutputBuffer[] columns = new DataOutputBuffer[NUM_COLUMNS];
+  private final DataOutputBuffer compressed = new DataOutputBuffer();
+
+  private int size;
+  private long minFetchTime;
+  private long maxFetchTime;
+  private float minScore;
+  private float maxScore;
+  private final long[] statusBits = new long[4];
+
+  ColumnarCrawlDbWriter(DataOutputStream out, Configuration conf)
+      throws IOException {
+    this.out = out;
+    blockSize = conf.getInt(BLOCK_SIZE, 10000);
+    Class<? extends CompressionCodec> codecClass = conf.getClass(CODEC,
+        DefaultCodec.class, CompressionCodec.class);
+    codec = ReflectionUtils.newInstance(codecClass, conf);
+    for (int i = 0; i < NUM_COLUMNS; i++) {
+      columns[i] = new DataOutputBuffer();
+    }
+    out.write(MAGIC);
+    out.writeByte(VERSION);
+    Text.writeString(out, codecClass.getName());
+    startBlock();
+  }
+
+  private void startBlock() {
+    size = 0;
+    minFetchTime = Long.MAX_VALUE;
+    maxFetchTime = Long.MIN_VALUE;
+    minScore = Float.POSITIVE_INFINITY;
+    maxScore = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i < statusBits.length; i++) {
+      statusBits[i] = 0;
+    }
+    for (DataOutputBuffer column : columns) {
+      column.reset();
+    }
+  }
+
+  void append(Text url, CrawlDatum datum) throws IOException {
+    url.write(columns[URL]);
+    int status = datum.getStatus() & 0xff;
+    columns[STATUS].writeByte(status);
+    statusBits[status >>> 6] |= 1L << status;
+    long fetchTime = datum.getFetchTime();
+    columns[FETCH_TIME].writeLong(fetchTime);
+    minFetchTime = Math.min(minFetchTime, fetchTime);
+    maxFetchTime = Math.max(maxFetchTime, fetchTime);
+    columns[RETRIES].writeByte(datum.getRetriesSinceFetch());
+    columns[FETCH_INTERVAL].writeInt(datum.getFetchInterval());
+    float score = datum.getScore();
+    columns[SCORE].writeFloat(score);
+    if (Float.isNaN(score)) {
+      // NaN is not comparable, the range of the block is unknown
+      minScore = Float.NEGATIVE_INFINITY;
+      maxScore = Float.POSITIVE_INFINITY;
+    } else {
+      minScore = Math.min(minScore, score);
+      maxScore = Math.max(maxScore, score);
+    }
+    columns[MODIFIED_TIME].writeLong(datum.getModifiedTime());
+    byte[] signature = datum.getSignature();
+    if (signature == null) {
+      WritableUtils.writeVInt(columns[SIGNATURE], 0);
+    } else {
+      WritableUtils.writeVInt(columns[SIGNATURE], signature.length + 1);
+      columns[SIGNATURE].write(signature);
+    }
+    // length-prefixed, so that readers may skip it without parsing
+    datum.writeMetaData(columns[METADATA]);
+    if (++size >= blockSize) {
+      writeBlock();
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    if (size == 0) {
+      return;
+    }
+    out.writeInt(size);
+    out.writeLong(minFetchTime);
+    out.writeLong(maxFetchTime);
+    out.writeFloat(minScore);
+    out.writeFloat(maxScore);
+    for (long bits : statusBits) {
+      out.writeLong(bits);
+    }
+    compressed.reset();
+    int[] compressedLengths = new int[NUM_COLUMNS];
+    Compressor compressor = CodecPool.getCompressor(codec);
+    try {
+      for (int i = 0; i < NUM_COLUMNS; i++) {
+        int start = compressed.getLength();
+        compressor.reset();
+        CompressionOutputStream cout = codec.createOutputStream(compressed,
+            compressor);
+        cout.write(columns[i].getData(), 0, columns[i].getLength());
+        // not closed, that would close the buffer
+        cout.finish();
+        compressedLengths[i] = compressed.getLength() - start;
+      }
+    } finally {
+      CodecPool.returnCompressor(compressor);
+    }
+    for (int i = 0; i < NUM_COLUMNS; i++) {
+      out.writeInt(compressedLengths[i]);
+      out.writeInt(columns[i].getLength());
+    }
+    out.write(compressed.getData(), 0, compressed.getLength());
+    startBlock();
+  }
+
+  void close() throws IOException {
+    writeBlock();
+    out.writeInt(0);
+    out.close();
+  }
+
+}
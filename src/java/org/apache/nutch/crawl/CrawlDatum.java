@@ -20,15 +20,19 @@ package org.apache.nutch.crawl;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.Expression;
 import org.apache.commons.jexl2.MapContext;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.FloatWritable;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
@@ -40,13 +44,18 @@ import org.apache.nutch.protocol.ProtocolStatus;
 import org.apache.nutch.util.StringUtil;
 
 /* The crawl state of a url. */
-public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
+public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable,
+    Configurable {
 
   public static final String GENERATE_DIR_NAME = "crawl_generate";
   public static final String FETCH_DIR_NAME = "crawl_fetch";
   public static final String PARSE_DIR_NAME = "crawl_parse";
 
-  private static final byte CUR_VERSION = 7;
+  /**
+   * Version 8 writes the metadata in a compact encoding, see
+   * {@link CrawlDatumMetaData}.
+   */
+  private static final byte CUR_VERSION = 8;
 
   /** Compatibility values for on-the-fly conversion from versions < 5. */
   private static final byte OLD_STATUS_SIGNATURE = 0;
@@ -144,6 +153,20 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
   private byte[] signature = null;
   private long modifiedTime;
   private org.apache.hadoop.io.MapWritable metaData;
+  /**
+   * number of instances sharing the metadata after {@link #set(CrawlDatum)} or
+   * {@link #clone()}, null if not shared. Shared metadata is copied by
+   * {@link #getMetaData()} before it is modified.
+   */
+  private AtomicInteger metaDataRefs;
+  /**
+   * serialized metadata, decoded when first accessed: jobs which do not need
+   * the metadata of all records (e.g., CrawlDbReducer which keeps only a
+   * limited number of inlinks) do not pay for decoding it
+   */
+  private byte[] metaDataBytes;
+  /** used to load classes of metadata values, see {@link CrawlDatumMetaData} */
+  private Configuration conf;
 
   public static boolean hasDbStatus(CrawlDatum datum) {
     if (datum.status <= STATUS_DB_MAX)
@@ -254,7 +277,9 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
   }
 
   public void setMetaData(org.apache.hadoop.io.MapWritable mapWritable) {
+    releaseMetaData();
     this.metaData = new org.apache.hadoop.io.MapWritable(mapWritable);
+    this.metaDataBytes = null;
   }
 
   /**
@@ -264,22 +289,122 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
    *          CrawlDatum
    */
   public void putAllMetaData(CrawlDatum other) {
-    for (Entry<Writable, Writable> e : other.getMetaData().entrySet()) {
-      getMetaData().put(e.getKey(), e.getValue());
+    other.decodeMetaData();
+    if (other.metaData == null || other.metaData.isEmpty()) {
+      return;
+    }
+    org.apache.hadoop.io.MapWritable meta = getMetaData();
+    for (Entry<Writable, Writable> e : other.metaData.entrySet()) {
+      meta.put(e.getKey(), e.getValue());
     }
   }
 
   /**
    * returns a MapWritable if it was set or read in @see readFields(DataInput),
    * returns empty map in case CrawlDatum was freshly created (lazily
-   * instantiated).
+   * instantiated). Metadata shared with another instance is copied first, so
+   * that the returned map can be modified. Use
+   * {@link #getMetaDataReadOnly()} if the metadata is only read.
+   * 
+   * Note: {@link Text} keys read from serialized metadata are shared by all
+   * instances (see {@link CrawlDatumMetaData}) and must not be modified.
    */
   public org.apache.hadoop.io.MapWritable getMetaData() {
-    if (this.metaData == null)
+    decodeMetaData();
+    if (this.metaData == null) {
       this.metaData = new org.apache.hadoop.io.MapWritable();
+    } else if (metaDataRefs != null) {
+      if (metaDataRefs.get() > 1) {
+        this.metaData = new org.apache.hadoop.io.MapWritable(this.metaData);
+      }
+      releaseMetaData();
+    }
     return this.metaData;
   }
 
+  /**
+   * Get the metadata to read it, metadata shared with another instance is not
+   * copied. Neither the map nor its keys and values must be modified.
+   * 
+   * @return the metadata, an empty map if there is none
+   */
+  public Map<Writable, Writable> getMetaDataReadOnly() {
+    decodeMetaData();
+    if (this.metaData == null) {
+      return Collections.emptyMap();
+    }
+    return Collections.unmodifiableMap(this.metaData);
+  }
+
+  /** Share the metadata with another instance. */
+  private AtomicInteger shareMetaData() {
+    if (metaDataRefs == null) {
+      metaDataRefs = new AtomicInteger(1);
+    }
+    metaDataRefs.incrementAndGet();
+    return metaDataRefs;
+  }
+
+  /**
+   * Stop sharing the metadata, other instances may modify the metadata
+   * without copying it once they do not share it anymore.
+   */
+  private void releaseMetaData() {
+    if (metaDataRefs != null) {
+      metaDataRefs.decrementAndGet();
+      metaDataRefs = null;
+    }
+  }
+
+  /** Remove all metadata without copying shared metadata. */
+  void clearMetaData() {
+    releaseMetaData();
+    metaData = null;
+    metaDataBytes = null;
+  }
+
+  /**
+   * @return true if there is metadata, without decoding or copying the
+   *         metadata
+   */
+  boolean hasMetaData() {
+    return metaDataBytes != null || (metaData != null && !metaData.isEmpty());
+  }
+
+  /**
+   * Write metadata in the encoding of {@link CrawlDatumMetaData}, metadata
+   * not yet decoded is written as read.
+   */
+  void writeMetaData(DataOutput out) throws IOException {
+    if (metaDataBytes != null) {
+      CrawlDatumMetaData.writeBytes(out, metaDataBytes);
+    } else {
+      CrawlDatumMetaData.write(out, metaData);
+    }
+  }
+
+  /**
+   * Read metadata written by {@link CrawlDatumMetaData#write}, it is decoded
+   * when first accessed.
+   */
+  void readMetaData(DataInput in) throws IOException {
+    releaseMetaData();
+    metaData = null;
+    metaDataBytes = CrawlDatumMetaData.readBytes(in);
+  }
+
+  private void decodeMetaData() {
+    if (metaDataBytes == null) {
+      return;
+    }
+    try {
+      metaData = CrawlDatumMetaData.decode(metaDataBytes, conf);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to decode metadata", e);
+    }
+    metaDataBytes = null;
+  }
+
   //
   // writable methods
   //
@@ -313,7 +438,12 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
         signature = null;
     }
 
-    if (version > 3) {
+    releaseMetaData();
+    metaData = null;
+    metaDataBytes = null;
+    if (version > 7) {
+      readMetaData(in);
+    } else if (version > 3) {
       boolean hasMetadata = false;
       if (version < 7) {
         org.apache.hadoop.io.MapWritable oldMetaData = new org.apache.hadoop.io.MapWritable();
@@ -363,15 +493,14 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
       out.writeByte(signature.length);
       out.write(signature);
     }
-    if (metaData != null && metaData.size() > 0) {
-      out.writeBoolean(true);
-      metaData.write(out);
-    } else {
-      out.writeBoolean(false);
-    }
+    writeMetaData(out);
   }
 
-  /** Copy the contents of another instance into this instance. */
+  /**
+   * Copy the contents of another instance into this instance. The metadata is
+   * shared by both instances until one of them modifies it, only the instance
+   * modifying shared metadata copies it.
+   */
   public void set(CrawlDatum that) {
     this.status = that.status;
     this.fetchTime = that.fetchTime;
@@ -380,9 +509,18 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
     this.score = that.score;
     this.modifiedTime = that.modifiedTime;
     this.signature = that.signature;
-    if (that.metaData != null) {
-      // make a deep copy
-      this.metaData = new org.apache.hadoop.io.MapWritable(that.metaData);
+    if (this.metaData == that.metaData
+        && this.metaDataBytes == that.metaDataBytes) {
+      // already shared
+      return;
+    }
+    releaseMetaData();
+    // serialized metadata is never modified and can be shared
+    this.metaDataBytes = that.metaDataBytes;
+    if (that.metaData != null && !that.metaData.isEmpty()) {
+      // copy-on-write, see getMetaData()
+      this.metaData = that.metaData;
+      this.metaDataRefs = that.shareMetaData();
     } else {
       this.metaData = null;
     }
@@ -469,6 +607,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
     buf.append("Score: " + getScore() + "\n");
     buf.append("Signature: " + StringUtil.toHexString(getSignature()) + "\n");
     buf.append("Metadata: \n ");
+    decodeMetaData();
     if (metaData != null) {
       for (Entry<Writable, Writable> e : metaData.entrySet()) {
         buf.append("\t");
@@ -500,6 +639,8 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
     if (!(o instanceof CrawlDatum))
       return false;
     CrawlDatum other = (CrawlDatum) o;
+    decodeMetaData();
+    other.decodeMetaData();
     boolean res = (this.status == other.status)
         && (this.fetchTime == other.fetchTime)
         && (this.modifiedTime == other.modifiedTime)
@@ -519,6 +660,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
         res ^= (signature[i] << 24 + signature[i + 1] << 16 + signature[i + 2] << 8 + signature[i + 3]);
       }
     }
+    decodeMetaData();
     if (metaData != null) {
       res ^= metaData.entrySet().hashCode();
     }
@@ -528,11 +670,31 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
 
   public Object clone() {
     try {
-      return super.clone();
+      CrawlDatum clone = (CrawlDatum) super.clone();
+      if (metaData != null) {
+        clone.metaDataRefs = shareMetaData();
+      }
+      return clone;
     } catch (CloneNotSupportedException e) {
       throw new RuntimeException(e);
     }
   }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  /**
+   * Set the configuration used to load the classes of metadata values, see
+   * {@link Configuration#getClassByName(String)}. Called by
+   * {@link org.apache.hadoop.util.ReflectionUtils#newInstance(Class, Configuration)}
+   * if instantiated by Hadoop.
+   */
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+  }
   
   public boolean evaluate(Expression expr, String url) {
     if (expr != null && url != null) {
@@ -550,7 +712,9 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
       jcontext.set("signature", StringUtil.toHexString(getSignature()));
             
       // Set metadata variables
-      for (Map.Entry<Writable, Writable> entry : getMetaData().entrySet()) {
+      decodeMetaData();
+      for (Map.Entry<Writable, Writable> entry : (metaData == null ? Collections
+          .<Writable, Writable> emptyMap() : metaData).entrySet()) {
         Object value = entry.getValue();
         Text tkey = (Text)entry.getKey();
         
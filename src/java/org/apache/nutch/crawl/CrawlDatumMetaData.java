@@ -0,0 +1,289 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.ByteWritable;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.nutch.protocol.ProtocolStatus;
+
+/**
+ * Compact serialization of {@link CrawlDatum} metadata (version 8). Instead of
+ * the class-ID table written by {@link MapWritable} for every map, keys and
+ * values are written with a one-byte type tag, common types in a compact
+ * encoding (variable-length integers), other types preceded by their class
+ * name. {@link Text} keys are interned when read, so that the few distinct
+ * keys used by Nutch are not allocated again for every record: keys of read
+ * metadata are shared by many records and must not be modified. Classes of
+ * other types are loaded by {@link Configuration#getClassByName(String)}. The
+ * metadata is prefixed by its length, so that readers may skip it.
+ *
+ * <pre>
+ * metadata := 0 | length num-entries (key value)*
+ * key, value := tag data | TYPE_OTHER class-name data
+ * </pre>
+ */
+final class CrawlDatumMetaData {
+
+  private static final byte TYPE_OTHER = 0;
+  private static final byte TYPE_TEXT = 1;
+  private static final byte TYPE_INT = 2;
+  private static final byte TYPE_LONG = 3;
+  private static final byte TYPE_FLOAT = 4;
+  private static final byte TYPE_DOUBLE = 5;
+  private static final byte TYPE_BYTE = 6;
+  private static final byte TYPE_BOOLEAN = 7;
+  private static final byte TYPE_BYTES = 8;
+  private static final byte TYPE_PROTOCOL_STATUS = 9;
+
+  /** max. number of interned keys, keys read later are not interned */
+  private static final int MAX_INTERNED_KEYS = 1024;
+
+  private static final Map<Text, Text> INTERNED_KEYS = new ConcurrentHashMap<>();
+  private static final ThreadLocal<Text> KEY_BUFFER = ThreadLocal
+      .withInitial(Text::new);
+  /** used to load classes if no configuration is passed */
+  private static final Configuration DEFAULT_CONF = new Configuration(false);
+  /** null while in use, writables may contain metadata themselves */
+  private static final ThreadLocal<DataOutputBuffer> WRITE_BUFFER = ThreadLocal
+      .withInitial(DataOutputBuffer::new);
+
+  private CrawlDatumMetaData() {
+  }
+
+  /** Write metadata, <code>null</code> is written as empty map. */
+  static void write(DataOutput out, MapWritable metaData) throws IOException {
+    if (metaData == null || metaData.isEmpty()) {
+      WritableUtils.writeVInt(out, 0);
+      return;
+    }
+    DataOutputBuffer buffer = WRITE_BUFFER.get();
+    if (buffer == null) {
+      buffer = new DataOutputBuffer();
+    } else {
+      WRITE_BUFFER.set(null);
+    }
+    try {
+      buffer.reset();
+      WritableUtils.writeVInt(buffer, metaData.size());
+      for (Map.Entry<Writable, Writable> e : metaData.entrySet()) {
+        writeWritable(buffer, e.getKey());
+        writeWritable(buffer, e.getValue());
+      }
+      WritableUtils.writeVInt(out, buffer.getLength());
+      out.write(buffer.getData(), 0, buffer.getLength());
+    } finally {
+      WRITE_BUFFER.set(buffer);
+    }
+  }
+
+  /** @return the metadata read or <code>null</code> if empty */
+  static MapWritable read(DataInput in, Configuration conf)
+      throws IOException {
+    if (WritableUtils.readVInt(in) == 0) {
+      return null;
+    }
+    return readEntries(in, conf);
+  }
+
+  /**
+   * Read metadata without decoding it.
+   *
+   * @return the serialized entries or <code>null</code> if empty
+   */
+  static byte[] readBytes(DataInput in) throws IOException {
+    int length = WritableUtils.readVInt(in);
+    if (length == 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /** Write entries returned by {@link #readBytes(DataInput)}. */
+  static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    if (bytes == null) {
+      WritableUtils.writeVInt(out, 0);
+      return;
+    }
+    WritableUtils.writeVInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Decode entries returned by {@link #readBytes(DataInput)}.
+   *
+   * @param conf
+   *          configuration to load classes, may be null
+   */
+  static MapWritable decode(byte[] bytes, Configuration conf)
+      throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    MapWritable metaData = readEntries(in, conf);
+    if (in.getPosition() != bytes.length) {
+      throw new IOException("Corrupted metadata, "
+          + (bytes.length - in.getPosition()) + " bytes not read");
+    }
+    return metaData;
+  }
+
+  /** Skip metadata without reading it. */
+  static void skip(DataInput in) throws IOException {
+    WritableUtils.skipFully(in, WritableUtils.readVInt(in));
+  }
+
+  private static MapWritable readEntries(DataInput in, Configuration conf)
+      throws IOException {
+    int size = WritableUtils.readVInt(in);
+    MapWritable metaData = new MapWritable();
+    for (int i = 0; i < size; i++) {
+      Writable key;
+      byte type = in.readByte();
+      if (type == TYPE_TEXT) {
+        key = readKey(in);
+      } else {
+        key = readWritable(in, type, conf);
+      }
+      metaData.put(key, readWritable(in, in.readByte(), conf));
+    }
+    return metaData;
+  }
+
+  private static void writeWritable(DataOutput out, Writable w)
+      throws IOException {
+    Class<?> clazz = w.getClass();
+    // exact classes only, subclasses are written with their class name
+    if (clazz == Text.class) {
+      out.writeByte(TYPE_TEXT);
+      w.write(out);
+    } else if (clazz == IntWritable.class) {
+      out.writeByte(TYPE_INT);
+      WritableUtils.writeVInt(out, ((IntWritable) w).get());
+    } else if (clazz == LongWritable.class) {
+      out.writeByte(TYPE_LONG);
+      WritableUtils.writeVLong(out, ((LongWritable) w).get());
+    } else if (clazz == FloatWritable.class) {
+      out.writeByte(TYPE_FLOAT);
+      out.writeFloat(((FloatWritable) w).get());
+    } else if (clazz == DoubleWritable.class) {
+      out.writeByte(TYPE_DOUBLE);
+      out.writeDouble(((DoubleWritable) w).get());
+    } else if (clazz == ByteWritable.class) {
+      out.writeByte(TYPE_BYTE);
+      out.writeByte(((ByteWritable) w).get());
+    } else if (clazz == BooleanWritable.class) {
+      out.writeByte(TYPE_BOOLEAN);
+      out.writeBoolean(((BooleanWritable) w).get());
+    } else if (clazz == BytesWritable.class) {
+      out.writeByte(TYPE_BYTES);
+      BytesWritable bytes = (BytesWritable) w;
+      WritableUtils.writeVInt(out, bytes.getLength());
+      out.write(bytes.getBytes(), 0, bytes.getLength());
+    } else if (clazz == ProtocolStatus.class) {
+      out.writeByte(TYPE_PROTOCOL_STATUS);
+      w.write(out);
+    } else {
+      out.writeByte(TYPE_OTHER);
+      Text.writeString(out, clazz.getName());
+      w.write(out);
+    }
+  }
+
+  private static Writable readWritable(DataInput in, byte type,
+      Configuration conf) throws IOException {
+    switch (type) {
+    case TYPE_TEXT:
+      Text text = new Text();
+      text.readFields(in);
+      return text;
+    case TYPE_INT:
+      return new IntWritable(WritableUtils.readVInt(in));
+    case TYPE_LONG:
+      return new LongWritable(WritableUtils.readVLong(in));
+    case TYPE_FLOAT:
+      return new FloatWritable(in.readFloat());
+    case TYPE_DOUBLE:
+      return new DoubleWritable(in.readDouble());
+    case TYPE_BYTE:
+      return new ByteWritable(in.readByte());
+    case TYPE_BOOLEAN:
+      return new BooleanWritable(in.readBoolean());
+    case TYPE_BYTES:
+      byte[] bytes = new byte[WritableUtils.readVInt(in)];
+      in.readFully(bytes);
+      return new BytesWritable(bytes);
+    case TYPE_PROTOCOL_STATUS:
+      return ProtocolStatus.read(in);
+    case TYPE_OTHER:
+      Writable w = (Writable) ReflectionUtils.newInstance(
+          getClass(Text.readString(in), conf), conf);
+      w.readFields(in);
+      return w;
+    default:
+      throw new IOException("Unknown metadata type " + type);
+    }
+  }
+
+  /** Read a Text key, interned if possible. */
+  private static Text readKey(DataInput in) throws IOException {
+    Text buffer = KEY_BUFFER.get();
+    buffer.readFields(in);
+    Text key = INTERNED_KEYS.get(buffer);
+    if (key == null) {
+      key = new Text(buffer);
+      if (INTERNED_KEYS.size() < MAX_INTERNED_KEYS) {
+        Text interned = ((ConcurrentHashMap<Text, Text>) INTERNED_KEYS)
+            .putIfAbsent(key, key);
+        if (interned != null) {
+          key = interned;
+        }
+      }
+    }
+    return key;
+  }
+
+  private static Class<?> getClass(String className, Configuration conf)
+      throws IOException {
+    try {
+      // classes are cached by the configuration
+      return (conf != null ? conf : DEFAULT_CONF).getClassByName(className);
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Can't find class " + className, e);
+    }
+  }
+
+}
@@ -34,16 +34,17 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.scoring.ScoringFilters;
 import org.apache.nutch.util.FSUtils;
 import org.apache.nutch.util.HadoopFSUtil;
 import org.apache.nutch.util.LockUtil;
@@ -65,6 +66,15 @@ public class CrawlDb extends NutchTool implements Tool {
   public static final String CRAWLDB_PURGE_404 = "db.update.purge.404";
   public static final String CRAWLDB_PURGE_ORPHANS = "db.update.purge.orphans";
 
+  public static final String CRAWLDB_UPDATE_INCREMENTAL = "db.update.incremental";
+
+  public static final String CRAWLDB_UPDATE_DROP_KNOWN_LINKS = "db.update.links.known.drop";
+
+  public static final String CRAWLDB_BLOOM_FILTER = "crawldb.bloom.filter";
+
+  public static final String CRAWLDB_FORMAT = "crawldb.format";
+  public static final String CRAWLDB_FORMAT_COLUMNAR = "columnar";
+
   public static final String CURRENT_NAME = "current";
 
   public static final String LOCK_NAME = ".locked";
@@ -96,8 +106,19 @@ public class CrawlDb extends NutchTool implements Tool {
     conf.setBoolean(CRAWLDB_ADDITIONS_ALLOWED, additionsAllowed);
     conf.setBoolean(CrawlDbFilter.URL_FILTERING, filter);
     conf.setBoolean(CrawlDbFilter.URL_NORMALIZING, normalize);
+    if (conf.getBoolean(CRAWLDB_UPDATE_DROP_KNOWN_LINKS, false)) {
+      if (new ScoringFilters(conf).needsInlinks()) {
+        LOG.warn("CrawlDb update: links to known URLs are not dropped, "
+            + "inlinks are needed by the scoring filters");
+      } else {
+        conf.set(CrawlDbFilter.KNOWN_URLS_CRAWLDB, new Path(crawlDb,
+            CURRENT_NAME).toString());
+      }
+    }
 
     boolean url404Purging = conf.getBoolean(CRAWLDB_PURGE_404, false);
+    boolean incremental = conf.getBoolean(CRAWLDB_UPDATE_INCREMENTAL, false)
+        && isIncrementalPossible(conf, crawlDb, normalize, filter);
 
     if (LOG.isInfoEnabled()) {
       LOG.info("CrawlDb update: starting at " + sdf.format(start));
@@ -107,6 +128,18 @@ public class CrawlDb extends NutchTool implements Tool {
       LOG.info("CrawlDb update: URL normalizing: " + normalize);
       LOG.info("CrawlDb update: URL filtering: " + filter);
       LOG.info("CrawlDb update: 404 purging: " + url404Purging);
+      LOG.info("CrawlDb update: incremental: " + incremental);
+    }
+
+    FileSystem fs = crawlDb.getFileSystem(getConf());
+    Path current = new Path(crawlDb, CURRENT_NAME);
+    if (incremental) {
+      // read only the segments, existing entries are merged by the reducer
+      conf.unset(FileInputFormat.INPUT_DIR);
+      job.setReducerClass(IncrementalCrawlDbReducer.class);
+      job.setNumReduceTasks(IncrementalCrawlDbReducer.getPartitions(fs,
+          current).length);
+      conf.set(IncrementalCrawlDbReducer.CURRENT, current.toString());
     }
 
     for (int i = 0; i < segments.length; i++) {
@@ -129,7 +162,6 @@ public class CrawlDb extends NutchTool implements Tool {
       LOG.info("CrawlDb update: Merging segment data into db.");
     }
 
-    FileSystem fs = crawlDb.getFileSystem(getConf());
     Path outPath = FileOutputFormat.getOutputPath(job);
     try {
       boolean success = job.waitForCompletion(true);
@@ -147,7 +179,16 @@ public class CrawlDb extends NutchTool implements Tool {
       throw e;
     }
 
-    CrawlDb.install(job, crawlDb);
+    if (incremental) {
+      installIncremental(conf, crawlDb, outPath);
+      LOG.info("CrawlDb update: partitions rewritten: {}, kept: {}",
+          job.getCounters().findCounter("CrawlDB incremental",
+              "Partitions rewritten").getValue(),
+          job.getCounters().findCounter("CrawlDB incremental",
+              "Partitions kept").getValue());
+    } else {
+      CrawlDb.install(job, crawlDb);
+    }
 
     if (filter) {
       long urlsFiltered = job.getCounters()
@@ -177,14 +218,14 @@ public class CrawlDb extends NutchTool implements Tool {
     if (current.getFileSystem(job.getConfiguration()).exists(current)) {
       FileInputFormat.addInputPath(job, current);
     }
-    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setInputFormatClass(CrawlDbInputFormat.class);
 
     job.setMapperClass(CrawlDbFilter.class);
     job.setReducerClass(CrawlDbReducer.class);
     job.setJarByClass(CrawlDb.class);
 
     FileOutputFormat.setOutputPath(job, newCrawlDb);
-    job.setOutputFormatClass(MapFileOutputFormat.class);
+    setOutputFormat(job);
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(CrawlDatum.class);
 
@@ -194,6 +235,25 @@ public class CrawlDb extends NutchTool implements Tool {
     return job;
   }
 
+  /**
+   * Set the output format of a job writing a CrawlDb, a MapFile or, if the
+   * property <code>crawldb.format</code> is <code>columnar</code>, the
+   * columnar format. Jobs reading the CrawlDb must use
+   * {@link CrawlDbInputFormat} to read both formats. If the property
+   * <code>crawldb.bloom.filter</code> is true, MapFiles are written with a
+   * Bloom filter of the URLs, see {@link CrawlDbBloomFilter}.
+   */
+  public static void setOutputFormat(Job job) {
+    if (CRAWLDB_FORMAT_COLUMNAR.equals(job.getConfiguration().get(
+        CRAWLDB_FORMAT))) {
+      job.setOutputFormatClass(ColumnarCrawlDbOutputFormat.class);
+    } else if (job.getConfiguration().getBoolean(CRAWLDB_BLOOM_FILTER, false)) {
+      job.setOutputFormatClass(BloomMapFileOutputFormat.class);
+    } else {
+      job.setOutputFormatClass(MapFileOutputFormat.class);
+    }
+  }
+
   public static Path lock(Configuration job, Path crawlDb, boolean force) throws IOException {
     Path lock = new Path(crawlDb, LOCK_NAME);
     LockUtil.createLockFile(job, lock, force);
@@ -218,6 +278,83 @@ public class CrawlDb extends NutchTool implements Tool {
   }
 
 
+  /**
+   * Check whether an incremental update is possible: the CrawlDb must exist
+   * in MapFile format and existing entries must not be filtered, normalized
+   * or purged, because entries not contained in the segments are copied
+   * unchanged. For the same reason, no scoring filter may update orphaned
+   * entries, see {@link ScoringFilters#updatesOrphans()}.
+   */
+  private static boolean isIncrementalPossible(Configuration conf,
+      Path crawlDb, boolean normalize, boolean filter) throws IOException {
+    FileSystem fs = crawlDb.getFileSystem(conf);
+    Path current = new Path(crawlDb, CURRENT_NAME);
+    String reason = null;
+    if (!fs.exists(current)
+        || IncrementalCrawlDbReducer.getPartitions(fs, current).length == 0) {
+      reason = "no existing CrawlDb";
+    } else if (ColumnarCrawlDbReader.getFiles(fs, current) != null
+        || CRAWLDB_FORMAT_COLUMNAR.equals(conf.get(CRAWLDB_FORMAT))) {
+      reason = "CrawlDb in columnar format";
+    } else if (normalize || filter
+        || conf.getBoolean(CRAWLDB_PURGE_404, false)
+        || conf.getBoolean(CRAWLDB_PURGE_ORPHANS, false)) {
+      reason = "existing URLs are normalized, filtered or purged";
+    } else if (new ScoringFilters(conf).updatesOrphans()) {
+      reason = "scoring filters update orphaned entries";
+    }
+    if (reason != null) {
+      LOG.info("CrawlDb update: incremental update not possible ({})", reason);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Install the output of an incremental update: partitions of the current
+   * CrawlDb for which the update job wrote no entries are kept, all other
+   * partitions are replaced. If <code>db.preserve.backup</code> is true, the
+   * replaced partitions are moved to <code>old</code>.
+   */
+  static void installIncremental(Configuration conf, Path crawlDb,
+      Path tempCrawlDb) throws IOException {
+    boolean preserveBackup = conf.getBoolean("db.preserve.backup", true);
+    FileSystem fs = crawlDb.getFileSystem(conf);
+    Path old = new Path(crawlDb, "old");
+    Path current = new Path(crawlDb, CURRENT_NAME);
+    Path[] currentParts = IncrementalCrawlDbReducer.getPartitions(fs, current);
+    Path[] newParts = IncrementalCrawlDbReducer.getPartitions(fs, tempCrawlDb);
+    if (currentParts.length != newParts.length) {
+      throw new IOException("Number of partitions of " + tempCrawlDb + " ("
+          + newParts.length + ") and " + current + " ("
+          + currentParts.length + ") differ");
+    }
+    if (fs.exists(old)) {
+      fs.delete(old, true);
+    }
+    if (preserveBackup) {
+      fs.mkdirs(old);
+    }
+    Text key = new Text();
+    CrawlDatum value = new CrawlDatum();
+    for (int i = 0; i < newParts.length; i++) {
+      try (MapFile.Reader reader = new MapFile.Reader(newParts[i], conf)) {
+        if (!reader.next(key, value)) {
+          continue;
+        }
+      }
+      if (preserveBackup) {
+        fs.rename(currentParts[i], new Path(old, currentParts[i].getName()));
+      } else {
+        fs.delete(currentParts[i], true);
+      }
+      fs.rename(newParts[i], currentParts[i]);
+    }
+    fs.delete(tempCrawlDb, true);
+    Path lock = new Path(crawlDb, LOCK_NAME);
+    LockUtil.removeLockFile(fs, lock);
+  }
+
   public static void install(Job job, Path crawlDb) throws IOException {
     Configuration conf = job.getConfiguration();
     Path tempCrawlDb = org.apache.hadoop.mapreduce.lib.output.FileOutputFormat
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BloomMapFile;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.hadoop.util.bloom.DynamicBloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bloom filters of the URLs in a CrawlDb, one per partition, written by
+ * {@link BloomMapFileOutputFormat} if <code>crawldb.bloom.filter</code> is
+ * true. A URL is looked up in the filter of the partition it is assigned to
+ * by the {@link HashPartitioner}, as done by
+ * {@link CrawlDbReader#get(String, String, Configuration)}. Like any Bloom
+ * filter, {@link #probablyContains(Text)} may return true for URLs not
+ * contained in the CrawlDb. Not thread-safe.
+ */
+public class CrawlDbBloomFilter {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  private final DynamicBloomFilter[] filters;
+  private final HashPartitioner<Text, CrawlDatum> partitioner = new HashPartitioner<>();
+  private final DataOutputBuffer buffer = new DataOutputBuffer();
+
+  private CrawlDbBloomFilter(DynamicBloomFilter[] filters) {
+    this.filters = filters;
+  }
+
+  /**
+   * Load the Bloom filters of all partitions of a CrawlDb. All filters are
+   * held in memory, about 1.5 bytes per URL with the default error rate, see
+   * <code>crawldb.bloom.filter</code> in nutch-default.xml.
+   *
+   * @param current
+   *          directory of the CrawlDb partitions (<code>crawldb/current</code>)
+   * @return the filters or null if the CrawlDb does not exist or not every
+   *         partition has a Bloom filter
+   */
+  public static CrawlDbBloomFilter load(Path current, Configuration conf)
+      throws IOException {
+    FileSystem fs = current.getFileSystem(conf);
+    if (!fs.exists(current)) {
+      return null;
+    }
+    Path[] parts = IncrementalCrawlDbReducer.getPartitions(fs, current);
+    if (parts.length == 0) {
+      return null;
+    }
+    DynamicBloomFilter[] filters = new DynamicBloomFilter[parts.length];
+    long size = 0;
+    for (int i = 0; i < parts.length; i++) {
+      Path file = new Path(parts[i], BloomMapFile.BLOOM_FILE_NAME);
+      if (!fs.exists(file)) {
+        LOG.info("No Bloom filter found for CrawlDb partition {}", parts[i]);
+        return null;
+      }
+      // the filter bits are held in memory as serialized
+      size += fs.getFileStatus(file).getLen();
+      filters[i] = new DynamicBloomFilter();
+      try (FSDataInputStream in = fs.open(file)) {
+        filters[i].readFields(in);
+      }
+    }
+    LOG.info("Loaded Bloom filters of {} CrawlDb partitions, {} bytes",
+        parts.length, size);
+    return new CrawlDbBloomFilter(filters);
+  }
+
+  /**
+   * @return false if the URL is not contained in the CrawlDb, true if it is
+   *         probably contained
+   */
+  public boolean probablyContains(Text url) throws IOException {
+    // same key as written by BloomMapFile.Writer: the serialized Text
+    buffer.reset();
+    url.write(buffer);
+    Key key = new Key(Arrays.copyOf(buffer.getData(), buffer.getLength()));
+    int partition = partitioner.getPartition(url, null, filters.length);
+    return filters[partition].membershipTest(key);
+  }
+
+}
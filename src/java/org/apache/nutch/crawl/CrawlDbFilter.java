@@ -22,9 +22,11 @@ import java.lang.invoke.MethodHandles;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.net.URLCache;
 import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
 
@@ -39,6 +41,11 @@ public class CrawlDbFilter extends
   public static final String URL_FILTERING = "crawldb.url.filters";
   public static final String URL_NORMALIZING = "crawldb.url.normalizers";
   public static final String URL_NORMALIZING_SCOPE = "crawldb.url.normalizers.scope";
+  /**
+   * CrawlDb (path of <code>current</code>) whose Bloom filters are used to
+   * drop links to URLs already contained in it
+   */
+  public static final String KNOWN_URLS_CRAWLDB = "crawldb.known.urls.crawldb";
 
   private boolean urlFiltering;
   private boolean urlNormalizers;
@@ -47,6 +54,7 @@ public class CrawlDbFilter extends
   private boolean purgeOrphans;
   private URLFilters filters;
   private URLNormalizers normalizers;
+  private CrawlDbBloomFilter knownUrls;
 
   private String scope;
 
@@ -54,7 +62,8 @@ public class CrawlDbFilter extends
       .getLogger(MethodHandles.lookup().lookupClass());
 
 
-  public void setup(Mapper<Text, CrawlDatum, Text, CrawlDatum>.Context context) {
+  public void setup(Mapper<Text, CrawlDatum, Text, CrawlDatum>.Context context)
+      throws IOException {
     Configuration conf = context.getConfiguration();
     urlFiltering = conf.getBoolean(URL_FILTERING, false);
     urlNormalizers = conf.getBoolean(URL_NORMALIZING, false);
@@ -68,11 +77,24 @@ public class CrawlDbFilter extends
       scope = conf.get(URL_NORMALIZING_SCOPE, URLNormalizers.SCOPE_CRAWLDB);
       normalizers = new URLNormalizers(conf, scope);
     }
+    String knownUrlsCrawlDb = conf.get(KNOWN_URLS_CRAWLDB);
+    if (knownUrlsCrawlDb != null) {
+      knownUrls = CrawlDbBloomFilter.load(new Path(knownUrlsCrawlDb), conf);
+      if (knownUrls == null) {
+        LOG.warn("No Bloom filters found for CrawlDb {}, links to known URLs"
+            + " are not dropped", knownUrlsCrawlDb);
+      }
+    }
   }
 
   public void close() {
   }
 
+  @Override
+  public void cleanup(Context context) {
+    URLCache.reportCounters(context);
+  }
+
   private Text newKey = new Text();
 
   public void map(Text key, CrawlDatum value,
@@ -115,6 +137,12 @@ public class CrawlDbFilter extends
     } else {
       // URL has passed filters
       newKey.set(url); // collect it
+      if (knownUrls != null && value.getStatus() == CrawlDatum.STATUS_LINKED
+          && knownUrls.probablyContains(newKey)) {
+        context.getCounter("CrawlDB filter", "Links to known URLs dropped")
+            .increment(1);
+        return;
+      }
       context.write(newKey, value);
     }
   }
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+
+/**
+ * Input format for jobs reading a CrawlDb: reads CrawlDb files in columnar
+ * format (see {@link ColumnarCrawlDbOutputFormat}) and all other files
+ * (MapFiles of a CrawlDb, segment or other data) the same way as
+ * {@link SequenceFileInputFormat}. Jobs may restrict the columns and entries
+ * read from columnar files, entries of other files are not restricted.
+ */
+public class CrawlDbInputFormat<K, V> extends SequenceFileInputFormat<K, V> {
+
+  public static final String COLUMNS = "crawldb.read.columns";
+  public static final String STATUS = "crawldb.read.status";
+  public static final String SKIP_FETCH_TIME_AFTER = "crawldb.read.skip.fetchtime.after";
+  public static final String SKIP_FETCH_TIME_UNTIL = "crawldb.read.skip.fetchtime.until";
+  public static final String MIN_SCORE = "crawldb.read.min.score";
+
+  /**
+   * Read only the given columns of columnar files, the URL is always read.
+   * Column names are <code>status</code>, <code>fetchTime</code>,
+   * <code>retries</code>, <code>fetchInterval</code>, <code>score</code>,
+   * <code>modifiedTime</code>, <code>signature</code> and
+   * <code>metadata</code>.
+   */
+  public static void setColumns(Configuration conf, String... columns) {
+    conf.setStrings(COLUMNS, columns);
+  }
+
+  /** Read only entries with one of the given statuses from columnar files. */
+  public static void setStatus(Configuration conf, byte... statuses) {
+    String[] values = new String[statuses.length];
+    for (int i = 0; i < statuses.length; i++) {
+      values[i] = Byte.toString(statuses[i]);
+    }
+    conf.setStrings(STATUS, values);
+  }
+
+  /**
+   * Read only entries from columnar files with the given status name, see
+   * {@link CrawlDatum#getStatusName(byte)}, case is ignored.
+   */
+  public static void setStatus(Configuration conf, String statusName) {
+    StringBuilder values = new StringBuilder();
+    for (Map.Entry<Byte, String> e : CrawlDatum.statNames.entrySet()) {
+      if (statusName.equalsIgnoreCase(e.getValue())) {
+        if (values.length() > 0) {
+          values.append(',');
+        }
+        values.append(e.getKey());
+      }
+    }
+    if (values.length() == 0) {
+      // unknown status: no entry is read
+      values.append(-1);
+    }
+    conf.set(STATUS, values.toString());
+  }
+
+  /**
+   * Skip entries of columnar files with a fetch time in the range
+   * <code>(after, until]</code>.
+   */
+  public static void setSkipFetchTime(Configuration conf, long after,
+      long until) {
+    conf.setLong(SKIP_FETCH_TIME_AFTER, after);
+    conf.setLong(SKIP_FETCH_TIME_UNTIL, until);
+  }
+
+  /** Read only entries with a score of at least min. from columnar files. */
+  public static void setMinScore(Configuration conf, float min) {
+    conf.setFloat(MIN_SCORE, min);
+  }
+
+  @Override
+  protected boolean isSplitable(JobContext context, Path file) {
+    try {
+      FileSystem fs = file.getFileSystem(context.getConfiguration());
+      return !ColumnarCrawlDbReader.isColumnar(fs, file);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public RecordReader<K, V> createRecordReader(InputSplit split,
+      TaskAttemptContext context) throws IOException {
+    Path file = ((FileSplit) split).getPath();
+    FileSystem fs = file.getFileSystem(context.getConfiguration());
+    if (ColumnarCrawlDbReader.isColumnar(fs, file)) {
+      return (RecordReader<K, V>) new ColumnarRecordReader();
+    }
+    return super.createRecordReader(split, context);
+  }
+
+  private static class ColumnarRecordReader extends
+      RecordReader<Text, CrawlDatum> {
+
+    private ColumnarCrawlDbReader reader;
+    private TaskAttemptContext context;
+    private Text key = new Text();
+    private CrawlDatum value = new CrawlDatum();
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context)
+        throws IOException {
+      Path file = ((FileSplit) split).getPath();
+      Configuration conf = context.getConfiguration();
+      this.context = context;
+      reader = new ColumnarCrawlDbReader(file.getFileSystem(conf), file, conf);
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+      return reader.next(key, value);
+    }
+
+    @Override
+    public Text getCurrentKey() {
+      return key;
+    }
+
+    @Override
+    public CrawlDatum getCurrentValue() {
+      return value;
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+      if (reader.getLength() == 0) {
+        return 0.0f;
+      }
+      return Math.min(1.0f, reader.getPos() / (float) reader.getLength());
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (reader != null) {
+        reader.close();
+        context.getCounter("CrawlDb", "BLOCKS_READ").increment(
+            reader.getBlocksRead());
+        context.getCounter("CrawlDb", "BLOCKS_SKIPPED").increment(
+            reader.getBlocksSkipped());
+      }
+    }
+  }
+
+}
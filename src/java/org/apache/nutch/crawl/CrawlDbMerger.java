@@ -36,9 +36,7 @@ import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
-import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
@@ -95,7 +93,7 @@ public class CrawlDbMerger extends Configured implements Tool {
           res.set(val);
           resSet = true;
           resTime = schedule.calculateLastFetchTime(res);
-          for (Entry<Writable, Writable> e : res.getMetaData().entrySet()) {
+          for (Entry<Writable, Writable> e : res.getMetaDataReadOnly().entrySet()) {
             meta.put(e.getKey(), e.getValue());
           }
           continue;
@@ -104,7 +102,7 @@ public class CrawlDbMerger extends Configured implements Tool {
         valTime = schedule.calculateLastFetchTime(val);
         if (valTime > resTime) {
           // collect all metadata, newer values override older values
-          for (Entry<Writable, Writable> e : val.getMetaData().entrySet()) {
+          for (Entry<Writable, Writable> e : val.getMetaDataReadOnly().entrySet()) {
             meta.put(e.getKey(), e.getValue());
           }
           res.set(val);
@@ -178,7 +176,7 @@ public class CrawlDbMerger extends Configured implements Tool {
     conf = job.getConfiguration();
     job.setJobName("crawldb merge " + output);
 
-    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setInputFormatClass(CrawlDbInputFormat.class);
 
     job.setJarByClass(CrawlDbMerger.class);
     job.setMapperClass(CrawlDbFilter.class);
@@ -187,7 +185,7 @@ public class CrawlDbMerger extends Configured implements Tool {
     job.setReducerClass(Merger.class);
 
     FileOutputFormat.setOutputPath(job, newCrawlDb);
-    job.setOutputFormatClass(MapFileOutputFormat.class);
+    CrawlDb.setOutputFormat(job);
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(CrawlDatum.class);
 
@@ -159,8 +159,8 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
         out.writeByte('"');
         out.writeByte(',');
         out.writeByte('"');
-        if (value.getMetaData() != null) {
-          for (Entry<Writable, Writable> e : value.getMetaData().entrySet()) {
+        if (value.getMetaDataReadOnly() != null) {
+          for (Entry<Writable, Writable> e : value.getMetaDataReadOnly().entrySet()) {
             out.writeBytes(e.getKey().toString());
             out.writeByte(':');
             out.writeBytes(e.getValue().toString());
@@ -387,7 +387,9 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
 	  config.setBoolean("db.reader.stats.sort", sort);
 
 	  FileInputFormat.addInputPath(job, new Path(crawlDb, CrawlDb.CURRENT_NAME));
-	  job.setInputFormatClass(SequenceFileInputFormat.class);
+	  job.setInputFormatClass(CrawlDbInputFormat.class);
+	  CrawlDbInputFormat.setColumns(config, "status", "retries", "score",
+	      "fetchTime", "fetchInterval");
 
 	  job.setJarByClass(CrawlDbReader.class);
 	  job.setMapperClass(CrawlDbStatMapper.class);
@@ -623,6 +625,16 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
       throws IOException {
     Text key = new Text(url);
     CrawlDatum val = new CrawlDatum();
+    Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
+    FileSystem fs = current.getFileSystem(config);
+    Path[] files = ColumnarCrawlDbReader.getFiles(fs, current);
+    if (files != null) {
+      // partitioned the same way as MapFiles, see MapFileOutputFormat.getEntry
+      Path file = files[new HashPartitioner<Text, CrawlDatum>().getPartition(
+          key, val, files.length)];
+      return ColumnarCrawlDbReader.get(fs, file, key, val, config) ? val
+          : null;
+    }
     openReaders(crawlDb, config);
     CrawlDatum res = (CrawlDatum) MapFileOutputFormat.getEntry(readers,
         new HashPartitioner<>(), key, val);
@@ -664,7 +676,10 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
     job.setJobName("dump " + crawlDb);
 
     FileInputFormat.addInputPath(job, new Path(crawlDb, CrawlDb.CURRENT_NAME));
-    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setInputFormatClass(CrawlDbInputFormat.class);
+    if (status != null) {
+      CrawlDbInputFormat.setStatus(job.getConfiguration(), status);
+    }
     FileOutputFormat.setOutputPath(job, outFolder);
 
     if (format.equals("csv")) {
@@ -794,7 +809,7 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
     Job job = NutchJob.getInstance(config);
     job.setJobName("topN prepare " + crawlDb);
     FileInputFormat.addInputPath(job, new Path(crawlDb, CrawlDb.CURRENT_NAME));
-    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setInputFormatClass(CrawlDbInputFormat.class);
 
     job.setJarByClass(CrawlDbReader.class);
     job.setMapperClass(CrawlDbTopNMapper.class);
@@ -806,6 +821,8 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
     job.setOutputValueClass(Text.class);
 
     job.getConfiguration().setFloat("db.reader.topn.min", min);
+    CrawlDbInputFormat.setColumns(job.getConfiguration(), "score");
+    CrawlDbInputFormat.setMinScore(job.getConfiguration(), min);
    
     FileSystem fs = tempDir.getFileSystem(config); 
     try{
@@ -1103,8 +1120,8 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
       results.put("score", res.getScore());
       results.put("signature", StringUtil.toHexString(res.getSignature()));
       Map<String, String> metadata = new HashMap<>();
-      if(res.getMetaData()!=null){
-        for (Entry<Writable, Writable> e : res.getMetaData().entrySet()) {
+      if(res.getMetaDataReadOnly()!=null){
+        for (Entry<Writable, Writable> e : res.getMetaDataReadOnly().entrySet()) {
           metadata.put(String.valueOf(e.getKey()), String.valueOf(e.getValue()));
         }
       }
@@ -20,6 +20,7 @@ package org.apache.nutch.crawl;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.io.IOException;
 
@@ -74,7 +75,7 @@ public class CrawlDbReducer extends
     byte[] signature = null;
     boolean multiple = false; // avoid deep copy when only single value exists
     linked.clear();
-    org.apache.hadoop.io.MapWritable metaFromParse = null;
+    Map<Writable, Writable> metaFromParse = null;
 
     for (CrawlDatum datum : values) {
       if (!multiple)
@@ -114,6 +115,10 @@ public class CrawlDbReducer extends
 
       switch (datum.getStatus()) { // collect other info
       case CrawlDatum.STATUS_LINKED:
+        if (!linked.accepts(datum)) {
+          // dropped anyway, avoid copying it (its metadata is never decoded)
+          break;
+        }
         CrawlDatum link;
         if (multiple) {
           link = new CrawlDatum();
@@ -127,7 +132,7 @@ public class CrawlDbReducer extends
         signature = datum.getSignature();
         break;
       case CrawlDatum.STATUS_PARSE_META:
-        metaFromParse = datum.getMetaData();
+        metaFromParse = datum.getMetaDataReadOnly();
         break;
       default:
         LOG.warn("Unknown status, key: " + key + ", datum: " + datum);
@@ -183,10 +188,10 @@ public class CrawlDbReducer extends
     result.set(fetch);
     if (oldSet) {
       // copy metadata from old, if exists
-      if (old.getMetaData().size() > 0) {
+      if (old.hasMetaData()) {
         result.putAllMetaData(old);
         // overlay with new, if any
-        if (fetch.getMetaData().size() > 0)
+        if (fetch.hasMetaData())
           result.putAllMetaData(fetch);
       }
       // set the most recent valid value of modifiedTime
@@ -324,8 +329,11 @@ public class CrawlDbReducer extends
         LOG.warn("Couldn't update score, key={}: {}", key, e);
       }
     }
-    // remove generation time, if any
-    result.getMetaData().remove(Nutch.WRITABLE_GENERATE_TIME_KEY);
+    // remove generation time, if any (without copying shared metadata if not)
+    if (result.getMetaDataReadOnly()
+        .containsKey(Nutch.WRITABLE_GENERATE_TIME_KEY)) {
+      result.getMetaData().remove(Nutch.WRITABLE_GENERATE_TIME_KEY);
+    }
     context.write(key, result);
     context.getCounter("CrawlDB status",
         CrawlDatum.getStatusName(result.getStatus())).increment(1);
@@ -335,10 +343,21 @@ public class CrawlDbReducer extends
 
 class InlinkPriorityQueue extends PriorityQueue<CrawlDatum> {
 
+  private final int maxSize;
+
   public InlinkPriorityQueue(int maxSize) {
+    this.maxSize = maxSize;
     initialize(maxSize);
   }
 
+  /**
+   * @return true if the datum would be inserted by {@link #insert(Object)},
+   *         looking only at the score
+   */
+  public boolean accepts(CrawlDatum datum) {
+    return size() < maxSize || (size() > 0 && !lessThan(datum, top()));
+  }
+
   /** Determines the ordering of objects in this priority queue. **/
   protected boolean lessThan(Object arg0, Object arg1) {
     CrawlDatum candidate = (CrawlDatum) arg0;
@@ -34,7 +34,6 @@ import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.mapreduce.CounterGroup;
 import org.apache.hadoop.mapreduce.Counter;
@@ -191,8 +190,8 @@ public class DeduplicationJob extends NutchTool implements Tool {
               String urlExisting;
               String urlnewDoc;
               try {
-                urlExisting = URLDecoder.decode(existingDoc.getMetaData().get(urlKey).toString(), "UTF8");
-                urlnewDoc = URLDecoder.decode(newDoc.getMetaData().get(urlKey).toString(), "UTF8");
+                urlExisting = URLDecoder.decode(existingDoc.getMetaDataReadOnly().get(urlKey).toString(), "UTF8");
+                urlnewDoc = URLDecoder.decode(newDoc.getMetaDataReadOnly().get(urlKey).toString(), "UTF8");
               } catch (UnsupportedEncodingException e) {
                 LOG.error("Error decoding: " + urlKey);
                 throw new IOException("UnsupportedEncodingException for " + urlKey);
@@ -298,7 +297,7 @@ public class DeduplicationJob extends NutchTool implements Tool {
     job.setJarByClass(DeduplicationJob.class);
 
     FileInputFormat.addInputPath(job, new Path(crawlDb, CrawlDb.CURRENT_NAME));
-    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setInputFormatClass(CrawlDbInputFormat.class);
 
     FileOutputFormat.setOutputPath(job, tempDir);
     job.setOutputFormatClass(SequenceFileOutputFormat.class);
@@ -21,11 +21,11 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
-import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -48,6 +48,7 @@ import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
@@ -63,6 +64,8 @@ import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 import org.apache.nutch.hostdb.HostDatum;
 import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.net.ParsedURL;
+import org.apache.nutch.net.URLCache;
 import org.apache.nutch.net.URLFilterException;
 import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
@@ -105,8 +108,11 @@ public class Generator extends NutchTool implements Tool {
   public static final String GENERATOR_MAX_NUM_SEGMENTS = "generate.max.num.segments";
   public static final String GENERATOR_EXPR = "generate.expr";
   public static final String GENERATOR_HOSTDB = "generate.hostdb";
+  public static final String GENERATOR_HOSTDB_INDEX = "generate.hostdb.index";
+  public static final String GENERATOR_HOSTDB_CACHE_SIZE = "generate.hostdb.cache.size";
   public static final String GENERATOR_MAX_COUNT_EXPR = "generate.max.count.expr";
   public static final String GENERATOR_FETCH_DELAY_EXPR = "generate.fetch.delay.expr";
+  public static final String GENERATOR_MAPPER_TOP_N = "generate.mapper.topn";
 
   public static class SelectorEntry implements Writable {
     public Text url;
@@ -180,6 +186,14 @@ public class Generator extends NutchTool implements Tool {
       private int intervalThreshold = -1;
       private String restrictStatus = null;
       private Expression expr = null;
+      /** top K entries per partition if selected in the mapper, else null */
+      private SelectorTopK[] topK = null;
+      private int topKSize;
+      private int topKMaxPerHost;
+      private long topKAdded = 0;
+      private boolean byDomain = false;
+      private URLNormalizers normalizers;
+      private Selector partitioner;
  
       @Override 
       public void setup(Mapper<Text, CrawlDatum, FloatWritable, SelectorEntry>.Context context) throws IOException{
@@ -197,6 +211,93 @@ public class Generator extends NutchTool implements Tool {
         intervalThreshold = conf.getInt(GENERATOR_MIN_INTERVAL, -1);
         restrictStatus = conf.get(GENERATOR_RESTRICT_STATUS, null);
         expr = JexlUtil.parseExpression(conf.get(GENERATOR_EXPR, null));
+        long topN = conf.getLong(GENERATOR_TOP_N, Long.MAX_VALUE);
+        if (conf.getBoolean(GENERATOR_MAPPER_TOP_N, false)
+            && topN != Long.MAX_VALUE) {
+          setupTopK(topN, context.getNumReduceTasks());
+        }
+      }
+
+      private void setupTopK(long topN, int numReduceTasks) {
+        // same limits as applied by SelectorReducer
+        int maxNumSegments = conf.getInt(GENERATOR_MAX_NUM_SEGMENTS, 1);
+        long size = (topN / numReduceTasks) * maxNumSegments;
+        if (size > Integer.MAX_VALUE) {
+          LOG.warn("Generator: topN too large to select in mapper");
+          return;
+        }
+        topKSize = (int) size;
+        int maxCount = conf.getInt(GENERATOR_MAX_COUNT, -1);
+        if (maxCount > 0 && conf.get(GENERATOR_MAX_COUNT_EXPR) == null) {
+          // a host never gets more than maxCount URLs per segment
+          topKMaxPerHost = maxCount * maxNumSegments;
+          byDomain = GENERATOR_COUNT_VALUE_DOMAIN
+              .equals(conf.get(GENERATOR_COUNT_MODE));
+          if (conf.getBoolean(GENERATOR_NORMALISE, true)) {
+            normalizers = new URLNormalizers(conf,
+                URLNormalizers.SCOPE_GENERATE_HOST_COUNT);
+          }
+        }
+        partitioner = new Selector();
+        partitioner.setConf(conf);
+        topK = new SelectorTopK[numReduceTasks];
+      }
+
+      @Override
+      public void cleanup(Context context)
+          throws IOException, InterruptedException {
+        if (topK != null) {
+          long emitted = 0;
+          for (SelectorTopK partition : topK) {
+            if (partition == null) {
+              continue;
+            }
+            for (SelectorTopK.Candidate candidate : partition.candidates()) {
+              sortValue.set(candidate.sortValue);
+              entry.url = candidate.url;
+              entry.datum = candidate.datum;
+              context.write(sortValue, entry);
+              emitted++;
+            }
+          }
+          context.getCounter("Generator", "SKIPPED_IN_MAPPER")
+              .increment(topKAdded - emitted);
+        }
+        URLCache.reportCounters(context);
+      }
+
+      /**
+       * Keep the entry if it is among the top K entries of its partition.
+       * Entries of the same host (or domain) beyond the max. count are
+       * discarded, the counting is the same as in {@link SelectorReducer}.
+       */
+      private void selectTopK(Context context)
+          throws IOException, InterruptedException {
+        String hostordomain = null;
+        if (topKMaxPerHost > 0) {
+          String urlString = entry.url.toString();
+          try {
+            ParsedURL u = ParsedURL.parse(urlString);
+            if (normalizers != null) {
+              u = normalizers.normalize(u,
+                  URLNormalizers.SCOPE_GENERATE_HOST_COUNT);
+            }
+            hostordomain = byDomain ? u.getDomainName() : u.getHost();
+            hostordomain = hostordomain.toLowerCase();
+          } catch (Exception e) {
+            // skipped and counted by the reducer
+            context.write(sortValue, entry);
+            return;
+          }
+        }
+        int partition = partitioner.getPartition(sortValue, entry,
+            topK.length);
+        if (topK[partition] == null) {
+          topK[partition] = new SelectorTopK(topKSize, topKMaxPerHost);
+        }
+        topK[partition].add(sortValue.get(), entry.url, entry.datum,
+            hostordomain);
+        topKAdded++;
       }
 
       @Override 
@@ -226,7 +327,7 @@ public class Generator extends NutchTool implements Tool {
           return;
         }
 
-        LongWritable oldGenTime = (LongWritable) crawlDatum.getMetaData().get(
+        LongWritable oldGenTime = (LongWritable) crawlDatum.getMetaDataReadOnly().get(
             Nutch.WRITABLE_GENERATE_TIME_KEY);
         if (oldGenTime != null) { // awaiting fetch & update
           if (oldGenTime.get() + genDelay > curTime) // still wait for
@@ -270,6 +371,10 @@ public class Generator extends NutchTool implements Tool {
         crawlDatum.getMetaData().put(Nutch.WRITABLE_GENERATE_TIME_KEY, genTime);
         entry.datum = crawlDatum;
         entry.url = key;
+        if (topK != null) {
+          selectTopK(context);
+          return;
+        }
         context.write(sortValue, entry); // invert for sort by score
       }
     }
@@ -280,7 +385,7 @@ public class Generator extends NutchTool implements Tool {
     public static class SelectorReducer extends
        Reducer<FloatWritable, SelectorEntry, FloatWritable, SelectorEntry> {
  
-      private HashMap<String, int[]> hostCounts = new HashMap<>();
+      private HostSegmentCounts hostCounts = new HostSegmentCounts();
       private long count;
       private int currentsegmentnum = 1;
       private MultipleOutputs mos;
@@ -297,11 +402,17 @@ public class Generator extends NutchTool implements Tool {
       private Expression maxCountExpr = null;
       private Expression fetchDelayExpr = null;
 
+      private Map<String, HostDatum> hostDatumCache;
+      private final HashPartitioner<Text, HostDatum> hostdbPartitioner = new HashPartitioner<>();
+
       public void open() {
-        if (conf.get(GENERATOR_HOSTDB) != null) {
+        String index = conf.get(GENERATOR_HOSTDB_INDEX);
+        if (index == null && conf.get(GENERATOR_HOSTDB) != null) {
+          index = new Path(conf.get(GENERATOR_HOSTDB), "current").toString();
+        }
+        if (index != null) {
           try {
-            Path path = new Path(conf.get(GENERATOR_HOSTDB), "current");
-            hostdbReaders = MapFileOutputFormat.getReaders(path, conf);
+            hostdbReaders = MapFileOutputFormat.getReaders(new Path(index), conf);
           } catch (IOException e) {
             LOG.error("Error reading HostDB because {}", e.getMessage());
           }
@@ -317,6 +428,7 @@ public class Generator extends NutchTool implements Tool {
           } catch (IOException e) {
             LOG.error("Error closing HostDB because {}", e.getMessage());
           }
+          hostdbReaders = null;
         }
       }
 
@@ -381,12 +493,27 @@ public class Generator extends NutchTool implements Tool {
         if (conf.get(GENERATOR_HOSTDB) != null) {
           maxCountExpr = JexlUtil.parseExpression(conf.get(GENERATOR_MAX_COUNT_EXPR, null));
           fetchDelayExpr = JexlUtil.parseExpression(conf.get(GENERATOR_FETCH_DELAY_EXPR, null));
+
+          // bounded LRU cache of HostDB lookups, negative results included
+          final int cacheSize = conf.getInt(GENERATOR_HOSTDB_CACHE_SIZE, 10000);
+          hostDatumCache = new LinkedHashMap<String, HostDatum>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, HostDatum> eldest) {
+              return size() > cacheSize;
+            }
+          };
+          open();
         }
       }
 
       @Override
       public void cleanup(Context context) throws IOException, InterruptedException {
+        close();
         mos.close();
+        URLCache.reportCounters(context);
       }
 
       @Override
@@ -402,7 +529,7 @@ public class Generator extends NutchTool implements Tool {
         for (SelectorEntry entry : values) {
           Text url = entry.url;
           String urlString = url.toString();
-          URL u = null;
+          ParsedURL u = null;
           
           // Do this only once per queue
           if (host == null) {
@@ -447,15 +574,15 @@ public class Generator extends NutchTool implements Tool {
           String hostordomain = null;
 
           try {
+            u = ParsedURL.parse(urlString);
             if (normalise && normalizers != null) {
-              urlString = normalizers.normalize(urlString,
+              u = normalizers.normalize(u,
                   URLNormalizers.SCOPE_GENERATE_HOST_COUNT);
             }
-            u = new URL(urlString);
             if (byDomain) {
-              hostordomain = URLUtil.getDomainName(u);
+              hostordomain = u.getDomainName();
             } else {
-              hostordomain = new URL(urlString).getHost();
+              hostordomain = u.getHost();
             }
           } catch (Exception e) {
             LOG.warn("Malformed URL: '" + urlString + "', skipping ("
@@ -468,30 +595,28 @@ public class Generator extends NutchTool implements Tool {
 
           // only filter if we are counting hosts or domains
           if (maxCount > 0) {
-            int[] hostCount = hostCounts.get(hostordomain);
-            if (hostCount == null) {
-              hostCount = new int[] { 1, 0 };
-              hostCounts.put(hostordomain, hostCount);
-            }
-
+            int slot = hostCounts.slot(hostordomain);
+            int hostSegment = hostCounts.getSegment(slot);
             // increment hostCount
-            hostCount[1]++;
+            int hostCount = hostCounts.getCount(slot) + 1;
 
             // check if topN reached, select next segment if it is
-            while (segCounts[hostCount[0] - 1] >= limit
-                && hostCount[0] < maxNumSegments) {
-              hostCount[0]++;
-              hostCount[1] = 0;
+            while (segCounts[hostSegment - 1] >= limit
+                && hostSegment < maxNumSegments) {
+              hostSegment++;
+              hostCount = 0;
             }
 
             // reached the limit of allowed URLs per host / domain
             // see if we can put it in the next segment?
-            if (hostCount[1] >= maxCount) {
-              if (hostCount[0] < maxNumSegments) {
-                hostCount[0]++;
-                hostCount[1] = 0;
+            if (hostCount >= maxCount) {
+              if (hostSegment < maxNumSegments) {
+                hostSegment++;
+                hostCount = 0;
               } else {
-                if (hostCount[1] == maxCount + 1 && LOG.isInfoEnabled()) {
+                hostCounts.setSegment(slot, hostSegment);
+                hostCounts.setCount(slot, hostCount);
+                if (hostCount == maxCount + 1 && LOG.isInfoEnabled()) {
                   LOG.info("Host or domain "
                       + hostordomain
                       + " has more than "
@@ -504,10 +629,12 @@ public class Generator extends NutchTool implements Tool {
                 continue;
               }
             }
-            entry.segnum = new IntWritable(hostCount[0]);
-            segCounts[hostCount[0] - 1]++;
+            hostCounts.setSegment(slot, hostSegment);
+            hostCounts.setCount(slot, hostCount);
+            entry.segnum.set(hostSegment);
+            segCounts[hostSegment - 1]++;
           } else {
-            entry.segnum = new IntWritable(currentsegmentnum);
+            entry.segnum.set(currentsegmentnum);
             segCounts[currentsegmentnum - 1]++;
           }
 
@@ -526,22 +653,27 @@ public class Generator extends NutchTool implements Tool {
         return "fetchlist-" + entry.segnum.toString() + "/part";
       }
 
+      /**
+       * Look up the HostDatum of a host. The HostDB is read as MapFile
+       * partitioned by {@link HashPartitioner}, so a lookup is a single index
+       * seek in the partition holding the host. Results (including misses)
+       * are kept in a bounded LRU cache.
+       */
       private HostDatum getHostDatum(String host) throws Exception {
-        Text key = new Text();
-        HostDatum value = new HostDatum();
-
-        open();
-        for (int i = 0; i < hostdbReaders.length; i++) {
-          while (hostdbReaders[i].next(key, value)) {
-            if (host.equals(key.toString())) {
-              close();
-              return value;
-            }
-          }
+        if (hostdbReaders == null) {
+          return null;
+        }
+        if (hostDatumCache.containsKey(host)) {
+          return hostDatumCache.get(host);
         }
 
-        close();
-        return null;
+        HostDatum value = new HostDatum();
+        if (MapFileOutputFormat.getEntry(hostdbReaders, hostdbPartitioner,
+            new Text(host), value) == null) {
+          value = null;
+        }
+        hostDatumCache.put(host, value);
+        return value;
       }
     }
 
@@ -647,8 +779,8 @@ public class Generator extends NutchTool implements Tool {
               throws IOException, InterruptedException {
         genTime.set(0L);
         for (CrawlDatum val : values) {
-          if (val.getMetaData().containsKey(Nutch.WRITABLE_GENERATE_TIME_KEY)) {
-            LongWritable gt = (LongWritable) val.getMetaData().get(
+          if (val.getMetaDataReadOnly().containsKey(Nutch.WRITABLE_GENERATE_TIME_KEY)) {
+            LongWritable gt = (LongWritable) val.getMetaDataReadOnly().get(
                     Nutch.WRITABLE_GENERATE_TIME_KEY);
             genTime.set(gt.get());
             if (genTime.get() != generateTime) {
@@ -747,7 +879,7 @@ public class Generator extends NutchTool implements Tool {
     if (expr != null) {
       LOG.info("Generator: expr: {}", expr);
     }
-    if (expr != null) {
+    if (hostdb != null) {
       LOG.info("Generator: hostdb: {}", hostdb);
     }
     
@@ -774,11 +906,21 @@ public class Generator extends NutchTool implements Tool {
     if (expr != null) {
       conf.set(GENERATOR_EXPR, expr);
     }
+    Path hostdbIndex = null;
     if (hostdb != null) {
       conf.set(GENERATOR_HOSTDB, hostdb);
+      try {
+        hostdbIndex = indexHostDb(new Path(hostdb, "current"));
+      } catch (Exception e) {
+        LOG.error("Generator: failed to index HostDB: {}", e.getMessage());
+        NutchJob.cleanupAfterFailure(tempDir, lock, fs);
+        throw e;
+      }
+      conf.set(GENERATOR_HOSTDB_INDEX, hostdbIndex.toString());
     }
     FileInputFormat.addInputPath(job, new Path(dbDir, CrawlDb.CURRENT_NAME));
-    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setInputFormatClass(CrawlDbInputFormat.class);
+    setCrawlDbRestrictions(conf, curTime);
 
     job.setJarByClass(Selector.class);
     job.setMapperClass(SelectorMapper.class);
@@ -805,6 +947,11 @@ public class Generator extends NutchTool implements Tool {
       LOG.error("Generator job failed: {}", e.getMessage());
       NutchJob.cleanupAfterFailure(tempDir, lock, fs);
       throw e;
+    } finally {
+      if (hostdbIndex != null
+          && !hostdbIndex.equals(new Path(hostdb, "current"))) {
+        fs.delete(hostdbIndex, true);
+      }
     }
 
     // read the subdirectories generated in the temp
@@ -847,11 +994,11 @@ public class Generator extends NutchTool implements Tool {
         FileInputFormat.addInputPath(job, subGenDir);
       }
       FileInputFormat.addInputPath(job, new Path(dbDir, CrawlDb.CURRENT_NAME));
-      job.setInputFormatClass(SequenceFileInputFormat.class);
+      job.setInputFormatClass(CrawlDbInputFormat.class);
       job.setMapperClass(CrawlDbUpdater.CrawlDbUpdateMapper.class);
       job.setReducerClass(CrawlDbUpdater.CrawlDbUpdateReducer.class);
       job.setJarByClass(CrawlDbUpdater.class);
-      job.setOutputFormatClass(MapFileOutputFormat.class);
+      CrawlDb.setOutputFormat(job);
       job.setOutputKeyClass(Text.class);
       job.setOutputValueClass(CrawlDatum.class);
       FileOutputFormat.setOutputPath(job, tempDir2);
@@ -888,6 +1035,86 @@ public class Generator extends NutchTool implements Tool {
     return generatedSegments.toArray(patharray);
   }
 
+  /**
+   * Provide the HostDB as MapFiles partitioned by host name hash, so that
+   * {@link SelectorReducer} can look up hosts by key instead of scanning the
+   * whole HostDB. A HostDB already stored as MapFiles is used as is, otherwise
+   * it is sorted into a temporary MapFile which the caller must delete.
+   */
+  private Path indexHostDb(Path current)
+      throws IOException, ClassNotFoundException, InterruptedException {
+    FileSystem fs = current.getFileSystem(getConf());
+    boolean isMapFile = true;
+    for (FileStatus stat : fs.listStatus(current)) {
+      String name = stat.getPath().getName();
+      if (name.startsWith("_") || name.startsWith(".")) {
+        continue;
+      }
+      if (!stat.isDirectory() || !fs.exists(
+          new Path(stat.getPath(), MapFile.INDEX_FILE_NAME))) {
+        isMapFile = false;
+        break;
+      }
+    }
+    if (isMapFile) {
+      return current;
+    }
+
+    Path index = new Path(getConf().get("mapreduce.cluster.temp.dir", ".")
+        + "/generate-hostdb-" + java.util.UUID.randomUUID().toString());
+    LOG.info("Generator: indexing HostDB {}", current);
+
+    Job job = NutchJob.getInstance(getConf());
+    job.setJobName("generate: index hostdb " + current);
+    FileInputFormat.addInputPath(job, current);
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setJarByClass(Generator.class);
+    job.setMapperClass(Mapper.class);
+    job.setReducerClass(Reducer.class);
+    job.setPartitionerClass(HashPartitioner.class);
+    FileOutputFormat.setOutputPath(job, index);
+    job.setOutputFormatClass(MapFileOutputFormat.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(HostDatum.class);
+    boolean success = job.waitForCompletion(true);
+    if (!success) {
+      String message = "Generator job did not succeed, job status:"
+          + job.getStatus().getState() + ", reason: "
+          + job.getStatus().getFailureInfo();
+      LOG.error(message);
+      fs.delete(index, true);
+      throw new RuntimeException(message);
+    }
+    return index;
+  }
+
+  /**
+   * Let {@link CrawlDbInputFormat} skip entries of a columnar CrawlDb which
+   * are never selected: entries not due for fetch and entries not matching
+   * <code>generate.restrict.status</code>.
+   */
+  private static void setCrawlDbRestrictions(Configuration conf, long curTime) {
+    FetchSchedule schedule = FetchScheduleFactory.getFetchSchedule(conf);
+    boolean defaultShouldFetch = false;
+    try {
+      defaultShouldFetch = schedule.getClass()
+          .getMethod("shouldFetch", Text.class, CrawlDatum.class, long.class)
+          .getDeclaringClass() == AbstractFetchSchedule.class;
+    } catch (NoSuchMethodException e) {
+      // not restricted
+    }
+    if (defaultShouldFetch) {
+      // AbstractFetchSchedule.shouldFetch() also accepts entries with a fetch
+      // time later than the max. fetch interval
+      long maxInterval = conf.getInt("db.fetch.interval.max", 0) * 1000L;
+      CrawlDbInputFormat.setSkipFetchTime(conf, curTime, curTime + maxInterval);
+    }
+    String restrictStatus = conf.get(GENERATOR_RESTRICT_STATUS);
+    if (restrictStatus != null) {
+      CrawlDbInputFormat.setStatus(conf, restrictStatus);
+    }
+  }
+
   private Path partitionSegment(Path segmentsDir, Path inputDir, int numLists)
       throws IOException, ClassNotFoundException, InterruptedException {
     // invert again, partition by host/domain/IP, sort by url hash
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+/**
+ * Segment number and URL count per host (or domain) used by
+ * {@link Generator.SelectorReducer}. Hosts are identified by a 64-bit hash of
+ * the host name, segment numbers and counts are stored in primitive arrays
+ * (open addressing with linear probing), so that neither the host names nor an
+ * object per host is kept on the heap. The probability of a hash collision is
+ * negligible even for hundreds of millions of hosts. Not thread-safe.
+ *
+ * A host is looked up by {@link #slot(CharSequence)}, the returned slot is
+ * valid until the next lookup.
+ */
+class HostSegmentCounts {
+
+  private static final float LOAD_FACTOR = 0.5f;
+
+  /* 0 marks a free slot, the key 0 uses the extra slot at the end */
+  private long[] keys;
+  private int[] segments;
+  private int[] counts;
+  private int capacity;
+  private int size = 0;
+  private int resizeThreshold;
+
+  HostSegmentCounts() {
+    this(1024);
+  }
+
+  HostSegmentCounts(int expectedSize) {
+    init(Integer.highestOneBit(
+        Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1);
+  }
+
+  private void init(int capacity) {
+    this.capacity = capacity;
+    keys = new long[capacity + 1];
+    segments = new int[capacity + 1];
+    counts = new int[capacity + 1];
+    resizeThreshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  /**
+   * Look up a host, add it with segment 1 and count 0 if it is not contained.
+   *
+   * @return slot of the host
+   */
+  int slot(CharSequence host) {
+    return slot(hash(host));
+  }
+
+  int slot(long key) {
+    if (key == 0) {
+      if (segments[capacity] == 0) {
+        segments[capacity] = 1;
+        size++;
+      }
+      return capacity;
+    }
+    int mask = capacity - 1;
+    int i = (int) mix(key) & mask;
+    while (keys[i] != 0) {
+      if (keys[i] == key) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    if (size + 1 > resizeThreshold) {
+      resize(capacity << 1);
+      return slot(key);
+    }
+    keys[i] = key;
+    segments[i] = 1;
+    size++;
+    return i;
+  }
+
+  int getSegment(int slot) {
+    return segments[slot];
+  }
+
+  void setSegment(int slot, int segment) {
+    segments[slot] = segment;
+  }
+
+  int getCount(int slot) {
+    return counts[slot];
+  }
+
+  void setCount(int slot, int count) {
+    counts[slot] = count;
+  }
+
+  /** @return number of hosts */
+  int size() {
+    return size;
+  }
+
+  private void resize(int newCapacity) {
+    long[] oldKeys = keys;
+    int[] oldSegments = segments;
+    int[] oldCounts = counts;
+    int oldCapacity = capacity;
+    init(newCapacity);
+    int mask = newCapacity - 1;
+    for (int j = 0; j < oldCapacity; j++) {
+      if (oldKeys[j] != 0) {
+        int i = (int) mix(oldKeys[j]) & mask;
+        while (keys[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        segments[i] = oldSegments[j];
+        counts[i] = oldCounts[j];
+      }
+    }
+    segments[newCapacity] = oldSegments[oldCapacity];
+    counts[newCapacity] = oldCounts[oldCapacity];
+  }
+
+  /** 64-bit FNV-1a hash of the characters of a host name */
+  static long hash(CharSequence host) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < host.length(); i++) {
+      char c = host.charAt(i);
+      h ^= c & 0xff;
+      h *= 0x100000001b3L;
+      h ^= c >>> 8;
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  /** Spread the bits, the table index is taken from the lower bits. */
+  private static long mix(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 32);
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.nutch.util.HadoopFSUtil;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Reducer of the incremental CrawlDb update: the job reads only the segments,
+ * the existing entries are read from the partition of the current CrawlDb
+ * with the same number as the reduce task. Both are sorted by URL and are
+ * merged: new data for a URL is passed to {@link CrawlDbReducer} together
+ * with the existing entry, existing entries without new data are copied
+ * unchanged. Requires that the job has as many reduce tasks as the CrawlDb
+ * has partitions and uses the same partitioner as the job which wrote the
+ * CrawlDb.
+ *
+ * If a reduce task does not receive any new data, nothing is written and the
+ * partition of the current CrawlDb is kept, see
+ * {@link CrawlDb#installIncremental(Configuration, Path, Path)}.
+ */
+public class IncrementalCrawlDbReducer extends CrawlDbReducer {
+
+  /** Path of the current CrawlDb to be merged */
+  public static final String CURRENT = "crawldb.incremental.current";
+
+  private MapFile.Reader reader;
+  private Text oldKey = new Text();
+  private CrawlDatum oldDatum = new CrawlDatum();
+  private boolean hasOld = false;
+  private boolean touched = false;
+
+  /**
+   * @return the partitions (MapFile directories) of a CrawlDb, in the order
+   *         of partition numbers
+   */
+  public static Path[] getPartitions(FileSystem fs, Path current)
+      throws IOException {
+    FileStatus[] stats = fs.listStatus(current,
+        HadoopFSUtil.getPassDirectoriesFilter(fs));
+    Path[] parts = HadoopFSUtil.getPaths(stats);
+    Arrays.sort(parts);
+    return parts;
+  }
+
+  @Override
+  public void reduce(Text key, Iterable<CrawlDatum> values, Context context)
+      throws IOException, InterruptedException {
+    if (!touched) {
+      touched = true;
+      openPartition(context);
+    }
+    // copy existing entries sorted before the key
+    int c = -1;
+    while (hasOld && (c = oldKey.compareTo(key)) < 0) {
+      copyOld(context);
+    }
+    if (hasOld && c == 0) {
+      CrawlDatum old = new CrawlDatum();
+      old.set(oldDatum);
+      values = Iterables.concat(Collections.singleton(old), values);
+      hasOld = reader.next(oldKey, oldDatum);
+    }
+    super.reduce(key, values, context);
+  }
+
+  @Override
+  public void cleanup(Context context) throws IOException,
+      InterruptedException {
+    if (!touched) {
+      context.getCounter("CrawlDB incremental", "Partitions kept")
+          .increment(1);
+      return;
+    }
+    context.getCounter("CrawlDB incremental", "Partitions rewritten")
+        .increment(1);
+    while (hasOld) {
+      copyOld(context);
+    }
+    if (reader != null) {
+      reader.close();
+    }
+  }
+
+  private void openPartition(
+      Reducer<Text, CrawlDatum, Text, CrawlDatum>.Context context)
+      throws IOException {
+    Configuration conf = context.getConfiguration();
+    Path current = new Path(conf.get(CURRENT));
+    FileSystem fs = current.getFileSystem(conf);
+    Path[] parts = getPartitions(fs, current);
+    int partition = context.getTaskAttemptID().getTaskID().getId();
+    if (parts.length != context.getNumReduceTasks()) {
+      throw new IOException("CrawlDb " + current + " has " + parts.length
+          + " partitions, expected " + context.getNumReduceTasks());
+    }
+    reader = new MapFile.Reader(parts[partition], conf);
+    hasOld = reader.next(oldKey, oldDatum);
+  }
+
+  private void copyOld(
+      Reducer<Text, CrawlDatum, Text, CrawlDatum>.Context context)
+      throws IOException, InterruptedException {
+    context.write(oldKey, oldDatum);
+    context.getCounter("CrawlDB status",
+        CrawlDatum.getStatusName(oldDatum.getStatus())).increment(1);
+    context.getCounter("CrawlDB incremental", "Entries copied").increment(1);
+    hasOld = reader.next(oldKey, oldDatum);
+  }
+
+}
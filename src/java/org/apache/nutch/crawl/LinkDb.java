@@ -46,6 +46,7 @@ import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.net.URLCache;
 import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
 import org.apache.nutch.parse.Outlink;
@@ -99,7 +100,9 @@ public class LinkDb extends NutchTool implements Tool {
       }
     } 
 
-    public void cleanup(){
+    @Override
+    public void cleanup(Context context) {
+      URLCache.reportCounters(context);
     }
 
     public void map(Text key, ParseData parseData,
@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.nutch.net.URLCache;
 import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
 
@@ -73,6 +74,11 @@ public class LinkDbFilter extends Mapper<Text, Inlinks, Text, Inlinks> {
   public void close() {
   }
 
+  @Override
+  public void cleanup(Context context) {
+    URLCache.reportCounters(context);
+  }
+
   public void map(Text key, Inlinks value, Context context)
       throws IOException, InterruptedException {
     String url = key.toString();
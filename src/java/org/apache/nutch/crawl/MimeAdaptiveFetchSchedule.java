@@ -109,9 +109,9 @@ public class MimeAdaptiveFetchSchedule extends AdaptiveFetchSchedule {
     DEC_RATE = defaultDecRate;
 
     // Check if the Content-Type field is available in the CrawlDatum
-    if (datum.getMetaData().containsKey(HttpHeaders.WRITABLE_CONTENT_TYPE)) {
+    if (datum.getMetaDataReadOnly().containsKey(HttpHeaders.WRITABLE_CONTENT_TYPE)) {
       // Get the MIME-type of the current URL
-      String currentMime = MimeUtil.cleanMimeType(datum.getMetaData()
+      String currentMime = MimeUtil.cleanMimeType(datum.getMetaDataReadOnly()
           .get(HttpHeaders.WRITABLE_CONTENT_TYPE).toString());
 
       // Check if this MIME-type exists in our map
@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * The top K entries by sort value of one partition of
+ * {@link Generator.SelectorMapper}. Only entries which may be selected by
+ * {@link Generator.SelectorReducer} are kept: the K entries with the highest
+ * sort value, where K is the number of URLs the reducer selects for the
+ * partition, and optionally not more than a max. number of entries per host or
+ * domain. Entries are copied when added and released when pushed out by
+ * entries with a higher sort value. Not thread-safe.
+ */
+class SelectorTopK {
+
+  /** A copied entry */
+  static class Candidate {
+    final float sortValue;
+    final Text url;
+    final CrawlDatum datum;
+    final String host;
+    /** makes candidates with equal sort value distinct */
+    final long seq;
+
+    Candidate(float sortValue, Text url, CrawlDatum datum, String host,
+        long seq) {
+      this.sortValue = sortValue;
+      this.url = url;
+      this.datum = datum;
+      this.host = host;
+      this.seq = seq;
+    }
+  }
+
+  /**
+   * Lowest sort value first, of entries with equal sort value the last added
+   * first: on ties the entries added first are kept
+   */
+  private static final Comparator<Candidate> COMPARATOR = (a, b) -> {
+    int c = Float.compare(a.sortValue, b.sortValue);
+    return c != 0 ? c : Long.compare(b.seq, a.seq);
+  };
+
+  private final int maxSize;
+  private final int maxPerHost;
+  private final TreeSet<Candidate> candidates = new TreeSet<>(COMPARATOR);
+  private final Map<String, TreeSet<Candidate>> hosts = new HashMap<>();
+  private long seq = 0;
+
+  /**
+   * @param maxSize
+   *          max. number of entries kept
+   * @param maxPerHost
+   *          max. number of entries kept per host, if 0 or negative the
+   *          number of entries per host is not limited and the host passed to
+   *          {@link #add(float, Text, CrawlDatum, String)} is ignored
+   */
+  SelectorTopK(int maxSize, int maxPerHost) {
+    this.maxSize = maxSize;
+    this.maxPerHost = maxPerHost;
+  }
+
+  /**
+   * Add a copy of an entry if it is among the top K entries.
+   *
+   * @return true if the entry was added
+   */
+  boolean add(float sortValue, Text url, CrawlDatum datum, String host) {
+    if (maxSize <= 0) {
+      return false;
+    }
+    boolean full = candidates.size() >= maxSize;
+    if (full && sortValue <= candidates.first().sortValue) {
+      return false;
+    }
+    TreeSet<Candidate> hostCandidates = null;
+    if (maxPerHost > 0) {
+      hostCandidates = hosts.get(host);
+      if (hostCandidates != null && hostCandidates.size() >= maxPerHost) {
+        Candidate lowest = hostCandidates.first();
+        if (sortValue <= lowest.sortValue) {
+          return false;
+        }
+        // replace the host's entry with the lowest sort value
+        remove(lowest);
+        full = false;
+      }
+    }
+    if (full) {
+      remove(candidates.first());
+    }
+    CrawlDatum datumCopy = new CrawlDatum();
+    datumCopy.set(datum);
+    Candidate candidate = new Candidate(sortValue, new Text(url), datumCopy,
+        host, seq++);
+    candidates.add(candidate);
+    if (maxPerHost > 0) {
+      // the host's set may have been removed if it became empty
+      hostCandidates = hosts.get(host);
+      if (hostCandidates == null) {
+        hostCandidates = new TreeSet<>(COMPARATOR);
+        hosts.put(host, hostCandidates);
+      }
+      hostCandidates.add(candidate);
+    }
+    return true;
+  }
+
+  private void remove(Candidate candidate) {
+    candidates.remove(candidate);
+    if (maxPerHost > 0) {
+      TreeSet<Candidate> hostCandidates = hosts.get(candidate.host);
+      hostCandidates.remove(candidate);
+      if (hostCandidates.isEmpty()) {
+        hosts.remove(candidate.host);
+      }
+    }
+  }
+
+  /** @return the kept entries, highest sort value first */
+  Iterable<Candidate> candidates() {
+    return candidates.descendingSet();
+  }
+
+  int size() {
+    return candidates.size();
+  }
+
+}
@@ -17,17 +17,14 @@
 package org.apache.nutch.fetcher;
 
 import java.lang.invoke.MethodHandles;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.ArrayDeque;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.HashSet;
-import java.util.Set;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.nutch.util.IntHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,8 +38,8 @@ public class FetchItemQueue {
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
-  List<FetchItem> queue = Collections
-      .synchronizedList(new LinkedList<FetchItem>());
+  // array-backed, guarded by the lock on this queue
+  ArrayDeque<FetchItem> queue = new ArrayDeque<>();
   AtomicInteger inProgress = new AtomicInteger();
   AtomicLong nextFetchTime = new AtomicLong();
   AtomicInteger exceptionCounter = new AtomicInteger();
@@ -56,7 +53,11 @@ public class FetchItemQueue {
   // keep track of duplicates if fetcher.follow.outlinks.depth > 0. Some urls may 
   // not get followed due to hash collisions. Hashing is used to reduce memory
   // usage.
-  Set<Integer> alreadyFetched = new HashSet<>();
+  IntHashSet alreadyFetched = new IntHashSet();
+  // state in FetchItemQueues, guarded by the lock on this queue: whether the
+  // queue is on the schedule and whether it has been removed as empty
+  boolean scheduled = false;
+  boolean reaped = false;
   
   public FetchItemQueue(Configuration conf, int maxThreads, long crawlDelay,
       long minCrawlDelay) {
@@ -70,11 +71,12 @@ public class FetchItemQueue {
 
   public synchronized int emptyQueue() {
     int presize = queue.size();
-    queue.clear();
+    // release the backing array
+    queue = new ArrayDeque<>();
     return presize;
   }
 
-  public int getQueueSize() {
+  public synchronized int getQueueSize() {
     return queue.size();
   }
 
@@ -93,16 +95,25 @@ public class FetchItemQueue {
     }
   }
 
-  public void addFetchItem(FetchItem it) {
+  /**
+   * Record the hash of a URL followed as outlink.
+   * 
+   * @return true if the hash was not already recorded
+   */
+  public synchronized boolean addAlreadyFetched(int urlHashCode) {
+    return alreadyFetched.add(urlHashCode);
+  }
+
+  public synchronized void addFetchItem(FetchItem it) {
     if (it == null)
       return;
 
     // Check for variable crawl delay
-    if (it.datum.getMetaData().containsKey(variableFetchDelayKey)) {
+    if (it.datum.getMetaDataReadOnly().containsKey(variableFetchDelayKey)) {
       if (!variableFetchDelaySet) {
         variableFetchDelaySet = true;
-        crawlDelay = ((LongWritable)(it.datum.getMetaData().get(variableFetchDelayKey))).get();
-        minCrawlDelay = ((LongWritable)(it.datum.getMetaData().get(variableFetchDelayKey))).get();
+        crawlDelay = ((LongWritable)(it.datum.getMetaDataReadOnly().get(variableFetchDelayKey))).get();
+        minCrawlDelay = ((LongWritable)(it.datum.getMetaDataReadOnly().get(variableFetchDelayKey))).get();
         setEndTime(System.currentTimeMillis() - crawlDelay);
       }
       
@@ -118,23 +129,15 @@ public class FetchItemQueue {
     inProgress.incrementAndGet();
   }
 
-  public FetchItem getFetchItem() {
+  public synchronized FetchItem getFetchItem() {
     if (inProgress.get() >= maxThreads)
       return null;
     long now = System.currentTimeMillis();
     if (nextFetchTime.get() > now)
       return null;
-    FetchItem it = null;
-    if (queue.size() == 0)
-      return null;
-    try {
-      it = queue.remove(0);
+    FetchItem it = queue.pollFirst();
+    if (it != null)
       inProgress.incrementAndGet();
-    } catch (Exception e) {
-      LOG.error(
-          "Cannot remove FetchItem from queue or cannot add it to inProgress queue",
-          e);
-    }
     return it;
   }
   
@@ -153,9 +156,9 @@ public class FetchItemQueue {
     LOG.info("  minCrawlDelay = " + minCrawlDelay);
     LOG.info("  nextFetchTime = " + nextFetchTime.get());
     LOG.info("  now           = " + System.currentTimeMillis());
-    for (int i = 0; i < queue.size(); i++) {
-      FetchItem it = queue.get(i);
-      LOG.info("  " + i + ". " + it.url);
+    int i = 0;
+    for (FetchItem it : queue) {
+      LOG.info("  " + i++ + ". " + it.url);
     }
   }
 
@@ -17,10 +17,14 @@
 package org.apache.nutch.fetcher;
 
 import java.lang.invoke.MethodHandles;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
@@ -31,6 +35,14 @@ import org.slf4j.LoggerFactory;
 /**
  * Convenience class - a collection of queues that keeps track of the total
  * number of items, and provides items eligible for fetching from any queue.
+ * 
+ * <p>
+ * Queues which may provide an item are kept in a schedule ordered by the time
+ * they become eligible for fetching (see {@link FetchItemQueue#nextFetchTime}
+ * ). Taking an item only requires to remove the head of the schedule and to
+ * lock the queue it points to, there is no global lock. Threads waiting for
+ * work are woken up when the next queue becomes eligible, see
+ * {@link #awaitFetchItem(long)}.
  */
 public class FetchItemQueues {
 
@@ -38,7 +50,7 @@ public class FetchItemQueues {
       .getLogger(MethodHandles.lookup().lookupClass());
 
   public static final String DEFAULT_ID = "default";
-  Map<String, FetchItemQueue> queues = new HashMap<>();
+  Map<String, FetchItemQueue> queues = new ConcurrentHashMap<>();
   AtomicInteger totalSize = new AtomicInteger(0);
   int maxThreads;
   long crawlDelay;
@@ -47,12 +59,54 @@ public class FetchItemQueues {
   int maxExceptionsPerQueue = -1;
   Configuration conf;
 
+  /** Queues eligible for fetching, ordered by next allowed fetch time. */
+  ConcurrentSkipListMap<ScheduledQueue, FetchItemQueue> schedule = new ConcurrentSkipListMap<>();
+  AtomicLong scheduleSeq = new AtomicLong(0);
+
+  /* only used to park and wake up threads waiting for an eligible queue */
+  private final ReentrantLock waitLock = new ReentrantLock();
+  private final Condition eligible = waitLock.newCondition();
+  private final AtomicInteger waiting = new AtomicInteger(0);
+  private Thread leader = null;
+
+  /* used by the QueueFeeder to wait until there is space in the queues */
+  private final ReentrantLock capacityLock = new ReentrantLock();
+  private final Condition capacityAvailable = capacityLock.newCondition();
+  private final AtomicInteger capacityWaiting = new AtomicInteger(0);
+
   public static final String QUEUE_MODE_HOST = "byHost";
   public static final String QUEUE_MODE_DOMAIN = "byDomain";
   public static final String QUEUE_MODE_IP = "byIP";
 
   String queueMode;
 
+  /**
+   * Entry of the schedule: a queue together with the time it becomes eligible
+   * for fetching. Entries are immutable, a queue is rescheduled by adding a
+   * new entry.
+   */
+  static class ScheduledQueue implements Comparable<ScheduledQueue> {
+    final String id;
+    final FetchItemQueue queue;
+    final long time;
+    final long seq;
+
+    ScheduledQueue(String id, FetchItemQueue queue, long time, long seq) {
+      this.id = id;
+      this.queue = queue;
+      this.time = time;
+      this.seq = seq;
+    }
+
+    @Override
+    public int compareTo(ScheduledQueue that) {
+      if (time != that.time) {
+        return time < that.time ? -1 : 1;
+      }
+      return Long.compare(seq, that.seq);
+    }
+  }
+
   public FetchItemQueues(Configuration conf) {
     this.conf = conf;
     this.maxThreads = conf.getInt("fetcher.threads.per.queue", 1);
@@ -89,10 +143,20 @@ public class FetchItemQueues {
       addFetchItem(it);
   }
 
-  public synchronized void addFetchItem(FetchItem it) {
-    FetchItemQueue fiq = getFetchItemQueue(it.queueID);
-    fiq.addFetchItem(it);
-    totalSize.incrementAndGet();
+  public void addFetchItem(FetchItem it) {
+    while (true) {
+      FetchItemQueue fiq = getFetchItemQueue(it.queueID);
+      synchronized (fiq) {
+        if (fiq.reaped) {
+          // queue has been removed concurrently, get a new one
+          continue;
+        }
+        fiq.addFetchItem(it);
+        totalSize.incrementAndGet();
+        schedule(it.queueID, fiq);
+        return;
+      }
+    }
   }
 
   public void finishFetchItem(FetchItem it) {
@@ -105,40 +169,193 @@ public class FetchItemQueues {
       LOG.warn("Attempting to finish item from unknown queue: " + it);
       return;
     }
-    fiq.finishFetchItem(it, asap);
+    synchronized (fiq) {
+      fiq.finishFetchItem(it, asap);
+      schedule(it.queueID, fiq);
+    }
+    signalCapacity();
   }
 
-  public synchronized FetchItemQueue getFetchItemQueue(String id) {
+  public FetchItemQueue getFetchItemQueue(String id) {
     FetchItemQueue fiq = queues.get(id);
     if (fiq == null) {
       // initialize queue
-      fiq = new FetchItemQueue(conf, maxThreads, crawlDelay, minCrawlDelay);
-      queues.put(id, fiq);
+      fiq = queues.computeIfAbsent(id, k -> new FetchItemQueue(conf,
+          maxThreads, crawlDelay, minCrawlDelay));
     }
     return fiq;
   }
 
-  public synchronized FetchItem getFetchItem() {
-    Iterator<Map.Entry<String, FetchItemQueue>> it = queues.entrySet()
-        .iterator();
-    while (it.hasNext()) {
-      FetchItemQueue fiq = it.next().getValue();
-      // reap empty queues
-      if (fiq.getQueueSize() == 0 && fiq.getInProgressSize() == 0) {
-        it.remove();
+  /**
+   * Get an item eligible for fetching, or null if no queue is eligible at
+   * present. Does not block, see {@link #awaitFetchItem(long)}.
+   */
+  public FetchItem getFetchItem() {
+    while (true) {
+      Map.Entry<ScheduledQueue, FetchItemQueue> head = schedule.firstEntry();
+      if (head == null
+          || head.getKey().time > System.currentTimeMillis()) {
+        return null;
+      }
+      if (schedule.remove(head.getKey()) == null) {
+        // taken by another thread
         continue;
       }
-      FetchItem fit = fiq.getFetchItem();
-      if (fit != null) {
-        totalSize.decrementAndGet();
-        return fit;
+      ScheduledQueue sq = head.getKey();
+      FetchItemQueue fiq = sq.queue;
+      synchronized (fiq) {
+        fiq.scheduled = false;
+        if (fiq.reaped) {
+          continue;
+        }
+        if (fiq.getQueueSize() == 0 && fiq.getInProgressSize() == 0) {
+          // reap empty queues
+          fiq.reaped = true;
+          queues.remove(sq.id, fiq);
+          continue;
+        }
+        FetchItem fit = fiq.getFetchItem();
+        if (fit != null) {
+          totalSize.decrementAndGet();
+        }
+        schedule(sq.id, fiq);
+        if (fit != null) {
+          signalCapacity();
+          return fit;
+        }
+      }
+    }
+  }
+
+  /**
+   * Wait until a queue becomes eligible for fetching, but no longer than
+   * <code>maxWait</code> milliseconds. Only one waiting thread sleeps until
+   * the head of the schedule is due, the remaining ones are woken up as
+   * queues are (re)scheduled.
+   * 
+   * @param maxWait
+   *          max. time to wait in milliseconds
+   * @throws InterruptedException
+   */
+  public void awaitFetchItem(long maxWait) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + maxWait;
+    waitLock.lock();
+    waiting.incrementAndGet();
+    try {
+      while (true) {
+        long now = System.currentTimeMillis();
+        Map.Entry<ScheduledQueue, FetchItemQueue> head = schedule
+            .firstEntry();
+        if (head != null && head.getKey().time <= now) {
+          return;
+        }
+        long wait = deadline - now;
+        if (wait <= 0) {
+          return;
+        }
+        if (head == null || leader != null) {
+          eligible.await(wait, TimeUnit.MILLISECONDS);
+        } else {
+          Thread thisThread = Thread.currentThread();
+          leader = thisThread;
+          try {
+            eligible.await(Math.min(wait, head.getKey().time - now),
+                TimeUnit.MILLISECONDS);
+          } finally {
+            if (leader == thisThread) {
+              leader = null;
+            }
+          }
+        }
+      }
+    } finally {
+      waiting.decrementAndGet();
+      if (leader == null && !schedule.isEmpty()) {
+        eligible.signal();
+      }
+      waitLock.unlock();
+    }
+  }
+
+  /**
+   * Wait until the total number of queued items drops below
+   * <code>maxSize</code>, but no longer than <code>maxWait</code>
+   * milliseconds.
+   * 
+   * @return true if there is space for more items
+   * @throws InterruptedException
+   */
+  public boolean awaitCapacity(int maxSize, long maxWait)
+      throws InterruptedException {
+    long nanos = TimeUnit.MILLISECONDS.toNanos(maxWait);
+    capacityLock.lock();
+    capacityWaiting.incrementAndGet();
+    try {
+      while (totalSize.get() >= maxSize) {
+        if (nanos <= 0) {
+          return false;
+        }
+        nanos = capacityAvailable.awaitNanos(nanos);
+      }
+      return true;
+    } finally {
+      capacityWaiting.decrementAndGet();
+      capacityLock.unlock();
+    }
+  }
+
+  /**
+   * Wake up a thread waiting in {@link #awaitCapacity(int, long)}. Must be
+   * called after the total size has been decreased.
+   */
+  private void signalCapacity() {
+    if (capacityWaiting.get() > 0) {
+      capacityLock.lock();
+      try {
+        capacityAvailable.signalAll();
+      } finally {
+        capacityLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Put a queue on the schedule if it may provide an item, or if it is empty
+   * and should be reaped after the crawl delay has elapsed. Must be called
+   * while holding the lock on the queue.
+   */
+  private void schedule(String id, FetchItemQueue fiq) {
+    if (fiq.scheduled || fiq.reaped) {
+      return;
+    }
+    int queueSize = fiq.getQueueSize();
+    int inProgress = fiq.getInProgressSize();
+    if (queueSize > 0 ? inProgress >= fiq.maxThreads : inProgress > 0) {
+      // rescheduled when an item in progress is finished
+      return;
+    }
+    fiq.scheduled = true;
+    ScheduledQueue sq = new ScheduledQueue(id, fiq, fiq.nextFetchTime.get(),
+        scheduleSeq.incrementAndGet());
+    schedule.put(sq, fiq);
+    if (queueSize > 0 && waiting.get() > 0) {
+      waitLock.lock();
+      try {
+        Map.Entry<ScheduledQueue, FetchItemQueue> head = schedule
+            .firstEntry();
+        if (head != null && head.getKey() == sq) {
+          // new head of the schedule, the leader needs to recompute its delay
+          leader = null;
+        }
+        eligible.signal();
+      } finally {
+        waitLock.unlock();
       }
     }
-    return null;
   }
 
   // called only once the feeder has stopped
-  public synchronized int checkTimelimit() {
+  public int checkTimelimit() {
     int count = 0;
 
     if (System.currentTimeMillis() >= timelimit && timelimit != -1) {
@@ -150,25 +367,25 @@ public class FetchItemQueues {
       // in which case we simply force it to 0 to avoid blocking
       if (totalSize.get() != 0 && queues.size() == 0)
         totalSize.set(0);
+      signalCapacity();
     }
     return count;
   }
 
   // empties the queues (used by timebomb and throughput threshold)
-  public synchronized int emptyQueues() {
+  public int emptyQueues() {
     int count = 0;
 
-    for (String id : queues.keySet()) {
-      FetchItemQueue fiq = queues.get(id);
+    for (Map.Entry<String, FetchItemQueue> entry : queues.entrySet()) {
+      FetchItemQueue fiq = entry.getValue();
       if (fiq.getQueueSize() == 0)
         continue;
-      LOG.info("* queue: " + id + " >> dropping! ");
+      LOG.info("* queue: " + entry.getKey() + " >> dropping! ");
       int deleted = fiq.emptyQueue();
-      for (int i = 0; i < deleted; i++) {
-        totalSize.decrementAndGet();
-      }
+      totalSize.addAndGet(-deleted);
       count += deleted;
     }
+    signalCapacity();
 
     return count;
   }
@@ -180,7 +397,7 @@ public class FetchItemQueues {
    * @param queueid
    * @return number of purged items
    */
-  public synchronized int checkExceptionThreshold(String queueid) {
+  public int checkExceptionThreshold(String queueid) {
     FetchItemQueue fiq = queues.get(queueid);
     if (fiq == null) {
       return 0;
@@ -194,20 +411,19 @@ public class FetchItemQueues {
       int deleted = fiq.emptyQueue();
       LOG.info("* queue: " + queueid + " >> removed " + deleted
           + " URLs from queue because " + excCount + " exceptions occurred");
-      for (int i = 0; i < deleted; i++) {
-        totalSize.decrementAndGet();
-      }
+      totalSize.addAndGet(-deleted);
+      signalCapacity();
       return deleted;
     }
     return 0;
   }
 
-  public synchronized void dump() {
-    for (String id : queues.keySet()) {
-      FetchItemQueue fiq = queues.get(id);
+  public void dump() {
+    for (Map.Entry<String, FetchItemQueue> entry : queues.entrySet()) {
+      FetchItemQueue fiq = entry.getValue();
       if (fiq.getQueueSize() == 0)
         continue;
-      LOG.info("* queue: " + id);
+      LOG.info("* queue: " + entry.getKey());
       fiq.dump();
     }
   }
@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -51,6 +52,9 @@ import org.apache.hadoop.util.ToolRunner;
 import org.apache.nutch.crawl.CrawlDatum;
 import org.apache.nutch.crawl.NutchWritable;
 import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.net.URLCache;
+import org.apache.nutch.protocol.RobotRulesCache;
+import org.apache.nutch.protocol.RobotRulesParser;
 import org.apache.nutch.util.NutchConfiguration;
 import org.apache.nutch.util.NutchJob;
 import org.apache.nutch.util.NutchTool;
@@ -88,9 +92,10 @@ import org.apache.nutch.util.TimingUtil;
  * 
  * <p>
  * If there are still unfetched items in the queues, but none of the items are
- * ready, FetcherThread-s will spin-wait until either some items become
- * available, or a timeout is reached (at which point the Fetcher will abort,
- * assuming the task is hung).
+ * ready, FetcherThread-s will wait until either some items become available
+ * (queues are scheduled by the time they become eligible for fetching), or a
+ * timeout is reached (at which point the Fetcher will abort, assuming the task
+ * is hung).
  * 
  * @author Andrzej Bialecki
  */
@@ -139,6 +144,27 @@ public class Fetcher extends NutchTool implements Tool {
     return conf.getBoolean("fetcher.store.content", true);
   }
 
+  /**
+   * Get a factory for virtual threads (Java 21 and upwards) named
+   * <code>FetcherThread-&lt;n&gt;</code>. Virtual threads are obtained via
+   * reflection because Nutch is still compiled for older Java versions.
+   * 
+   * @return thread factory, or null if virtual threads are not supported by
+   *         the running JVM
+   */
+  static ThreadFactory getVirtualThreadFactory() {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class)
+          .invoke(builder, "FetcherThread-", 0L);
+      return (ThreadFactory) builderClass.getMethod("factory")
+          .invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
   public static class FetcherRun extends
      Mapper<Text, CrawlDatum, Text, NutchWritable> {
 
@@ -152,6 +178,7 @@ public class Fetcher extends NutchTool implements Tool {
     private AtomicInteger errors = new AtomicInteger(0); // total pages errored
     private boolean storingContent;
     private boolean parsing;
+    private FetcherParseQueue parseQueue; // parser threads, null if none
 
     private AtomicInteger getActiveThreads() {
       return activeThreads;
@@ -167,6 +194,9 @@ public class Fetcher extends NutchTool implements Tool {
 
       status.append(activeThreads).append(" threads (").append(spinWaiting.get())
       .append(" waiting), ");
+      if (parseQueue != null) {
+        status.append(parseQueue.size()).append(" pages queued for parsing, ");
+      }
       status.append(fetchQueues.getQueueCount()).append(" queues, ");
       status.append(fetchQueues.getTotalSize()).append(" URLs queued, ");
       status.append(pages).append(" pages, ").append(errors).append(" errors, ");
@@ -200,6 +230,17 @@ public class Fetcher extends NutchTool implements Tool {
         LOG.info("Fetcher: threads: {}", threadCount);
       }
 
+      ThreadFactory threadFactory = null;
+      if (conf.getBoolean("fetcher.threads.virtual", false)) {
+        threadFactory = getVirtualThreadFactory();
+        if (threadFactory == null) {
+          LOG.warn("Fetcher: virtual threads not supported by JVM {}, using platform threads",
+              System.getProperty("java.version"));
+        } else {
+          LOG.info("Fetcher: using virtual threads");
+        }
+      }
+
       int timeoutDivisor = conf.getInt("fetcher.threads.timeout.divisor", 2);
       if (LOG.isInfoEnabled()) {
         LOG.info("Fetcher: time-out divisor: {}", timeoutDivisor);
@@ -218,17 +259,23 @@ public class Fetcher extends NutchTool implements Tool {
         feeder.setTimeLimit(timelimit);
       feeder.start();
 
+      // parse in separate threads, see FetcherParseQueue
+      if (parsing && FetcherParseQueue.getNumThreads(conf) > 0) {
+        parseQueue = new FetcherParseQueue(conf, innerContext);
+      }
+
       for (int i = 0; i < threadCount; i++) { // spawn threads
         FetcherThread t = new FetcherThread(conf, getActiveThreads(), fetchQueues, 
             feeder, spinWaiting, lastRequestStart, innerContext, errors, segmentName,
-            parsing, storingContent, pages, bytes);
+            parsing, storingContent, pages, bytes, parseQueue);
         fetcherThreads.add(t);
-        t.start();
+        t.start(threadFactory);
       }
 
       // select a timeout that avoids a task timeout
       long timeout = conf.getInt("mapreduce.task.timeout", 10 * 60 * 1000)
           / timeoutDivisor;
+      boolean hung = false;
 
       // Used for threshold check, holds pages and bytes processed in the last
       // second
@@ -361,9 +408,9 @@ public class Fetcher extends NutchTool implements Tool {
                 for (int i = 0; i < additionalThreads; i++) {
                   FetcherThread thread = new FetcherThread(conf, getActiveThreads(), fetchQueues, 
                       feeder, spinWaiting, lastRequestStart, innerContext, errors, segmentName, parsing,
-                      storingContent, pages, bytes);
+                      storingContent, pages, bytes, parseQueue);
                   fetcherThreads.add(thread);
-                  thread.start();
+                  thread.start(threadFactory);
                 }
               }
             } else if (bpsSinceLastCheck > targetBandwidth
@@ -395,15 +442,22 @@ public class Fetcher extends NutchTool implements Tool {
         }
 
         // some requests seem to hang, despite all intentions
-        if ((System.currentTimeMillis() - lastRequestStart.get()) > timeout) {
+        long lastProgress = lastRequestStart.get();
+        if (parseQueue != null) {
+          // fetcher threads wait while the parse queue is full or busy
+          lastProgress = Math.max(lastProgress, parseQueue.getLastProgress());
+        }
+        if ((System.currentTimeMillis() - lastProgress) > timeout) {
+          hung = true;
           if (LOG.isWarnEnabled()) {
             LOG.warn("Aborting with {} hung threads.", activeThreads);
             for (int i = 0; i < fetcherThreads.size(); i++) {
               FetcherThread thread = fetcherThreads.get(i);
-              if (thread.isAlive()) {
+              if (thread.getExecutingThread().isAlive()) {
                 LOG.warn("Thread #{} hung while processing {}", i, thread.getReprUrl());
                 if (LOG.isDebugEnabled()) {
-                  StackTraceElement[] stack = thread.getStackTrace();
+                  StackTraceElement[] stack = thread.getExecutingThread()
+                      .getStackTrace();
                   StringBuilder sb = new StringBuilder();
                   sb.append("Stack of thread #").append(i).append(":\n");
                   for (StackTraceElement s : stack) {
@@ -413,13 +467,34 @@ public class Fetcher extends NutchTool implements Tool {
                 }
               }
             }
+            if (parseQueue != null) {
+              parseQueue.logParsing();
+            }
           }
-          return;
+          break;
         }
 
       } while (activeThreads.get() > 0);
       LOG.info("-activeThreads={}", activeThreads);
 
+      if (parseQueue != null) {
+        try {
+          // do not wait for hung parser threads
+          int notParsed = parseQueue.finish(hung ? 0 : timeout);
+          if (notParsed > 0) {
+            innerContext.getCounter("FetcherStatus", "hitByParseTimeout")
+                .increment(notParsed);
+          }
+        } catch (InterruptedException e) {
+          LOG.warn("Interrupted while waiting for parser threads");
+        }
+      }
+      URLCache.reportCounters(innerContext);
+
+      // make robots.txt rules fetched by this task available to later jobs
+      RobotRulesParser.storeCache(conf,
+          innerContext.getTaskAttemptID().toString());
+
     }
   }
 
@@ -507,6 +582,9 @@ public class Fetcher extends NutchTool implements Tool {
       throw e;
     }
 
+    // every task has added a file of robots.txt rules, merge them
+    RobotRulesCache.compact(getConf());
+
     long end = System.currentTimeMillis();
     LOG.info("Fetcher: finished at {}, elapsed: {}", sdf.format(end),
         TimingUtil.elapsedTime(start, end));
@@ -0,0 +1,250 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.fetcher;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.nutch.crawl.NutchWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses fetched pages in a fixed number of parser threads, decoupled from the
+ * fetcher threads. Used if the fetcher is parsing (<code>fetcher.parse</code>)
+ * and <code>fetcher.parse.threads</code> is not 0, so that the number of
+ * fetcher threads (network-bound) and parser threads (CPU-bound) can be
+ * configured independently.
+ *
+ * Fetcher threads hand over pages through a bounded queue of size
+ * <code>fetcher.parse.queue.size</code>. If the queue is full, fetcher threads
+ * wait until a parser thread takes the next page. A parser thread writes all
+ * output of a page (CrawlDatum, Content, parse text and data) in the same order
+ * as a fetcher thread parsing inline would do. Every parser thread uses its
+ * own {@link FetcherThread.Plugins}.
+ *
+ * Once {@link #finish(long)} has returned, pages still queued are dropped and
+ * output of pages still being parsed is not written anymore.
+ */
+public class FetcherParseQueue {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Parse and write the output of a fetched page. */
+  public interface Task {
+    void run(FetcherThread.Plugins plugins) throws Exception;
+  }
+
+  private static class Item {
+    final String url;
+    final Task task;
+
+    Item(String url, Task task) {
+      this.url = url;
+      this.task = task;
+    }
+  }
+
+  private final BlockingQueue<Item> queue;
+  private final List<Thread> threads = new ArrayList<>();
+  /** URL of the page currently parsed, by parser thread */
+  private final Map<Thread, String> parsing = new ConcurrentHashMap<>();
+  /** tasks queued or running */
+  private final AtomicInteger pending = new AtomicInteger();
+  /** time when the last task was started or has finished */
+  private final AtomicLong lastProgress = new AtomicLong(
+      System.currentTimeMillis());
+  private volatile boolean finished = false;
+  /** no output is written anymore, guarded by this */
+  private boolean closed = false;
+
+  public FetcherParseQueue(final Configuration conf,
+      final TaskAttemptContext context) {
+    int numThreads = getNumThreads(conf);
+    int size = conf.getInt("fetcher.parse.queue.size", 0);
+    if (size <= 0) {
+      size = 4 * numThreads;
+    }
+    LOG.info("Fetcher: parser threads: {}, parse queue size: {}", numThreads,
+        size);
+    queue = new ArrayBlockingQueue<>(size);
+    for (int i = 0; i < numThreads; i++) {
+      Thread t = new Thread(
+          () -> runTasks(new FetcherThread.Plugins(conf, context, true)),
+          "FetcherParseThread-" + i);
+      t.setDaemon(true);
+      threads.add(t);
+      t.start();
+    }
+  }
+
+  /**
+   * @return number of parser threads configured by
+   *         <code>fetcher.parse.threads</code>: 0 if pages are parsed by the
+   *         fetcher threads, if negative the number of available processors
+   */
+  public static int getNumThreads(Configuration conf) {
+    int numThreads = conf.getInt("fetcher.parse.threads", 0);
+    if (numThreads < 0) {
+      numThreads = Runtime.getRuntime().availableProcessors();
+    }
+    return numThreads;
+  }
+
+  /**
+   * Add a task to the queue, wait until space is available if the queue is
+   * full.
+   *
+   * @param url
+   *          URL of the page to be parsed (used for logging)
+   */
+  public void put(String url, Task task) throws InterruptedException {
+    if (finished) {
+      LOG.warn("Parser threads stopped, not parsing {}", url);
+      return;
+    }
+    pending.incrementAndGet();
+    try {
+      queue.put(new Item(url, task));
+    } catch (InterruptedException e) {
+      pending.decrementAndGet();
+      throw e;
+    }
+  }
+
+  /** @return number of pages waiting to be parsed */
+  public int size() {
+    return queue.size();
+  }
+
+  /** @return true if pages are queued or currently parsed */
+  public boolean isBusy() {
+    return pending.get() > 0;
+  }
+
+  /**
+   * @return time in milliseconds when a parser thread has last started or
+   *         finished to parse a page
+   */
+  public long getLastProgress() {
+    return lastProgress.get();
+  }
+
+  /** Log the URLs of the pages currently parsed. */
+  public void logParsing() {
+    for (Map.Entry<Thread, String> e : parsing.entrySet()) {
+      LOG.warn("{} is parsing {}", e.getKey().getName(),
+          e.getValue());
+    }
+  }
+
+  /**
+   * Write output of a task unless the parser threads have been stopped by
+   * {@link #finish(long)}.
+   */
+  synchronized void write(TaskInputOutputContext<?, ?, Text, NutchWritable> context,
+      Text key, NutchWritable value) throws IOException, InterruptedException {
+    if (closed) {
+      LOG.warn("Parser threads stopped, dropping output for {}", key);
+      return;
+    }
+    context.write(key, value);
+  }
+
+  private void runTasks(FetcherThread.Plugins plugins) {
+    Thread current = Thread.currentThread();
+    while (true) {
+      Item item;
+      try {
+        item = queue.poll(500, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (item == null) {
+        if (finished) {
+          return;
+        }
+        continue;
+      }
+      parsing.put(current, item.url);
+      lastProgress.set(System.currentTimeMillis());
+      try {
+        item.task.run(plugins);
+      } catch (Throwable t) {
+        LOG.error("{} caught:", current.getName(), t);
+      } finally {
+        parsing.remove(current);
+        lastProgress.set(System.currentTimeMillis());
+        pending.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Stop the parser threads after all queued pages are parsed. If the timeout
+   * elapses, pages still queued are dropped and the output of pages still
+   * being parsed is not written.
+   *
+   * @param timeout
+   *          max. time in milliseconds to wait for the parser threads
+   * @return number of pages not parsed because the timeout elapsed
+   */
+  public int finish(long timeout) throws InterruptedException {
+    finished = true;
+    long deadline = System.currentTimeMillis() + timeout;
+    List<Item> dropped = new ArrayList<>();
+    try {
+      for (Thread t : threads) {
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+          break;
+        }
+        t.join(wait);
+      }
+    } finally {
+      synchronized (this) {
+        closed = true;
+        queue.drainTo(dropped);
+      }
+    }
+    for (Item item : dropped) {
+      LOG.warn("Not parsed, parser threads stopped: {}", item.url);
+    }
+    logParsing();
+    // pages dropped from the queue and pages still being parsed
+    int remaining = pending.getAndAdd(-dropped.size());
+    if (remaining > 0) {
+      LOG.warn("Aborting with {} pages not parsed", remaining);
+    }
+    return remaining;
+  }
+
+}
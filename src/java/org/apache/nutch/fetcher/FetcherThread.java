@@ -26,11 +26,13 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.nutch.crawl.CrawlDatum;
 import org.apache.nutch.crawl.NutchWritable;
@@ -77,11 +79,7 @@ public class FetcherThread extends Thread {
       .getLogger(MethodHandles.lookup().lookupClass());
 
   private Configuration conf;
-  private URLFilters urlFilters;
-  private URLExemptionFilters urlExemptionFilters;
-  private ScoringFilters scfilters;
-  private ParseUtil parseUtil;
-  private URLNormalizers normalizers;
+  private Plugins plugins;
   private ProtocolFactory protocolFactory;
   private long maxCrawlDelay;
   private String queueMode;
@@ -102,13 +100,13 @@ public class FetcherThread extends Thread {
   private int maxOutlinkDepthNumLinks;
   private boolean outlinksIgnoreExternal;
 
-  URLFilters urlFiltersForOutlinks;
-  URLNormalizers normalizersForOutlinks;
-
   private boolean skipTruncated;
 
   private boolean halted = false;
 
+  // the thread executing the fetch loop, see start(ThreadFactory)
+  private volatile Thread executingThread = this;
+
   private AtomicInteger activeThreads;
 
   private Object fetchQueues;
@@ -125,6 +123,9 @@ public class FetcherThread extends Thread {
 
   private boolean parsing;
 
+  /** parser threads, null if parsing inline */
+  private FetcherParseQueue parseQueue;
+
   private FetcherRun.Context context;
 
   private boolean storingContent;
@@ -146,17 +147,13 @@ public class FetcherThread extends Thread {
   public FetcherThread(Configuration conf, AtomicInteger activeThreads, FetchItemQueues fetchQueues, 
       QueueFeeder feeder, AtomicInteger spinWaiting, AtomicLong lastRequestStart, FetcherRun.Context context,
       AtomicInteger errors, String segmentName, boolean parsing, boolean storingContent, 
-      AtomicInteger pages, AtomicLong bytes) {
+      AtomicInteger pages, AtomicLong bytes, FetcherParseQueue parseQueue) {
     this.setDaemon(true); // don't hang JVM on exit
     this.setName("FetcherThread"); // use an informative name
     this.conf = conf;
-    this.urlFilters = new URLFilters(conf);
-    this.urlExemptionFilters = new URLExemptionFilters(conf);
-    this.scfilters = new ScoringFilters(conf);
-    this.parseUtil = new ParseUtil(conf);
+    this.plugins = new Plugins(conf, context, parsing);
     this.skipTruncated = conf.getBoolean(ParseSegment.SKIP_TRUNCATED, true);
     this.protocolFactory = new ProtocolFactory(conf);
-    this.normalizers = new URLNormalizers(conf, URLNormalizers.SCOPE_FETCHER);
     this.maxCrawlDelay = conf.getInt("fetcher.max.crawl.delay", 30) * 1000;
     this.activeThreads = activeThreads;
     this.fetchQueues = fetchQueues;
@@ -167,20 +164,11 @@ public class FetcherThread extends Thread {
     this.errors = errors;
     this.segmentName = segmentName;
     this.parsing = parsing;
+    this.parseQueue = parseQueue;
     this.storingContent = storingContent;
     this.pages = pages;
     this.bytes = bytes;
 
-    // NUTCH-2413 Apply filters and normalizers on outlinks
-    // when parsing only if configured
-    if (parsing) {
-      if (conf.getBoolean("parse.filter.urls", true))
-        this.urlFiltersForOutlinks = urlFilters;
-      if (conf.getBoolean("parse.normalize.urls", true))
-        this.normalizersForOutlinks = new URLNormalizers(conf,
-            URLNormalizers.SCOPE_OUTLINK);
-    }
-
     if((activatePublisher=conf.getBoolean("fetcher.publisher", false)))
       this.publisher = new FetcherThreadPublisher(conf);
     
@@ -221,6 +209,39 @@ public class FetcherThread extends Thread {
     }
   }
 
+  /**
+   * Filters, normalizers, scoring filters and parsers used to process fetched
+   * pages. Every fetcher thread and every parser thread of the
+   * {@link FetcherParseQueue} holds its own instances.
+   */
+  static class Plugins {
+    final URLFilters urlFilters;
+    final URLExemptionFilters urlExemptionFilters;
+    final ScoringFilters scfilters;
+    final ParseUtil parseUtil;
+    final URLNormalizers normalizers;
+    URLFilters urlFiltersForOutlinks;
+    URLNormalizers normalizersForOutlinks;
+
+    Plugins(Configuration conf, TaskAttemptContext context, boolean parsing) {
+      urlFilters = new URLFilters(conf);
+      urlExemptionFilters = new URLExemptionFilters(conf);
+      scfilters = new ScoringFilters(conf);
+      parseUtil = new ParseUtil(conf, context);
+      normalizers = new URLNormalizers(conf, URLNormalizers.SCOPE_FETCHER);
+
+      // NUTCH-2413 Apply filters and normalizers on outlinks
+      // when parsing only if configured
+      if (parsing) {
+        if (conf.getBoolean("parse.filter.urls", true))
+          urlFiltersForOutlinks = urlFilters;
+        if (conf.getBoolean("parse.normalize.urls", true))
+          normalizersForOutlinks = new URLNormalizers(conf,
+              URLNormalizers.SCOPE_OUTLINK);
+      }
+    }
+  }
+
   @SuppressWarnings("fallthrough")
   public void run() {
     activeThreads.incrementAndGet(); // count threads
@@ -247,12 +268,15 @@ public class FetcherThread extends Thread {
 
         fit = ((FetchItemQueues) fetchQueues).getFetchItem();
         if (fit == null) {
-          if (feeder.isAlive() || ((FetchItemQueues) fetchQueues).getTotalSize() > 0) {
+          if (feeder.isAlive()
+              || ((FetchItemQueues) fetchQueues).getTotalSize() > 0
+              || (parseQueue != null && parseQueue.isBusy())) {
+            // parsed pages may add outlinks to the fetch queues
             LOG.debug("{} spin-waiting ...", getName());
-            // spin-wait.
+            // wait until a queue becomes eligible
             ((AtomicInteger) spinWaiting).incrementAndGet();
             try {
-              Thread.sleep(500);
+              ((FetchItemQueues) fetchQueues).awaitFetchItem(500);
             } catch (Exception e) {
             }
             ((AtomicInteger) spinWaiting).decrementAndGet();
@@ -266,7 +290,7 @@ public class FetcherThread extends Thread {
         }
         lastRequestStart.set(System.currentTimeMillis());
 
-        Text reprUrlWritable = (Text) fit.datum.getMetaData().get(
+        Text reprUrlWritable = (Text) fit.datum.getMetaDataReadOnly().get(
             Nutch.WRITABLE_REPR_URL_KEY);
         if (reprUrlWritable == null) {
           setReprUrl(fit.url.toString());
@@ -369,8 +393,12 @@ public class FetcherThread extends Thread {
               break;
 
             case ProtocolStatus.SUCCESS: // got a page
-              pstatus = output(fit.url, fit.datum, content, status,
-                  CrawlDatum.STATUS_FETCH_SUCCESS, fit.outlinkDepth);
+              if (parseQueue != null) {
+                outputLater(fit, content, status);
+              } else {
+                pstatus = output(fit.url, fit.datum, content, status,
+                    CrawlDatum.STATUS_FETCH_SUCCESS, fit.outlinkDepth);
+              }
               updateStatus(content.getContent().length);
               if (pstatus != null && pstatus.isSuccess()
                   && pstatus.getMinorCode() == ParseStatus.SUCCESS_REDIRECT) {
@@ -482,8 +510,36 @@ public class FetcherThread extends Thread {
   private Text handleRedirect(FetchItem fit, String newUrl,
       boolean temp, String redirType)
       throws MalformedURLException, URLFilterException, InterruptedException {
-    newUrl = normalizers.normalize(newUrl, URLNormalizers.SCOPE_FETCHER);
-    newUrl = urlFilters.filter(newUrl);
+    newUrl = filterRedirect(fit, newUrl, redirType, plugins);
+    if (newUrl == null) {
+      return null;
+    }
+
+    reprUrl = URLUtil.chooseRepr(reprUrl, newUrl, temp);
+    Text url = new Text(newUrl);
+    if (maxRedirect > 0) {
+      redirecting = true;
+      redirectCount++;
+      LOG.debug(" - {} redirect to {} (fetching now)", redirType, url);
+      return url;
+    } else {
+      outputRedirect(fit, url, reprUrl, plugins, false);
+      LOG.debug(" - {} redirect to {} (fetching later)", redirType, url);
+      return null;
+    }
+  }
+
+  /**
+   * Normalize and filter a redirect target.
+   * 
+   * @return normalized redirect target or null if the redirect is skipped
+   */
+  private String filterRedirect(FetchItem fit, String newUrl,
+      String redirType, Plugins plugins)
+      throws MalformedURLException, URLFilterException {
+    newUrl = plugins.normalizers.normalize(newUrl,
+        URLNormalizers.SCOPE_FETCHER);
+    newUrl = plugins.urlFilters.filter(newUrl);
     String urlString = fit.url.toString();
 
     if (newUrl == null || newUrl.equals(urlString)) {
@@ -528,32 +584,58 @@ public class FetcherThread extends Thread {
         return null;
       }
     }
+    return newUrl;
+  }
 
-    reprUrl = URLUtil.chooseRepr(reprUrl, newUrl, temp);
-    Text url = new Text(newUrl);
-    if (maxRedirect > 0) {
-      redirecting = true;
-      redirectCount++;
-      LOG.debug(" - {} redirect to {} (fetching now)", redirType, url);
-      return url;
-    } else {
-      CrawlDatum newDatum = new CrawlDatum(CrawlDatum.STATUS_LINKED,
-          fit.datum.getFetchInterval(), fit.datum.getScore());
-      // transfer existing metadata
-      newDatum.getMetaData().putAll(fit.datum.getMetaData());
-      try {
-        scfilters.initialScore(url, newDatum);
-      } catch (ScoringFilterException e) {
-        e.printStackTrace();
-      }
-      if (reprUrl != null) {
-        newDatum.getMetaData().put(Nutch.WRITABLE_REPR_URL_KEY,
-            new Text(reprUrl));
-      }
-      output(url, newDatum, null, null, CrawlDatum.STATUS_LINKED);
-      LOG.debug(" - {} redirect to {} (fetching later)", redirType, url);
-      return null;
+  /** Output a redirect target to be fetched later. */
+  private void outputRedirect(FetchItem fit, Text url, String reprUrl,
+      Plugins plugins, boolean queued) throws InterruptedException {
+    CrawlDatum newDatum = new CrawlDatum(CrawlDatum.STATUS_LINKED,
+        fit.datum.getFetchInterval(), fit.datum.getScore());
+    // transfer existing metadata
+    newDatum.getMetaData().putAll(fit.datum.getMetaData());
+    try {
+      plugins.scfilters.initialScore(url, newDatum);
+    } catch (ScoringFilterException e) {
+      e.printStackTrace();
+    }
+    if (reprUrl != null) {
+      newDatum.getMetaData().put(Nutch.WRITABLE_REPR_URL_KEY,
+          new Text(reprUrl));
     }
+    output(url, newDatum, null, null, CrawlDatum.STATUS_LINKED, 0, null,
+        plugins, queued);
+  }
+
+  /**
+   * Hand over a fetched page to the parser threads which parse it and write
+   * the output. A redirect found by the parser (meta refresh) is not followed
+   * immediately, the redirect target is written to be fetched later. The
+   * task runs with the plugins of the parser thread, it must not use the
+   * plugins or other mutable state of this fetcher thread.
+   */
+  private void outputLater(final FetchItem fit, final Content content,
+      final ProtocolStatus status) throws InterruptedException {
+    final FetchNode node = fetchNode;
+    final String repr = reprUrl;
+    parseQueue.put(fit.url.toString(), (Plugins parserPlugins) -> {
+      ParseStatus pstatus = output(fit.url, fit.datum, content, status,
+          CrawlDatum.STATUS_FETCH_SUCCESS, fit.outlinkDepth, node,
+          parserPlugins, true);
+      if (pstatus != null && pstatus.isSuccess()
+          && pstatus.getMinorCode() == ParseStatus.SUCCESS_REDIRECT) {
+        int refreshTime = Integer.valueOf(pstatus.getArgs()[1]);
+        String newUrl = filterRedirect(fit, pstatus.getMessage(),
+            Fetcher.CONTENT_REDIR, parserPlugins);
+        if (newUrl != null) {
+          outputRedirect(fit, new Text(newUrl), URLUtil.chooseRepr(repr,
+              newUrl, refreshTime < Fetcher.PERM_REFRESH_TIME),
+              parserPlugins, true);
+          LOG.debug(" - {} redirect to {} (fetching later)",
+              Fetcher.CONTENT_REDIR, newUrl);
+        }
+      }
+    });
   }
 
   private FetchItem queueRedirect(Text redirUrl, FetchItem fit)
@@ -562,7 +644,7 @@ public class FetcherThread extends Thread {
         fit.datum.getFetchInterval(), fit.datum.getScore());
     // transfer all existing metadata to the redirect
     newDatum.getMetaData().putAll(fit.datum.getMetaData());
-    scfilters.initialScore(redirUrl, newDatum);
+    plugins.scfilters.initialScore(redirUrl, newDatum);
     if (reprUrl != null) {
       newDatum.getMetaData().put(Nutch.WRITABLE_REPR_URL_KEY,
           new Text(reprUrl));
@@ -594,6 +676,19 @@ public class FetcherThread extends Thread {
 
   private ParseStatus output(Text key, CrawlDatum datum, Content content,
       ProtocolStatus pstatus, int status, int outlinkDepth) throws InterruptedException{
+    return output(key, datum, content, pstatus, status, outlinkDepth,
+        fetchNode, plugins, false);
+  }
+
+  /**
+   * @param plugins
+   *          plugins of the calling fetcher or parser thread
+   * @param queued
+   *          whether called by a parser thread of the {@link FetcherParseQueue}
+   */
+  private ParseStatus output(Text key, CrawlDatum datum, Content content,
+      ProtocolStatus pstatus, int status, int outlinkDepth, FetchNode fetchNode,
+      Plugins plugins, boolean queued) throws InterruptedException {
 
     datum.setStatus(status);
     datum.setFetchTime(System.currentTimeMillis());
@@ -613,7 +708,7 @@ public class FetcherThread extends Thread {
       metadata.set(Nutch.SEGMENT_NAME_KEY, segmentName);
       // add score to content metadata so that ParseSegment can pick it up.
       try {
-        scfilters.passScoreBeforeParsing(key, datum, content);
+        plugins.scfilters.passScoreBeforeParsing(key, datum, content);
       } catch (Exception e) {
         if (LOG.isWarnEnabled()) {
           LOG.warn("{} {} Couldn't pass score, url {} ({})", getName(),
@@ -628,7 +723,7 @@ public class FetcherThread extends Thread {
         if (!skipTruncated
             || (skipTruncated && !ParseSegment.isTruncated(content))) {
           try {
-            parseResult = this.parseUtil.parse(content);
+            parseResult = plugins.parseUtil.parse(content);
           } catch (Exception e) {
             LOG.warn("{} {} Error parsing: {}: {}", getName(),
                 Thread.currentThread().getId(), key,
@@ -652,9 +747,9 @@ public class FetcherThread extends Thread {
     }
 
     try {
-      context.write(key, new NutchWritable(datum));
+      write(key, new NutchWritable(datum), queued);
       if (content != null && storingContent)
-        context.write(key, new NutchWritable(content));
+        write(key, new NutchWritable(content), queued);
       if (parseResult != null) {
         for (Entry<Text, Parse> entry : parseResult) {
           Text url = entry.getKey();
@@ -682,7 +777,7 @@ public class FetcherThread extends Thread {
           if (url.equals(key))
             datum.setSignature(signature);
           try {
-            scfilters.passScoreAfterParsing(url, content, parse);
+            plugins.scfilters.passScoreAfterParsing(url, content, parse);
           } catch (Exception e) {
             if (LOG.isWarnEnabled()) {
               LOG.warn("{} {} Couldn't pass score, url {} ({})", getName(),
@@ -723,8 +818,8 @@ public class FetcherThread extends Thread {
 
             toUrl = ParseOutputFormat.filterNormalize(url.toString(), toUrl,
                 origin, ignoreInternalLinks, ignoreExternalLinks,
-                ignoreExternalLinksMode, urlFiltersForOutlinks,
-                urlExemptionFilters, normalizersForOutlinks);
+                ignoreExternalLinksMode, plugins.urlFiltersForOutlinks,
+                plugins.urlExemptionFilters, plugins.normalizersForOutlinks);
             if (toUrl == null) {
               continue;
             }
@@ -750,7 +845,7 @@ public class FetcherThread extends Thread {
           if (maxOutlinkDepth > 0 && outlinkDepth < maxOutlinkDepth) {
             FetchItem ft = FetchItem.create(url, null, queueMode);
             FetchItemQueue queue = ((FetchItemQueues) fetchQueues).getFetchItemQueue(ft.queueID);
-            queue.alreadyFetched.add(url.toString().hashCode());
+            queue.addAlreadyFetched(url.toString().hashCode());
 
             context.getCounter("FetcherOutlinks", "outlinks_detected").increment(
                 outlinks.size());
@@ -774,11 +869,9 @@ public class FetcherThread extends Thread {
               }
 
               // Already followed?
-              int urlHashCode = followUrl.hashCode();
-              if (queue.alreadyFetched.contains(urlHashCode)) {
+              if (!queue.addAlreadyFetched(followUrl.hashCode())) {
                 continue;
               }
-              queue.alreadyFetched.add(urlHashCode);
               
               // Create new FetchItem with depth incremented
               FetchItem fit = FetchItem.create(new Text(followUrl),
@@ -798,8 +891,8 @@ public class FetcherThread extends Thread {
           parseData.setOutlinks(outlinkList.toArray(new Outlink[outlinkList
               .size()]));
 
-          context.write(url, new NutchWritable(new ParseImpl(new ParseText(
-              parse.getText()), parseData, parse.isCanonical())));
+          write(url, new NutchWritable(new ParseImpl(new ParseText(
+              parse.getText()), parseData, parse.isCanonical())), queued);
         }
       }
     } catch (IOException e) {
@@ -820,6 +913,19 @@ public class FetcherThread extends Thread {
     return null;
   }
   
+  /**
+   * Write output, if called by a parser thread only while the
+   * {@link FetcherParseQueue} is not finished.
+   */
+  private void write(Text key, NutchWritable value, boolean queued)
+      throws IOException, InterruptedException {
+    if (queued) {
+      parseQueue.write(context, key, value);
+    } else {
+      context.write(key, value);
+    }
+  }
+
   private void outputRobotsTxt(List<Content> robotsTxtContent) throws InterruptedException {
     for (Content robotsTxt : robotsTxtContent) {
       LOG.debug("fetched and stored robots.txt {}",
@@ -838,6 +944,30 @@ public class FetcherThread extends Thread {
     bytes.addAndGet(bytesInPage);
   }
 
+  /**
+   * Start fetching. If a thread factory is given, the fetch loop does not
+   * run on this thread but on a thread created by the factory, e.g. a virtual
+   * thread.
+   * 
+   * @param factory
+   *          thread factory or null to start this thread
+   */
+  public void start(ThreadFactory factory) {
+    if (factory == null) {
+      start();
+    } else {
+      executingThread = factory.newThread(this);
+      executingThread.start();
+    }
+  }
+
+  /**
+   * @return the thread executing the fetch loop
+   */
+  public Thread getExecutingThread() {
+    return executingThread;
+  }
+
   public synchronized void setHalted(boolean halted) {
     this.halted = halted;
   }
@@ -18,6 +18,8 @@ package org.apache.nutch.fetcher;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.apache.hadoop.io.Text;
 import org.apache.nutch.crawl.CrawlDatum;
@@ -27,23 +29,36 @@ import org.slf4j.LoggerFactory;
 
 /**
  * This class feeds the queues with input items, and re-fills them as items
- * are consumed by FetcherThread-s.
+ * are consumed by FetcherThread-s. Input is read and deserialized ahead on a
+ * separate thread, while this thread blocks until there is space in the
+ * queues.
  */
 public class QueueFeeder extends Thread {
 
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
-  
+
+  /** marks the end of the input in the prefetch buffer */
+  private static final FetchItem END_OF_INPUT = new FetchItem(null, null,
+      null, null);
+
   private FetcherRun.Context context;
   private FetchItemQueues queues;
   private int size;
   private long timelimit = -1;
+  private BlockingQueue<FetchItem> prefetched;
+
+  // written by the reader thread, read after END_OF_INPUT has been taken
+  private int cnt = 0;
+  private int timelimitcount = 0;
 
   public QueueFeeder(FetcherRun.Context context,
       FetchItemQueues queues, int size) {
     this.context = context;
     this.queues = queues;
     this.size = size;
+    this.prefetched = new ArrayBlockingQueue<>(Math.max(1, context
+        .getConfiguration().getInt("fetcher.queue.prefetch.size", 1000)));
     this.setDaemon(true);
     this.setName("QueueFeeder");
   }
@@ -52,62 +67,88 @@ public class QueueFeeder extends Thread {
     timelimit = tl;
   }
 
+  private boolean isTimeLimitReached() {
+    return System.currentTimeMillis() >= timelimit && timelimit != -1;
+  }
+
   public void run() {
-    boolean hasMore = true;
-    int cnt = 0;
-    int timelimitcount = 0;
-    while (hasMore) {
-      if (System.currentTimeMillis() >= timelimit && timelimit != -1) {
-        // enough .. lets' simply
-        // read all the entries from the input without processing them
-        try {
-          hasMore = context.nextKeyValue();
-          timelimitcount++;
-        } catch (IOException e) {
-          LOG.error("QueueFeeder error reading input, record " + cnt, e);
-          return;
-        } catch (InterruptedException e) {
-          LOG.info("QueueFeeder interrupted, exception:", e);
-          return;
+    Thread reader = new Thread("QueueFeeder-reader") {
+      public void run() {
+        readInput();
+      }
+    };
+    reader.setDaemon(true);
+    reader.start();
+
+    int dropped = 0;
+    try {
+      while (true) {
+        if (!isTimeLimitReached() && !queues.awaitCapacity(size, 1000)) {
+          // queues are full
+          continue;
+        }
+        FetchItem it = prefetched.take();
+        if (it == END_OF_INPUT) {
+          break;
         }
-        continue;
+        if (isTimeLimitReached()) {
+          // read ahead but hit by time limit
+          dropped++;
+          continue;
+        }
+        queues.addFetchItem(it);
       }
-      int feed = size - queues.getTotalSize();
-      if (feed <= 0) {
-        // queues are full - spin-wait until they have some free space
-        try {
-          Thread.sleep(1000);
-        } catch (Exception e) {
+    } catch (InterruptedException e) {
+      LOG.info("QueueFeeder interrupted, exception:", e);
+      return;
+    }
+    LOG.info("QueueFeeder finished: total {} records hit by time limit : {}",
+        cnt, timelimitcount + dropped);
+  }
+
+  /**
+   * Read the input and put the fetch items into the prefetch buffer, until
+   * the input is exhausted.
+   */
+  private void readInput() {
+    boolean hasMore = true;
+    try {
+      while (hasMore) {
+        if (isTimeLimitReached()) {
+          // enough .. lets' simply
+          // read all the entries from the input without processing them
+          hasMore = context.nextKeyValue();
+          if (hasMore) {
+            timelimitcount++;
+          }
+          continue;
         }
-        ;
-        continue;
-      } else {
-        LOG.debug("-feeding {} input urls ...", feed);
-        while (feed > 0 && hasMore) {
-          try {
-            hasMore = context.nextKeyValue();
-            if (hasMore) {
-              /*
-               * Need to copy key and value objects because MapReduce will reuse
-               * the original objects while the objects are stored in the queue.
-               */
-              Text url = new Text((Text)context.getCurrentKey());
-              CrawlDatum datum = new CrawlDatum();
-              datum.set((CrawlDatum)context.getCurrentValue());
-              queues.addFetchItem(url, datum);
-              cnt++;
-              feed--;
-            }
-          } catch (IOException e) {
-            LOG.error("QueueFeeder error reading input, record " + cnt, e);
-            return;
-          } catch (InterruptedException e) {
-            LOG.info("QueueFeeder interrupted, exception:", e);
+        hasMore = context.nextKeyValue();
+        if (hasMore) {
+          /*
+           * Need to copy key and value objects because MapReduce will reuse
+           * the original objects while the objects are stored in the queue.
+           */
+          Text url = new Text((Text)context.getCurrentKey());
+          CrawlDatum datum = new CrawlDatum();
+          datum.set((CrawlDatum)context.getCurrentValue());
+          FetchItem it = FetchItem.create(url, datum, queues.queueMode);
+          cnt++;
+          if (it != null) {
+            prefetched.put(it);
           }
         }
       }
+    } catch (IOException e) {
+      LOG.error("QueueFeeder error reading input, record " + cnt, e);
+    } catch (InterruptedException e) {
+      LOG.info("QueueFeeder interrupted, exception:", e);
+    } finally {
+      try {
+        prefetched.put(END_OF_INPUT);
+      } catch (InterruptedException e) {
+        LOG.info("QueueFeeder interrupted, exception:", e);
+      }
     }
-    LOG.info("QueueFeeder finished: total {} records hit by time limit : {}",
-        cnt, timelimitcount);
   }
 }
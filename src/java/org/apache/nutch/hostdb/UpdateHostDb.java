@@ -35,6 +35,7 @@ import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.nutch.crawl.CrawlDb;
+import org.apache.nutch.crawl.CrawlDbInputFormat;
 import org.apache.nutch.crawl.NutchWritable;
 import org.apache.nutch.util.FSUtils;
 import org.apache.nutch.util.LockUtil;
@@ -104,7 +105,7 @@ public class UpdateHostDb extends Configured implements Tool {
       // Tell the job we read from CrawlDB
       conf.setBoolean("hostdb.reading.crawldb", true);
       MultipleInputs.addInputPath(job, new Path(crawlDb,
-        CrawlDb.CURRENT_NAME), SequenceFileInputFormat.class);
+        CrawlDb.CURRENT_NAME), CrawlDbInputFormat.class);
     }
 
     FileOutputFormat.setOutputPath(job, tempHostDb);
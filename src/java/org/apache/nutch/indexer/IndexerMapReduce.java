@@ -31,9 +31,9 @@ import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.nutch.crawl.CrawlDatum;
 import org.apache.nutch.crawl.CrawlDb;
+import org.apache.nutch.crawl.CrawlDbInputFormat;
 import org.apache.nutch.crawl.Inlinks;
 import org.apache.nutch.crawl.LinkDb;
 import org.apache.nutch.crawl.NutchWritable;
@@ -350,7 +350,7 @@ public class IndexerMapReduce extends Configured {
           
           // extract information from dbDatum and pass it to
           // fetchDatum so that indexing filters can use it
-          final Text url = (Text) dbDatum.getMetaData().get(
+          final Text url = (Text) dbDatum.getMetaDataReadOnly().get(
               Nutch.WRITABLE_REPR_URL_KEY);
           if (url != null) {
             // Representation URL also needs normalization and filtering.
@@ -450,7 +450,7 @@ public class IndexerMapReduce extends Configured {
       }
     }
 
-    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setInputFormatClass(CrawlDbInputFormat.class);
 
     job.setJarByClass(IndexerMapReduce.class);
     job.setMapperClass(IndexerMapReduce.IndexerMapper.class);
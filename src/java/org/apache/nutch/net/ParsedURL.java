@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.net;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import org.apache.nutch.util.URLUtil;
+import org.apache.nutch.util.domain.DomainSuffix;
+
+/**
+ * A URL string parsed once, so that the components of the URL are available to
+ * all stages processing the URL (e.g., {@link URLNormalizers} and
+ * {@link URLFilters}) without parsing the string again.
+ *
+ * Instances are immutable. The domain name and the domain suffix require a
+ * lookup in the list of domain suffixes and are determined on first use.
+ */
+public final class ParsedURL {
+
+  private static final DomainSuffix NO_SUFFIX = new DomainSuffix("");
+
+  private final String urlString;
+  private final URL url;
+  private final String host;
+  /** offset of the path in the URL string */
+  private final int pathStart;
+  /** offset of the query (after the '?') in the URL string or -1 */
+  private final int queryStart;
+
+  private String domainName;
+  private DomainSuffix domainSuffix;
+
+  private ParsedURL(String urlString, URL url) {
+    this.urlString = urlString;
+    this.url = url;
+    this.host = url.getHost().toLowerCase();
+    int start = urlString.indexOf(':') + 1;
+    if (urlString.startsWith("//", start)) {
+      start += 2;
+      while (start < urlString.length()) {
+        char c = urlString.charAt(start);
+        if (c == '/' || c == '?' || c == '#') {
+          break;
+        }
+        start++;
+      }
+    }
+    pathStart = start;
+    int query = -1;
+    for (int i = start; i < urlString.length(); i++) {
+      char c = urlString.charAt(i);
+      if (c == '?') {
+        query = i + 1;
+        break;
+      } else if (c == '#') {
+        break;
+      }
+    }
+    queryStart = query;
+  }
+
+  /**
+   * Parse a URL string.
+   *
+   * @throws MalformedURLException
+   *           if the string is not a valid URL
+   */
+  public static ParsedURL parse(String urlString) throws MalformedURLException {
+    return new ParsedURL(urlString, new URL(urlString));
+  }
+
+  /**
+   * @return a parsed URL for the given string, this instance if the string is
+   *         the same URL
+   * @throws MalformedURLException
+   *           if the string is not a valid URL
+   */
+  public ParsedURL derive(String urlString) throws MalformedURLException {
+    if (this.urlString.equals(urlString)) {
+      return this;
+    }
+    return parse(urlString);
+  }
+
+  /** @return the parsed URL */
+  public URL getURL() {
+    return url;
+  }
+
+  public String getProtocol() {
+    return url.getProtocol();
+  }
+
+  /** @return the host name, lowercased, see {@link URLUtil#getHost(String)} */
+  public String getHost() {
+    return host;
+  }
+
+  /**
+   * @return the domain name of the host, see
+   *         {@link URLUtil#getDomainName(URL)}
+   */
+  public String getDomainName() {
+    String domain = domainName;
+    if (domain == null) {
+      domain = URLUtil.getDomainName(url);
+      domainName = domain;
+    }
+    return domain;
+  }
+
+  /**
+   * @return the domain suffix of the host or null, see
+   *         {@link URLUtil#getDomainSuffix(URL)}
+   */
+  public DomainSuffix getDomainSuffix() {
+    DomainSuffix suffix = domainSuffix;
+    if (suffix == null) {
+      suffix = URLUtil.getDomainSuffix(url);
+      domainSuffix = suffix == null ? NO_SUFFIX : suffix;
+    }
+    return suffix == NO_SUFFIX ? null : suffix;
+  }
+
+  /** @return offset of the path in the URL string */
+  public int getPathStart() {
+    return pathStart;
+  }
+
+  /**
+   * @return offset of the query (after the <code>?</code>) in the URL string,
+   *         or -1 if the URL has no query
+   */
+  public int getQueryStart() {
+    return queryStart;
+  }
+
+  /** @return the path, see {@link URL#getPath()} */
+  public String getPath() {
+    return url.getPath();
+  }
+
+  /** @return the query or null, see {@link URL#getQuery()} */
+  public String getQuery() {
+    return url.getQuery();
+  }
+
+  @Override
+  public int hashCode() {
+    return urlString.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof ParsedURL)) {
+      return false;
+    }
+    return urlString.equals(((ParsedURL) o).urlString);
+  }
+
+  /** @return the URL string */
+  @Override
+  public String toString() {
+    return urlString;
+  }
+
+}
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.net;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Size-bounded, concurrent cache of results of {@link URLFilters} and
+ * {@link URLNormalizers}, keyed by scope and URL. The same URLs (e.g., links
+ * in page navigation or footers) are normalized and filtered many times in a
+ * task, the cache avoids to run the chain of plugins again for every
+ * occurrence.
+ *
+ * The cache is enabled by setting <code>urlcache.size</code> to a positive
+ * value. There is one cache per JVM shared by all tools and job stages running
+ * in it. Results depend on the configuration of the filter and normalizer
+ * plugins: the cache is cleared if it is requested for a configuration with a
+ * different value of any of the properties <code>plugin.*</code>,
+ * <code>urlfilter.*</code> or <code>urlnormalizer.*</code>.
+ *
+ * Hits and misses are counted per scope and reported as job counters by
+ * {@link #reportCounters(TaskAttemptContext)}.
+ */
+public class URLCache {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String CACHE_SIZE = "urlcache.size";
+
+  /** Scope of results of {@link URLFilters} */
+  public static final String SCOPE_FILTER = "urlfilters";
+
+  /** Prefixes of properties the cached results depend on */
+  private static final String[] PROPERTY_PREFIXES = { "plugin.", "urlfilter.",
+      "urlnormalizer." };
+
+  public static final String COUNTER_GROUP = "URLCache";
+
+  /** Function applied on a URL if the result is not cached */
+  public interface URLFunction<E extends Exception> {
+    String apply(String url) throws E;
+  }
+
+  private static class Key {
+    final String scope;
+    final String url;
+    final int hash;
+
+    Key(String scope, String url) {
+      this.scope = scope;
+      this.url = url;
+      this.hash = 31 * scope.hashCode() + url.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return hash == other.hash && url.equals(other.url)
+          && scope.equals(other.scope);
+    }
+  }
+
+  /** Cached value of URLs removed by a filter or normalizer */
+  private static final String REJECTED = new String("");
+
+  /** hits and misses by scope */
+  private static final Map<String, LongAdder[]> STATS = new ConcurrentHashMap<>();
+
+  private static URLCache instance;
+
+  private final Cache<Key, String> cache;
+  private final String fingerprint;
+
+  URLCache(int maxSize, String fingerprint) {
+    this.fingerprint = fingerprint;
+    cache = CacheBuilder.newBuilder().maximumSize(maxSize)
+        .concurrencyLevel(Runtime.getRuntime().availableProcessors()).build();
+  }
+
+  /**
+   * @return the cache shared in this JVM, cleared if the configuration of
+   *         filters and normalizers has changed, or null if caching is
+   *         disabled
+   */
+  public static synchronized URLCache get(Configuration conf) {
+    int maxSize = conf.getInt(CACHE_SIZE, 0);
+    if (maxSize <= 0) {
+      return null;
+    }
+    String fingerprint = getFingerprint(conf, maxSize);
+    if (instance == null || !instance.fingerprint.equals(fingerprint)) {
+      if (instance != null) {
+        LOG.info("URL filter or normalizer configuration changed, "
+            + "clearing URL cache");
+      }
+      instance = new URLCache(maxSize, fingerprint);
+    }
+    return instance;
+  }
+
+  private static String getFingerprint(Configuration conf, int maxSize) {
+    Map<String, String> props = new TreeMap<>();
+    for (Map.Entry<String, String> e : conf) {
+      for (String prefix : PROPERTY_PREFIXES) {
+        if (e.getKey().startsWith(prefix)) {
+          props.put(e.getKey(), e.getValue());
+          break;
+        }
+      }
+    }
+    return maxSize + " " + props;
+  }
+
+  /**
+   * Get the cached result or apply the function on the URL and cache the
+   * result. Exceptions are passed to the caller and not cached.
+   *
+   * @param scope
+   *          scope of the function, results of functions are cached
+   *          separately
+   * @param url
+   *          URL
+   * @param function
+   *          filter or normalizer chain
+   * @return cached or computed result, null if the URL is rejected
+   */
+  public <E extends Exception> String get(String scope, String url,
+      URLFunction<E> function) throws E {
+    if (url == null) {
+      return null;
+    }
+    Key key = new Key(scope, url);
+    LongAdder[] stats = getStats(scope);
+    String result = cache.getIfPresent(key);
+    if (result != null) {
+      stats[0].increment();
+      return result == REJECTED ? null : result;
+    }
+    stats[1].increment();
+    result = function.apply(url);
+    cache.put(key, result == null ? REJECTED : result);
+    return result;
+  }
+
+  private static LongAdder[] getStats(String scope) {
+    LongAdder[] stats = STATS.get(scope);
+    if (stats == null) {
+      stats = STATS.computeIfAbsent(scope,
+          s -> new LongAdder[] { new LongAdder(), new LongAdder() });
+    }
+    return stats;
+  }
+
+  /** @return (approximate) number of cached entries */
+  public long size() {
+    return cache.size();
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Increment the counters <code>&lt;scope&gt;_hits</code> and
+   * <code>&lt;scope&gt;_misses</code> in the group
+   * <code>URLCache</code> by the number of cache hits and misses since the
+   * last call. Because the cache is shared, counts of other tasks running in
+   * the same JVM may be included.
+   */
+  public static void reportCounters(TaskAttemptContext context) {
+    for (Map.Entry<String, LongAdder[]> e : STATS.entrySet()) {
+      long hits = e.getValue()[0].sumThenReset();
+      long misses = e.getValue()[1].sumThenReset();
+      if (hits > 0) {
+        context.getCounter(COUNTER_GROUP, e.getKey() + "_hits")
+            .increment(hits);
+      }
+      if (misses > 0) {
+        context.getCounter(COUNTER_GROUP, e.getKey() + "_misses")
+            .increment(misses);
+      }
+    }
+  }
+
+}
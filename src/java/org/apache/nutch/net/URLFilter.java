@@ -35,4 +35,13 @@ public interface URLFilter extends Pluggable, Configurable {
    * through or "delete" the URL by returning null
    */
   public String filter(String urlString);
+
+  /*
+   * Filter a parsed URL. Filters which need the host, domain or other
+   * components of the URL should override this method to avoid parsing the
+   * URL string again.
+   */
+  public default String filter(ParsedURL url) {
+    return filter(url.toString());
+  }
 }
@@ -17,6 +17,8 @@
 
 package org.apache.nutch.net;
 
+import java.net.MalformedURLException;
+
 import org.apache.hadoop.conf.Configuration;
 import org.apache.nutch.plugin.PluginRepository;
 
@@ -25,18 +27,30 @@ public class URLFilters {
 
   public static final String URLFILTER_ORDER = "urlfilter.order";
   private URLFilter[] filters;
+  private URLCache cache;
 
   public URLFilters(Configuration conf) {
     this.filters = (URLFilter[]) PluginRepository.get(conf).getOrderedPlugins(
         URLFilter.class, URLFilter.X_POINT_ID, URLFILTER_ORDER);
+    this.cache = URLCache.get(conf);
   }
 
   public URLFilter[] getFilters() {
     return this.filters;
   }
 
-  /** Run all defined filters. Assume logical AND. */
+  /**
+   * Run all defined filters. Assume logical AND. The result is taken from the
+   * {@link URLCache} if caching is enabled.
+   */
   public String filter(String urlString) throws URLFilterException {
+    if (cache != null) {
+      return cache.get(URLCache.SCOPE_FILTER, urlString, this::filterUncached);
+    }
+    return filterUncached(urlString);
+  }
+
+  private String filterUncached(String urlString) throws URLFilterException {
     for (int i = 0; i < this.filters.length; i++) {
       if (urlString == null)
         return null;
@@ -45,4 +59,43 @@ public class URLFilters {
     }
     return urlString;
   }
+
+  /**
+   * Run all defined filters on a parsed URL. Assume logical AND.
+   * 
+   * @return the parsed URL, parsed again only if changed by a filter, or null
+   *         if the URL is rejected
+   */
+  public ParsedURL filter(ParsedURL url) throws URLFilterException {
+    String urlString;
+    if (cache != null) {
+      urlString = cache.get(URLCache.SCOPE_FILTER, url.toString(),
+          s -> filterUncached(url));
+    } else {
+      urlString = filterUncached(url);
+    }
+    if (urlString == null) {
+      return null;
+    }
+    try {
+      return url.derive(urlString);
+    } catch (MalformedURLException e) {
+      throw new URLFilterException(e);
+    }
+  }
+
+  private String filterUncached(ParsedURL url) throws URLFilterException {
+    for (int i = 0; i < this.filters.length; i++) {
+      String urlString = this.filters[i].filter(url);
+      if (urlString == null) {
+        return null;
+      }
+      try {
+        url = url.derive(urlString);
+      } catch (MalformedURLException e) {
+        throw new URLFilterException(e);
+      }
+    }
+    return url.toString();
+  }
 }
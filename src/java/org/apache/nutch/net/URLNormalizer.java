@@ -34,4 +34,13 @@ public interface URLNormalizer extends Configurable {
   public String normalize(String urlString, String scope)
       throws MalformedURLException;
 
+  /*
+   * Normalize a parsed URL. Normalizers which need the components of the URL
+   * should override this method to avoid parsing the URL string again.
+   */
+  public default String normalize(ParsedURL url, String scope)
+      throws MalformedURLException {
+    return normalize(url.toString(), scope);
+  }
+
 }
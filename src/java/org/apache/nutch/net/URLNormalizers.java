@@ -136,8 +136,14 @@ public final class URLNormalizers {
 
   private int loopCount;
 
+  private URLCache cache;
+
+  /** scope the normalizers are chosen for */
+  private String scope;
+
   public URLNormalizers(Configuration conf, String scope) {
     this.conf = conf;
+    this.scope = scope;
     this.extensionPoint = PluginRepository.get(conf).getExtensionPoint(
         URLNormalizer.X_POINT_ID);
     ObjectCache objectCache = ObjectCache.get(conf);
@@ -161,6 +167,7 @@ public final class URLNormalizers {
     }
 
     loopCount = conf.getInt("urlnormalizer.loop.count", 1);
+    cache = URLCache.get(conf);
   }
 
   /**
@@ -298,7 +305,8 @@ public final class URLNormalizers {
   }
 
   /**
-   * Normalize
+   * Normalize. The result is taken from the {@link URLCache} if caching is
+   * enabled.
    * 
    * @param urlString
    *          The URL string to normalize.
@@ -310,6 +318,23 @@ public final class URLNormalizers {
    */
   public String normalize(String urlString, String scope)
       throws MalformedURLException {
+    if (cache != null) {
+      return cache.get(getCacheScope(scope), urlString,
+          url -> normalizeUncached(url, scope));
+    }
+    return normalizeUncached(urlString, scope);
+  }
+
+  /**
+   * Results depend on the normalizers chosen for the scope of this instance
+   * and the scope passed to them.
+   */
+  private String getCacheScope(String scope) {
+    return scope.equals(this.scope) ? scope : this.scope + "/" + scope;
+  }
+
+  private String normalizeUncached(String urlString, String scope)
+      throws MalformedURLException {
     // optionally loop several times, and break if no further changes
     String initialString = urlString;
     for (int k = 0; k < loopCount; k++) {
@@ -324,4 +349,45 @@ public final class URLNormalizers {
     }
     return urlString;
   }
+
+  /**
+   * Normalize a parsed URL. The URL is parsed again only if changed by a
+   * normalizer.
+   * 
+   * @param url
+   *          The URL to normalize.
+   * @param scope
+   *          The given scope.
+   * @return The normalized URL, or null if removed by a normalizer.
+   * @throws MalformedURLException
+   *           If the URL returned by a normalizer is malformed.
+   */
+  public ParsedURL normalize(ParsedURL url, String scope)
+      throws MalformedURLException {
+    String urlString;
+    if (cache != null) {
+      urlString = cache.get(getCacheScope(scope), url.toString(),
+          s -> normalizeUncached(url, scope));
+    } else {
+      urlString = normalizeUncached(url, scope);
+    }
+    return urlString == null ? null : url.derive(urlString);
+  }
+
+  private String normalizeUncached(ParsedURL url, String scope)
+      throws MalformedURLException {
+    ParsedURL initial = url;
+    for (int k = 0; k < loopCount; k++) {
+      for (int i = 0; i < this.normalizers.length; i++) {
+        String urlString = this.normalizers[i].normalize(url, scope);
+        if (urlString == null)
+          return null;
+        url = url.derive(urlString);
+      }
+      if (initial.equals(url))
+        break;
+      initial = url;
+    }
+    return url.toString();
+  }
 }
@@ -39,4 +39,17 @@ public interface HtmlParseFilter extends Pluggable, Configurable {
    */
   ParseResult filter(Content content, ParseResult parseResult,
       HTMLMetaTags metaTags, DocumentFragment doc);
+
+  /**
+   * Whether this filter needs the DOM tree of the page. If no configured
+   * filter requires it, HTML parsers may extract text and links without
+   * building a DOM tree (see <code>parser.html.streaming</code>) and pass
+   * <code>null</code> as <code>doc</code> to
+   * {@link #filter(Content, ParseResult, HTMLMetaTags, DocumentFragment)}.
+   *
+   * @return true (default) if the DOM tree is required
+   */
+  default boolean requiresDOM() {
+    return true;
+  }
 }
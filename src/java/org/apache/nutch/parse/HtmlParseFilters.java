@@ -36,6 +36,19 @@ public class HtmlParseFilters {
             HTMLPARSEFILTER_ORDER);
   }
 
+  /**
+   * @return true if any of the filters requires the DOM tree of the page, see
+   *         {@link HtmlParseFilter#requiresDOM()}
+   */
+  public boolean requiresDOM() {
+    for (HtmlParseFilter filter : htmlParseFilters) {
+      if (filter.requiresDOM()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /** Run all defined filters. */
   public ParseResult filter(Content content, ParseResult parseResult,
       HTMLMetaTags metaTags, DocumentFragment doc) {
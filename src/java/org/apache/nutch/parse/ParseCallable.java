@@ -14,7 +14,6 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.apache.nutch.parse;
 
 import java.util.concurrent.Callable;
@@ -22,8 +21,18 @@ import java.util.concurrent.Callable;
 import org.apache.nutch.protocol.Content;
 
 class ParseCallable implements Callable<ParseResult> {
+
+  private enum State {
+    NEW, RUNNING, ABANDONED, DONE
+  }
+
   private Parser p;
   private Content content;
+  private State state = State.NEW;
+  private Thread thread;
+  /** executor to notify when an abandoned parser finishes */
+  private ParseExecutor executor;
+  private volatile long startTime = 0;
 
   public ParseCallable(Parser p, Content content) {
     this.p = p;
@@ -32,6 +41,56 @@ class ParseCallable implements Callable<ParseResult> {
 
   @Override
   public ParseResult call() throws Exception {
-    return p.getParse(content);
+    synchronized (this) {
+      if (state != State.NEW) {
+        return null;
+      }
+      state = State.RUNNING;
+      thread = Thread.currentThread();
+      startTime = System.currentTimeMillis();
+    }
+    try {
+      return p.getParse(content);
+    } finally {
+      boolean abandoned;
+      synchronized (this) {
+        abandoned = (state == State.ABANDONED);
+        state = State.DONE;
+        thread = null;
+      }
+      if (abandoned) {
+        executor.release(this);
+      }
+    }
+  }
+
+  /** @return time (epoch millis) the parser was started, 0 if not started */
+  long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * Mark the parse as abandoned after a timeout.
+   * 
+   * @param executor
+   *          notified by {@link ParseExecutor#release(ParseCallable)} when
+   *          the parser finally finishes
+   * @return the thread still running the parser, or null if the parser has
+   *         finished (or was never started)
+   */
+  synchronized Thread abandon(ParseExecutor executor) {
+    if (state == State.NEW) {
+      state = State.DONE;
+    } else if (state == State.RUNNING) {
+      state = State.ABANDONED;
+      this.executor = executor;
+      return thread;
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return p.getClass().getName() + " on " + content.getUrl();
   }
 }
@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Bounded thread pool running parsers with a timeout, shared by all
+ * {@link ParseUtil} instances of a JVM. The pool is sized by
+ * <code>parser.threads</code> (default: number of available processors) and
+ * holds up to <code>parser.queue.size</code> waiting parses. If the queue is
+ * full, submitting threads block until space is available.
+ * 
+ * A parser thread which does not react on cancellation after a timeout is
+ * abandoned and replaced by an additional thread, up to
+ * <code>parser.threads.stuck.max</code> threads. The pool shrinks again when
+ * an abandoned parser finishes.
+ */
+class ParseExecutor {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  private static ParseExecutor INSTANCE;
+
+  private final ThreadPoolExecutor executor;
+  private final int maxStuckThreads;
+  private int stuckThreads = 0;
+
+  ParseExecutor(int threads, int queueSize, int maxStuckThreads) {
+    this.maxStuckThreads = maxStuckThreads;
+    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(queueSize),
+        new ThreadFactoryBuilder().setNameFormat("parse-%d").setDaemon(true)
+            .build(), (r, e) -> {
+              if (e.isShutdown()) {
+                throw new RejectedExecutionException("Parser pool shut down");
+              }
+              try {
+                // block until a parser thread is available
+                e.getQueue().put(r);
+              } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(ie);
+              }
+            });
+  }
+
+  /** Get the shared executor, create it on first use. */
+  static synchronized ParseExecutor get(Configuration conf) {
+    if (INSTANCE == null) {
+      int threads = conf.getInt("parser.threads", 0);
+      if (threads <= 0) {
+        threads = Runtime.getRuntime().availableProcessors();
+      }
+      int queueSize = conf.getInt("parser.queue.size", 0);
+      if (queueSize <= 0) {
+        queueSize = 4 * threads;
+      }
+      int maxStuck = conf.getInt("parser.threads.stuck.max", 0);
+      if (maxStuck <= 0) {
+        maxStuck = threads;
+      }
+      LOG.info("Parser pool: {} threads, queue size {}", threads, queueSize);
+      INSTANCE = new ParseExecutor(threads, queueSize, maxStuck);
+    }
+    return INSTANCE;
+  }
+
+  Future<ParseResult> submit(ParseCallable pc) {
+    return executor.submit(pc);
+  }
+
+  /**
+   * Abandon a parse after a timeout. If the parser thread is still running,
+   * an additional thread is added to the pool (unless the max. number of
+   * stuck threads is reached) until the parser finishes.
+   */
+  void abandon(ParseCallable pc) {
+    Thread thread = pc.abandon(this);
+    if (thread == null) {
+      return;
+    }
+    synchronized (this) {
+      stuckThreads++;
+      if (stuckThreads <= maxStuckThreads) {
+        executor.setMaximumPoolSize(executor.getMaximumPoolSize() + 1);
+        executor.setCorePoolSize(executor.getCorePoolSize() + 1);
+      } else {
+        LOG.warn("{} parser threads stuck, parsing capacity reduced",
+            stuckThreads);
+      }
+    }
+    if (LOG.isDebugEnabled()) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("Parser thread ").append(thread.getName())
+          .append(" stuck while running ").append(pc).append(":\n");
+      for (StackTraceElement s : thread.getStackTrace()) {
+        sb.append("  ").append(s).append('\n');
+      }
+      LOG.debug(sb.toString());
+    }
+  }
+
+  /** Called when an abandoned parser finally finishes. */
+  synchronized void release(ParseCallable pc) {
+    if (stuckThreads <= maxStuckThreads) {
+      executor.setCorePoolSize(executor.getCorePoolSize() - 1);
+      executor.setMaximumPoolSize(executor.getMaximumPoolSize() - 1);
+    }
+    stuckThreads--;
+    LOG.info("Abandoned parser finished: {}", pc);
+  }
+
+  /** @return number of threads currently in the pool */
+  int getPoolSize() {
+    return executor.getPoolSize();
+  }
+
+  /** @return number of abandoned parser threads still running */
+  synchronized int getStuckThreads() {
+    return stuckThreads;
+  }
+
+}
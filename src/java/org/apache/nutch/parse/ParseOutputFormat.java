@@ -49,6 +49,8 @@ import org.apache.nutch.scoring.ScoringFilters;
 import org.apache.nutch.util.StringUtil;
 import org.apache.nutch.util.URLUtil;
 import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.net.URLCache;
+import org.apache.nutch.net.ParsedURL;
 import org.apache.nutch.net.URLExemptionFilters;
 import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
@@ -374,6 +376,7 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
           textOut.close();
         dataOut.close();
         crawlOut.close();
+        URLCache.reportCounters(context);
       }
 
     };
@@ -398,22 +401,25 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
     if (fromUrl.equals(toUrl)) {
       return null;
     }
-    if (ignoreExternalLinks || ignoreInternalLinks) {
-      URL targetURL = null;
-      try {
-        targetURL = new URL(toUrl);
-      } catch (MalformedURLException e1) {
+    // parse the URL once for all checks, normalizers and filters
+    ParsedURL targetURL = null;
+    try {
+      targetURL = ParsedURL.parse(toUrl);
+    } catch (MalformedURLException e1) {
+      if (ignoreExternalLinks || ignoreInternalLinks) {
         return null; // skip it
       }
+    }
+    if (ignoreExternalLinks || ignoreInternalLinks) {
       if (ignoreExternalLinks) {
         if ("bydomain".equalsIgnoreCase(ignoreExternalLinksMode)) {
-          String toDomain = URLUtil.getDomainName(targetURL).toLowerCase();
+          String toDomain = targetURL.getDomainName().toLowerCase();
           //FIXME: toDomain will never be null, correct?
           if (toDomain == null || !toDomain.equals(origin)) {
             return null; // skip it
           }
         } else {
-          String toHost = targetURL.getHost().toLowerCase();
+          String toHost = targetURL.getHost();
           if (!toHost.equals(origin)) { // external host link
             if (exemptionFilters == null // check if it is exempted?
                 || !exemptionFilters.isExempted(fromUrl, toUrl)) {
@@ -424,13 +430,13 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
       }
       if (ignoreInternalLinks) {
         if ("bydomain".equalsIgnoreCase(ignoreExternalLinksMode)) {
-          String toDomain = URLUtil.getDomainName(targetURL).toLowerCase();
+          String toDomain = targetURL.getDomainName().toLowerCase();
           //FIXME: toDomain will never be null, correct?
           if (toDomain == null || toDomain.equals(origin)) {
             return null; // skip it
           }
         } else {
-          String toHost = targetURL.getHost().toLowerCase();
+          String toHost = targetURL.getHost();
           //FIXME: toDomain will never be null, correct?
           if (toHost == null || toHost.equals(origin)) {
             return null; // skip it
@@ -440,21 +446,30 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
     }
 
     try {
+      if (targetURL == null) {
+        if (normalizers != null) {
+          toUrl = normalizers.normalize(toUrl, urlNormalizerScope); // normalize
+                                                                    // the url
+        }
+        if (filters != null) {
+          toUrl = filters.filter(toUrl); // filter the url
+        }
+        return toUrl;
+      }
       if (normalizers != null) {
-        toUrl = normalizers.normalize(toUrl, urlNormalizerScope); // normalize
-                                                                  // the url
+        targetURL = normalizers.normalize(targetURL, urlNormalizerScope);
       }
-      if (filters != null) {
-        toUrl = filters.filter(toUrl); // filter the url
+      if (filters != null && targetURL != null) {
+        targetURL = filters.filter(targetURL);
       }
-      if (toUrl == null) {
+      if (targetURL == null) {
         return null;
       }
     } catch (Exception e) {
       return null;
     }
 
-    return toUrl;
+    return targetURL.toString();
   }
 
 }
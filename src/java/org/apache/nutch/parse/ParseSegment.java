@@ -123,7 +123,7 @@ public class ParseSegment extends NutchTool implements Tool {
       ParseResult parseResult = null;
       try {
         if (parseUtil == null)
-          parseUtil = new ParseUtil(context.getConfiguration());
+          parseUtil = new ParseUtil(context.getConfiguration(), context);
         parseResult = parseUtil.parse(content);
       } catch (Exception e) {
         LOG.warn("Error parsing: " + key + ": "
@@ -17,23 +17,27 @@
 package org.apache.nutch.parse;
 
 import java.lang.invoke.MethodHandles;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.nutch.protocol.Content;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-
 /**
  * A Utility class containing methods to simply perform parsing utilities such
  * as iterating through a preferred list of {@link Parser}s to obtain
  * {@link Parse} objects.
  * 
+ * If a parser timeout is configured (<code>parser.timeout</code>), parsers
+ * run in a thread pool shared by all instances of this class. If a task
+ * context is passed, the time spent per parser, the number of timeouts and
+ * the number of parsed bytes are counted (counter group
+ * <code>ParserMetrics</code>).
+ * 
  * @author mattmann
  * @author J&eacute;r&ocirc;me Charron
  * @author S&eacute;bastien Le Callonnec
@@ -46,17 +50,31 @@ public class ParseUtil {
   private ParserFactory parserFactory;
   /** Parser timeout set to 30 sec by default. Set -1 to deactivate **/
   private int maxParseTime = 30;
-  private ExecutorService executorService;
+  private ParseExecutor executor;
+  private TaskAttemptContext context;
+
+  public static final String COUNTER_GROUP = "ParserMetrics";
 
   /**
    * 
    * @param conf
    */
   public ParseUtil(Configuration conf) {
+    this(conf, null);
+  }
+
+  /**
+   * @param conf
+   * @param context
+   *          task context to report per-parser counters, may be null
+   */
+  public ParseUtil(Configuration conf, TaskAttemptContext context) {
     this.parserFactory = new ParserFactory(conf);
+    this.context = context;
     maxParseTime = conf.getInt("parser.timeout", 30);
-    executorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
-        .setNameFormat("parse-%d").setDaemon(true).build());
+    if (maxParseTime != -1) {
+      executor = ParseExecutor.get(conf);
+    }
   }
 
   /**
@@ -91,10 +109,7 @@ public class ParseUtil {
         LOG.debug("Parsing [" + content.getUrl() + "] with [" + parsers[i]
             + "]");
       }
-      if (maxParseTime != -1)
-        parseResult = runParser(parsers[i], content);
-      else
-        parseResult = parsers[i].getParse(content);
+      parseResult = getParse(parsers[i], content);
 
       if (parseResult != null && !parseResult.isEmpty())
         return parseResult;
@@ -145,11 +160,7 @@ public class ParseUtil {
       throw new ParseException(e.getMessage());
     }
 
-    ParseResult parseResult = null;
-    if (maxParseTime != -1)
-      parseResult = runParser(p, content);
-    else
-      parseResult = p.getParse(content);
+    ParseResult parseResult = getParse(p, content);
     if (parseResult != null && !parseResult.isEmpty()) {
       return parseResult;
     } else {
@@ -163,15 +174,64 @@ public class ParseUtil {
     }
   }
 
+  private ParseResult getParse(Parser p, Content content) {
+    long start = System.currentTimeMillis();
+    ParseResult res;
+    if (maxParseTime != -1)
+      res = runParser(p, content);
+    else
+      res = p.getParse(content);
+    if (context != null) {
+      String name = p.getClass().getSimpleName();
+      incrementCounter(name + ".time_ms", System.currentTimeMillis() - start);
+      incrementCounter(name + ".docs", 1);
+      if (content.getContent() != null) {
+        incrementCounter(name + ".bytes", content.getContent().length);
+      }
+    }
+    return res;
+  }
+
+  private void incrementCounter(String name, long value) {
+    context.getCounter(COUNTER_GROUP, name).increment(value);
+  }
+
   private ParseResult runParser(Parser p, Content content) {
     ParseCallable pc = new ParseCallable(p, content);
-    Future<ParseResult> task = executorService.submit(pc);
+    Future<ParseResult> task = executor.submit(pc);
     ParseResult res = null;
+    long timeout = maxParseTime * 1000L;
     try {
-      res = task.get(maxParseTime, TimeUnit.SECONDS);
+      while (true) {
+        // the timeout applies from the start of the parser, not including
+        // the time waiting in the queue
+        long started = pc.getStartTime();
+        long wait = timeout;
+        if (started > 0) {
+          wait = started + timeout - System.currentTimeMillis();
+        }
+        try {
+          res = task.get(Math.max(wait, 1), TimeUnit.MILLISECONDS);
+          break;
+        } catch (TimeoutException e) {
+          started = pc.getStartTime();
+          if (started > 0
+              && (System.currentTimeMillis() - started) >= timeout) {
+            throw e;
+          }
+        }
+      }
+    } catch (TimeoutException e) {
+      LOG.warn("Timeout parsing " + content.getUrl() + " with " + p);
+      task.cancel(true);
+      executor.abandon(pc);
+      if (context != null) {
+        incrementCounter(p.getClass().getSimpleName() + ".timeouts", 1);
+      }
     } catch (Exception e) {
       LOG.warn("Error parsing " + content.getUrl() + " with " + p, e);
       task.cancel(true);
+      executor.abandon(pc);
     } finally {
       pc = null;
     }
@@ -0,0 +1,402 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nutch.protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import crawlercommons.robots.BaseRobotRules;
+
+/**
+ * Size-bounded, concurrent cache of parsed robots.txt rules. Every entry
+ * expires after a time-to-live, either the default configured by
+ * <code>http.robots.cache.ttl</code> or a shorter one announced by the server
+ * when robots.txt was fetched. If <code>http.robots.cache.dir</code> is set,
+ * rules fetched by one job are stored in a directory on the Hadoop file system
+ * and loaded by later jobs, so that robots.txt is not fetched again for every
+ * segment. The files written by the fetcher tasks are merged by
+ * {@link #compact(Configuration)}. Concurrent cache misses for the same key are coalesced, see
+ * {@link #get(String, Callable)}.
+ */
+public class RobotRulesCache {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String CACHE_SIZE = "http.robots.cache.size";
+  public static final String CACHE_TTL = "http.robots.cache.ttl";
+  public static final String CACHE_DIR = "http.robots.cache.dir";
+
+  public static final int DEFAULT_CACHE_SIZE = 100000;
+  public static final long DEFAULT_CACHE_TTL = 86400;
+
+  private static final String FILE_PREFIX = "robots-";
+
+  private static class Entry {
+    final BaseRobotRules rules;
+    final long expires;
+    /** whether the entry was loaded from the persistent store */
+    final boolean stored;
+
+    Entry(BaseRobotRules rules, long expires, boolean stored) {
+      this.rules = rules;
+      this.expires = expires;
+      this.stored = stored;
+    }
+  }
+
+  private final Cache<String, Entry> cache;
+  private final long ttl;
+
+  /** rules currently loaded, by cache key */
+  private final ConcurrentHashMap<String, FutureTask<BaseRobotRules>> loading = new ConcurrentHashMap<>();
+
+  /**
+   * @param maxSize
+   *          max. number of cached robots.txt rules
+   * @param ttl
+   *          default (and max.) time-to-live of cached rules in milliseconds
+   */
+  public RobotRulesCache(int maxSize, long ttl) {
+    this.ttl = ttl;
+    cache = CacheBuilder.newBuilder().maximumSize(maxSize)
+        .expireAfterWrite(ttl, TimeUnit.MILLISECONDS).build();
+  }
+
+  public RobotRulesCache(Configuration conf) {
+    this(conf.getInt(CACHE_SIZE, DEFAULT_CACHE_SIZE),
+        conf.getLong(CACHE_TTL, DEFAULT_CACHE_TTL) * 1000);
+  }
+
+  /**
+   * @return cached rules for the given key or null if there are no rules
+   *         cached or cached rules are expired
+   */
+  public BaseRobotRules get(String key) {
+    Entry entry = cache.getIfPresent(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expires < System.currentTimeMillis()) {
+      cache.invalidate(key);
+      return null;
+    }
+    return entry.rules;
+  }
+
+  /**
+   * Get cached rules or load them if there are none. Only one thread loads
+   * the rules for a given key, other threads missing the cache at the same
+   * time wait for the result. The loader is responsible for putting the rules
+   * into the cache, so that it may decide whether and how long they are
+   * cached.
+   *
+   * @param key
+   *          cache key
+   * @param loader
+   *          fetches and parses robots.txt
+   * @return cached or loaded rules
+   * @throws ExecutionException
+   *           if the loader failed
+   * @throws InterruptedException
+   *           if interrupted while waiting for another thread loading the
+   *           rules
+   */
+  public BaseRobotRules get(String key, Callable<BaseRobotRules> loader)
+      throws ExecutionException, InterruptedException {
+    BaseRobotRules rules = get(key);
+    if (rules != null) {
+      return rules;
+    }
+    FutureTask<BaseRobotRules> task = new FutureTask<>(loader);
+    FutureTask<BaseRobotRules> running = loading.putIfAbsent(key, task);
+    if (running == null) {
+      running = task;
+      try {
+        // rules may have been cached by a concurrent load just finished
+        rules = get(key);
+        if (rules != null) {
+          return rules;
+        }
+        task.run();
+      } finally {
+        loading.remove(key, task);
+      }
+    } else {
+      LOG.trace("waiting for concurrent load of robots.txt rules for {}", key);
+    }
+    return running.get();
+  }
+
+  /** Cache rules using the default time-to-live. */
+  public void put(String key, BaseRobotRules rules) {
+    put(key, rules, ttl);
+  }
+
+  /**
+   * Cache rules.
+   *
+   * @param ttl
+   *          time-to-live in milliseconds, limited by the default time-to-live
+   */
+  public void put(String key, BaseRobotRules rules, long ttl) {
+    long expires = System.currentTimeMillis() + Math.min(ttl, this.ttl);
+    cache.put(key, new Entry(rules, expires, false));
+  }
+
+  /** @return default time-to-live in milliseconds */
+  public long getTTL() {
+    return ttl;
+  }
+
+  /** @return (approximate) number of cached entries */
+  public long size() {
+    return cache.size();
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Load rules from the directory configured by
+   * <code>http.robots.cache.dir</code>. Files older than the time-to-live of
+   * the cache contain only expired rules and are removed.
+   *
+   * @return number of loaded rules
+   */
+  public int load(Configuration conf) {
+    String dir = conf.get(CACHE_DIR);
+    if (dir == null || dir.trim().isEmpty()) {
+      return 0;
+    }
+    int loaded = 0;
+    Path cacheDir = new Path(dir.trim());
+    try {
+      FileSystem fs = cacheDir.getFileSystem(conf);
+      if (!fs.exists(cacheDir)) {
+        return 0;
+      }
+      loaded = load(conf, fs, listFiles(fs, cacheDir));
+    } catch (IOException e) {
+      LOG.warn("Failed to load robots.txt cache from {}: {}", dir,
+          StringUtils.stringifyException(e));
+    }
+    LOG.info("Loaded {} robots.txt rules from {}", loaded, dir);
+    return loaded;
+  }
+
+  private int load(Configuration conf, FileSystem fs, FileStatus[] files)
+      throws IOException {
+    int loaded = 0;
+    long now = System.currentTimeMillis();
+    Text key = new Text();
+    BytesWritable value = new BytesWritable();
+    for (FileStatus file : files) {
+      if ((file.getModificationTime() + ttl) < now) {
+        LOG.info("Removing expired robots.txt cache file {}", file.getPath());
+        fs.delete(file.getPath(), false);
+        continue;
+      }
+      try (SequenceFile.Reader reader = new SequenceFile.Reader(conf,
+          SequenceFile.Reader.file(file.getPath()))) {
+        while (reader.next(key, value)) {
+          Entry entry = readEntry(value);
+          if (entry.expires < now) {
+            continue;
+          }
+          Entry cached = cache.getIfPresent(key.toString());
+          if (cached == null || cached.expires < entry.expires) {
+            cache.put(key.toString(), entry);
+            loaded++;
+          }
+        }
+      } catch (IOException | ClassNotFoundException e) {
+        LOG.warn("Failed to read robots.txt cache file {}: {}",
+            file.getPath(), e.getMessage());
+      }
+    }
+    return loaded;
+  }
+
+  private static FileStatus[] listFiles(FileSystem fs, Path cacheDir)
+      throws IOException {
+    return fs.listStatus(cacheDir, new PathFilter() {
+      public boolean accept(Path path) {
+        return path.getName().startsWith(FILE_PREFIX);
+      }
+    });
+  }
+
+  /**
+   * Store rules which have been fetched (i.e., not loaded from the persistent
+   * store) and are not yet expired into a new file in the directory
+   * configured by <code>http.robots.cache.dir</code>.
+   *
+   * @param name
+   *          unique file name, e.g. the task attempt ID
+   * @return number of stored rules
+   */
+  public int store(Configuration conf, String name) {
+    String dir = conf.get(CACHE_DIR);
+    if (dir == null || dir.trim().isEmpty()) {
+      return 0;
+    }
+    int stored = 0;
+    Path cacheDir = new Path(dir.trim());
+    try {
+      stored = write(conf, cacheDir.getFileSystem(conf), cacheDir, name,
+          false);
+    } catch (IOException e) {
+      LOG.warn("Failed to store robots.txt cache in {}: {}", dir,
+          StringUtils.stringifyException(e));
+      return 0;
+    }
+    LOG.info("Stored {} robots.txt rules in {}", stored, dir);
+    return stored;
+  }
+
+  /**
+   * Write cached rules which are not yet expired into a new file.
+   *
+   * @param all
+   *          whether to write also rules loaded from the persistent store
+   * @return number of written rules
+   */
+  private int write(Configuration conf, FileSystem fs, Path cacheDir,
+      String name, boolean all) throws IOException {
+    int written = 0;
+    long now = System.currentTimeMillis();
+    Path tmpFile = new Path(cacheDir, "_" + FILE_PREFIX + name);
+    try (SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(tmpFile),
+        SequenceFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(BytesWritable.class))) {
+      Text key = new Text();
+      for (Map.Entry<String, Entry> e : cache.asMap().entrySet()) {
+        Entry entry = e.getValue();
+        if ((entry.stored && !all) || entry.expires < now) {
+          continue;
+        }
+        key.set(e.getKey());
+        writer.append(key, writeEntry(entry));
+        written++;
+      }
+    }
+    if (written == 0) {
+      fs.delete(tmpFile, false);
+    } else {
+      fs.rename(tmpFile, new Path(cacheDir, FILE_PREFIX + name));
+    }
+    return written;
+  }
+
+  /**
+   * Merge the files in the directory configured by
+   * <code>http.robots.cache.dir</code> into a single file. Every fetcher task
+   * adds a new file, merging keeps the number of files (and the time needed
+   * to load them) bounded over many crawl cycles. Expired rules are dropped
+   * and the merged file holds at most <code>http.robots.cache.size</code>
+   * rules. Files written while merging are kept. Should be called when no
+   * fetcher job is running, e.g. by the fetcher job client after the job has
+   * finished, because tasks loading the cache may miss rules of a file just
+   * merged and removed.
+   *
+   * @return number of rules in the merged file
+   */
+  public static int compact(Configuration conf) {
+    String dir = conf.get(CACHE_DIR);
+    if (dir == null || dir.trim().isEmpty()) {
+      return 0;
+    }
+    Path cacheDir = new Path(dir.trim());
+    int merged = 0;
+    try {
+      FileSystem fs = cacheDir.getFileSystem(conf);
+      if (!fs.exists(cacheDir)) {
+        return 0;
+      }
+      FileStatus[] files = listFiles(fs, cacheDir);
+      if (files.length < 2) {
+        return 0;
+      }
+      RobotRulesCache cache = new RobotRulesCache(conf);
+      cache.load(conf, fs, files);
+      merged = cache.write(conf, fs, cacheDir,
+          "merged-" + System.currentTimeMillis(), true);
+      for (FileStatus file : files) {
+        fs.delete(file.getPath(), false);
+      }
+      LOG.info("Merged {} robots.txt cache files into one file of {} rules",
+          files.length, merged);
+    } catch (IOException e) {
+      LOG.warn("Failed to merge robots.txt cache files in {}: {}", dir,
+          StringUtils.stringifyException(e));
+    }
+    return merged;
+  }
+
+  private static BytesWritable writeEntry(Entry entry) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeLong(entry.expires);
+    ObjectOutputStream objOut = new ObjectOutputStream(out);
+    objOut.writeObject(entry.rules);
+    objOut.close();
+    return new BytesWritable(bytes.toByteArray());
+  }
+
+  private static Entry readEntry(BytesWritable value) throws IOException,
+      ClassNotFoundException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+        value.getBytes(), 0, value.getLength()));
+    long expires = in.readLong();
+    ObjectInputStream objIn = new ObjectInputStream(in);
+    BaseRobotRules rules = (BaseRobotRules) objIn.readObject();
+    objIn.close();
+    return new Entry(rules, expires, true);
+  }
+
+}
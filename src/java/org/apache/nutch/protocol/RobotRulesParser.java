@@ -26,11 +26,12 @@ import java.lang.invoke.MethodHandles;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,8 +62,13 @@ public abstract class RobotRulesParser implements Tool {
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
-  protected static final Hashtable<String, BaseRobotRules> CACHE = new Hashtable<>();
-  
+  /**
+   * Cache of robots.txt rules shared by all parser instances, created and
+   * loaded from the persistent store (if configured) by the first call of
+   * {@link #setConf(Configuration)}.
+   */
+  private static volatile RobotRulesCache CACHE = null;
+
   /**
    * A {@link BaseRobotRules} object appropriate for use when the
    * {@code robots.txt} file is empty or missing; all requests are allowed.
@@ -100,6 +106,7 @@ public abstract class RobotRulesParser implements Tool {
    */
   public void setConf(Configuration conf) {
     this.conf = conf;
+    initCache(conf);
 
     // Grab the agent names we advertise to robots files.
     String agentName = conf.get("http.agent.name");
@@ -148,6 +155,66 @@ public abstract class RobotRulesParser implements Tool {
     }
   }
 
+  private static synchronized void initCache(Configuration conf) {
+    if (CACHE == null) {
+      CACHE = new RobotRulesCache(conf);
+      CACHE.load(conf);
+    }
+  }
+
+  /**
+   * Get the cache of robots.txt rules shared by all parser instances.
+   */
+  protected static RobotRulesCache getCache() {
+    RobotRulesCache cache = CACHE;
+    if (cache == null) {
+      synchronized (RobotRulesParser.class) {
+        if (CACHE == null) {
+          CACHE = new RobotRulesCache(RobotRulesCache.DEFAULT_CACHE_SIZE,
+              RobotRulesCache.DEFAULT_CACHE_TTL * 1000);
+        }
+        cache = CACHE;
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Get cached rules or load them on a cache miss, see
+   * {@link RobotRulesCache#get(String, Callable)}.
+   *
+   * @param cacheKey
+   *          cache key
+   * @param url
+   *          URL to check (used for logging)
+   * @param loader
+   *          fetches and parses robots.txt and caches the rules
+   * @return robot rules, {@link #EMPTY_RULES} if loading failed
+   */
+  protected BaseRobotRules getRobotRules(String cacheKey, URL url,
+      Callable<BaseRobotRules> loader) {
+    try {
+      return getCache().get(cacheKey, loader);
+    } catch (ExecutionException e) {
+      LOG.info("Couldn't get robots.txt for {}: {}", url, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return EMPTY_RULES;
+  }
+
+  /**
+   * Store the robots.txt rules fetched by this JVM so that they are available
+   * to later jobs, see {@link RobotRulesCache#store(Configuration, String)}.
+   * Does nothing if <code>http.robots.cache.dir</code> is not set.
+   *
+   * @param name
+   *          unique file name, e.g. the task attempt ID
+   */
+  public static void storeCache(Configuration conf, String name) {
+    getCache().store(conf, name);
+  }
+
   /**
    * Get the {@link Configuration} object
    */
@@ -192,6 +192,31 @@ public interface ScoringFilter extends Configurable, Pluggable {
       throws ScoringFilterException {
   }
 
+  /**
+   * Whether {@link #orphanedScore(Text, CrawlDatum)} is implemented, i.e. the
+   * filter may update CrawlDb entries which are neither fetched nor linked.
+   * Filters overriding {@link #orphanedScore(Text, CrawlDatum)} must return
+   * true, otherwise an incremental CrawlDb update
+   * (<code>db.update.incremental</code>) copies such entries unchanged.
+   *
+   * @return false (default) if orphaned entries are not updated
+   */
+  public default boolean updatesOrphans() {
+    return false;
+  }
+
+  /**
+   * Whether {@link #updateDbScore(Text, CrawlDatum, CrawlDatum, List)} relies
+   * on the inlinks of URLs already contained in the CrawlDb. If no filter
+   * does, CrawlDb update may drop links to known URLs before they reach the
+   * reducer (<code>db.update.links.known.drop</code>).
+   *
+   * @return true (default) if the inlinks are needed
+   */
+  public default boolean needsInlinks() {
+    return true;
+  }
+
   /**
    * This method calculates a indexed document score/boost.
    * 
@@ -89,6 +89,26 @@ public class ScoringFilters extends Configured implements ScoringFilter {
     }
   }
 
+  /** @return true if any filter updates orphaned entries */
+  public boolean updatesOrphans() {
+    for (int i = 0; i < this.filters.length; i++) {
+      if (this.filters[i].updatesOrphans()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return true if any filter needs the inlinks of known URLs */
+  public boolean needsInlinks() {
+    for (int i = 0; i < this.filters.length; i++) {
+      if (this.filters[i].needsInlinks()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public void passScoreBeforeParsing(Text url, CrawlDatum datum, Content content)
       throws ScoringFilterException {
     for (int i = 0; i < this.filters.length; i++) {
@@ -278,7 +278,7 @@ public class ArcSegmentCreator extends Configured implements Tool {
       conf = context.getConfiguration();
       urlFilters = new URLFilters(conf);
       scfilters = new ScoringFilters(conf);
-      parseUtil = new ParseUtil(conf);
+      parseUtil = new ParseUtil(conf, context);
       normalizers = new URLNormalizers(conf, URLNormalizers.SCOPE_FETCHER);
       interval = conf.getInt("db.fetch.interval.default", 2592000);
     }
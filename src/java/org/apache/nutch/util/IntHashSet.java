@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nutch.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive <code>int</code> values using open addressing with
+ * linear probing. Unlike a <code>HashSet&lt;Integer&gt;</code> it does not
+ * allocate an object per value. Not thread-safe.
+ */
+public class IntHashSet {
+
+  private static final float LOAD_FACTOR = 0.5f;
+
+  /* 0 marks a free slot, the value 0 itself is tracked separately */
+  private int[] slots;
+  private boolean containsZero = false;
+  private int size = 0;
+  private int resizeThreshold;
+
+  public IntHashSet() {
+    this(16);
+  }
+
+  /**
+   * @param expectedSize
+   *          number of values the set can hold without resizing
+   */
+  public IntHashSet(int expectedSize) {
+    int capacity = Integer.highestOneBit(
+        Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+    slots = new int[capacity];
+    resizeThreshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  /**
+   * Add a value to the set.
+   *
+   * @return true if the value was not already contained in the set
+   */
+  public boolean add(int value) {
+    if (value == 0) {
+      if (containsZero) {
+        return false;
+      }
+      containsZero = true;
+      size++;
+      return true;
+    }
+    int mask = slots.length - 1;
+    int i = mix(value) & mask;
+    while (slots[i] != 0) {
+      if (slots[i] == value) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    slots[i] = value;
+    if (++size > resizeThreshold) {
+      resize(slots.length << 1);
+    }
+    return true;
+  }
+
+  public boolean contains(int value) {
+    if (value == 0) {
+      return containsZero;
+    }
+    int mask = slots.length - 1;
+    int i = mix(value) & mask;
+    while (slots[i] != 0) {
+      if (slots[i] == value) {
+        return true;
+      }
+      i = (i + 1) & mask;
+    }
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    Arrays.fill(slots, 0);
+    containsZero = false;
+    size = 0;
+  }
+
+  private void resize(int capacity) {
+    int[] old = slots;
+    slots = new int[capacity];
+    resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    int mask = capacity - 1;
+    for (int value : old) {
+      if (value != 0) {
+        int i = mix(value) & mask;
+        while (slots[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        slots[i] = value;
+      }
+    }
+  }
+
+  /** Spread the bits of hash codes which differ only in the high bits. */
+  private static int mix(int value) {
+    int h = value * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -30,7 +30,6 @@ import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.mapreduce.Mapper;
@@ -38,6 +37,7 @@ import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.crawl.CrawlDbInputFormat;
 import org.apache.nutch.util.NutchConfiguration;
 import org.apache.nutch.util.TimingUtil;
 import org.apache.nutch.metadata.Nutch;
@@ -106,7 +106,7 @@ public class ProtocolStatusStatistics extends Configured implements Tool {
       FileInputFormat.addInputPath(job, new Path(completeInputPath.toString()));
     }
 
-    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setInputFormatClass(CrawlDbInputFormat.class);
     FileOutputFormat.setOutputPath(job, new Path(outputDir));
     job.setOutputFormatClass(TextOutputFormat.class);
 
@@ -146,8 +146,8 @@ public class ProtocolStatusStatistics extends Configured implements Tool {
 
     public void map(Text urlText, CrawlDatum datum, Context context)
         throws IOException, InterruptedException {
-      if (datum.getMetaData().containsKey(Nutch.PROTOCOL_STATUS_CODE_KEY)) {
-        context.write((Text) datum.getMetaData().get(Nutch.PROTOCOL_STATUS_CODE_KEY), new LongWritable(1));
+      if (datum.getMetaDataReadOnly().containsKey(Nutch.PROTOCOL_STATUS_CODE_KEY)) {
+        context.write((Text) datum.getMetaDataReadOnly().get(Nutch.PROTOCOL_STATUS_CODE_KEY), new LongWritable(1));
       } else {
         context.write(UNFETCHED_TEXT, new LongWritable(1));
       }
@@ -21,7 +21,6 @@ import java.net.IDN;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
-import java.util.regex.Pattern;
 
 import org.apache.nutch.util.domain.DomainSuffix;
 import org.apache.nutch.util.domain.DomainSuffixes;
@@ -81,9 +80,6 @@ public class URLUtil {
     return new URL(base, target);
   }
 
-  private static Pattern IP_PATTERN = Pattern
-      .compile("(\\d{1,3}\\.){3}(\\d{1,3})");
-
   /**
    * Returns the domain name of the url. The domain name of a url is the
    * substring of the url's hostname, w/o subdomain names. As an example <br>
@@ -94,25 +90,55 @@ public class URLUtil {
    * <code> apache.org</code>
    * */
   public static String getDomainName(URL url) {
-    DomainSuffixes tlds = DomainSuffixes.getInstance();
-    String host = url.getHost();
+    return getDomainNameFromHost(url.getHost());
+  }
+
+  /**
+   * Returns the domain name of a host name, see {@link #getDomainName(URL)}.
+   * The domain suffix is looked up without creating intermediate strings.
+   */
+  public static String getDomainNameFromHost(CharSequence host) {
+    int end = host.length();
     // it seems that java returns hostnames ending with .
-    if (host.endsWith("."))
-      host = host.substring(0, host.length() - 1);
-    if (IP_PATTERN.matcher(host).matches())
-      return host;
-
-    int index = 0;
-    String candidate = host;
-    for (; index >= 0;) {
-      index = candidate.indexOf('.');
-      String subCandidate = candidate.substring(index + 1);
-      if (tlds.isDomainSuffix(subCandidate)) {
-        return candidate;
+    if (end > 0 && host.charAt(end - 1) == '.')
+      end--;
+    if (isIPv4(host, end))
+      return host.subSequence(0, end).toString();
+
+    int start = DomainSuffixes.getInstance().findSuffix(host, end);
+    if (start > 0) {
+      // the domain suffix and the label before
+      start--;
+    } else {
+      // no domain suffix, the last label only
+      start = end;
+    }
+    while (start > 0 && host.charAt(start - 1) != '.') {
+      start--;
+    }
+    return host.subSequence(start, end).toString();
+  }
+
+  /**
+   * @return true if <code>s[0:end]</code> is an IPv4 address (four groups of
+   *         one to three digits)
+   */
+  private static boolean isIPv4(CharSequence s, int end) {
+    int groups = 0;
+    int digits = 0;
+    for (int i = 0; i < end; i++) {
+      char c = s.charAt(i);
+      if (c >= '0' && c <= '9') {
+        if (++digits > 3)
+          return false;
+      } else if (c == '.' && digits > 0 && groups < 3) {
+        groups++;
+        digits = 0;
+      } else {
+        return false;
       }
-      candidate = subCandidate;
     }
-    return candidate;
+    return groups == 3 && digits > 0;
   }
 
   /**
@@ -203,21 +229,15 @@ public class URLUtil {
   public static DomainSuffix getDomainSuffix(URL url) {
     DomainSuffixes tlds = DomainSuffixes.getInstance();
     String host = url.getHost();
-    if (IP_PATTERN.matcher(host).matches())
+    int end = host.length();
+    if (isIPv4(host, end))
       return null;
 
-    int index = 0;
-    String candidate = host;
-    for (; index >= 0;) {
-      index = candidate.indexOf('.');
-      String subCandidate = candidate.substring(index + 1);
-      DomainSuffix d = tlds.get(subCandidate);
-      if (d != null) {
-        return d;
-      }
-      candidate = subCandidate;
+    int start = tlds.findSuffix(host, end);
+    if (start < 0) {
+      return null;
     }
-    return null;
+    return tlds.get(host, start, end);
   }
 
   /**
@@ -234,7 +254,7 @@ public class URLUtil {
     String host = url.getHost();
     // return whole hostname, if it is an ipv4
     // TODO : handle ipv6
-    if (IP_PATTERN.matcher(host).matches())
+    if (isIPv4(host, host.length()))
       return new String[] { host };
     return host.split("\\.");
   }
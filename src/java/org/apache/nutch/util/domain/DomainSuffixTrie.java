@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.util.domain;
+
+/**
+ * Trie of domain suffixes over the labels of a host name in reverse order
+ * (<code>uk</code> &rarr; <code>co</code> for <code>co.uk</code>). Host names
+ * are looked up label by label directly from a {@link CharSequence}, children
+ * of a node are kept in an open-addressing hash table keyed by label, so that
+ * no strings need to be created during a lookup.
+ */
+class DomainSuffixTrie {
+
+  private static class Node {
+    /** suffix ending at this node or null */
+    DomainSuffix suffix;
+    String[] labels;
+    int[] hashes;
+    Node[] children;
+    int size;
+
+    Node getChild(CharSequence s, int start, int end, int hash) {
+      if (labels == null) {
+        return null;
+      }
+      int mask = labels.length - 1;
+      int len = end - start;
+      for (int i = hash & mask; labels[i] != null; i = (i + 1) & mask) {
+        if (hashes[i] == hash && regionEquals(labels[i], s, start, len)) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    Node addChild(String label) {
+      int hash = hash(label, 0, label.length());
+      Node child = getChild(label, 0, label.length(), hash);
+      if (child != null) {
+        return child;
+      }
+      if (labels == null || 2 * (size + 1) > labels.length) {
+        resize(labels == null ? 2 : 2 * labels.length);
+      }
+      child = new Node();
+      put(label, hash, child);
+      return child;
+    }
+
+    private void put(String label, int hash, Node child) {
+      int mask = labels.length - 1;
+      int i = hash & mask;
+      while (labels[i] != null) {
+        i = (i + 1) & mask;
+      }
+      labels[i] = label;
+      hashes[i] = hash;
+      children[i] = child;
+      size++;
+    }
+
+    private void resize(int capacity) {
+      String[] oldLabels = labels;
+      int[] oldHashes = hashes;
+      Node[] oldChildren = children;
+      labels = new String[capacity];
+      hashes = new int[capacity];
+      children = new Node[capacity];
+      size = 0;
+      if (oldLabels != null) {
+        for (int i = 0; i < oldLabels.length; i++) {
+          if (oldLabels[i] != null) {
+            put(oldLabels[i], oldHashes[i], oldChildren[i]);
+          }
+        }
+      }
+    }
+  }
+
+  private final Node root = new Node();
+
+  /** Add a suffix, e.g., <code>co.uk</code>. */
+  void add(DomainSuffix suffix) {
+    String domain = suffix.getDomain();
+    Node node = root;
+    int end = domain.length();
+    while (true) {
+      int dot = domain.lastIndexOf('.', end - 1);
+      node = node.addChild(domain.substring(dot + 1, end));
+      if (dot < 0) {
+        break;
+      }
+      end = dot;
+    }
+    node.suffix = suffix;
+  }
+
+  /**
+   * Find the longest suffix of the host name <code>s[0:end]</code> consisting
+   * of whole labels which is a domain suffix and is not the entire host name.
+   * Host names consisting of a single label are matched as a whole.
+   *
+   * @return offset of the suffix in the host name, or -1 if no suffix matches
+   */
+  int find(CharSequence s, int end) {
+    Node node = root;
+    int matchStart = -1;
+    int labelEnd = end;
+    while (true) {
+      int labelStart = labelEnd;
+      while (labelStart > 0 && s.charAt(labelStart - 1) != '.') {
+        labelStart--;
+      }
+      node = node.getChild(s, labelStart, labelEnd,
+          hash(s, labelStart, labelEnd));
+      if (node == null) {
+        break;
+      }
+      if (node.suffix != null && (labelStart > 0 || labelEnd == end)) {
+        matchStart = labelStart;
+      }
+      if (labelStart == 0) {
+        break;
+      }
+      labelEnd = labelStart - 1;
+    }
+    return matchStart;
+  }
+
+  /** @return the domain suffix exactly matching <code>s[start:end]</code> */
+  DomainSuffix get(CharSequence s, int start, int end) {
+    Node node = root;
+    int labelEnd = end;
+    while (node != null) {
+      int labelStart = labelEnd;
+      while (labelStart > start && s.charAt(labelStart - 1) != '.') {
+        labelStart--;
+      }
+      node = node.getChild(s, labelStart, labelEnd,
+          hash(s, labelStart, labelEnd));
+      if (labelStart == start) {
+        break;
+      }
+      labelEnd = labelStart - 1;
+    }
+    return node == null ? null : node.suffix;
+  }
+
+  /** Same as {@link String#hashCode()} of <code>s[start:end]</code> */
+  private static int hash(CharSequence s, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      h = 31 * h + s.charAt(i);
+    }
+    // spread the bits, the table index is taken from the lower bits
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean regionEquals(String label, CharSequence s, int start,
+      int len) {
+    if (label.length() != len) {
+      return false;
+    }
+    for (int i = 0; i < len; i++) {
+      if (label.charAt(i) != s.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -37,6 +37,8 @@ public class DomainSuffixes {
 
   private HashMap<String, DomainSuffix> domains = new HashMap<>();
 
+  private DomainSuffixTrie trie = new DomainSuffixTrie();
+
   private static DomainSuffixes instance;
 
   /** private ctor */
@@ -65,6 +67,7 @@ public class DomainSuffixes {
 
   void addDomainSuffix(DomainSuffix tld) {
     domains.put(tld.getDomain(), tld);
+    trie.add(tld);
   }
 
   /** return whether the extension is a registered domain entry */
@@ -84,4 +87,26 @@ public class DomainSuffixes {
     return domains.get(extension);
   }
 
+  /**
+   * Return the {@link DomainSuffix} object for the extension
+   * <code>host[start:end]</code>, without creating a string for the extension.
+   */
+  public DomainSuffix get(CharSequence host, int start, int end) {
+    return trie.get(host, start, end);
+  }
+
+  /**
+   * Find the longest domain suffix of a host name <code>host[0:end]</code>
+   * which is not the entire host name, e.g., <code>co.uk</code> for
+   * <code>www.example.co.uk</code>. A host name consisting of a single label
+   * (<code>com</code>) is matched as a whole. The host name is looked up label
+   * by label without creating strings.
+   * 
+   * @return offset of the domain suffix in the host name or -1 if there is
+   *         none
+   */
+  public int findSuffix(CharSequence host, int end) {
+    return trie.find(host, end);
+  }
+
 }
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.http.api;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of byte arrays used as buffers while reading responses. Arrays are
+ * pooled in size classes of powers of two, starting with
+ * {@link HttpBase#BUFFER_SIZE}. The total size of all pooled arrays is
+ * bounded, arrays not fitting into the pool are left to the garbage
+ * collector.
+ */
+public class ByteArrayPool {
+
+  private static final int MIN_SIZE = HttpBase.BUFFER_SIZE;
+
+  private final Queue<byte[]>[] sizeClasses;
+  private final long maxPooledBytes;
+  private final AtomicLong pooledBytes = new AtomicLong();
+
+  /**
+   * @param maxArraySize
+   *          size of the largest arrays to be pooled
+   * @param maxPooledBytes
+   *          max. number of bytes held by the pool
+   */
+  @SuppressWarnings("unchecked")
+  public ByteArrayPool(int maxArraySize, long maxPooledBytes) {
+    int n = sizeClass(Math.max(MIN_SIZE, maxArraySize)) + 1;
+    sizeClasses = new Queue[n];
+    for (int i = 0; i < n; i++) {
+      sizeClasses[i] = new ConcurrentLinkedQueue<>();
+    }
+    this.maxPooledBytes = maxPooledBytes;
+  }
+
+  /** Index of the smallest size class holding <code>size</code> bytes */
+  private static int sizeClass(int size) {
+    if (size <= MIN_SIZE) {
+      return 0;
+    }
+    return 32 - Integer.numberOfLeadingZeros(size - 1)
+        - Integer.numberOfTrailingZeros(MIN_SIZE);
+  }
+
+  /**
+   * Get an array of at least <code>minSize</code> bytes. The content of the
+   * array is undefined.
+   */
+  public byte[] acquire(int minSize) {
+    int sizeClass = sizeClass(minSize);
+    if (sizeClass >= sizeClasses.length) {
+      return new byte[minSize];
+    }
+    byte[] array = sizeClasses[sizeClass].poll();
+    if (array != null) {
+      pooledBytes.addAndGet(-array.length);
+      return array;
+    }
+    return new byte[MIN_SIZE << sizeClass];
+  }
+
+  /** Return an array to the pool. */
+  public void release(byte[] array) {
+    if (array == null || array.length < MIN_SIZE
+        || Integer.bitCount(array.length) != 1) {
+      // not acquired from this pool
+      return;
+    }
+    int sizeClass = sizeClass(array.length);
+    if (sizeClass >= sizeClasses.length) {
+      return;
+    }
+    if (pooledBytes.addAndGet(array.length) > maxPooledBytes) {
+      pooledBytes.addAndGet(-array.length);
+      return;
+    }
+    sizeClasses[sizeClass].offer(array);
+  }
+
+  /** @return number of bytes held by the pool */
+  public long getPooledBytes() {
+    return pooledBytes.get();
+  }
+}
@@ -129,6 +129,13 @@ public abstract class HttpBase implements Protocol {
   /** Controls whether or not to set Cookie HTTP header based on CrawlDatum metadata */
   protected boolean enableCookieHeader = true;
 
+  /** Size of the largest buffers kept in the buffer pool */
+  private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+  /** Pool of buffers used to read the response content */
+  private ByteArrayPool bufferPool = new ByteArrayPool(MAX_POOLED_BUFFER_SIZE,
+      16 * 1024 * 1024);
+
   /** Creates a new instance of HttpBase */
   public HttpBase() {
     this(null);
@@ -163,6 +170,8 @@ public abstract class HttpBase implements Protocol {
     this.responseTime = conf.getBoolean("http.store.responsetime", true);
     this.enableIfModifiedsinceHeader = conf.getBoolean("http.enable.if.modified.since.header", true);
     this.enableCookieHeader = conf.getBoolean("http.enable.cookie.header", true);
+    this.bufferPool = new ByteArrayPool(MAX_POOLED_BUFFER_SIZE,
+        conf.getLong("http.content.buffer.pool.size", 16 * 1024 * 1024));
     this.robots.setConf(conf);
 
     // NUTCH-1941: read list of alternating agent names
@@ -342,10 +351,24 @@ public abstract class HttpBase implements Protocol {
       }
     } catch (Throwable e) {
       logger.error("Failed to get protocol output", e);
-      return new ProtocolOutput(null, new ProtocolStatus(e));
+      return new ProtocolOutput(null, getProtocolStatus(e));
     }
   }
 
+  /**
+   * Get the protocol status for an exception thrown while fetching a URL.
+   * Implementations may override this to map specific failures (e.g.,
+   * timeouts) to a protocol status other than
+   * {@link ProtocolStatus#EXCEPTION}.
+   * 
+   * @param e
+   *          exception thrown by {@link #getResponse(URL, CrawlDatum, boolean)}
+   * @return protocol status
+   */
+  protected ProtocolStatus getProtocolStatus(Throwable e) {
+    return new ProtocolStatus(e);
+  }
+
   /*
    * -------------------------- * </implementation:Protocol> *
    * --------------------------
@@ -420,6 +443,13 @@ public abstract class HttpBase implements Protocol {
     return tlsPreferredProtocols;
   }
 
+  /**
+   * @return pool of buffers used to read the response content
+   */
+  public ByteArrayPool getBufferPool() {
+    return bufferPool;
+  }
+
   private static String getAgentString(String agentName, String agentVersion,
       String agentDesc, String agentURL, String agentEmail) {
 
@@ -29,6 +29,7 @@ import org.apache.nutch.crawl.CrawlDatum;
 import org.apache.nutch.net.protocols.Response;
 import org.apache.nutch.protocol.Content;
 import org.apache.nutch.protocol.Protocol;
+import org.apache.nutch.protocol.RobotRulesCache;
 import org.apache.nutch.protocol.RobotRulesParser;
 
 import crawlercommons.robots.BaseRobotRules;
@@ -78,7 +79,9 @@ public class HttpRobotRulesParser extends RobotRulesParser {
    * Robot rules are cached for a unique combination of host, protocol, and
    * port. If no rules are found in the cache, a HTTP request is send to fetch
    * {{protocol://host:port/robots.txt}}. The robots.txt is then parsed and the
-   * rules are cached to avoid re-fetching and re-parsing it again.
+   * rules are cached to avoid re-fetching and re-parsing it again. If
+   * multiple threads miss the cache for the same host at the same time,
+   * robots.txt is fetched only once.
    * 
    * @param http
    *          The {@link Protocol} object
@@ -101,16 +104,26 @@ public class HttpRobotRulesParser extends RobotRulesParser {
       LOG.trace("Ignoring robots.txt (host is whitelisted) for URL: {}", url);
     }
 
-    String cacheKey = getCacheKey(url);
-    BaseRobotRules robotRules = CACHE.get(cacheKey);
+    final String cacheKey = getCacheKey(url);
+    return getRobotRules(cacheKey, url,
+        () -> loadRobotRules(http, url, cacheKey, robotsTxtContent));
+  }
+
+  /**
+   * Fetch and parse robots.txt for the given URL and put the rules into the
+   * cache, called on a cache miss.
+   */
+  protected BaseRobotRules loadRobotRules(Protocol http, URL url,
+      String cacheKey, List<Content> robotsTxtContent) {
 
-    if (robotRules != null) {
-      return robotRules; // cached rule
-    } else if (LOG.isTraceEnabled()) {
+    if (LOG.isTraceEnabled()) {
       LOG.trace("cache miss " + url);
     }
 
+    RobotRulesCache cache = getCache();
+    BaseRobotRules robotRules;
     boolean cacheRule = true;
+    long cacheTTL = cache.getTTL();
     URL redir = null;
 
     if (isWhiteListed(url)) {
@@ -152,9 +165,11 @@ public class HttpRobotRulesParser extends RobotRulesParser {
           }
         }
 
-        if (response.getCode() == 200) // found rules: parse them
+        if (response.getCode() == 200) { // found rules: parse them
           robotRules = parseRules(url.toString(), response.getContent(),
               response.getHeader("Content-Type"), agentNames);
+          cacheTTL = getCacheTTL(response, cacheTTL);
+        }
 
         else if ((response.getCode() == 403) && (!allowForbidden))
           robotRules = FORBID_ALL_RULES; // use forbid all
@@ -173,16 +188,49 @@ public class HttpRobotRulesParser extends RobotRulesParser {
     }
 
     if (cacheRule) {
-      CACHE.put(cacheKey, robotRules); // cache rules for host
+      cache.put(cacheKey, robotRules, cacheTTL); // cache rules for host
       if (redir != null && !redir.getHost().equalsIgnoreCase(url.getHost())) {
         // cache also for the redirected host
-        CACHE.put(getCacheKey(redir), robotRules);
+        cache.put(getCacheKey(redir), robotRules, cacheTTL);
       }
     }
 
     return robotRules;
   }
 
+  /**
+   * Get the time-to-live of robots.txt rules from the <code>max-age</code>
+   * directive of the <code>Cache-Control</code> response header. A server may
+   * only shorten the configured time-to-live this way.
+   *
+   * @param response
+   *          robots.txt response
+   * @param defaultTTL
+   *          time-to-live (in milliseconds) used if the response does not
+   *          announce a positive max. age
+   * @return time-to-live in milliseconds
+   */
+  protected static long getCacheTTL(Response response, long defaultTTL) {
+    String cacheControl = response.getHeader("Cache-Control");
+    if (cacheControl == null) {
+      return defaultTTL;
+    }
+    for (String directive : cacheControl.split(",")) {
+      directive = directive.trim().toLowerCase();
+      if (directive.startsWith("max-age=")) {
+        try {
+          long maxAge = Long.parseLong(directive.substring(8).trim()) * 1000;
+          if (maxAge > 0) {
+            return Math.min(maxAge, defaultTTL);
+          }
+        } catch (NumberFormatException e) {
+          // ignore invalid max-age
+        }
+      }
+    }
+    return defaultTTL;
+  }
+
   /**
    * Append {@link Content} of robots.txt to {@literal robotsTxtContent}
    * 
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.http.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growing byte buffer (similar to {@link java.io.ByteArrayOutputStream})
+ * backed by arrays taken from a {@link ByteArrayPool}. Data can be read from
+ * an input stream directly into the buffer without an intermediate array.
+ * {@link #close()} returns the backing array to the pool, the buffer must
+ * not be used afterwards.
+ */
+public class PooledByteArrayOutputStream extends OutputStream {
+
+  private final ByteArrayPool pool;
+  private byte[] buf;
+  private int count = 0;
+
+  /**
+   * @param pool
+   *          pool to take the backing arrays from
+   * @param initialSize
+   *          initial capacity
+   */
+  public PooledByteArrayOutputStream(ByteArrayPool pool, int initialSize) {
+    this.pool = pool;
+    this.buf = pool.acquire(initialSize);
+  }
+
+  private void ensureCapacity(int minCapacity) {
+    if (minCapacity <= buf.length) {
+      return;
+    }
+    int capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+        Math.max(minCapacity, 2L * buf.length));
+    byte[] newBuf = pool.acquire(capacity);
+    System.arraycopy(buf, 0, newBuf, 0, count);
+    pool.release(buf);
+    buf = newBuf;
+  }
+
+  @Override
+  public void write(int b) {
+    ensureCapacity(count + 1);
+    buf[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    ensureCapacity(count + len);
+    System.arraycopy(b, off, buf, count, len);
+    count += len;
+  }
+
+  /**
+   * Read up to <code>maxLength</code> bytes from the input stream into the
+   * buffer.
+   *
+   * @return number of bytes read, or -1 on end of stream
+   */
+  public int readFrom(InputStream in, int maxLength) throws IOException {
+    if (maxLength <= 0) {
+      return 0;
+    }
+    ensureCapacity(count + 1);
+    int n = in.read(buf, count, Math.min(maxLength, buf.length - count));
+    if (n > 0) {
+      count += n;
+    }
+    return n;
+  }
+
+  /** @return number of bytes in the buffer */
+  public int size() {
+    return count;
+  }
+
+  /** @return a copy of the buffer content of exactly {@link #size()} bytes */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buf, count);
+  }
+
+  /** Release the backing array to the pool. */
+  @Override
+  public void close() {
+    if (buf != null) {
+      pool.release(buf);
+      buf = null;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.http.api;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests for {@link ByteArrayPool} and {@link PooledByteArrayOutputStream}. */
+public class TestByteArrayPool {
+
+  @Test
+  public void testAcquireRelease() {
+    ByteArrayPool pool = new ByteArrayPool(64 * 1024, 100 * 1024);
+    byte[] a = pool.acquire(1);
+    Assert.assertEquals(HttpBase.BUFFER_SIZE, a.length);
+    byte[] b = pool.acquire(HttpBase.BUFFER_SIZE + 1);
+    Assert.assertEquals(2 * HttpBase.BUFFER_SIZE, b.length);
+    pool.release(a);
+    pool.release(b);
+    Assert.assertEquals(3 * HttpBase.BUFFER_SIZE, pool.getPooledBytes());
+    // recycled
+    Assert.assertSame(b, pool.acquire(2 * HttpBase.BUFFER_SIZE));
+    Assert.assertSame(a, pool.acquire(100));
+    Assert.assertEquals(0, pool.getPooledBytes());
+
+    // too large to be pooled
+    byte[] c = pool.acquire(100 * 1024);
+    Assert.assertEquals(100 * 1024, c.length);
+    pool.release(c);
+    Assert.assertEquals(0, pool.getPooledBytes());
+
+    // pool is bounded
+    for (int i = 0; i < 3; i++) {
+      pool.release(new byte[64 * 1024]);
+    }
+    Assert.assertEquals(64 * 1024, pool.getPooledBytes());
+  }
+
+  @Test
+  public void testOutputStream() throws Exception {
+    ByteArrayPool pool = new ByteArrayPool(1024 * 1024, 1024 * 1024);
+    byte[] data = new byte[100000];
+    new Random(0).nextBytes(data);
+    ByteArrayInputStream in = new ByteArrayInputStream(data);
+
+    PooledByteArrayOutputStream out = new PooledByteArrayOutputStream(pool,
+        HttpBase.BUFFER_SIZE);
+    out.write(data, 0, 10);
+    out.write(data[10]);
+    in.skip(11);
+    while (out.readFrom(in, 1000) != -1) {
+    }
+    Assert.assertEquals(data.length, out.size());
+    Assert.assertArrayEquals(data, out.toByteArray());
+    out.close();
+    // backing array (and arrays used while growing) returned to the pool
+    long pooled = pool.getPooledBytes();
+    Assert.assertEquals(128 * 1024, pool.acquire(data.length).length);
+    Assert.assertEquals(pooled - 128 * 1024, pool.getPooledBytes());
+  }
+}
@@ -27,11 +27,15 @@ import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.net.ParsedURL;
 import org.apache.nutch.net.URLFilter;
 import org.apache.nutch.util.URLUtil;
 
@@ -54,6 +58,14 @@ import org.apache.nutch.util.URLUtil;
  * <code>-</code>)means no.
  * </p>
  * 
+ * <p>
+ * Rules between a line <code>&gt;host-or-domain</code> and a line
+ * <code>&lt;</code> apply only to URLs of the given host or domain. Rules are
+ * indexed by host or domain, so that a URL is only checked against the global
+ * rules and the rules of its host and domain, still in the order they are
+ * defined.
+ * </p>
+ * 
  * @author J&eacute;r&ocirc;me Charron
  */
 public abstract class RegexURLFilterBase implements URLFilter {
@@ -62,8 +74,34 @@ public abstract class RegexURLFilterBase implements URLFilter {
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
-  /** An array of applicable rules */
-  private List<RegexRule> rules;
+  /** Rules with a position in the list of all rules */
+  private static class RuleList {
+    RegexRule[] rules = new RegexRule[4];
+    int[] positions = new int[4];
+    int size = 0;
+
+    void add(RegexRule rule, int position) {
+      if (size == rules.length) {
+        rules = Arrays.copyOf(rules, 2 * size);
+        positions = Arrays.copyOf(positions, 2 * size);
+      }
+      rules[size] = rule;
+      positions[size++] = position;
+    }
+
+    /** @return position of the i-th rule or MAX_VALUE if there is none */
+    int position(int i) {
+      return i < size ? positions[i] : Integer.MAX_VALUE;
+    }
+  }
+
+  private static final RuleList EMPTY_RULES = new RuleList();
+
+  /** Rules applicable to all URLs */
+  private RuleList globalRules;
+
+  /** Rules applicable to URLs of a host or domain */
+  private Map<String, RuleList> hostOrDomainRules;
 
   /** The current configuration */
   private Configuration conf;
@@ -106,7 +144,7 @@ public abstract class RegexURLFilterBase implements URLFilter {
    */
   protected RegexURLFilterBase(Reader reader) throws IOException,
       IllegalArgumentException {
-    rules = readRules(reader);
+    setRules(readRules(reader));
   }
 
   /**
@@ -147,6 +185,21 @@ public abstract class RegexURLFilterBase implements URLFilter {
   protected abstract Reader getRulesReader(Configuration conf)
       throws IOException;
 
+  /**
+   * Called after the rules are read. Implementations may replace the rules by
+   * an equivalent list of rules which are faster to match, i.e. the first
+   * matching rule of the returned list must have the same sign as the first
+   * matching rule of the original list. The default implementation returns
+   * the rules unchanged.
+   * 
+   * @param rules
+   *          rules in the order they have been read
+   * @return rules to be applied
+   */
+  protected List<RegexRule> compileRules(List<RegexRule> rules) {
+    return rules;
+  }
+
   /*
    * -------------------------- * <implementation:URLFilter> *
    * --------------------------
@@ -154,43 +207,77 @@ public abstract class RegexURLFilterBase implements URLFilter {
 
   // Inherited Javadoc
   public String filter(String url) {
-    String host = URLUtil.getHost(url);
+    String host = null;
     String domain = null;
-    
-    try {
-      domain = URLUtil.getDomainName(url);
-    } catch (MalformedURLException e) {
-      // shouldnt happen here right?
+    if (!hostOrDomainRules.isEmpty()) {
+      host = URLUtil.getHost(url);
+      try {
+        domain = URLUtil.getDomainName(url);
+      } catch (MalformedURLException e) {
+        // shouldnt happen here right?
+      }
     }
-    
-    if (LOG.isDebugEnabled()) {
-      LOG.debug("URL belongs to host " + host + " and domain " + domain);
+    return filter(url, host, domain);
+  }
+
+  @Override
+  public String filter(ParsedURL url) {
+    if (hostOrDomainRules.isEmpty()) {
+      return filter(url.toString(), null, null);
     }
+    return filter(url.toString(), url.getHost(), url.getDomainName());
+  }
 
-    for (RegexRule rule : rules) {
-      // Skip the skip for rules that don't share the same host and domain
-      if (rule.hostOrDomain() != null &&
-            !rule.hostOrDomain().equals(host) &&
-            !rule.hostOrDomain().equals(domain)) {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Skipping rule [" + rule.regex() + "] for host: " + rule.hostOrDomain());
-        }
+  private String filter(String url, String host, String domain) {
+    RuleList hostRules = EMPTY_RULES;
+    RuleList domainRules = EMPTY_RULES;
+    if (!hostOrDomainRules.isEmpty()) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("URL belongs to host " + host + " and domain " + domain);
+      }
+      hostRules = getRules(host);
+      if (domain != null && !domain.equals(host)) {
+        domainRules = getRules(domain);
+      }
+    }
 
-        continue;
+    // apply global, host and domain rules in the order they are defined
+    int g = 0, h = 0, d = 0;
+    while (true) {
+      int gPos = globalRules.position(g);
+      int hPos = hostRules.position(h);
+      int dPos = domainRules.position(d);
+      RegexRule rule;
+      if (gPos < hPos && gPos < dPos) {
+        rule = globalRules.rules[g++];
+      } else if (hPos < dPos) {
+        rule = hostRules.rules[h++];
+      } else if (dPos < Integer.MAX_VALUE) {
+        rule = domainRules.rules[d++];
+      } else {
+        break;
       }
-    
+
       if (LOG.isDebugEnabled()) {
-        LOG.debug("Applying rule [" + rule.regex() + "] for host: " + host + " and domain " + domain);
+        LOG.debug("Applying rule [" + rule.regex() + "] for host/domain: "
+            + rule.hostOrDomain());
       }
 
       if (rule.match(url)) {
         return rule.accept() ? url : null;
       }
     }
-    ;
     return null;
   }
 
+  private RuleList getRules(String hostOrDomain) {
+    if (hostOrDomain == null) {
+      return EMPTY_RULES;
+    }
+    RuleList rules = hostOrDomainRules.get(hostOrDomain);
+    return rules == null ? EMPTY_RULES : rules;
+  }
+
   /*
    * --------------------------- * </implementation:URLFilter> *
    * ---------------------------
@@ -213,7 +300,7 @@ public abstract class RegexURLFilterBase implements URLFilter {
       throw new RuntimeException(e.getMessage(), e);
     }
     try {
-      rules = readRules(reader);
+      setRules(readRules(reader));
     } catch (IOException e) {
       if (LOG.isErrorEnabled()) {
         LOG.error(e.getMessage());
@@ -231,6 +318,29 @@ public abstract class RegexURLFilterBase implements URLFilter {
    * ------------------------------
    */
 
+  /**
+   * Index the rules by host or domain.
+   */
+  private void setRules(List<RegexRule> rules) {
+    RuleList global = new RuleList();
+    Map<String, RuleList> index = new HashMap<>();
+    for (int i = 0; i < rules.size(); i++) {
+      RegexRule rule = rules.get(i);
+      if (rule.hostOrDomain() == null) {
+        global.add(rule, i);
+      } else {
+        RuleList list = index.get(rule.hostOrDomain());
+        if (list == null) {
+          list = new RuleList();
+          index.put(rule.hostOrDomain(), list);
+        }
+        list.add(rule, i);
+      }
+    }
+    globalRules = global;
+    hostOrDomainRules = index;
+  }
+
   /**
    * Read the specified file of rules.
    * 
@@ -280,7 +390,7 @@ public abstract class RegexURLFilterBase implements URLFilter {
       RegexRule rule = createRule(sign, regex, hostOrDomain);
       rules.add(rule);
     }
-    return rules;
+    return compileRules(rules);
   }
 
   /**
@@ -22,6 +22,7 @@ import java.net.MalformedURLException;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.regex.Pattern;
 
 import org.apache.nutch.parse.Outlink;
 import org.apache.nutch.util.NodeWalker;
@@ -41,6 +42,8 @@ import org.apache.hadoop.io.Text;
  * 
  */
 public class DOMContentUtils {
+
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
   
   private String srcTagMetaName;
   private boolean keepNodenames;
@@ -101,6 +104,22 @@ public class DOMContentUtils {
     keepNodenames = (srcTagMetaName != null && srcTagMetaName.length() > 0);
   }
 
+  /**
+   * @return parameters of link-carrying element <code>elName</code> (lower
+   *         case), or null if outlinks are not extracted from the element
+   */
+  LinkParams getLinkParams(String elName) {
+    return linkParams.get(elName);
+  }
+
+  /**
+   * @return name of the outlink metadata field to store the element name of
+   *         the link, or null if not configured
+   */
+  String getSrcTagMetaName() {
+    return keepNodenames ? srcTagMetaName : null;
+  }
+
   /**
    * This method takes a {@link StringBuffer} and a DOM {@link Node}, and will
    * append all the content text found beneath the DOM node to the
@@ -163,22 +182,29 @@ public class DOMContentUtils {
         walker.skipChildren();
       }
       if (nodeType == Node.TEXT_NODE) {
-        // cleanup and trim the value
-        String text = currentNode.getNodeValue();
-        text = text.replaceAll("\\s+", " ");
-        text = text.trim();
-        if (text.length() > 0) {
-          appendSpace(sb);
-          sb.append(text);
-        } else {
-          appendParagraphSeparator(sb);
-        }
+        appendText(sb, currentNode.getNodeValue());
       }
     }
 
     return abort;
   }
 
+  /**
+   * Append the content of a text node: white space is normalized, a text
+   * consisting only of white space is taken as paragraph break.
+   */
+  static void appendText(StringBuffer sb, String text) {
+    // cleanup and trim the value
+    text = WHITESPACE.matcher(text).replaceAll(" ");
+    text = text.trim();
+    if (text.length() > 0) {
+      appendSpace(sb);
+      sb.append(text);
+    } else {
+      appendParagraphSeparator(sb);
+    }
+  }
+
   /**
    * Conditionally append a paragraph/line break to StringBuffer unless last
    * character a already indicates a paragraph break. Also remove trailing space
@@ -187,7 +213,7 @@ public class DOMContentUtils {
    * @param buffer
    *          StringBuffer to append paragraph break
    */
-  private void appendParagraphSeparator(StringBuffer buffer) {
+  static void appendParagraphSeparator(StringBuffer buffer) {
     if (buffer.length() == 0) {
       return;
     }
@@ -211,7 +237,7 @@ public class DOMContentUtils {
    * @param buffer
    *          StringBuffer to append space
    */
-  private void appendSpace(StringBuffer buffer) {
+  static void appendSpace(StringBuffer buffer) {
     if (buffer.length() == 0) {
       return;
     }
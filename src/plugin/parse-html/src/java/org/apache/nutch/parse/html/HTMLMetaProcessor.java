@@ -60,157 +60,179 @@ public class HTMLMetaProcessor {
 
       if ("meta".equalsIgnoreCase(node.getNodeName())) {
         NamedNodeMap attrs = node.getAttributes();
-        Node nameNode = null;
-        Node equivNode = null;
-        Node contentNode = null;
+        String name = null;
+        String equiv = null;
+        String content = null;
         // Retrieves name, http-equiv and content attribues
         for (int i = 0; i < attrs.getLength(); i++) {
           Node attr = attrs.item(i);
           String attrName = attr.getNodeName().toLowerCase();
           if (attrName.equals("name")) {
-            nameNode = attr;
+            name = attr.getNodeValue();
           } else if (attrName.equals("http-equiv")) {
-            equivNode = attr;
+            equiv = attr.getNodeValue();
           } else if (attrName.equals("content")) {
-            contentNode = attr;
+            content = attr.getNodeValue();
           }
         }
+        processMetaTag(metaTags, name, equiv, content, currURL);
 
-        if (nameNode != null) {
-          if (contentNode != null) {
-            String name = nameNode.getNodeValue().toLowerCase();
-            metaTags.getGeneralTags().add(name, contentNode.getNodeValue());
-            if ("robots".equals(name)) {
+      } else if ("base".equalsIgnoreCase(node.getNodeName())) {
+        NamedNodeMap attrs = node.getAttributes();
+        Node hrefNode = attrs.getNamedItem("href");
 
-              if (contentNode != null) {
-                String directives = contentNode.getNodeValue().toLowerCase();
-                int index = directives.indexOf("none");
+        if (hrefNode != null) {
+          processBaseTag(metaTags, hrefNode.getNodeValue(), currURL);
+        }
 
-                if (index >= 0) {
-                  metaTags.setNoIndex();
-                  metaTags.setNoFollow();
-                }
+      }
 
-                index = directives.indexOf("all");
-                if (index >= 0) {
-                  // do nothing...
-                }
+    }
 
-                index = directives.indexOf("noindex");
-                if (index >= 0) {
-                  metaTags.setNoIndex();
-                }
+    NodeList children = node.getChildNodes();
+    if (children != null) {
+      int len = children.getLength();
+      for (int i = 0; i < len; i++) {
+        getMetaTagsHelper(metaTags, children.item(i), currURL);
+      }
+    }
+  }
 
-                index = directives.indexOf("nofollow");
-                if (index >= 0) {
-                  metaTags.setNoFollow();
-                }
+  /**
+   * Sets the indicators in <code>metaTags</code> based on the attributes of a
+   * single META tag.
+   *
+   * @param name
+   *          value of the <code>name</code> attribute or null
+   * @param equiv
+   *          value of the <code>http-equiv</code> attribute or null
+   * @param content
+   *          value of the <code>content</code> attribute or null
+   * @param currURL
+   *          URL of the document
+   */
+  public static final void processMetaTag(HTMLMetaTags metaTags, String name,
+      String equiv, String content, URL currURL) {
 
-                index = directives.indexOf("noarchive");
-                if (index >= 0) {
-                  metaTags.setNoCache();
-                }
-              }
+    if (name != null) {
+      if (content != null) {
+        name = name.toLowerCase();
+        metaTags.getGeneralTags().add(name, content);
+        if ("robots".equals(name)) {
 
-            } // end if (name == robots)
+          String directives = content.toLowerCase();
+          int index = directives.indexOf("none");
+
+          if (index >= 0) {
+            metaTags.setNoIndex();
+            metaTags.setNoFollow();
           }
-        }
 
-        if (equivNode != null) {
-          if (contentNode != null) {
-            String name = equivNode.getNodeValue().toLowerCase();
-            String content = contentNode.getNodeValue();
-            metaTags.getHttpEquivTags().setProperty(name, content);
-            if ("pragma".equals(name)) {
-              content = content.toLowerCase();
-              int index = content.indexOf("no-cache");
-              if (index >= 0)
-                metaTags.setNoCache();
-            } else if ("refresh".equals(name)) {
-              int idx = content.indexOf(';');
-              String time = null;
-              if (idx == -1) { // just the refresh time
-                time = content;
-              } else
-                time = content.substring(0, idx);
-              try {
-                metaTags.setRefreshTime(Integer.parseInt(time));
-                // skip this if we couldn't parse the time
-                metaTags.setRefresh(true);
-              } catch (Exception e) {
-                ;
-              }
-              URL refreshUrl = null;
-              if (metaTags.getRefresh() && idx != -1) { // set the URL
-                idx = content.toLowerCase().indexOf("url=");
-                if (idx == -1) { // assume a mis-formatted entry with just the
-                                 // url
-                  idx = content.indexOf(';') + 1;
-                } else
-                  idx += 4;
-                if (idx != -1) {
-                  String url = content.substring(idx);
-                  try {
-                    refreshUrl = new URL(url);
-                  } catch (Exception e) {
-                    // XXX according to the spec, this has to be an absolute
-                    // XXX url. However, many websites use relative URLs and
-                    // XXX expect browsers to handle that.
-                    // XXX Unfortunately, in some cases this may create a
-                    // XXX infinitely recursive paths (a crawler trap)...
-                    // if (!url.startsWith("/")) url = "/" + url;
-                    try {
-                      refreshUrl = new URL(currURL, url);
-                    } catch (Exception e1) {
-                      refreshUrl = null;
-                    }
-                  }
-                }
-              }
-              if (metaTags.getRefresh()) {
-                if (refreshUrl == null) {
-                  // apparently only refresh time was present. set the URL
-                  // to the same URL.
-                  refreshUrl = currURL;
-                }
-                metaTags.setRefreshHref(refreshUrl);
-              }
-            }
+          index = directives.indexOf("all");
+          if (index >= 0) {
+            // do nothing...
           }
-        }
 
-      } else if ("base".equalsIgnoreCase(node.getNodeName())) {
-        NamedNodeMap attrs = node.getAttributes();
-        Node hrefNode = attrs.getNamedItem("href");
+          index = directives.indexOf("noindex");
+          if (index >= 0) {
+            metaTags.setNoIndex();
+          }
 
-        if (hrefNode != null) {
-          String urlString = hrefNode.getNodeValue();
+          index = directives.indexOf("nofollow");
+          if (index >= 0) {
+            metaTags.setNoFollow();
+          }
+
+          index = directives.indexOf("noarchive");
+          if (index >= 0) {
+            metaTags.setNoCache();
+          }
 
-          URL url = null;
+        } // end if (name == robots)
+      }
+    }
+
+    if (equiv != null) {
+      if (content != null) {
+        equiv = equiv.toLowerCase();
+        metaTags.getHttpEquivTags().setProperty(equiv, content);
+        if ("pragma".equals(equiv)) {
+          int index = content.toLowerCase().indexOf("no-cache");
+          if (index >= 0)
+            metaTags.setNoCache();
+        } else if ("refresh".equals(equiv)) {
+          int idx = content.indexOf(';');
+          String time = null;
+          if (idx == -1) { // just the refresh time
+            time = content;
+          } else
+            time = content.substring(0, idx);
           try {
-            if (currURL == null)
-              url = new URL(urlString);
-            else
-              url = new URL(currURL, urlString);
+            metaTags.setRefreshTime(Integer.parseInt(time));
+            // skip this if we couldn't parse the time
+            metaTags.setRefresh(true);
           } catch (Exception e) {
             ;
           }
-
-          if (url != null)
-            metaTags.setBaseHref(url);
+          URL refreshUrl = null;
+          if (metaTags.getRefresh() && idx != -1) { // set the URL
+            idx = content.toLowerCase().indexOf("url=");
+            if (idx == -1) { // assume a mis-formatted entry with just the
+                             // url
+              idx = content.indexOf(';') + 1;
+            } else
+              idx += 4;
+            if (idx != -1) {
+              String url = content.substring(idx);
+              try {
+                refreshUrl = new URL(url);
+              } catch (Exception e) {
+                // XXX according to the spec, this has to be an absolute
+                // XXX url. However, many websites use relative URLs and
+                // XXX expect browsers to handle that.
+                // XXX Unfortunately, in some cases this may create a
+                // XXX infinitely recursive paths (a crawler trap)...
+                // if (!url.startsWith("/")) url = "/" + url;
+                try {
+                  refreshUrl = new URL(currURL, url);
+                } catch (Exception e1) {
+                  refreshUrl = null;
+                }
+              }
+            }
+          }
+          if (metaTags.getRefresh()) {
+            if (refreshUrl == null) {
+              // apparently only refresh time was present. set the URL
+              // to the same URL.
+              refreshUrl = currURL;
+            }
+            metaTags.setRefreshHref(refreshUrl);
+          }
         }
-
       }
-
     }
+  }
 
-    NodeList children = node.getChildNodes();
-    if (children != null) {
-      int len = children.getLength();
-      for (int i = 0; i < len; i++) {
-        getMetaTagsHelper(metaTags, children.item(i), currURL);
-      }
+  /**
+   * Sets the base URL in <code>metaTags</code> given the <code>href</code>
+   * attribute of a BASE tag.
+   */
+  public static final void processBaseTag(HTMLMetaTags metaTags,
+      String urlString, URL currURL) {
+
+    URL url = null;
+    try {
+      if (currURL == null)
+        url = new URL(urlString);
+      else
+        url = new URL(currURL, urlString);
+    } catch (Exception e) {
+      ;
     }
+
+    if (url != null)
+      metaTags.setBaseHref(url);
   }
 
 }
@@ -33,6 +33,7 @@ import java.nio.charset.StandardCharsets;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.DOMException;
@@ -144,6 +145,9 @@ public class HtmlParser implements Parser {
 
   private String cachingPolicy;
 
+  /** extract content without building a DOM tree */
+  private boolean streaming;
+
   public ParseResult getParse(Content content) {
     HTMLMetaTags metaTags = new HTMLMetaTags();
 
@@ -161,7 +165,8 @@ public class HtmlParser implements Parser {
     Metadata metadata = new Metadata();
 
     // parse the content
-    DocumentFragment root;
+    DocumentFragment root = null;
+    SAXContentHandler handler = null;
     try {
       byte[] contentInOctets = content.getContent();
       InputSource input = new InputSource(new ByteArrayInputStream(
@@ -179,7 +184,12 @@ public class HtmlParser implements Parser {
       if (LOG.isTraceEnabled()) {
         LOG.trace("Parsing...");
       }
-      root = parse(input);
+      if (streaming) {
+        handler = new SAXContentHandler(utils, metaTags, base);
+        parseStreaming(input, handler);
+      } else {
+        root = parse(input);
+      }
     } catch (IOException e) {
       return new ParseStatus(e)
           .getEmptyParseResult(content.getUrl(), getConf());
@@ -196,7 +206,9 @@ public class HtmlParser implements Parser {
     }
 
     // get meta directives
-    HTMLMetaProcessor.getMetaTags(metaTags, root, base);
+    if (handler == null) {
+      HTMLMetaProcessor.getMetaTags(metaTags, root, base);
+    }
 
     // populate Nutch metadata with HTML meta directives
     metadata.addAll(metaTags.getGeneralTags());
@@ -210,20 +222,26 @@ public class HtmlParser implements Parser {
       if (LOG.isTraceEnabled()) {
         LOG.trace("Getting text...");
       }
-      utils.getText(sb, root); // extract text
-      text = sb.toString();
-      sb.setLength(0);
-      if (LOG.isTraceEnabled()) {
-        LOG.trace("Getting title...");
+      if (handler != null) {
+        text = handler.getText();
+        title = handler.getTitle();
+      } else {
+        utils.getText(sb, root); // extract text
+        text = sb.toString();
+        sb.setLength(0);
+        if (LOG.isTraceEnabled()) {
+          LOG.trace("Getting title...");
+        }
+        utils.getTitle(sb, root); // extract title
+        title = sb.toString().trim();
       }
-      utils.getTitle(sb, root); // extract title
-      title = sb.toString().trim();
     }
 
     if (!metaTags.getNoFollow()) { // okay to follow links
       ArrayList<Outlink> l = new ArrayList<Outlink>(); // extract outlinks
       URL baseTag = base;
-      String baseTagHref = utils.getBase(root);
+      String baseTagHref = handler != null ? handler.getBase()
+          : utils.getBase(root);
       if (baseTagHref != null) {
         try {
           baseTag = new URL(base, baseTagHref);
@@ -234,7 +252,11 @@ public class HtmlParser implements Parser {
       if (LOG.isTraceEnabled()) {
         LOG.trace("Getting links...");
       }
-      utils.getOutlinks(baseTag, l, root);
+      if (handler != null) {
+        handler.getOutlinks(baseTag, l);
+      } else {
+        utils.getOutlinks(baseTag, l, root);
+      }
       outlinks = l.toArray(new Outlink[l.size()]);
       if (LOG.isTraceEnabled()) {
         LOG.trace("found " + outlinks.length + " outlinks in "
@@ -271,6 +293,45 @@ public class HtmlParser implements Parser {
       return parseNeko(input);
   }
 
+  /**
+   * Parse the document and pass the SAX events to the handler without
+   * building a DOM tree.
+   */
+  private void parseStreaming(InputSource input, SAXContentHandler handler)
+      throws Exception {
+    XMLReader reader;
+    if ("tagsoup".equalsIgnoreCase(parserImpl)) {
+      reader = new org.ccil.cowan.tagsoup.Parser();
+      reader.setFeature(org.ccil.cowan.tagsoup.Parser.ignoreBogonsFeature,
+          true);
+      reader.setFeature(org.ccil.cowan.tagsoup.Parser.bogonsEmptyFeature,
+          false);
+    } else {
+      reader = new org.cyberneko.html.parsers.SAXParser();
+      try {
+        reader.setFeature(
+            "http://cyberneko.org/html/features/scanner/allow-selfclosing-iframe",
+            true);
+        reader.setProperty(
+            "http://cyberneko.org/html/properties/default-encoding",
+            defaultCharEncoding);
+        reader.setFeature(
+            "http://cyberneko.org/html/features/scanner/ignore-specified-charset",
+            true);
+        reader.setFeature(
+            "http://cyberneko.org/html/features/balance-tags/ignore-outside-content",
+            false);
+        reader.setFeature("http://cyberneko.org/html/features/report-errors",
+            LOG.isTraceEnabled());
+      } catch (SAXException e) {
+      }
+    }
+    reader.setContentHandler(handler);
+    reader.setProperty("http://xml.org/sax/properties/lexical-handler",
+        handler);
+    reader.parse(input);
+  }
+
   private DocumentFragment parseTagSoup(InputSource input) throws Exception {
     HTMLDocumentImpl doc = new HTMLDocumentImpl();
     DocumentFragment frag = doc.createDocumentFragment();
@@ -368,6 +429,11 @@ public class HtmlParser implements Parser {
     this.utils = new DOMContentUtils(conf);
     this.cachingPolicy = getConf().get("parser.caching.forbidden.policy",
         Nutch.CACHING_FORBIDDEN_CONTENT);
+    this.streaming = getConf().getBoolean("parser.html.streaming", false);
+    if (streaming && htmlParseFilters.requiresDOM()) {
+      LOG.info("HTML parse filters require DOM, streaming mode disabled");
+      streaming = false;
+    }
   }
 
   @Override
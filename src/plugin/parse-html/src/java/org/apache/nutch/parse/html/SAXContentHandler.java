@@ -0,0 +1,388 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse.html;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.parse.HTMLMetaTags;
+import org.apache.nutch.parse.Outlink;
+import org.apache.nutch.parse.html.DOMContentUtils.LinkParams;
+import org.apache.nutch.util.URLUtil;
+import org.xml.sax.Attributes;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Extracts text, title, base URL, meta tags and outlinks from SAX events in a
+ * single pass without building a DOM tree. The results follow those of
+ * {@link DOMContentUtils} and {@link HTMLMetaProcessor} applied on the DOM
+ * tree of the same document.
+ */
+public class SAXContentHandler extends DefaultHandler implements
+    LexicalHandler {
+
+  /** A link element whose end tag has not been seen yet */
+  private static class OpenLink {
+    final LinkParams params;
+    final String target;
+    final int depth;
+    /** index of the link in the list of outlinks */
+    final int index;
+    final StringBuffer text = new StringBuffer();
+    final StringBuilder alt = new StringBuilder();
+    int anchors = 0;
+    boolean aborted = false;
+    int children = 0;
+    boolean nestedLink = false;
+    boolean hasText = false;
+
+    OpenLink(LinkParams params, String target, int depth, int index) {
+      this.params = params;
+      this.target = target;
+      this.depth = depth;
+      this.index = index;
+    }
+  }
+
+  /** An outlink before resolving the target URL */
+  private static class RawOutlink {
+    final String target;
+    final String anchor;
+    final String elName;
+
+    RawOutlink(String target, String anchor, String elName) {
+      this.target = target;
+      this.anchor = anchor;
+      this.elName = elName;
+    }
+  }
+
+  private final DOMContentUtils utils;
+  private final HTMLMetaTags metaTags;
+  private final URL currURL;
+
+  private final StringBuffer text = new StringBuffer();
+  private final StringBuffer title = new StringBuffer();
+  private final StringBuilder chars = new StringBuilder();
+  private String baseHref = null;
+  private boolean inBody = false;
+  private boolean inTitle = false;
+  private boolean titleFound = false;
+  private int skipDepth = 0;
+  private int depth = 0;
+
+  private final LinkedList<OpenLink> openLinks = new LinkedList<>();
+  private final List<RawOutlink> outlinks = new ArrayList<>();
+
+  /**
+   * @param utils
+   *          configured content utils (link elements to extract outlinks from)
+   * @param metaTags
+   *          meta tags found in the document are added
+   * @param currURL
+   *          URL of the document
+   */
+  public SAXContentHandler(DOMContentUtils utils, HTMLMetaTags metaTags,
+      URL currURL) {
+    this.utils = utils;
+    this.metaTags = metaTags;
+    this.currURL = currURL;
+  }
+
+  /** @return text of the document */
+  public String getText() {
+    return text.toString();
+  }
+
+  /** @return text of the first title element before body */
+  public String getTitle() {
+    return title.toString().trim();
+  }
+
+  /** @return href of the first base element before body or null */
+  public String getBase() {
+    return baseHref;
+  }
+
+  /**
+   * Add outlinks found in the document, resolved against the given base URL.
+   */
+  public void getOutlinks(URL base, ArrayList<Outlink> links) {
+    String srcTagMetaName = utils.getSrcTagMetaName();
+    for (RawOutlink link : outlinks) {
+      if (link == null) {
+        continue;
+      }
+      try {
+        URL url = URLUtil.resolveURL(base, link.target);
+        Outlink outlink = new Outlink(url.toString(), link.anchor);
+        if (srcTagMetaName != null) {
+          MapWritable metadata = new MapWritable();
+          metadata.put(new Text(srcTagMetaName), new Text(link.elName));
+          outlink.setMetadata(metadata);
+        }
+        links.add(outlink);
+      } catch (MalformedURLException e) {
+        // don't care
+      }
+    }
+  }
+
+  private static String getName(String localName, String qName) {
+    String name = localName;
+    if (name == null || name.isEmpty()) {
+      name = qName;
+    }
+    return name.toLowerCase();
+  }
+
+  /** Process the characters of a text node. */
+  private void flushText() {
+    if (chars.length() == 0) {
+      return;
+    }
+    String str = chars.toString();
+    chars.setLength(0);
+    for (OpenLink link : openLinks) {
+      if (link.depth == depth) {
+        link.children++;
+        if (!link.hasText) {
+          link.hasText = str.trim().length() > 0;
+        }
+      }
+    }
+    if (skipDepth > 0) {
+      // text of script or style element
+      return;
+    }
+    DOMContentUtils.appendText(text, str);
+    if (inTitle) {
+      DOMContentUtils.appendText(title, str);
+    }
+    for (OpenLink link : openLinks) {
+      if (!link.aborted) {
+        DOMContentUtils.appendText(link.text, str);
+      }
+    }
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName,
+      Attributes atts) {
+    flushText();
+    String name = getName(localName, qName);
+
+    for (OpenLink link : openLinks) {
+      if (link.depth == depth) {
+        link.children++;
+        if (name.equals(link.params.elName)) {
+          link.nestedLink = true;
+        }
+      }
+      if ("a".equals(name) && ++link.anchors > 1) {
+        // text of links with nested anchors is cut at the nested anchor
+        link.aborted = true;
+      }
+      if ("img".equals(name)) {
+        String alt = atts.getValue("alt");
+        if (alt != null && alt.trim().length() > 0) {
+          if (link.alt.length() > 0)
+            link.alt.append(' ');
+          link.alt.append(alt);
+        }
+      }
+    }
+    depth++;
+
+    if ("script".equals(name) || "style".equals(name)) {
+      skipDepth++;
+    } else if ("body".equals(name)) {
+      inBody = true;
+    } else if (!inBody) {
+      if ("title".equals(name) && !titleFound) {
+        inTitle = true;
+      } else if ("meta".equals(name)) {
+        String metaName = null, equiv = null, content = null;
+        for (int i = 0; i < atts.getLength(); i++) {
+          String attrName = getName(atts.getLocalName(i), atts.getQName(i));
+          if (attrName.equals("name")) {
+            metaName = atts.getValue(i);
+          } else if (attrName.equals("http-equiv")) {
+            equiv = atts.getValue(i);
+          } else if (attrName.equals("content")) {
+            content = atts.getValue(i);
+          }
+        }
+        HTMLMetaProcessor.processMetaTag(metaTags, metaName, equiv, content,
+            currURL);
+      } else if ("base".equals(name)) {
+        String href = getAttribute(atts, "href");
+        if (href != null) {
+          HTMLMetaProcessor.processBaseTag(metaTags, href, currURL);
+          if (baseHref == null) {
+            baseHref = href;
+          }
+        }
+      }
+    }
+
+    LinkParams params = utils.getLinkParams(name);
+    if (params != null) {
+      String target = null;
+      boolean noFollow = false;
+      boolean post = false;
+      for (int i = 0; i < atts.getLength(); i++) {
+        String attrName = atts.getQName(i);
+        if (params.attrName.equalsIgnoreCase(attrName)) {
+          target = atts.getValue(i);
+        } else if ("rel".equalsIgnoreCase(attrName)
+            && "nofollow".equalsIgnoreCase(atts.getValue(i))) {
+          noFollow = true;
+        } else if ("method".equalsIgnoreCase(attrName)
+            && "post".equalsIgnoreCase(atts.getValue(i))) {
+          post = true;
+        }
+      }
+      if (noFollow || post) {
+        target = null;
+      }
+      if (params.childLen == 0) {
+        // element without inner structure, anchor is the image alt text
+        if (target != null) {
+          String alt = "img".equals(name) ? atts.getValue("alt") : null;
+          outlinks.add(new RawOutlink(target, alt == null ? "" : alt.trim(),
+              name));
+        }
+      } else {
+        // reserve the position to keep the document order of outlinks
+        OpenLink link = new OpenLink(params, target, depth, outlinks.size());
+        if ("a".equals(name)) {
+          link.anchors = 1;
+        }
+        outlinks.add(null);
+        openLinks.addFirst(link);
+      }
+    }
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) {
+    flushText();
+    String name = getName(localName, qName);
+    depth--;
+
+    if ("script".equals(name) || "style".equals(name)) {
+      if (skipDepth > 0)
+        skipDepth--;
+    } else if ("title".equals(name) && inTitle) {
+      inTitle = false;
+      titleFound = true;
+    }
+
+    OpenLink link = openLinks.peekFirst();
+    if (link != null && link.depth == depth + 1
+        && name.equals(link.params.elName)) {
+      openLinks.removeFirst();
+      if (link.target != null && !isEmptyLink(link)) {
+        String anchor = link.text.toString().trim();
+        if (anchor.length() == 0) {
+          // try harder - use img alt if present
+          anchor = link.alt.toString();
+        }
+        outlinks.set(link.index, new RawOutlink(link.target, anchor.trim(),
+            name));
+      }
+    }
+  }
+
+  /**
+   * Links without inner structure are discarded, as are links which contain
+   * only a single nested link and white space.
+   */
+  private static boolean isEmptyLink(OpenLink link) {
+    if (link.children == 0) {
+      return true;
+    }
+    return link.nestedLink && !link.hasText && link.children <= 3;
+  }
+
+  private static String getAttribute(Attributes atts, String name) {
+    for (int i = 0; i < atts.getLength(); i++) {
+      if (name.equalsIgnoreCase(atts.getQName(i))) {
+        return atts.getValue(i);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) {
+    chars.append(ch, start, length);
+  }
+
+  @Override
+  public void ignorableWhitespace(char[] ch, int start, int length) {
+    chars.append(ch, start, length);
+  }
+
+  @Override
+  public void endDocument() {
+    flushText();
+  }
+
+  @Override
+  public void comment(char[] ch, int start, int length) {
+    // a comment ends a text node
+    flushText();
+    for (OpenLink link : openLinks) {
+      if (link.depth == depth) {
+        link.children++;
+      }
+    }
+  }
+
+  @Override
+  public void startDTD(String name, String publicId, String systemId) {
+  }
+
+  @Override
+  public void endDTD() {
+  }
+
+  @Override
+  public void startEntity(String name) {
+  }
+
+  @Override
+  public void endEntity(String name) {
+  }
+
+  @Override
+  public void startCDATA() {
+  }
+
+  @Override
+  public void endCDATA() {
+  }
+
+}
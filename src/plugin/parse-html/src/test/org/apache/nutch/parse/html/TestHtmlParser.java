@@ -88,6 +88,25 @@ public class TestHtmlParser {
       "  <a href=\"index.html\">outlink</a>\n" + //
       "</body>\n</html>";
 
+  private static final String streamingTestContent = //
+      "<html>\n<head>\n" + //
+      "  <title>Streaming  test\n page</title>\n" + //
+      "  <meta name=\"keywords\" content=\"streaming, sax\">\n" + //
+      "  <base href=\"http://www.example.com/dir/\">\n" + //
+      "  <script type=\"text/javascript\">var x = '<a href=\"no.html\">';</script>\n" + //
+      "  <style>p { color: red; }</style>\n" + //
+      "</head>\n<body>\n" + //
+      "  <h1>Heading</h1>\n" + //
+      "  <p>First <b>bold</b> paragraph<!-- comment -->continued.</p>\n" + //
+      "  <p><a href=\"a.html\">Link <i>A</i></a>\n" + //
+      "     <a href=\"b.html\"><img src=\"b.png\" alt=\"Image B\"></a>\n" + //
+      "     <a href=\"c.html\" rel=\"nofollow\">C</a>\n" + //
+      "     <a href=\"d.html\"></a>\n" + //
+      "     <a href=\"/e.html\">  E  </a></p>\n" + //
+      "  <iframe src=\"frame.html\"></iframe>\n" + //
+      "  <ul><li>one<li>two</ul>\n" + //
+      "</body>\n</html>";
+
   private Configuration conf;
   private Parser parser;
 
@@ -131,6 +150,34 @@ public class TestHtmlParser {
     }
   }
 
+  @Test
+  public void testStreaming() throws Exception {
+    byte[] contentBytes = streamingTestContent
+        .getBytes(StandardCharsets.UTF_8);
+    for (String impl : new String[] { "neko", "tagsoup" }) {
+      conf.set("parser.html.impl", impl);
+      conf.setBoolean("parser.html.streaming", false);
+      parser.setConf(conf);
+      Parse domParse = parse(contentBytes);
+      conf.setBoolean("parser.html.streaming", true);
+      parser.setConf(conf);
+      Parse saxParse = parse(contentBytes);
+      LOG.info(saxParse.getData().toString());
+      LOG.info("text:\t" + saxParse.getText());
+
+      Assert.assertEquals(impl, domParse.getData().getTitle(),
+          saxParse.getData().getTitle());
+      Assert.assertEquals(impl, domParse.getText(), saxParse.getText());
+      Assert.assertEquals(impl, "streaming, sax",
+          saxParse.getData().getMeta("keywords"));
+      Outlink[] domOutlinks = domParse.getData().getOutlinks();
+      Outlink[] saxOutlinks = saxParse.getData().getOutlinks();
+      Assert.assertArrayEquals(impl, domOutlinks, saxOutlinks);
+    }
+    Assert.assertEquals("Streaming test page",
+        parse(contentBytes).getData().getTitle());
+  }
+
   @Test
   public void testResolveBaseUrl() {
     byte[] contentBytes = resolveBaseUrlTestContent
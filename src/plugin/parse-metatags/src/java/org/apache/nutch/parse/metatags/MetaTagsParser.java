@@ -121,4 +121,10 @@ public class MetaTagsParser implements HtmlParseFilter {
     return parseResult;
   }
 
+  /** Meta tags are passed as {@link HTMLMetaTags}, no DOM required. */
+  @Override
+  public boolean requiresDOM() {
+    return false;
+  }
+
 }
@@ -195,4 +195,10 @@ public class NaiveBayesParseFilter implements HtmlParseFilter {
     return parseResult;
   }
 
+  /** Classifies parse text and outlinks only. */
+  @Override
+  public boolean requiresDOM() {
+    return false;
+  }
+
 }
@@ -203,4 +203,11 @@ public class RegexParseFilter implements HtmlParseFilter {
     String source;
     Pattern regex;
   }
+
+  /** Rules match the raw HTML or the parse text, not the DOM. */
+  @Override
+  public boolean requiresDOM() {
+    return false;
+  }
+
 }
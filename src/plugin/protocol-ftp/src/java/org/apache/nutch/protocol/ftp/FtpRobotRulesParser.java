@@ -56,7 +56,8 @@ public class FtpRobotRulesParser extends RobotRulesParser {
    * The hosts for which the caching of robots rules is yet to be done, it sends
    * a Ftp request to the host corresponding to the {@link URL} passed, gets
    * robots file, parses the rules and caches the rules object to avoid re-work
-   * in future.
+   * in future. Concurrent cache misses for the same host fetch robots.txt
+   * only once.
    * 
    * @param ftp
    *          The {@link Protocol} object
@@ -83,14 +84,24 @@ public class FtpRobotRulesParser extends RobotRulesParser {
       LOG.trace("Ignoring robots.txt (host is whitelisted) for URL: {}", url);
     }
 
-    BaseRobotRules robotRules = CACHE.get(protocol + ":" + host);
+    final String cacheKey = protocol + ":" + host;
+    return getRobotRules(cacheKey, url,
+        () -> loadRobotRules(ftp, url, cacheKey, robotsTxtContent));
+  }
+
+  /**
+   * Fetch and parse robots.txt for the given URL and put the rules into the
+   * cache, called on a cache miss.
+   */
+  protected BaseRobotRules loadRobotRules(Protocol ftp, URL url,
+      String cacheKey, List<Content> robotsTxtContent) {
 
-    if (robotRules != null) {
-      return robotRules; // cached rule
-    } else if (LOG.isTraceEnabled()) {
+    if (LOG.isTraceEnabled()) {
       LOG.trace("cache miss " + url);
     }
 
+    String host = url.getHost().toLowerCase();
+    BaseRobotRules robotRules;
     boolean cacheRule = true;
 
     if (isWhiteListed(url)) {
@@ -128,7 +139,7 @@ public class FtpRobotRulesParser extends RobotRulesParser {
     }
 
     if (cacheRule)
-      CACHE.put(protocol + ":" + host, robotRules); // cache rules for host
+      getCache().put(cacheKey, robotRules); // cache rules for host
 
     return robotRules;
   }
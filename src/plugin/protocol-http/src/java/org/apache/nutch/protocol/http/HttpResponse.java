@@ -17,7 +17,6 @@
 package org.apache.nutch.protocol.http;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -43,6 +42,7 @@ import org.apache.nutch.net.protocols.Response;
 import org.apache.nutch.protocol.ProtocolException;
 import org.apache.nutch.protocol.http.api.HttpBase;
 import org.apache.nutch.protocol.http.api.HttpException;
+import org.apache.nutch.protocol.http.api.PooledByteArrayOutputStream;
 
 /**
  * An HTTP response.
@@ -348,12 +348,15 @@ public class HttpResponse implements Response {
       throws HttpException, IOException {
 
     int contentLength = Integer.MAX_VALUE; // get content length
+    boolean hasContentLength = false;
     String contentLengthString = headers.get(Response.CONTENT_LENGTH);
     if (contentLengthString != null) {
       contentLengthString = contentLengthString.trim();
       try {
-        if (!contentLengthString.isEmpty())
+        if (!contentLengthString.isEmpty()) {
           contentLength = Integer.parseInt(contentLengthString);
+          hasContentLength = true;
+        }
       } catch (NumberFormatException e) {
         throw new HttpException("bad content length: " + contentLengthString);
       }
@@ -363,33 +366,44 @@ public class HttpResponse implements Response {
       contentLength = http.getMaxContent();
     }
 
-    ByteArrayOutputStream out = new ByteArrayOutputStream(Http.BUFFER_SIZE);
-    byte[] bytes = new byte[Http.BUFFER_SIZE];
-    int length = 0;
-
     // do not try to read if the contentLength is 0
     if (contentLength == 0) {
       content = new byte[0];
       return;
     }
 
-    // read content
-    int i = in.read(bytes);
-    while (i != -1) {
-      out.write(bytes, 0, i);
-      length += i;
-      if (length >= contentLength) {
-        break;
+    if (hasContentLength) {
+      // size is known: read directly into the content array. The array grows
+      // while reading up to the (limited) content length, a server may
+      // declare a content length far beyond the content actually sent.
+      byte[] bytes = new byte[Math.min(contentLength, Http.BUFFER_SIZE)];
+      int length = 0;
+      while (length < contentLength) {
+        if (length == bytes.length) {
+          bytes = Arrays.copyOf(bytes,
+              (int) Math.min(contentLength, 2L * bytes.length));
+        }
+        int i = in.read(bytes, length, bytes.length - length);
+        if (i == -1) {
+          break;
+        }
+        length += i;
       }
-      if ((length + Http.BUFFER_SIZE) > contentLength) {
-        // reading next chunk may hit contentLength,
-        // must limit number of bytes read
-        i = in.read(bytes, 0, (contentLength - length));
-      } else {
-        i = in.read(bytes);
+      content = (length == bytes.length ? bytes : Arrays.copyOf(bytes, length));
+      return;
+    }
+
+    // read content into a pooled buffer
+    PooledByteArrayOutputStream out = new PooledByteArrayOutputStream(
+        http.getBufferPool(), Http.BUFFER_SIZE);
+    try {
+      while (out.size() < contentLength
+          && out.readFrom(in, contentLength - out.size()) != -1) {
       }
+      content = out.toByteArray();
+    } finally {
+      out.close();
     }
-    content = out.toByteArray();
   }
 
   /**
@@ -400,10 +414,19 @@ public class HttpResponse implements Response {
    */
   private void readChunkedContent(PushbackInputStream in, StringBuffer line)
       throws HttpException, IOException {
+    PooledByteArrayOutputStream out = new PooledByteArrayOutputStream(
+        http.getBufferPool(), Http.BUFFER_SIZE);
+    try {
+      readChunkedContent(in, line, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  private void readChunkedContent(PushbackInputStream in, StringBuffer line,
+      PooledByteArrayOutputStream out) throws HttpException, IOException {
     boolean doneChunks = false;
     int contentBytesRead = 0;
-    byte[] bytes = new byte[Http.BUFFER_SIZE];
-    ByteArrayOutputStream out = new ByteArrayOutputStream(Http.BUFFER_SIZE);
 
     while (!doneChunks) {
       if (Http.LOG.isTraceEnabled()) {
@@ -445,10 +468,7 @@ public class HttpResponse implements Response {
       int chunkBytesRead = 0;
       while (chunkBytesRead < chunkLen) {
 
-        int toRead = (chunkLen - chunkBytesRead) < Http.BUFFER_SIZE ?
-            (chunkLen - chunkBytesRead) :
-            Http.BUFFER_SIZE;
-        int len = in.read(bytes, 0, toRead);
+        int len = out.readFrom(in, chunkLen - chunkBytesRead);
 
         if (len == -1)
           throw new HttpException("chunk eof after " + contentBytesRead
@@ -460,7 +480,6 @@ public class HttpResponse implements Response {
         // if (LOG.isTraceEnabled()) { LOG.trace("read: " + new String(bytes, 0,
         // len)); }
 
-        out.write(bytes, 0, len);
         chunkBytesRead += len;
       }
 
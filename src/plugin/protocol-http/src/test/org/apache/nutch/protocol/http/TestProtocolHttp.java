@@ -91,6 +91,19 @@ public class TestProtocolHttp {
     fetchPage("/redirection", 302);
   }
 
+  @Test
+  public void testLargeContentLength() throws Exception {
+    startServer(47502, false);
+    conf.setInt("http.content.limit", -1);
+    http.setConf(conf);
+    // content buffer is not allocated for the declared content length
+    URL url = new URL("http", "127.0.0.1", port, "/contentlength.jsp");
+    Response response = http.getResponse(url, new CrawlDatum(), true);
+    assertEquals(200, response.getCode());
+    assertEquals("<html><body>truncated</body></html>",
+        new String(response.getContent(), "UTF-8"));
+  }
+
   /**
    * Starts the Jetty server at a specified port and redirection parameter.
    * 
@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.niohttp;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of idle persistent connections. Connections are pooled per key
+ * <code>&lt;protocol&gt;://&lt;host&gt;[:&lt;port&gt;]</code>, which is the
+ * same as the ID of the fetch queue (with
+ * <code>fetcher.queue.mode = byHost</code>) the URL is fetched from: all
+ * fetches from one queue can reuse the same connection(s).
+ */
+class ConnectionPool {
+
+  private final Map<String, ConcurrentLinkedDeque<HttpConnection>> idle = new ConcurrentHashMap<>();
+  private final int maxIdlePerKey;
+  private final long idleTimeout;
+  private final AtomicLong nextPurge;
+
+  /**
+   * @param maxIdlePerKey
+   *          max. number of idle connections kept per key, if 0 connections
+   *          are not reused
+   * @param idleTimeout
+   *          time in milliseconds after which idle connections are closed
+   */
+  ConnectionPool(int maxIdlePerKey, long idleTimeout) {
+    this.maxIdlePerKey = maxIdlePerKey;
+    this.idleTimeout = idleTimeout;
+    nextPurge = new AtomicLong(System.currentTimeMillis() + idleTimeout);
+  }
+
+  /**
+   * Get the pool key for a connection.
+   *
+   * @param protocol
+   *          URL protocol (http or https)
+   * @param host
+   *          host name (of the server or the proxy)
+   * @param port
+   *          port, -1 if the default port of the protocol is used
+   */
+  static String getKey(String protocol, String host, int port) {
+    StringBuilder key = new StringBuilder(protocol.toLowerCase());
+    key.append("://").append(host.toLowerCase());
+    if (port != -1) {
+      key.append(':').append(port);
+    }
+    return key.toString();
+  }
+
+  /**
+   * Take an idle connection from the pool.
+   *
+   * @return reusable connection or null if none is available
+   */
+  HttpConnection acquire(String key) {
+    ConcurrentLinkedDeque<HttpConnection> connections = idle.get(key);
+    if (connections == null) {
+      return null;
+    }
+    HttpConnection conn;
+    // most recently used first
+    while ((conn = connections.pollFirst()) != null) {
+      if (conn.isReusable(idleTimeout)) {
+        return conn;
+      }
+      conn.close();
+    }
+    return null;
+  }
+
+  /** Put a connection back into the pool after a complete response. */
+  void release(HttpConnection conn) {
+    long now = System.currentTimeMillis();
+    if (maxIdlePerKey <= 0) {
+      conn.close();
+      return;
+    }
+    conn.setLastUsed(now);
+    conn.releaseSelector();
+    ConcurrentLinkedDeque<HttpConnection> connections = idle
+        .computeIfAbsent(conn.getKey(), k -> new ConcurrentLinkedDeque<>());
+    connections.offerFirst(conn);
+    if (idle.get(conn.getKey()) != connections) {
+      // removed concurrently by purge()
+      if (connections.remove(conn)) {
+        conn.close();
+      }
+    }
+    while (connections.size() > maxIdlePerKey) {
+      HttpConnection eldest = connections.pollLast();
+      if (eldest != null) {
+        eldest.close();
+      }
+    }
+    long purge = nextPurge.get();
+    if (now >= purge && nextPurge.compareAndSet(purge, now + idleTimeout)) {
+      purge(now);
+    }
+  }
+
+  /** Close connections idle for longer than the idle timeout. */
+  void purge(long now) {
+    Iterator<Map.Entry<String, ConcurrentLinkedDeque<HttpConnection>>> it = idle
+        .entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, ConcurrentLinkedDeque<HttpConnection>> entry = it
+          .next();
+      ConcurrentLinkedDeque<HttpConnection> connections = entry.getValue();
+      HttpConnection conn;
+      while ((conn = connections.peekLast()) != null
+          && now - conn.getLastUsed() > idleTimeout) {
+        if (connections.remove(conn)) {
+          conn.close();
+        }
+      }
+      if (connections.isEmpty()) {
+        idle.remove(entry.getKey(), connections);
+      }
+    }
+  }
+
+  /** Close all idle connections. */
+  void close() {
+    for (ConcurrentLinkedDeque<HttpConnection> connections : idle.values()) {
+      HttpConnection conn;
+      while ((conn = connections.pollFirst()) != null) {
+        conn.close();
+      }
+    }
+    idle.clear();
+  }
+
+  /** @return number of idle connections */
+  int size() {
+    int size = 0;
+    for (ConcurrentLinkedDeque<HttpConnection> connections : idle.values()) {
+      size += connections.size();
+    }
+    return size;
+  }
+}
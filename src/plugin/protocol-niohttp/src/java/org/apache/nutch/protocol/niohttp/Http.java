@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.niohttp;
+
+import java.lang.invoke.MethodHandles;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+
+import javax.net.ssl.SSLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hadoop.conf.Configuration;
+
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.net.protocols.Response;
+import org.apache.nutch.protocol.ProtocolException;
+import org.apache.nutch.protocol.http.api.HttpBase;
+import org.apache.nutch.util.NutchConfiguration;
+
+/**
+ * HTTP protocol implementation based on non-blocking I/O. Requests are sent
+ * as HTTP/1.1 and connections are kept alive and reused for subsequent
+ * requests to the same host, saving the TCP and TLS handshakes.
+ */
+public class Http extends HttpBase {
+
+  protected static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  private ConnectionPool connectionPool;
+  private ByteBufferPool bufferPool;
+
+  /**
+   * Public default constructor.
+   */
+  public Http() {
+    super(LOG);
+  }
+
+  /**
+   * Set the {@link org.apache.hadoop.conf.Configuration} object.
+   *
+   * @param conf
+   */
+  public void setConf(Configuration conf) {
+    super.setConf(conf);
+    if (connectionPool != null) {
+      connectionPool.close();
+    }
+    connectionPool = new ConnectionPool(
+        conf.getInt("http.nio.connection.pool.max.idle", 2),
+        conf.getLong("http.nio.connection.pool.idle.timeout", 30000L));
+    bufferPool = new ByteBufferPool(
+        conf.getInt("http.nio.buffer.size", 32 * 1024),
+        conf.getInt("http.nio.buffer.pool.max", 256));
+  }
+
+  public static void main(String[] args) throws Exception {
+    Http http = new Http();
+    http.setConf(NutchConfiguration.create());
+    main(http, args);
+  }
+
+  protected Response getResponse(URL url, CrawlDatum datum, boolean redirect)
+      throws ProtocolException, IOException {
+    return new HttpResponse(this, url, datum);
+  }
+
+  ConnectionPool getConnectionPool() {
+    return connectionPool;
+  }
+
+  ByteBufferPool getByteBufferPool() {
+    return bufferPool;
+  }
+
+  /**
+   * Open a new connection.
+   *
+   * @param key
+   *          connection pool key
+   * @param host
+   *          host to connect to (server or proxy)
+   * @param port
+   *          port to connect to
+   * @param tls
+   *          whether to use TLS
+   */
+  HttpConnection openConnection(String key, String host, int port,
+      boolean tls) throws IOException {
+    InetSocketAddress address = new InetSocketAddress(host, port);
+    if (address.isUnresolved()) {
+      throw new UnknownHostException(host);
+    }
+    try {
+      return new HttpConnection(key, address, this, tls, host);
+    } catch (SSLException e) {
+      if (e.getMessage() != null
+          && e.getMessage().contains("unrecognized_name")) {
+        // Reconnect without server name indication, see NUTCH-2447
+        LOG.debug("SSL connection to {} failed with: {}, retrying without SNI",
+            host, e.getMessage());
+        return new HttpConnection(key, address, this, tls, null);
+      }
+      throw e;
+    }
+  }
+
+}
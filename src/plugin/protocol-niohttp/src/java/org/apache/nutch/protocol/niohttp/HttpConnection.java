@@ -0,0 +1,457 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.niohttp;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+/**
+ * A persistent connection to a HTTP server or proxy. The socket channel is
+ * non-blocking, reads and writes wait on a selector until the channel is
+ * ready or the network timeout elapsed: the calling fetcher thread blocks
+ * while waiting, there is no event loop shared by multiple connections. The
+ * selector is opened when needed and closed when the connection is put back
+ * into the pool, so that idle connections hold only the socket. TLS is done
+ * via a {@link SSLEngine}.
+ *
+ * Connections are not thread-safe, they are used by a single fetcher thread
+ * at a time, see {@link ConnectionPool}.
+ */
+class HttpConnection implements Closeable {
+
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  private final String key;
+  private final InetSocketAddress address;
+  private final int timeout;
+  private final ByteBufferPool bufferPool;
+  private final SocketChannel channel;
+  /** selector to wait for the channel, null if not used currently */
+  private Selector selector;
+  private SelectionKey selectionKey;
+  private SSLEngine sslEngine;
+
+  /** received (and decrypted) data, in read mode */
+  private ByteBuffer in;
+  /** received TLS records, in write mode */
+  private ByteBuffer netIn;
+  /** TLS records to be sent */
+  private ByteBuffer netOut;
+
+  private long lastUsed = System.currentTimeMillis();
+  private boolean closed = false;
+
+  /**
+   * Open a connection.
+   *
+   * @param key
+   *          pool key of the connection
+   * @param address
+   *          (resolved) address of the server
+   * @param http
+   *          protocol instance holding the configuration
+   * @param tls
+   *          whether to use TLS (https)
+   * @param sniHost
+   *          host name sent as server name indication, may be null
+   */
+  HttpConnection(String key, InetSocketAddress address, Http http,
+      boolean tls, String sniHost) throws IOException {
+    this.key = key;
+    this.address = address;
+    this.timeout = http.getTimeout();
+    this.bufferPool = http.getByteBufferPool();
+    channel = SocketChannel.open();
+    try {
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    try {
+      if (!channel.connect(address)) {
+        await(SelectionKey.OP_CONNECT);
+        channel.finishConnect();
+      }
+      if (tls) {
+        sslEngine = createSSLEngine(http, sniHost);
+        int appSize = sslEngine.getSession().getApplicationBufferSize();
+        int netSize = sslEngine.getSession().getPacketBufferSize();
+        in = bufferPool.acquire(appSize);
+        netIn = bufferPool.acquire(netSize);
+        netOut = bufferPool.acquire(netSize);
+        handshake();
+        in.flip();
+      } else {
+        in = bufferPool.acquire(0);
+        in.flip();
+      }
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  private SSLEngine createSSLEngine(Http http, String sniHost)
+      throws IOException {
+    SSLContext context;
+    try {
+      context = SSLContext.getDefault();
+    } catch (NoSuchAlgorithmException e) {
+      throw new SSLException(e);
+    }
+    SSLEngine engine;
+    if (sniHost == null || sniHost.isEmpty()) {
+      engine = context.createSSLEngine();
+    } else {
+      engine = context.createSSLEngine(sniHost, address.getPort());
+    }
+    engine.setUseClientMode(true);
+
+    // Intersect protocols and ciphers supported by this JVM with the
+    // preferred ones
+    Set<String> protocols = new HashSet<String>(
+        Arrays.asList(engine.getSupportedProtocols()));
+    Set<String> ciphers = new HashSet<String>(
+        Arrays.asList(engine.getSupportedCipherSuites()));
+    protocols.retainAll(http.getTlsPreferredProtocols());
+    ciphers.retainAll(http.getTlsPreferredCipherSuites());
+    engine.setEnabledProtocols(protocols.toArray(new String[protocols.size()]));
+    engine.setEnabledCipherSuites(ciphers.toArray(new String[ciphers.size()]));
+    return engine;
+  }
+
+  private void handshake() throws IOException {
+    sslEngine.beginHandshake();
+    HandshakeStatus status = sslEngine.getHandshakeStatus();
+    while (status != HandshakeStatus.FINISHED
+        && status != HandshakeStatus.NOT_HANDSHAKING) {
+      SSLEngineResult result;
+      switch (status) {
+      case NEED_WRAP:
+        netOut.clear();
+        result = sslEngine.wrap(EMPTY, netOut);
+        netOut.flip();
+        flush(netOut);
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+          throw new SSLException("TLS connection closed during handshake");
+        }
+        status = result.getHandshakeStatus();
+        break;
+      case NEED_UNWRAP:
+        netIn.flip();
+        try {
+          result = sslEngine.unwrap(netIn, in);
+        } finally {
+          netIn.compact();
+        }
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+          if (readChannel(netIn) < 0) {
+            throw new EOFException("Connection closed during TLS handshake");
+          }
+        } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+          throw new SSLException("TLS connection closed during handshake");
+        }
+        status = result.getHandshakeStatus();
+        break;
+      case NEED_TASK:
+        runDelegatedTasks();
+        status = sslEngine.getHandshakeStatus();
+        break;
+      default:
+        status = sslEngine.getHandshakeStatus();
+      }
+    }
+  }
+
+  private void runDelegatedTasks() {
+    Runnable task;
+    while ((task = sslEngine.getDelegatedTask()) != null) {
+      task.run();
+    }
+  }
+
+  /**
+   * Wait until the channel is ready for the given operation.
+   *
+   * @throws SocketTimeoutException
+   *           if the network timeout elapsed
+   */
+  private void await(int ops) throws IOException {
+    if (selector == null) {
+      selector = Selector.open();
+      selectionKey = channel.register(selector, ops);
+    } else {
+      selectionKey.interestOps(ops);
+    }
+    long deadline = System.currentTimeMillis() + timeout;
+    try {
+      while (true) {
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+          throw new SocketTimeoutException(
+              "Timeout (" + timeout + " ms) on connection to " + address);
+        }
+        if (selector.select(wait) > 0) {
+          selector.selectedKeys().clear();
+          return;
+        }
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedIOException(
+              "Interrupted while waiting on connection to " + address);
+        }
+      }
+    } finally {
+      selectionKey.interestOps(0);
+    }
+  }
+
+  /**
+   * Read from the channel, wait if no data is available.
+   *
+   * @return number of bytes read or -1 on end of stream
+   */
+  private int readChannel(ByteBuffer dst) throws IOException {
+    while (true) {
+      int n = channel.read(dst);
+      if (n != 0 || !dst.hasRemaining()) {
+        return n;
+      }
+      await(SelectionKey.OP_READ);
+    }
+  }
+
+  private void flush(ByteBuffer src) throws IOException {
+    while (src.hasRemaining()) {
+      if (channel.write(src) == 0) {
+        await(SelectionKey.OP_WRITE);
+      }
+    }
+  }
+
+  /**
+   * Read more data into the input buffer (must be empty).
+   *
+   * @return number of bytes read or -1 on end of stream
+   */
+  private int fill() throws IOException {
+    in.compact();
+    try {
+      if (sslEngine == null) {
+        return readChannel(in);
+      }
+      return unwrap();
+    } finally {
+      in.flip();
+    }
+  }
+
+  private int unwrap() throws IOException {
+    while (true) {
+      netIn.flip();
+      SSLEngineResult result;
+      try {
+        result = sslEngine.unwrap(netIn, in);
+      } finally {
+        netIn.compact();
+      }
+      switch (result.getStatus()) {
+      case OK:
+        if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+          runDelegatedTasks();
+        } else if (result.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) {
+          handshake();
+        }
+        if (result.bytesProduced() > 0) {
+          return result.bytesProduced();
+        }
+        break;
+      case BUFFER_UNDERFLOW:
+        if (readChannel(netIn) < 0) {
+          return -1;
+        }
+        break;
+      case CLOSED:
+        return -1;
+      default:
+        throw new SSLException("TLS input buffer overflow on connection to "
+            + address);
+      }
+    }
+  }
+
+  /** Send data to the server. */
+  void write(ByteBuffer src) throws IOException {
+    if (sslEngine == null) {
+      flush(src);
+      return;
+    }
+    while (src.hasRemaining()) {
+      netOut.clear();
+      SSLEngineResult result = sslEngine.wrap(src, netOut);
+      if (result.getStatus() != SSLEngineResult.Status.OK) {
+        throw new SSLException("TLS write failed on connection to " + address
+            + ": " + result.getStatus());
+      }
+      netOut.flip();
+      flush(netOut);
+    }
+  }
+
+  /**
+   * Read one byte.
+   *
+   * @return the byte or -1 on end of stream
+   */
+  int read() throws IOException {
+    if (!in.hasRemaining() && fill() < 0) {
+      return -1;
+    }
+    return in.get() & 0xff;
+  }
+
+  /**
+   * Get the next byte without consuming it.
+   *
+   * @return the byte or -1 on end of stream
+   */
+  int peek() throws IOException {
+    if (!in.hasRemaining() && fill() < 0) {
+      return -1;
+    }
+    return in.get(in.position()) & 0xff;
+  }
+
+  /**
+   * Read up to <code>len</code> bytes into <code>b</code>.
+   *
+   * @return number of bytes read or -1 on end of stream
+   */
+  int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!in.hasRemaining() && fill() < 0) {
+      return -1;
+    }
+    int n = Math.min(len, in.remaining());
+    in.get(b, off, n);
+    return n;
+  }
+
+  /**
+   * Check whether an idle connection can be used for another request: it
+   * must be open, not idle for longer than <code>idleTimeout</code> and
+   * neither closed by the server nor have received unexpected data.
+   */
+  boolean isReusable(long idleTimeout) {
+    if (closed || in.hasRemaining()
+        || System.currentTimeMillis() - lastUsed > idleTimeout) {
+      return false;
+    }
+    if (sslEngine != null) {
+      // a pending TLS record (e.g., close_notify) also rules out reuse
+      try {
+        return netIn.position() == 0 && channel.read(netIn) == 0;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+    in.compact();
+    try {
+      return channel.read(in) == 0;
+    } catch (IOException e) {
+      return false;
+    } finally {
+      in.flip();
+    }
+  }
+
+  String getKey() {
+    return key;
+  }
+
+  InetSocketAddress getAddress() {
+    return address;
+  }
+
+  long getLastUsed() {
+    return lastUsed;
+  }
+
+  void setLastUsed(long lastUsed) {
+    this.lastUsed = lastUsed;
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Close the selector (if open) before the connection becomes idle, it is
+   * opened again when needed.
+   */
+  void releaseSelector() {
+    if (selector == null) {
+      return;
+    }
+    try {
+      selector.close();
+    } catch (IOException e) {
+      // ignore
+    }
+    selector = null;
+    selectionKey = null;
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    releaseSelector();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // ignore
+    }
+    bufferPool.release(in);
+    bufferPool.release(netIn);
+    bufferPool.release(netOut);
+    in = netIn = netOut = null;
+  }
+}
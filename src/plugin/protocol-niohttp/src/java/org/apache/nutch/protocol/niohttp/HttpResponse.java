@@ -0,0 +1,568 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.niohttp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.metadata.SpellCheckedMetadata;
+import org.apache.nutch.net.protocols.HttpDateFormat;
+import org.apache.nutch.net.protocols.Response;
+import org.apache.nutch.protocol.ProtocolException;
+import org.apache.nutch.protocol.http.api.HttpBase;
+import org.apache.nutch.protocol.http.api.HttpException;
+
+/**
+ * An HTTP response read from a persistent connection. If the response allows
+ * it, the connection is put back into the pool after the content has been
+ * read completely.
+ */
+public class HttpResponse implements Response {
+
+  private Configuration conf;
+  private Http http;
+  private URL url;
+  private byte[] content;
+  private int code;
+  private Metadata headers = new SpellCheckedMetadata();
+  // used for storing the http headers verbatim
+  private StringBuffer httpHeaders;
+  // whether the server supports persistent connections
+  private boolean persistent;
+  // content bytes read while parsing the headers
+  private byte[] contentPrefix;
+
+  protected enum Scheme {
+    HTTP, HTTPS,
+  }
+
+  /**
+   * Default public constructor.
+   *
+   * @param http
+   * @param url
+   * @param datum
+   * @throws ProtocolException
+   * @throws IOException
+   */
+  public HttpResponse(Http http, URL url, CrawlDatum datum)
+      throws ProtocolException, IOException {
+
+    this.http = http;
+    this.url = url;
+    this.conf = http.getConf();
+
+    Scheme scheme = null;
+
+    if ("http".equals(url.getProtocol())) {
+      scheme = Scheme.HTTP;
+    } else if ("https".equals(url.getProtocol())) {
+      scheme = Scheme.HTTPS;
+    } else {
+      throw new HttpException("Unknown scheme (not http/https) for url:" + url);
+    }
+
+    if (Http.LOG.isTraceEnabled()) {
+      Http.LOG.trace("fetching " + url);
+    }
+
+    String host = url.getHost();
+    int port = url.getPort();
+    if (port == -1) {
+      port = (scheme == Scheme.HTTP ? 80 : 443);
+    }
+    boolean useProxy = http.useProxy(url);
+    String sockHost = useProxy ? http.getProxyHost() : host;
+    int sockPort = useProxy ? http.getProxyPort() : port;
+    String key = ConnectionPool.getKey(url.getProtocol(), sockHost,
+        (useProxy || url.getPort() != -1) ? sockPort : -1);
+
+    byte[] request = getRequest(url, datum, useProxy);
+
+    HttpConnection conn = http.getConnectionPool().acquire(key);
+    boolean reused = (conn != null);
+    if (conn == null) {
+      conn = http.openConnection(key, sockHost, sockPort,
+          scheme == Scheme.HTTPS);
+    }
+    boolean keepAlive = false;
+    try {
+      try {
+        readHeaders(conn, request);
+      } catch (IOException e) {
+        if (!reused) {
+          throw e;
+        }
+        // the server may have closed the idle connection meanwhile
+        Http.LOG.debug("Failed to reuse connection to {}, reconnecting: {}",
+            key, e.getMessage());
+        conn.close();
+        conn = http.openConnection(key, sockHost, sockPort,
+            scheme == Scheme.HTTPS);
+        headers = new SpellCheckedMetadata();
+        contentPrefix = null;
+        readHeaders(conn, request);
+      }
+
+      // store the request in the metadata?
+      if (conf.getBoolean("store.http.request", false) == true) {
+        headers.add("_request_", new String(request, StandardCharsets.UTF_8));
+      }
+
+      if (conf.getBoolean("store.ip.address", false) == true) {
+        headers.add("_ip_", conn.getAddress().getAddress().getHostAddress());
+      }
+
+      keepAlive = readContent(conn) && persistent;
+
+      String contentEncoding = getHeader(Response.CONTENT_ENCODING);
+      if ("gzip".equals(contentEncoding) || "x-gzip".equals(contentEncoding)) {
+        content = http.processGzipEncoded(content, url);
+      } else if ("deflate".equals(contentEncoding)) {
+        content = http.processDeflateEncoded(content, url);
+      } else {
+        // store the headers verbatim only if the response was not compressed
+        // as the content length reported with not match otherwise
+        if (httpHeaders != null) {
+          headers.add("_response.headers_", httpHeaders.toString());
+        }
+        if (Http.LOG.isTraceEnabled()) {
+          Http.LOG.trace("fetched " + content.length + " bytes from " + url);
+        }
+      }
+
+    } finally {
+      if (keepAlive) {
+        http.getConnectionPool().release(conn);
+      } else {
+        conn.close();
+      }
+    }
+
+  }
+
+  /*
+   * ------------------------- * <implementation:Response> *
+   * -------------------------
+   */
+
+  public URL getUrl() {
+    return url;
+  }
+
+  public int getCode() {
+    return code;
+  }
+
+  public String getHeader(String name) {
+    return headers.get(name);
+  }
+
+  public Metadata getHeaders() {
+    return headers;
+  }
+
+  public byte[] getContent() {
+    return content;
+  }
+
+  /*
+   * ------------------------- * <implementation:Response> *
+   * -------------------------
+   */
+
+  private byte[] getRequest(URL url, CrawlDatum datum, boolean useProxy) {
+    String path = "".equals(url.getFile()) ? "/" : url.getFile();
+
+    // some servers will redirect a request with a host line like
+    // "Host: <hostname>:80" to "http://<hpstname>/<orig_path>"- they
+    // don't want the :80...
+    String host = url.getHost();
+    String portString = (url.getPort() == -1 ? "" : ":" + url.getPort());
+
+    StringBuilder reqStr = new StringBuilder("GET ");
+    if (useProxy) {
+      reqStr.append(url.getProtocol() + "://" + host + portString + path);
+    } else {
+      reqStr.append(path);
+    }
+
+    reqStr.append(" HTTP/1.1\r\n");
+
+    reqStr.append("Host: ");
+    reqStr.append(host);
+    reqStr.append(portString);
+    reqStr.append("\r\n");
+
+    reqStr.append("Connection: keep-alive\r\n");
+
+    reqStr.append("Accept-Encoding: x-gzip, gzip, deflate\r\n");
+
+    String userAgent = http.getUserAgent();
+    if ((userAgent == null) || (userAgent.length() == 0)) {
+      if (Http.LOG.isErrorEnabled()) {
+        Http.LOG.error("User-agent is not set!");
+      }
+    } else {
+      reqStr.append("User-Agent: ");
+      reqStr.append(userAgent);
+      reqStr.append("\r\n");
+    }
+
+    String acceptLanguage = http.getAcceptLanguage();
+    if (!acceptLanguage.isEmpty()) {
+      reqStr.append("Accept-Language: ");
+      reqStr.append(acceptLanguage);
+      reqStr.append("\r\n");
+    }
+
+    String acceptCharset = http.getAcceptCharset();
+    if (!acceptCharset.isEmpty()) {
+      reqStr.append("Accept-Charset: ");
+      reqStr.append(acceptCharset);
+      reqStr.append("\r\n");
+    }
+
+    String accept = http.getAccept();
+    if (!accept.isEmpty()) {
+      reqStr.append("Accept: ");
+      reqStr.append(accept);
+      reqStr.append("\r\n");
+    }
+
+    if (http.isCookieEnabled()
+        && datum.getMetaData().containsKey(HttpBase.COOKIE)) {
+      String cookie = ((Text) datum.getMetaData().get(HttpBase.COOKIE))
+          .toString();
+      reqStr.append("Cookie: ");
+      reqStr.append(cookie);
+      reqStr.append("\r\n");
+    }
+
+    if (http.isIfModifiedSinceEnabled() && datum.getModifiedTime() > 0) {
+      reqStr.append("If-Modified-Since: "
+          + HttpDateFormat.toString(datum.getModifiedTime()));
+      reqStr.append("\r\n");
+    }
+    reqStr.append("\r\n");
+
+    return reqStr.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Send the request and read status line and headers of the response.
+   */
+  private void readHeaders(HttpConnection conn, byte[] request)
+      throws IOException, HttpException {
+    conn.write(ByteBuffer.wrap(request));
+
+    StringBuffer line = new StringBuffer();
+
+    // store the http headers verbatim
+    if (conf.getBoolean("store.http.headers", false) == true) {
+      httpHeaders = new StringBuffer();
+    }
+
+    headers.add("nutch.fetch.time", Long.toString(System.currentTimeMillis()));
+
+    boolean haveSeenNonContinueStatus = false;
+    while (!haveSeenNonContinueStatus) {
+      // parse status code line
+      this.code = parseStatusLine(conn, line);
+      boolean http11 = line.toString().startsWith("HTTP/1.1");
+      if (httpHeaders != null)
+        httpHeaders.append(line).append("\n");
+      // parse headers
+      parseHeaders(conn, line, httpHeaders);
+      haveSeenNonContinueStatus = code != 100; // 100 is "Continue"
+
+      String connection = getHeader("Connection");
+      if (connection != null) {
+        connection = connection.toLowerCase();
+      }
+      if (http11) {
+        persistent = (connection == null || !connection.contains("close"));
+      } else {
+        persistent = (connection != null && connection.contains("keep-alive"));
+      }
+    }
+  }
+
+  /**
+   * Read the response content.
+   *
+   * @return true if the content has been read completely and the connection
+   *         is positioned at the end of the response
+   */
+  private boolean readContent(HttpConnection conn)
+      throws HttpException, IOException {
+    if ((code >= 100 && code < 200) || code == 204 || code == 304) {
+      // no content
+      content = new byte[0];
+      return contentPrefix == null;
+    }
+    String transferEncoding = getHeader(Response.TRANSFER_ENCODING);
+    if (contentPrefix == null && transferEncoding != null
+        && "chunked".equalsIgnoreCase(transferEncoding.trim())) {
+      return readChunkedContent(conn, new StringBuffer());
+    }
+    return readPlainContent(conn);
+  }
+
+  private boolean readPlainContent(HttpConnection conn)
+      throws HttpException, IOException {
+
+    int contentLength = -1; // get content length
+    String contentLengthString = headers.get(Response.CONTENT_LENGTH);
+    if (contentLengthString != null) {
+      contentLengthString = contentLengthString.trim();
+      try {
+        if (!contentLengthString.isEmpty())
+          contentLength = Integer.parseInt(contentLengthString);
+      } catch (NumberFormatException e) {
+        throw new HttpException("bad content length: " + contentLengthString);
+      }
+    }
+    int maxLength = (contentLength >= 0 ? contentLength : Integer.MAX_VALUE);
+    if (http.getMaxContent() >= 0 && maxLength > http.getMaxContent()) {
+      // limit the download size
+      maxLength = http.getMaxContent();
+    }
+
+    // do not trust the content length for the initial allocation, the
+    // buffer grows up to maxLength while reading
+    byte[] bytes = new byte[Math.min(maxLength, Http.BUFFER_SIZE)];
+    int length = 0;
+    if (contentPrefix != null) {
+      length = Math.min(contentPrefix.length, maxLength);
+      bytes = ensureCapacity(bytes, length, maxLength);
+      System.arraycopy(contentPrefix, 0, bytes, 0, length);
+    }
+    while (length < maxLength) {
+      bytes = ensureCapacity(bytes, length + 1, maxLength);
+      int i = conn.read(bytes, length, bytes.length - length);
+      if (i == -1) {
+        break;
+      }
+      length += i;
+    }
+    content = (length == bytes.length ? bytes : Arrays.copyOf(bytes, length));
+
+    return contentPrefix == null && length == contentLength;
+  }
+
+  private boolean readChunkedContent(HttpConnection conn, StringBuffer line)
+      throws HttpException, IOException {
+    int maxLength = http.getMaxContent() >= 0 ? http.getMaxContent()
+        : Integer.MAX_VALUE;
+    byte[] bytes = new byte[Math.min(maxLength, Http.BUFFER_SIZE)];
+    int contentBytesRead = 0;
+
+    while (true) {
+      if (Http.LOG.isTraceEnabled()) {
+        Http.LOG.trace("Http: starting chunk");
+      }
+
+      readLine(conn, line, false);
+
+      String chunkLenStr;
+      int pos = line.indexOf(";");
+      if (pos < 0) {
+        chunkLenStr = line.toString();
+      } else {
+        chunkLenStr = line.substring(0, pos);
+      }
+      chunkLenStr = chunkLenStr.trim();
+      int chunkLen;
+      try {
+        chunkLen = Integer.parseInt(chunkLenStr, 16);
+      } catch (NumberFormatException e) {
+        throw new HttpException("bad chunk length: " + line.toString());
+      }
+
+      if (chunkLen == 0) {
+        break;
+      }
+
+      boolean truncated = false;
+      if ((long) contentBytesRead + chunkLen > maxLength) {
+        chunkLen = maxLength - contentBytesRead;
+        truncated = true;
+      }
+
+      // read one chunk
+      bytes = ensureCapacity(bytes, contentBytesRead + chunkLen, maxLength);
+      int chunkBytesRead = 0;
+      while (chunkBytesRead < chunkLen) {
+        int len = conn.read(bytes, contentBytesRead + chunkBytesRead,
+            chunkLen - chunkBytesRead);
+        if (len == -1)
+          throw new HttpException("chunk eof after " + contentBytesRead
+              + " bytes in successful chunks" + " and " + chunkBytesRead
+              + " in current chunk");
+        chunkBytesRead += len;
+      }
+      contentBytesRead += chunkBytesRead;
+
+      if (truncated) {
+        // content limit reached, the rest of the response is not read
+        content = Arrays.copyOf(bytes, contentBytesRead);
+        return false;
+      }
+
+      readLine(conn, line, false);
+    }
+
+    content = Arrays.copyOf(bytes, contentBytesRead);
+    // trailer
+    parseHeaders(conn, line, null);
+    return true;
+  }
+
+  /**
+   * Grow the array to hold at least <code>minCapacity</code> bytes but not
+   * more than <code>maxCapacity</code> bytes.
+   */
+  private static byte[] ensureCapacity(byte[] bytes, int minCapacity,
+      int maxCapacity) {
+    if (minCapacity <= bytes.length) {
+      return bytes;
+    }
+    long capacity = Math.max(minCapacity, 2L * bytes.length);
+    return Arrays.copyOf(bytes, (int) Math.min(capacity, maxCapacity));
+  }
+
+  private int parseStatusLine(HttpConnection conn, StringBuffer line)
+      throws IOException, HttpException {
+    readLine(conn, line, false);
+
+    int codeStart = line.indexOf(" ");
+    int codeEnd = line.indexOf(" ", codeStart + 1);
+
+    // handle lines with no plaintext result code, ie:
+    // "HTTP/1.1 200" vs "HTTP/1.1 200 OK"
+    if (codeEnd == -1)
+      codeEnd = line.length();
+
+    int code;
+    try {
+      code = Integer.parseInt(line.substring(codeStart + 1, codeEnd));
+    } catch (NumberFormatException e) {
+      throw new HttpException(
+          "bad status line '" + line + "': " + e.getMessage(), e);
+    }
+
+    return code;
+  }
+
+  private void processHeaderLine(StringBuffer line)
+      throws IOException, HttpException {
+
+    int colonIndex = line.indexOf(":"); // key is up to colon
+    if (colonIndex == -1) {
+      int i;
+      for (i = 0; i < line.length(); i++)
+        if (!Character.isWhitespace(line.charAt(i)))
+          break;
+      if (i == line.length())
+        return;
+      throw new HttpException("No colon in header:" + line);
+    }
+    String key = line.substring(0, colonIndex);
+
+    int valueStart = colonIndex + 1; // skip whitespace
+    while (valueStart < line.length()) {
+      int c = line.charAt(valueStart);
+      if (c != ' ' && c != '\t')
+        break;
+      valueStart++;
+    }
+    String value = line.substring(valueStart);
+    headers.set(key, value);
+  }
+
+  // Adds headers to our headers Metadata
+  private void parseHeaders(HttpConnection conn, StringBuffer line,
+      StringBuffer httpHeaders) throws IOException, HttpException {
+
+    while (readLine(conn, line, true) != 0) {
+
+      if (httpHeaders != null)
+        httpHeaders.append(line).append("\n");
+
+      // handle HTTP responses with missing blank line after headers
+      int pos;
+      if (((pos = line.indexOf("<!DOCTYPE")) != -1) || (
+          (pos = line.indexOf("<HTML")) != -1) || ((pos = line.indexOf("<html"))
+          != -1)) {
+
+        // keep the content read so far, the connection cannot be reused
+        // because the end of the content is unknown
+        contentPrefix = line.substring(pos)
+            .getBytes(StandardCharsets.ISO_8859_1);
+        line.setLength(pos);
+
+        try {
+          processHeaderLine(line);
+        } catch (Exception e) {
+          // fixme:
+          Http.LOG.warn("Error: ", e);
+        }
+        return;
+      }
+
+      processHeaderLine(line);
+    }
+  }
+
+  private static int readLine(HttpConnection conn, StringBuffer line,
+      boolean allowContinuedLine) throws IOException {
+    line.setLength(0);
+    for (int c = conn.read(); c != -1; c = conn.read()) {
+      switch (c) {
+      case '\r':
+        if (conn.peek() == '\n') {
+          conn.read();
+        }
+      case '\n':
+        if (line.length() > 0) {
+          // at EOL -- check for continued line if the current
+          // (possibly continued) line wasn't blank
+          if (allowContinuedLine)
+            switch (conn.peek()) {
+            case ' ':
+            case '\t': // line is continued
+              conn.read();
+              continue;
+            }
+        }
+        return line.length(); // else complete
+      default:
+        line.append((char) c);
+      }
+    }
+    throw new EOFException();
+  }
+}
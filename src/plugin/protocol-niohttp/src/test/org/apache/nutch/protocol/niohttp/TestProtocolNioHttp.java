@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.niohttp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.net.protocols.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+
+/**
+ * Test cases for protocol-niohttp
+ */
+public class TestProtocolNioHttp {
+
+  private static final int PORT = 47505;
+
+  private Http http;
+  private Server server;
+  private Configuration conf;
+  // remote ports of the client connections, one per request
+  private final List<Integer> clientPorts = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new Configuration();
+    conf.addResource("nutch-default.xml");
+    conf.addResource("nutch-site-test.xml");
+
+    server = new Server();
+    SelectChannelConnector connector = new SelectChannelConnector();
+    connector.setHost("127.0.0.1");
+    connector.setPort(PORT);
+    server.addConnector(connector);
+    server.setHandler(new AbstractHandler() {
+      public void handle(String target, HttpServletRequest request,
+          HttpServletResponse response, int dispatch) throws IOException {
+        synchronized (clientPorts) {
+          clientPorts.add(request.getRemotePort());
+        }
+        if (target.startsWith("/notfound")) {
+          response.sendError(404);
+        } else if (target.startsWith("/notmodified")) {
+          response.setStatus(304);
+        } else if (target.startsWith("/close")) {
+          response.setHeader("Connection", "close");
+          response.setContentType("text/plain");
+          response.getWriter().print("closed");
+        } else if (target.startsWith("/contentlength")) {
+          // declared content length far beyond the content sent
+          response.setHeader("Connection", "close");
+          response.setContentType("text/plain");
+          response.setContentLength(2000000000);
+          response.getWriter().print("truncated");
+        } else if (target.startsWith("/chunked")) {
+          response.setContentType("text/plain");
+          PrintWriter writer = response.getWriter();
+          for (int i = 0; i < 1000; i++) {
+            writer.print("chunk " + i + "\n");
+            if (i % 100 == 0) {
+              // force chunked transfer encoding
+              response.flushBuffer();
+            }
+          }
+        } else {
+          String body = "<html><body>" + target + "</body></html>";
+          response.setContentType("text/html");
+          response.setContentLength(body.length());
+          response.getWriter().print(body);
+        }
+        ((Request) request).setHandled(true);
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.stop();
+  }
+
+  private Response fetch(String page, int expectedCode) throws Exception {
+    URL url = new URL("http", "127.0.0.1", PORT, page);
+    Response response = http.getResponse(url, new CrawlDatum(), true);
+    assertEquals(expectedCode, response.getCode());
+    return response;
+  }
+
+  private int getConnectionCount() {
+    synchronized (clientPorts) {
+      return new HashSet<Integer>(clientPorts).size();
+    }
+  }
+
+  @Test
+  public void testKeepAlive() throws Exception {
+    http = new Http();
+    http.setConf(conf);
+    for (int i = 0; i < 5; i++) {
+      Response response = fetch("/page" + i, 200);
+      assertEquals("<html><body>/page" + i + "</body></html>",
+          new String(response.getContent(), "UTF-8"));
+    }
+    fetch("/notfound", 404);
+    fetch("/notmodified", 304);
+    fetch("/page", 200);
+    // all requests sent over the same connection
+    assertEquals(8, clientPorts.size());
+    assertEquals(1, getConnectionCount());
+    assertEquals(1, http.getConnectionPool().size());
+  }
+
+  @Test
+  public void testChunked() throws Exception {
+    conf.setInt("http.content.limit", 1000);
+    http = new Http();
+    http.setConf(conf);
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      expected.append("chunk " + i + "\n");
+    }
+    Response response = fetch("/chunked", 200);
+    assertEquals(expected.substring(0, 1000),
+        new String(response.getContent(), "UTF-8"));
+
+    conf.setInt("http.content.limit", -1);
+    http.setConf(conf);
+    response = fetch("/chunked", 200);
+    assertEquals(expected.toString(),
+        new String(response.getContent(), "UTF-8"));
+    fetch("/chunked", 200);
+    // first connection closed after truncated content, second one reused
+    assertEquals(2, getConnectionCount());
+  }
+
+  @Test
+  public void testConnectionClose() throws Exception {
+    http = new Http();
+    http.setConf(conf);
+    Response response = fetch("/close", 200);
+    assertEquals("closed", new String(response.getContent(), "UTF-8"));
+    assertEquals(0, http.getConnectionPool().size());
+    fetch("/page", 200);
+    assertEquals(2, getConnectionCount());
+  }
+
+  @Test
+  public void testContentLimit() throws Exception {
+    conf.setInt("http.content.limit", 10);
+    http = new Http();
+    http.setConf(conf);
+    Response response = fetch("/page", 200);
+    assertEquals("<html><bod", new String(response.getContent(), "UTF-8"));
+    // remaining content not read, connection must not be reused
+    assertEquals(0, http.getConnectionPool().size());
+  }
+
+  @Test
+  public void testLargeContentLength() throws Exception {
+    conf.setInt("http.content.limit", -1);
+    http = new Http();
+    http.setConf(conf);
+    // buffer is not allocated for the declared content length
+    Response response = fetch("/contentlength", 200);
+    assertEquals("truncated", new String(response.getContent(), "UTF-8"));
+    assertEquals(0, http.getConnectionPool().size());
+  }
+}
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.okhttp;
+
+import java.lang.invoke.MethodHandles;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hadoop.conf.Configuration;
+
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.net.protocols.Response;
+import org.apache.nutch.protocol.ProtocolException;
+import org.apache.nutch.protocol.ProtocolStatus;
+import org.apache.nutch.protocol.http.api.HttpBase;
+import org.apache.nutch.util.NutchConfiguration;
+
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.ConnectionSpec;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.internal.http2.ErrorCode;
+import okhttp3.internal.http2.StreamResetException;
+
+/**
+ * HTTP protocol implementation based on <a
+ * href="https://square.github.io/okhttp/">OkHttp</a>. HTTP/2 is negotiated
+ * via ALPN (requires Java 8u252 or higher) and all requests to the same host
+ * are multiplexed over one connection, i.e. with
+ * <code>fetcher.threads.per.queue</code> &gt; 1 the items of one fetch queue
+ * share a single connection. Servers not supporting HTTP/2 are accessed via
+ * HTTP/1.1 with persistent connections.
+ */
+public class OkHttp extends HttpBase {
+
+  protected static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  private OkHttpClient client;
+
+  /**
+   * Public default constructor.
+   */
+  public OkHttp() {
+    super(LOG);
+  }
+
+  /**
+   * Set the {@link org.apache.hadoop.conf.Configuration} object.
+   *
+   * @param conf
+   */
+  public void setConf(Configuration conf) {
+    super.setConf(conf);
+
+    List<Protocol> protocols = new ArrayList<>();
+    if (conf.getBoolean("http.useHttp2", true)) {
+      protocols.add(Protocol.HTTP_2);
+    }
+    protocols.add(Protocol.HTTP_1_1);
+
+    OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        .protocols(protocols)
+        .connectionSpecs(Arrays.asList(ConnectionSpec.MODERN_TLS,
+            ConnectionSpec.COMPATIBLE_TLS, ConnectionSpec.CLEARTEXT))
+        // redirects are handled by the fetcher
+        .followRedirects(false).followSslRedirects(false)
+        // the timeouts apply to a single stream of a HTTP/2 connection:
+        // a timed out request does not affect other requests multiplexed
+        // over the same connection
+        .connectTimeout(timeout, TimeUnit.MILLISECONDS)
+        .readTimeout(timeout, TimeUnit.MILLISECONDS)
+        .writeTimeout(timeout, TimeUnit.MILLISECONDS)
+        .connectionPool(new ConnectionPool(
+            conf.getInt("http.okhttp.connection.pool.max.idle", 100),
+            conf.getLong("http.okhttp.connection.pool.idle.timeout", 30000L),
+            TimeUnit.MILLISECONDS));
+
+    if (useProxy) {
+      final Proxy proxy = new Proxy(Proxy.Type.HTTP,
+          new InetSocketAddress(proxyHost, proxyPort));
+      builder.proxySelector(new ProxySelector() {
+        @Override
+        public List<Proxy> select(URI uri) {
+          try {
+            if (useProxy(uri.toURL())) {
+              return Collections.singletonList(proxy);
+            }
+          } catch (MalformedURLException e) {
+            // fall-through, no proxy
+          }
+          return Collections.singletonList(Proxy.NO_PROXY);
+        }
+
+        @Override
+        public void connectFailed(URI uri, SocketAddress sa, IOException e) {
+          LOG.error("Failed to connect to proxy {} for {}: {}", sa, uri,
+              e.getMessage());
+        }
+      });
+    }
+
+    final boolean storeIPAddress = conf.getBoolean("store.ip.address", false);
+    final boolean storeHttpRequest = conf.getBoolean("store.http.request",
+        false);
+    final boolean storeHttpHeaders = conf.getBoolean("store.http.headers",
+        false);
+    if (storeIPAddress || storeHttpRequest || storeHttpHeaders) {
+      builder.addNetworkInterceptor(new Interceptor() {
+        @Override
+        public okhttp3.Response intercept(Chain chain) throws IOException {
+          Request request = chain.request();
+          okhttp3.Response response = chain.proceed(request);
+          // response metadata is passed as tag of the request
+          Metadata metadata = request.tag(Metadata.class);
+          Connection connection = chain.connection();
+          if (metadata == null || connection == null) {
+            return response;
+          }
+          if (storeIPAddress) {
+            metadata.set("_ip_",
+                connection.route().socketAddress().getAddress()
+                    .getHostAddress());
+          }
+          if (storeHttpRequest) {
+            StringBuilder req = new StringBuilder();
+            req.append(request.method()).append(' ')
+                .append(request.url().encodedPath());
+            if (request.url().encodedQuery() != null) {
+              req.append('?').append(request.url().encodedQuery());
+            }
+            req.append(' ').append(connection.protocol().toString()
+                .toUpperCase()).append("\r\n");
+            req.append(request.headers().toString().replace("\n", "\r\n"));
+            req.append("\r\n");
+            metadata.set("_request_", req.toString());
+          }
+          if (storeHttpHeaders) {
+            StringBuilder headers = new StringBuilder();
+            headers.append(response.protocol().toString().toUpperCase())
+                .append(' ').append(response.code()).append(' ')
+                .append(response.message()).append("\n");
+            headers.append(response.headers().toString());
+            metadata.set("_response.headers_", headers.toString());
+          }
+          return response;
+        }
+      });
+    }
+
+    client = builder.build();
+  }
+
+  public static void main(String[] args) throws Exception {
+    OkHttp http = new OkHttp();
+    http.setConf(NutchConfiguration.create());
+    main(http, args);
+  }
+
+  protected Response getResponse(URL url, CrawlDatum datum, boolean redirect)
+      throws ProtocolException, IOException {
+    return new OkHttpResponse(this, url, datum);
+  }
+
+  OkHttpClient getClient() {
+    return client;
+  }
+
+  void setClient(OkHttpClient client) {
+    this.client = client;
+  }
+
+  /**
+   * A stream refused or reset by the server is retried later without
+   * counting as exception of the fetch queue. Stream timeouts and other
+   * failures are reported as {@link ProtocolStatus#EXCEPTION}.
+   */
+  @Override
+  protected ProtocolStatus getProtocolStatus(Throwable e) {
+    if (e instanceof StreamResetException) {
+      ErrorCode errorCode = ((StreamResetException) e).errorCode;
+      if (errorCode == ErrorCode.REFUSED_STREAM
+          || errorCode == ErrorCode.CANCEL) {
+        return new ProtocolStatus(ProtocolStatus.RETRY,
+            "HTTP/2 stream reset: " + errorCode);
+      }
+    } else if (e instanceof SocketTimeoutException) {
+      return new ProtocolStatus(ProtocolStatus.EXCEPTION,
+          "Timeout (" + timeout + " ms): " + e.getMessage());
+    }
+    return super.getProtocolStatus(e);
+  }
+
+}
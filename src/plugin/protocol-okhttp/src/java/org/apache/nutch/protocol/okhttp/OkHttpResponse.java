@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.okhttp;
+
+import java.io.IOException;
+import java.net.URL;
+
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.metadata.SpellCheckedMetadata;
+import org.apache.nutch.net.protocols.HttpDateFormat;
+import org.apache.nutch.net.protocols.Response;
+import org.apache.nutch.protocol.ProtocolException;
+import org.apache.nutch.protocol.http.api.HttpBase;
+
+import okhttp3.Headers;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * An HTTP response fetched via OkHttp. Compressed content (gzip) is
+ * decompressed transparently by OkHttp.
+ */
+public class OkHttpResponse implements Response {
+
+  private URL url;
+  private byte[] content;
+  private int code;
+  private Metadata headers = new SpellCheckedMetadata();
+
+  /**
+   * Default public constructor.
+   *
+   * @param okhttp
+   * @param url
+   * @param datum
+   * @throws ProtocolException
+   * @throws IOException
+   */
+  public OkHttpResponse(OkHttp okhttp, URL url, CrawlDatum datum)
+      throws ProtocolException, IOException {
+
+    this.url = url;
+
+    if (OkHttp.LOG.isTraceEnabled()) {
+      OkHttp.LOG.trace("fetching " + url);
+    }
+
+    Request.Builder rb = new Request.Builder().url(url).get();
+
+    String userAgent = okhttp.getUserAgent();
+    if ((userAgent == null) || (userAgent.length() == 0)) {
+      if (OkHttp.LOG.isErrorEnabled()) {
+        OkHttp.LOG.error("User-agent is not set!");
+      }
+    } else {
+      rb.header("User-Agent", userAgent);
+    }
+
+    String acceptLanguage = okhttp.getAcceptLanguage();
+    if (!acceptLanguage.isEmpty()) {
+      rb.header("Accept-Language", acceptLanguage);
+    }
+
+    String acceptCharset = okhttp.getAcceptCharset();
+    if (!acceptCharset.isEmpty()) {
+      rb.header("Accept-Charset", acceptCharset);
+    }
+
+    String accept = okhttp.getAccept();
+    if (!accept.isEmpty()) {
+      rb.header("Accept", accept);
+    }
+
+    if (okhttp.isCookieEnabled()
+        && datum.getMetaData().containsKey(HttpBase.COOKIE)) {
+      String cookie = ((Text) datum.getMetaData().get(HttpBase.COOKIE))
+          .toString();
+      rb.header("Cookie", cookie);
+    }
+
+    if (okhttp.isIfModifiedSinceEnabled() && datum.getModifiedTime() > 0) {
+      rb.header("If-Modified-Since",
+          HttpDateFormat.toString(datum.getModifiedTime()));
+    }
+
+    // pass the metadata to the network interceptor (see OkHttp) which adds
+    // the IP address, request and response headers if configured
+    rb.tag(Metadata.class, headers);
+
+    headers.add("nutch.fetch.time", Long.toString(System.currentTimeMillis()));
+
+    try (okhttp3.Response response = okhttp.getClient().newCall(rb.build())
+        .execute()) {
+      code = response.code();
+
+      Headers responseHeaders = response.headers();
+      for (int i = 0; i < responseHeaders.size(); i++) {
+        headers.add(responseHeaders.name(i), responseHeaders.value(i));
+      }
+
+      content = readContent(response.body(), okhttp.getMaxContent());
+
+      if (OkHttp.LOG.isTraceEnabled()) {
+        OkHttp.LOG.trace("fetched {} bytes via {} from {}", content.length,
+            response.protocol(), url);
+      }
+    }
+  }
+
+  /**
+   * Read the content, at most <code>maxContent</code> bytes. If the content
+   * is truncated the remainder is not read: closing the response then resets
+   * the HTTP/2 stream but keeps the connection open.
+   */
+  private static byte[] readContent(ResponseBody body, int maxContent)
+      throws IOException {
+    if (body == null) {
+      return new byte[0];
+    }
+    BufferedSource source = body.source();
+    if (maxContent < 0) {
+      return source.readByteArray();
+    }
+    source.request(maxContent);
+    long length = Math.min(source.getBuffer().size(), maxContent);
+    return source.readByteArray(length);
+  }
+
+  /*
+   * ------------------------- * <implementation:Response> *
+   * -------------------------
+   */
+
+  public URL getUrl() {
+    return url;
+  }
+
+  public int getCode() {
+    return code;
+  }
+
+  public String getHeader(String name) {
+    return headers.get(name);
+  }
+
+  public Metadata getHeaders() {
+    return headers;
+  }
+
+  public byte[] getContent() {
+    return content;
+  }
+
+  /*
+   * ------------------------- * <implementation:Response> *
+   * -------------------------
+   */
+
+}
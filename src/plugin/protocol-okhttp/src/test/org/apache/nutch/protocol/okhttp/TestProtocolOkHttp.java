@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.okhttp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.protocol.ProtocolOutput;
+import org.apache.nutch.protocol.ProtocolStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.Protocol;
+import okhttp3.internal.http2.ErrorCode;
+import okhttp3.internal.http2.StreamResetException;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+/**
+ * Test cases for protocol-okhttp
+ */
+public class TestProtocolOkHttp {
+
+  private OkHttp http;
+  private MockWebServer server;
+  private Configuration conf;
+  private HandshakeCertificates clientCertificates;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new Configuration();
+    conf.addResource("nutch-default.xml");
+    conf.addResource("nutch-site-test.xml");
+    conf.setInt("http.timeout", 1000);
+
+    HeldCertificate localhost = new HeldCertificate.Builder()
+        .addSubjectAlternativeName("localhost").build();
+    HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+        .heldCertificate(localhost).build();
+    clientCertificates = new HandshakeCertificates.Builder()
+        .addTrustedCertificate(localhost.certificate()).build();
+
+    server = new MockWebServer();
+    server.useHttps(serverCertificates.sslSocketFactory(), false);
+    server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+    server.start();
+
+    configure();
+  }
+
+  private void configure() {
+    http = new OkHttp();
+    http.setConf(conf);
+    // trust the server's self-signed certificate
+    http.setClient(http.getClient().newBuilder()
+        .sslSocketFactory(clientCertificates.sslSocketFactory(),
+            clientCertificates.trustManager())
+        .build());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.shutdown();
+  }
+
+  private ProtocolOutput fetch(String path) {
+    return http.getProtocolOutput(
+        new Text(server.url(path).toString()), new CrawlDatum());
+  }
+
+  @Test
+  public void testMultiplexing() throws Exception {
+    int requests = 10;
+    for (int i = 0; i < requests; i++) {
+      server.enqueue(new MockResponse().setBody("page")
+          .setBodyDelay(100, TimeUnit.MILLISECONDS));
+    }
+    ProtocolOutput out = fetch("/0");
+    assertEquals(ProtocolStatus.SUCCESS, out.getStatus().getCode());
+
+    Thread[] threads = new Thread[requests - 1];
+    final ProtocolOutput[] outputs = new ProtocolOutput[threads.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int n = i;
+      threads[i] = new Thread() {
+        public void run() {
+          outputs[n] = fetch("/" + (n + 1));
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (ProtocolOutput output : outputs) {
+      assertEquals(ProtocolStatus.SUCCESS, output.getStatus().getCode());
+      assertEquals("page", new String(output.getContent().getContent(),
+          "UTF-8"));
+    }
+    // all requests multiplexed over a single HTTP/2 connection
+    assertEquals(1, http.getClient().connectionPool().connectionCount());
+    for (int i = 0; i < requests; i++) {
+      assertEquals(i, server.takeRequest().getSequenceNumber());
+    }
+  }
+
+  @Test
+  public void testStreamTimeout() throws Exception {
+    server.enqueue(new MockResponse().setBody("fast"));
+    server.enqueue(new MockResponse().setBody("slow")
+        .setHeadersDelay(3, TimeUnit.SECONDS));
+    server.enqueue(new MockResponse().setBody("fast"));
+
+    ProtocolOutput out = fetch("/fast");
+    assertEquals(ProtocolStatus.SUCCESS, out.getStatus().getCode());
+    out = fetch("/slow");
+    assertEquals(ProtocolStatus.EXCEPTION, out.getStatus().getCode());
+    out = fetch("/fast");
+    assertEquals(ProtocolStatus.SUCCESS, out.getStatus().getCode());
+    // only the stream timed out, not the connection
+    assertEquals(1, http.getClient().connectionPool().connectionCount());
+  }
+
+  @Test
+  public void testContentLimit() throws Exception {
+    conf.setInt("http.content.limit", 10);
+    configure();
+    server.enqueue(new MockResponse().setBody("0123456789abcdef"));
+    ProtocolOutput out = fetch("/");
+    assertEquals("0123456789", new String(out.getContent().getContent(),
+        "UTF-8"));
+  }
+
+  @Test
+  public void testProtocolStatus() {
+    assertEquals(ProtocolStatus.RETRY, http.getProtocolStatus(
+        new StreamResetException(ErrorCode.REFUSED_STREAM)).getCode());
+    assertEquals(ProtocolStatus.EXCEPTION, http.getProtocolStatus(
+        new StreamResetException(ErrorCode.PROTOCOL_ERROR)).getCode());
+  }
+}
@@ -96,4 +96,9 @@ public class LinkAnalysisScoringFilter implements ScoringFilter {
     // nothing to do
   }
 
+  @Override
+  public boolean needsInlinks() {
+    return false;
+  }
+
 }
@@ -84,6 +84,11 @@ public class OrphanScoringFilter extends AbstractScoringFilter {
     }
   }
 
+  @Override
+  public boolean updatesOrphans() {
+    return true;
+  }
+
   public void orphanedScore(Text url, CrawlDatum datum) {
     // Already has an orphaned time?
     if (datum.getMetaData().containsKey(ORPHAN_KEY_WRITABLE)) {
@@ -66,4 +66,9 @@ public class SimilarityScoringFilter extends AbstractScoringFilter {
     similarityModel.distributeScoreToOutlinks(fromUrl, parseData, targets, adjust, allCount);
     return adjust;
   }
+
+  @Override
+  public boolean needsInlinks() {
+    return false;
+  }
 }
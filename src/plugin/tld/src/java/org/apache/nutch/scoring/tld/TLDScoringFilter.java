@@ -97,6 +97,11 @@ public class TLDScoringFilter implements ScoringFilter {
       List<CrawlDatum> inlinked) throws ScoringFilterException {
   }
 
+  @Override
+  public boolean needsInlinks() {
+    return false;
+  }
+
   public Configuration getConf() {
     return conf;
   }
@@ -29,10 +29,10 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.net.ParsedURL;
 import org.apache.nutch.net.URLFilter;
 import org.apache.nutch.plugin.Extension;
 import org.apache.nutch.plugin.PluginRepository;
-import org.apache.nutch.util.URLUtil;
 import org.apache.nutch.util.domain.DomainSuffix;
 
 /**
@@ -179,13 +179,26 @@ public class DomainBlacklistURLFilter implements URLFilter {
   }
 
   public String filter(String url) {
+    try {
+      return filter(ParsedURL.parse(url));
+    } catch (Exception e) {
+
+      // if an error happens, allow the url to pass
+      LOG.error("Could not apply filter on url: " + url + "\n"
+          + org.apache.hadoop.util.StringUtils.stringifyException(e));
+      return null;
+    }
+  }
+
+  @Override
+  public String filter(ParsedURL url) {
     try {
       // match for suffix, domain, and host in that order. more general will
       // override more specific
-      String domain = URLUtil.getDomainName(url).toLowerCase().trim();
-      String host = URLUtil.getHost(url);
+      String domain = url.getDomainName().toLowerCase().trim();
+      String host = url.getHost();
       String suffix = null;
-      DomainSuffix domainSuffix = URLUtil.getDomainSuffix(url);
+      DomainSuffix domainSuffix = url.getDomainSuffix();
       if (domainSuffix != null) {
         suffix = domainSuffix.getDomain();
       }
@@ -197,7 +210,7 @@ public class DomainBlacklistURLFilter implements URLFilter {
       }
 
       // doesn't match, allow
-      return url;
+      return url.toString();
     } catch (Exception e) {
 
       // if an error happens, allow the url to pass
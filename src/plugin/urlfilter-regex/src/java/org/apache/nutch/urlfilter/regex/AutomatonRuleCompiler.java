@@ -0,0 +1,539 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.urlfilter.regex;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import org.apache.nutch.urlfilter.api.RegexRule;
+import org.apache.nutch.urlfilter.regex.RegexURLFilter.Rule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.RegExp;
+import dk.brics.automaton.RunAutomaton;
+
+/**
+ * Compiles a list of {@link java.util.regex} rules into combined
+ * <a href="http://www.brics.dk/automaton/">dk.brics.automaton</a> finite-state
+ * automata.
+ *
+ * <p>
+ * The first matching rule determines whether a URL is accepted or rejected.
+ * Consecutive rules with the same sign (and the same host or domain) can be
+ * replaced by a single rule matching the union of the regular expressions
+ * without changing the result. Every such run of rules is compiled into
+ * deterministic automata, see {@link CombinedRule}.
+ * </p>
+ *
+ * <p>
+ * Only a subset of the java.util.regex syntax can be translated: literals,
+ * character classes (incl. <code>\d</code>, <code>\w</code>, <code>\s</code>),
+ * groups, alternation, greedy and reluctant quantifiers, <code>^</code> at the
+ * start and <code>$</code> at the end of the expression. Rules using other
+ * constructs (e.g., back references, look-around, boundaries or flags) are
+ * kept as java.util.regex rules and split the runs of combined rules.
+ * </p>
+ */
+class AutomatonRuleCompiler {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /**
+   * Max. number of states of a combined automaton. If exceeded, a run of rules
+   * is split into multiple combined rules.
+   */
+  static final int MAX_STATES = 50000;
+
+  /** Java's dot does not match line terminators */
+  private static final String DOT = "[^\\\n\\\r\\\u0085\\\u2028\\\u2029]";
+
+  /** Java's dollar also matches before a line terminator at the end */
+  private static final String DOLLAR = "(\\\r\\\n|\\\n|\\\r|\\\u0085|\\\u2028|\\\u2029)?";
+
+  /** Regular expression translated into dk.brics.automaton syntax. */
+  static class Translation {
+    /** expression without anchors */
+    final String body;
+    final boolean anchoredStart;
+    final boolean anchoredEnd;
+
+    Translation(String body, boolean anchoredStart, boolean anchoredEnd) {
+      this.body = body;
+      this.anchoredStart = anchoredStart;
+      this.anchoredEnd = anchoredEnd;
+    }
+
+    /** @return the expression to be compiled into an automaton */
+    String getExpression() {
+      return anchoredEnd ? (body + DOLLAR) : body;
+    }
+  }
+
+  /**
+   * Rule matching the union of multiple regular expressions. The expressions
+   * are compiled into up to four automata, depending on whether they are
+   * anchored at the start and/or end. Instead of prepending and appending
+   * <code>.*</code>, which makes the determinization of large unions
+   * expensive, an automaton is run from every start position of the URL (if
+   * not anchored at the start) and stops at the first accepting state (if not
+   * anchored at the end).
+   */
+  static class CombinedRule extends RegexRule {
+
+    private final RunAutomaton prefix;
+    private final RunAutomaton anchoredPrefix;
+    private final RunAutomaton suffix;
+    private final RunAutomaton anchoredBoth;
+    private final Pattern[] patterns;
+
+    CombinedRule(boolean sign, String regex, String hostOrDomain,
+        RunAutomaton prefix, RunAutomaton anchoredPrefix, RunAutomaton suffix,
+        RunAutomaton anchoredBoth, Pattern[] patterns) {
+      super(sign, regex, hostOrDomain);
+      this.prefix = prefix;
+      this.anchoredPrefix = anchoredPrefix;
+      this.suffix = suffix;
+      this.anchoredBoth = anchoredBoth;
+      this.patterns = patterns;
+    }
+
+    protected boolean match(String url) {
+      if (hasSurrogates(url)) {
+        // java.util.regex matches code points, the automata match chars
+        for (Pattern pattern : patterns) {
+          if (pattern.matcher(url).find()) {
+            return true;
+          }
+        }
+        return false;
+      }
+      return run(anchoredPrefix, url, false, false)
+          || run(anchoredBoth, url, false, true)
+          || run(prefix, url, true, false) || run(suffix, url, true, true);
+    }
+
+    /**
+     * @param anyStart
+     *          try all start positions, otherwise only the first one
+     * @param atEnd
+     *          match must end at the end of the URL, otherwise any accepting
+     *          state is a match
+     */
+    private static boolean run(RunAutomaton automaton, String url,
+        boolean anyStart, boolean atEnd) {
+      if (automaton == null) {
+        return false;
+      }
+      int lastStart = anyStart ? url.length() : 0;
+      for (int i = 0; i <= lastStart; i++) {
+        int state = automaton.getInitialState();
+        if (!atEnd && automaton.isAccept(state)) {
+          return true;
+        }
+        for (int j = i; j < url.length() && state != -1; j++) {
+          state = automaton.step(state, url.charAt(j));
+          if (!atEnd && state != -1 && automaton.isAccept(state)) {
+            return true;
+          }
+        }
+        if (atEnd && state != -1 && automaton.isAccept(state)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static boolean hasSurrogates(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      if (Character.isSurrogate(s.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compile rules, combining consecutive rules with the same sign and host or
+   * domain into a single rule.
+   *
+   * @param rules
+   *          rules created by {@link RegexURLFilter}
+   * @return equivalent rules
+   */
+  static List<RegexRule> compile(List<RegexRule> rules) {
+    List<RegexRule> compiled = new ArrayList<>();
+    List<Rule> run = new ArrayList<>();
+    List<Translation> translations = new ArrayList<>();
+    int fallback = 0;
+    for (RegexRule r : rules) {
+      Translation translation = null;
+      if (r instanceof Rule) {
+        translation = translate(((Rule) r).getRegex());
+      }
+      if (translation == null) {
+        combine(run, translations, compiled);
+        compiled.add(r);
+        fallback++;
+        continue;
+      }
+      Rule rule = (Rule) r;
+      if (!run.isEmpty()
+          && (run.get(0).isAccept() != rule.isAccept() || !Objects.equals(
+              run.get(0).getHostOrDomain(), rule.getHostOrDomain()))) {
+        combine(run, translations, compiled);
+      }
+      run.add(rule);
+      translations.add(translation);
+    }
+    combine(run, translations, compiled);
+    LOG.info("Compiled {} rules into {} rules ({} not supported by automaton)",
+        rules.size(), compiled.size(), fallback);
+    return compiled;
+  }
+
+  /** Add combined rule(s) for a run of rules and clear the run. */
+  private static void combine(List<Rule> run, List<Translation> translations,
+      List<RegexRule> compiled) {
+    if (run.isEmpty()) {
+      return;
+    }
+    combine(run, translations, 0, run.size(), compiled);
+    run.clear();
+    translations.clear();
+  }
+
+  private static void combine(List<Rule> run, List<Translation> translations,
+      int from, int to, List<RegexRule> compiled) {
+    @SuppressWarnings("unchecked")
+    List<Automaton>[] automata = new List[4];
+    for (int i = 0; i < automata.length; i++) {
+      automata[i] = new ArrayList<>();
+    }
+    for (int i = from; i < to; i++) {
+      Translation t = translations.get(i);
+      int type = (t.anchoredStart ? 1 : 0) + (t.anchoredEnd ? 2 : 0);
+      automata[type].add(new RegExp(t.getExpression(), RegExp.NONE)
+          .toAutomaton());
+    }
+    RunAutomaton[] runAutomata = new RunAutomaton[automata.length];
+    for (int i = 0; i < automata.length; i++) {
+      if (automata[i].isEmpty()) {
+        continue;
+      }
+      Automaton union = Automaton.union(automata[i]);
+      union.determinize();
+      if (union.getNumberOfStates() > MAX_STATES && (to - from) > 1) {
+        int mid = (from + to) / 2;
+        combine(run, translations, from, mid, compiled);
+        combine(run, translations, mid, to, compiled);
+        return;
+      }
+      runAutomata[i] = new RunAutomaton(union);
+    }
+    Rule first = run.get(from);
+    StringBuilder regex = new StringBuilder();
+    Pattern[] patterns = new Pattern[to - from];
+    for (int i = from; i < to; i++) {
+      if (i > from) {
+        regex.append('|');
+      }
+      regex.append(run.get(i).getRegex());
+      patterns[i - from] = run.get(i).pattern;
+    }
+    compiled.add(new CombinedRule(first.isAccept(), regex.toString(),
+        first.getHostOrDomain(), runAutomata[0], runAutomata[1],
+        runAutomata[2], runAutomata[3], patterns));
+  }
+
+  /**
+   * Translate a java.util.regex expression into dk.brics.automaton syntax.
+   *
+   * @return the translated expression or null if the expression uses
+   *         constructs which cannot be translated
+   */
+  static Translation translate(String regex) {
+    int start = 0;
+    int end = regex.length();
+    boolean anchoredStart = false;
+    boolean anchoredEnd = false;
+    if (end > 0 && regex.charAt(0) == '^') {
+      anchoredStart = true;
+      start = 1;
+    }
+    if (end > start && regex.charAt(end - 1) == '$'
+        && !isEscaped(regex, end - 1)) {
+      anchoredEnd = true;
+      end--;
+    }
+    StringBuilder sb = new StringBuilder();
+    int depth = 0;
+    boolean atom = false; // whether a quantifier may follow
+    boolean empty = true; // whether the current alternative is empty
+    for (int i = start; i < end; i++) {
+      char c = regex.charAt(i);
+      switch (c) {
+      case '\\':
+        if (++i >= end) {
+          return null;
+        }
+        String esc = translateEscape(regex.charAt(i), false);
+        if (esc == null) {
+          return null;
+        }
+        sb.append(esc);
+        atom = true;
+        empty = false;
+        break;
+      case '[':
+        int close = translateClass(regex, i, end, sb);
+        if (close < 0) {
+          return null;
+        }
+        i = close;
+        atom = true;
+        empty = false;
+        break;
+      case '(':
+        if (i + 1 < end && regex.charAt(i + 1) == '?') {
+          if (i + 2 < end && regex.charAt(i + 2) == ':') {
+            i += 2;
+          } else {
+            // look-around, named groups, flags
+            return null;
+          }
+        }
+        sb.append('(');
+        depth++;
+        atom = false;
+        empty = true;
+        break;
+      case ')':
+        if (depth == 0) {
+          return null;
+        }
+        appendEmpty(sb, empty);
+        sb.append(')');
+        depth--;
+        atom = true;
+        empty = false;
+        break;
+      case '|':
+        if (depth == 0 && (anchoredStart || anchoredEnd)) {
+          // anchor applies only to the first or last alternative
+          return null;
+        }
+        appendEmpty(sb, empty);
+        sb.append('|');
+        atom = false;
+        empty = true;
+        break;
+      case '*':
+      case '+':
+      case '?':
+      case '{':
+        if (!atom) {
+          return null;
+        }
+        if (c == '{') {
+          int closeBrace = regex.indexOf('}', i);
+          if (closeBrace < 0 || closeBrace >= end
+              || !regex.substring(i + 1, closeBrace).matches("\\d+(,\\d*)?")) {
+            return null;
+          }
+          sb.append(regex, i, closeBrace + 1);
+          i = closeBrace;
+        } else {
+          sb.append(c);
+        }
+        if (i + 1 < end) {
+          char mode = regex.charAt(i + 1);
+          if (mode == '?') {
+            // reluctant: same set of matched strings
+            i++;
+          } else if (mode == '+') {
+            // possessive quantifiers may fail to match
+            return null;
+          }
+        }
+        atom = false;
+        break;
+      case '.':
+        sb.append(DOT);
+        atom = true;
+        empty = false;
+        break;
+      case '^':
+      case '$':
+        return null;
+      default:
+        appendLiteral(sb, c);
+        atom = true;
+        empty = false;
+      }
+    }
+    if (depth != 0) {
+      return null;
+    }
+    if (sb.length() > 0) {
+      appendEmpty(sb, empty);
+    }
+    Translation translation = new Translation(sb.toString(), anchoredStart,
+        anchoredEnd);
+    try {
+      new RegExp(translation.getExpression(), RegExp.NONE);
+    } catch (IllegalArgumentException e) {
+      LOG.debug("Expression {} not supported by automaton: {}", regex,
+          e.getMessage());
+      return null;
+    }
+    return translation;
+  }
+
+  /**
+   * Append an empty alternative, empty alternatives are written as empty
+   * group in dk.brics.automaton syntax.
+   */
+  private static void appendEmpty(StringBuilder sb, boolean empty) {
+    if (empty) {
+      sb.append("()");
+    }
+  }
+
+  private static boolean isEscaped(String regex, int pos) {
+    int backslashes = 0;
+    while (pos > 0 && regex.charAt(--pos) == '\\') {
+      backslashes++;
+    }
+    return (backslashes % 2) == 1;
+  }
+
+  /**
+   * Translate a character class starting at <code>open</code>.
+   *
+   * @return position of the closing bracket or -1 if the class cannot be
+   *         translated
+   */
+  private static int translateClass(String regex, int open, int end,
+      StringBuilder sb) {
+    int i = open + 1;
+    StringBuilder cls = new StringBuilder("[");
+    if (i < end && regex.charAt(i) == '^') {
+      cls.append('^');
+      i++;
+    }
+    if (i < end && regex.charAt(i) == ']') {
+      return -1;
+    }
+    boolean empty = true;
+    boolean range = false; // whether the last item may start a range
+    for (; i < end; i++) {
+      char c = regex.charAt(i);
+      if (c == ']') {
+        if (empty) {
+          return -1;
+        }
+        sb.append(cls).append(']');
+        return i;
+      }
+      if (c == '[' || (c == '&' && i + 1 < end && regex.charAt(i + 1) == '&')) {
+        // union or intersection of classes
+        return -1;
+      }
+      if (c == '\\') {
+        if (++i >= end) {
+          return -1;
+        }
+        char e = regex.charAt(i);
+        String esc = translateEscape(e, true);
+        if (esc == null) {
+          return -1;
+        }
+        cls.append(esc);
+        range = "dws".indexOf(e) < 0;
+      } else if (c == '-' && range && i + 1 < end
+          && regex.charAt(i + 1) != ']') {
+        cls.append('-');
+        range = false;
+        continue;
+      } else {
+        appendLiteral(cls, c);
+        range = true;
+      }
+      empty = false;
+    }
+    return -1;
+  }
+
+  /**
+   * Translate an escape sequence.
+   *
+   * @param inClass
+   *          whether the escape sequence is part of a character class
+   * @return the translated sequence or null if not supported
+   */
+  private static String translateEscape(char c, boolean inClass) {
+    switch (c) {
+    case 'd':
+      return inClass ? "0-9" : "[0-9]";
+    case 'w':
+      return inClass ? "a-zA-Z_0-9" : "[a-zA-Z_0-9]";
+    case 's':
+      String space = "\\ \\\t\\\n\\\u000B\\\f\\\r";
+      return inClass ? space : "[" + space + "]";
+    case 'D':
+      return inClass ? null : "[^0-9]";
+    case 'W':
+      return inClass ? null : "[^a-zA-Z_0-9]";
+    case 'S':
+      return inClass ? null : "[^\\ \\\t\\\n\\\u000B\\\f\\\r]";
+    case 't':
+      return "\\\t";
+    case 'n':
+      return "\\\n";
+    case 'r':
+      return "\\\r";
+    case 'f':
+      return "\\\f";
+    default:
+      if (Character.isLetterOrDigit(c)) {
+        // boundaries, back references, code points, quoting, etc.
+        return null;
+      }
+      StringBuilder sb = new StringBuilder(2);
+      appendLiteral(sb, c);
+      return sb.toString();
+    }
+  }
+
+  private static void appendLiteral(StringBuilder sb, char c) {
+    if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+        || (c >= '0' && c <= '9')) {
+      sb.append(c);
+    } else {
+      // any other character may be an operator in dk.brics.automaton
+      sb.append('\\').append(c);
+    }
+  }
+
+}
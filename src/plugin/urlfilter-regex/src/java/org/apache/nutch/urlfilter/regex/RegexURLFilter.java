@@ -19,6 +19,7 @@ package org.apache.nutch.urlfilter.regex;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -30,11 +31,16 @@ import org.apache.nutch.util.NutchConfiguration;
 /**
  * Filters URLs based on a file of regular expressions using the
  * {@link java.util.regex Java Regex implementation}.
+ * 
+ * If <code>urlfilter.regex.engine</code> is <code>automaton</code>, rules are
+ * compiled into combined finite-state automata, see
+ * {@link AutomatonRuleCompiler}.
  */
 public class RegexURLFilter extends RegexURLFilterBase {
 
   public static final String URLFILTER_REGEX_FILE = "urlfilter.regex.file";
   public static final String URLFILTER_REGEX_RULES = "urlfilter.regex.rules";
+  public static final String URLFILTER_REGEX_ENGINE = "urlfilter.regex.engine";
 
   public RegexURLFilter() {
     super();
@@ -75,8 +81,15 @@ public class RegexURLFilter extends RegexURLFilterBase {
   protected RegexRule createRule(boolean sign, String regex, String hostOrDomain) {
     return new Rule(sign, regex, hostOrDomain);
   }
-  
-  
+
+  @Override
+  protected List<RegexRule> compileRules(List<RegexRule> rules) {
+    if (getConf() != null
+        && "automaton".equals(getConf().get(URLFILTER_REGEX_ENGINE, "java"))) {
+      return AutomatonRuleCompiler.compile(rules);
+    }
+    return rules;
+  }
 
   /*
    * ------------------------------------ * </implementation:RegexURLFilterBase>
@@ -89,9 +102,9 @@ public class RegexURLFilter extends RegexURLFilterBase {
     main(filter, args);
   }
 
-  private class Rule extends RegexRule {
+  static class Rule extends RegexRule {
 
-    private Pattern pattern;
+    final Pattern pattern;
 
     Rule(boolean sign, String regex) {
       this(sign, regex, null);
@@ -105,6 +118,18 @@ public class RegexURLFilter extends RegexURLFilterBase {
     protected boolean match(String url) {
       return pattern.matcher(url).find();
     }
+
+    boolean isAccept() {
+      return accept();
+    }
+
+    String getHostOrDomain() {
+      return hostOrDomain();
+    }
+
+    String getRegex() {
+      return regex();
+    }
   }
 
 }
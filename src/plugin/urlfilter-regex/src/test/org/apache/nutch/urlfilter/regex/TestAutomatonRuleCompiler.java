@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.urlfilter.regex;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.net.URLFilter;
+import org.apache.nutch.urlfilter.api.RegexRule;
+import org.apache.nutch.urlfilter.api.RegexURLFilterBaseTest;
+import org.apache.nutch.urlfilter.regex.AutomatonRuleCompiler.CombinedRule;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>RegexURLFilter</code> using the automaton engine.
+ */
+public class TestAutomatonRuleCompiler extends RegexURLFilterBaseTest {
+
+  private static final String[] URLS = { "http://example.com/",
+      "http://example.com/index.html", "https://www.example.org/a/b/c.gif",
+      "http://example.com/image.GIF", "ftp://example.com/file.txt",
+      "mailto:someone@example.com", "http://example.com/search?q=nutch",
+      "http://example.com/a-b_c/123/", "http://example.com/x\n",
+      "http://example.com/été", "http://example.com/😀/",
+      "http://127.0.0.1:8080/", "HTTP://EXAMPLE.COM/", "", "file:///etc/" };
+
+  private static final String[] REGEXES = { ".", "^http://", "^https?://",
+      "\\.(gif|GIF|jpg)$", "[?*!@=]", "^(file|ftp|mailto):",
+      "^http://([a-z0-9]*\\.)*example.com/", "/\\d+/", "\\w+-\\w+",
+      "[^a-z/:.]", "example\\.com/$", "com/.$", "x$", "/.{2}/", "/.?/",
+      "^.*//.*\\.org/", "[\\d.:]{9,}", "a.*?b", "[-_]", "[a-c-]",
+      "\\s", "\\S+\\.html", "^$", "/(?:a|b)/", "\\$", "/...$",
+      "^https?://(www\\.|)example\\.", "/(|a|)/", "(a||b)c|", "()" };
+
+  private static final String[] UNSUPPORTED = { "\\bexample\\b",
+      ".*(/.+?)/.*?\\1/.*?\\1/", "(?i)example", "^a|b", "a$|b", "a(?=b)",
+      "[a-z&&[^x]]", "\\p{Alpha}", "a*+", "\\Qa.b\\E" };
+
+  protected URLFilter getURLFilter(Reader rules) {
+    try {
+      StringBuilder sb = new StringBuilder();
+      BufferedReader in = new BufferedReader(rules);
+      String line;
+      while ((line = in.readLine()) != null) {
+        sb.append(line).append('\n');
+      }
+      Configuration conf = NutchConfiguration.create();
+      conf.set(RegexURLFilter.URLFILTER_REGEX_RULES, sb.toString());
+      conf.set(RegexURLFilter.URLFILTER_REGEX_ENGINE, "automaton");
+      RegexURLFilter filter = new RegexURLFilter();
+      filter.setConf(conf);
+      return filter;
+    } catch (IOException e) {
+      Assert.fail(e.toString());
+      return null;
+    }
+  }
+
+  @Test
+  public void test() {
+    test("WholeWebCrawling");
+    test("IntranetCrawling");
+    test("nutch1838");
+    bench(50, "Benchmarks");
+    bench(800, "Benchmarks");
+  }
+
+  @Test
+  public void testTranslate() {
+    for (String regex : REGEXES) {
+      Assert.assertNotNull(regex, AutomatonRuleCompiler.translate(regex));
+      Pattern pattern = Pattern.compile(regex);
+      List<RegexRule> rules = AutomatonRuleCompiler.compile(Collections
+          .<RegexRule> singletonList(new RegexURLFilter.Rule(true, regex)));
+      Assert.assertEquals(1, rules.size());
+      CombinedRule rule = (CombinedRule) rules.get(0);
+      for (String url : URLS) {
+        Assert.assertEquals(regex + " on " + url, pattern.matcher(url).find(),
+            rule.match(url));
+      }
+    }
+    for (String regex : UNSUPPORTED) {
+      Assert.assertNull(regex, AutomatonRuleCompiler.translate(regex));
+    }
+  }
+
+  @Test
+  public void testFirstMatchWins() {
+    StringBuilder rules = new StringBuilder();
+    boolean sign = false;
+    for (String regex : REGEXES) {
+      rules.append(sign ? '+' : '-').append(regex).append('\n');
+      // runs of rules with the same sign
+      if (regex.length() % 3 == 0) {
+        sign = !sign;
+      }
+    }
+    rules.append("-.*(/.+?)/.*?\\1/.*?\\1/\n");
+    rules.append("+.\n");
+    URLFilter automaton = getURLFilter(new StringReader(rules.toString()));
+    RegexURLFilter java = new RegexURLFilter();
+    Configuration conf = NutchConfiguration.create();
+    conf.set(RegexURLFilter.URLFILTER_REGEX_RULES, rules.toString());
+    java.setConf(conf);
+    for (String url : URLS) {
+      Assert.assertEquals(url, java.filter(url), automaton.filter(url));
+    }
+  }
+
+}
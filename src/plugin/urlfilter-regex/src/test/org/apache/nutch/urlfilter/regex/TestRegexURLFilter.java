@@ -19,6 +19,7 @@ package org.apache.nutch.urlfilter.regex;
 // JDK imports
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 
 import org.apache.nutch.net.*;
 // Nutch imports
@@ -58,4 +59,24 @@ public class TestRegexURLFilter extends RegexURLFilterBaseTest {
     test("nutch1838");
   }
 
+  @Test
+  public void testHostOrDomainRuleOrder() throws IOException {
+    // global rules before and after host and domain rules
+    RegexURLFilter filter = new RegexURLFilter(new StringReader(
+        "-\\.gif$\n" + "> www.example.org\n" + "+/public/\n" + "-.\n" + "<\n"
+            + "-/private/\n" + "> example.org\n" + "+/images/\n" + "-/\n"
+            + "<\n" + "+.\n"));
+    Assert.assertNull(filter.filter("http://www.example.org/public/a.gif"));
+    Assert.assertNotNull(filter.filter("http://www.example.org/public/"));
+    Assert.assertNull(filter.filter("http://www.example.org/private/"));
+    Assert.assertNull(filter.filter("http://www.example.org/images/"));
+    Assert.assertNotNull(filter.filter("http://images.example.org/images/"));
+    Assert.assertNull(filter.filter("http://images.example.org/private/"));
+    Assert.assertNull(filter.filter("http://images.example.org/"));
+    Assert.assertNull(filter.filter("http://example.org/private/"));
+    Assert.assertNotNull(filter.filter("http://example.org/images/"));
+    Assert.assertNotNull(filter.filter("http://www.example.com/"));
+    Assert.assertNull(filter.filter("http://www.example.com/private/"));
+  }
+
 }
@@ -156,6 +156,11 @@ public class URLMetaScoringFilter extends Configured implements ScoringFilter {
     return;
   }
 
+  @Override
+  public boolean needsInlinks() {
+    return false;
+  }
+
   /**
    * handles conf assignment and pulls the value assignment from the
    * "urlmeta.tags" property
@@ -30,6 +30,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.hadoop.conf.Configured;
+import org.apache.nutch.net.ParsedURL;
 import org.apache.nutch.net.URLNormalizer;
 import org.apache.nutch.net.URLNormalizers;
 import org.apache.nutch.util.NutchConfiguration;
@@ -97,8 +98,21 @@ public class BasicURLNormalizer extends Configured implements URLNormalizer {
 
     urlString = urlString.trim(); // remove extra spaces
 
-    URL url = new URL(urlString);
+    return normalize(urlString, new URL(urlString));
+  }
+
+  @Override
+  public String normalize(ParsedURL url, String scope)
+      throws MalformedURLException {
+    String urlString = url.toString();
+    if (urlString.trim().length() != urlString.length()) {
+      return normalize(urlString, scope);
+    }
+    return normalize(urlString, url.getURL());
+  }
 
+  private String normalize(String urlString, URL url)
+      throws MalformedURLException {
     String protocol = url.getProtocol();
     String host = url.getHost();
     int port = url.getPort();
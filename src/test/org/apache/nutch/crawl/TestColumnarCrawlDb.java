@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.metadata.Nutch;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the columnar CrawlDb format. */
+public class TestColumnarCrawlDb {
+
+  private static final long NOW = 1500000000000L;
+  private static final long DAY = 24 * 3600 * 1000L;
+
+  private Configuration conf;
+  private FileSystem fs;
+  private final Path testdir = new Path("build/test/columnar-crawldb-test");
+
+  @Before
+  public void setUp() throws Exception {
+    conf = CrawlDBTestUtil.createContext().getConfiguration();
+    fs = FileSystem.get(conf);
+    fs.delete(testdir, true);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.delete(testdir, true);
+  }
+
+  /** Entries sorted by URL, one block of 10 entries per day of fetch time */
+  private List<CrawlDBTestUtil.URLCrawlDatum> createEntries() {
+    List<CrawlDBTestUtil.URLCrawlDatum> entries = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      CrawlDatum datum = new CrawlDatum();
+      datum.setStatus(i % 3 == 0 ? CrawlDatum.STATUS_DB_FETCHED
+          : CrawlDatum.STATUS_DB_UNFETCHED);
+      datum.setFetchTime(NOW + (i / 10) * DAY);
+      datum.setRetriesSinceFetch(i % 4);
+      datum.setFetchInterval(30 * 24 * 3600);
+      datum.setScore(i / 10);
+      datum.setModifiedTime(i % 2 == 0 ? 0 : NOW - i);
+      if (i % 3 == 0) {
+        datum.setSignature(new byte[] { (byte) i, 1, 2, 3 });
+      }
+      if (i % 5 == 0) {
+        datum.getMetaData().put(new Text("i"), new IntWritable(i));
+      }
+      entries.add(new CrawlDBTestUtil.URLCrawlDatum(new Text(String.format(
+          "http://www.example.com/%03d", i)), datum));
+    }
+    return entries;
+  }
+
+  private Path writeCrawlDb(Path crawlDb,
+      List<CrawlDBTestUtil.URLCrawlDatum> entries) throws IOException {
+    Configuration writeConf = new Configuration(conf);
+    writeConf.setInt(ColumnarCrawlDbWriter.BLOCK_SIZE, 10);
+    Path file = new Path(new Path(crawlDb, CrawlDb.CURRENT_NAME),
+        "part-r-00000");
+    ColumnarCrawlDbWriter writer = new ColumnarCrawlDbWriter(fs.create(file),
+        writeConf);
+    for (CrawlDBTestUtil.URLCrawlDatum entry : entries) {
+      writer.append(entry.url, entry.datum);
+    }
+    writer.close();
+    return file;
+  }
+
+  private List<CrawlDBTestUtil.URLCrawlDatum> read(ColumnarCrawlDbReader reader)
+      throws IOException {
+    List<CrawlDBTestUtil.URLCrawlDatum> entries = new ArrayList<>();
+    Text url = new Text();
+    CrawlDatum datum = new CrawlDatum();
+    while (reader.next(url, datum)) {
+      CrawlDatum copy = new CrawlDatum();
+      copy.set(datum);
+      entries.add(new CrawlDBTestUtil.URLCrawlDatum(new Text(url), copy));
+    }
+    reader.close();
+    return entries;
+  }
+
+  @Test
+  public void testReadWrite() throws IOException {
+    List<CrawlDBTestUtil.URLCrawlDatum> entries = createEntries();
+    Path file = writeCrawlDb(testdir, entries);
+    Assert.assertTrue(ColumnarCrawlDbReader.isColumnar(fs, file));
+
+    List<CrawlDBTestUtil.URLCrawlDatum> result = read(
+        new ColumnarCrawlDbReader(fs, file, conf));
+    Assert.assertEquals(entries.size(), result.size());
+    for (int i = 0; i < entries.size(); i++) {
+      Assert.assertEquals(entries.get(i).url, result.get(i).url);
+      Assert.assertEquals(entries.get(i).datum, result.get(i).datum);
+    }
+
+    // read only the score
+    Configuration readConf = new Configuration(conf);
+    CrawlDbInputFormat.setColumns(readConf, "score");
+    result = read(new ColumnarCrawlDbReader(fs, file, readConf));
+    Assert.assertEquals(entries.size(), result.size());
+    for (int i = 0; i < entries.size(); i++) {
+      CrawlDatum datum = result.get(i).datum;
+      Assert.assertEquals(entries.get(i).url, result.get(i).url);
+      Assert.assertEquals(entries.get(i).datum.getScore(), datum.getScore(),
+          0.0f);
+      Assert.assertEquals(0, datum.getStatus());
+      Assert.assertEquals(0, datum.getFetchTime());
+      Assert.assertNull(datum.getSignature());
+      Assert.assertTrue(datum.getMetaData().isEmpty());
+    }
+  }
+
+  @Test
+  public void testRestrictions() throws IOException {
+    List<CrawlDBTestUtil.URLCrawlDatum> entries = createEntries();
+    Path file = writeCrawlDb(testdir, entries);
+
+    // skip 4 blocks by fetch time, 2 more by score
+    Configuration readConf = new Configuration(conf);
+    CrawlDbInputFormat.setSkipFetchTime(readConf, NOW + 2 * DAY,
+        NOW + 6 * DAY);
+    CrawlDbInputFormat.setMinScore(readConf, 2.0f);
+    CrawlDbInputFormat.setStatus(readConf, "DB_FETCHED");
+    ColumnarCrawlDbReader reader = new ColumnarCrawlDbReader(fs, file,
+        readConf);
+    List<CrawlDBTestUtil.URLCrawlDatum> result = read(reader);
+    Assert.assertEquals(6, reader.getBlocksSkipped());
+    Assert.assertEquals(4, reader.getBlocksRead());
+
+    List<CrawlDBTestUtil.URLCrawlDatum> expected = new ArrayList<>();
+    for (CrawlDBTestUtil.URLCrawlDatum entry : entries) {
+      long fetchTime = entry.datum.getFetchTime();
+      if ((fetchTime <= NOW + 2 * DAY || fetchTime > NOW + 6 * DAY)
+          && entry.datum.getScore() >= 2.0f
+          && entry.datum.getStatus() == CrawlDatum.STATUS_DB_FETCHED) {
+        expected.add(entry);
+      }
+    }
+    Assert.assertEquals(expected.size(), result.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i).url, result.get(i).url);
+      Assert.assertEquals(expected.get(i).datum, result.get(i).datum);
+    }
+  }
+
+  @Test
+  public void testGenerate() throws Exception {
+    Path crawlDb = new Path(testdir, "crawldb");
+    Path segments = new Path(testdir, "segments");
+    List<CrawlDBTestUtil.URLCrawlDatum> entries = createEntries();
+    writeCrawlDb(crawlDb, entries);
+
+    Configuration myConfiguration = new Configuration(conf);
+    myConfiguration.set(CrawlDb.CRAWLDB_FORMAT,
+        CrawlDb.CRAWLDB_FORMAT_COLUMNAR);
+    myConfiguration.setBoolean(Generator.GENERATE_UPDATE_CRAWLDB, true);
+    myConfiguration.setInt("db.fetch.interval.max", 90 * 24 * 3600);
+    // entries of the first 3 days are due for fetch
+    Generator generator = new Generator(myConfiguration);
+    Path[] generated = generator.generate(crawlDb, segments, 1,
+        Long.MAX_VALUE, NOW + 2 * DAY + 1, false, false);
+    Assert.assertNotNull(generated);
+
+    // the CrawlDb is updated in columnar format
+    Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
+    Path[] files = ColumnarCrawlDbReader.getFiles(fs, current);
+    Assert.assertNotNull(files);
+    CrawlDbReader dbReader = new CrawlDbReader();
+    for (CrawlDBTestUtil.URLCrawlDatum entry : entries) {
+      CrawlDatum datum = dbReader.get(crawlDb.toString(),
+          entry.url.toString(), myConfiguration);
+      Assert.assertNotNull(entry.url.toString(), datum);
+      LongWritable genTime = (LongWritable) datum.getMetaData().get(
+          Nutch.WRITABLE_GENERATE_TIME_KEY);
+      Assert.assertEquals(entry.url.toString(),
+          entry.datum.getFetchTime() <= NOW + 2 * DAY + 1, genTime != null);
+    }
+    Assert.assertNull(dbReader.get(crawlDb.toString(),
+        "http://www.example.com/not-contained", myConfiguration));
+    dbReader.close();
+  }
+
+}
@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.nutch.protocol.ProtocolStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests for serialization and copying of {@link CrawlDatum}. */
+public class TestCrawlDatum {
+
+  private CrawlDatum createDatum() {
+    CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_DB_FETCHED, 3600, 1.5f);
+    datum.setFetchTime(1500000000000L);
+    datum.setModifiedTime(1400000000000L);
+    datum.setSignature(new byte[] { 1, 2, 3, 4 });
+    MapWritable meta = datum.getMetaData();
+    meta.put(new Text("text"), new Text("value"));
+    meta.put(new Text("int"), new IntWritable(-42));
+    meta.put(new Text("long"), new LongWritable(1L << 40));
+    meta.put(new Text("float"), new FloatWritable(0.25f));
+    meta.put(new Text("bytes"), new BytesWritable(new byte[] { 5, 6 }));
+    meta.put(new Text("status"), ProtocolStatus.STATUS_SUCCESS);
+    meta.put(new Text("other"), new DummyWritable(7));
+    return datum;
+  }
+
+  private static byte[] write(Writable w) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    w.write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static CrawlDatum read(byte[] bytes) throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    CrawlDatum datum = CrawlDatum.read(in);
+    Assert.assertEquals(bytes.length, in.getPosition());
+    return datum;
+  }
+
+  /** Write a datum the way version 7 did. */
+  private static byte[] writeVersion7(CrawlDatum datum) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    out.writeByte(7);
+    out.writeByte(datum.getStatus());
+    out.writeLong(datum.getFetchTime());
+    out.writeByte(datum.getRetriesSinceFetch());
+    out.writeInt(datum.getFetchInterval());
+    out.writeFloat(datum.getScore());
+    out.writeLong(datum.getModifiedTime());
+    out.writeByte(datum.getSignature().length);
+    out.write(datum.getSignature());
+    out.writeBoolean(true);
+    datum.getMetaData().write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  /**
+   * Compare metadata as map, {@link CrawlDatum#equals(Object)} relies on
+   * hashCode() which is not implemented by ProtocolStatus
+   */
+  private static void assertDatumEquals(CrawlDatum expected, CrawlDatum actual) {
+    Assert.assertEquals(expected.getStatus(), actual.getStatus());
+    Assert.assertEquals(expected.getFetchTime(), actual.getFetchTime());
+    Assert.assertEquals(expected.getModifiedTime(), actual.getModifiedTime());
+    Assert.assertEquals(expected.getFetchInterval(), actual.getFetchInterval());
+    Assert.assertEquals(expected.getScore(), actual.getScore(), 0.0f);
+    Assert.assertArrayEquals(expected.getSignature(), actual.getSignature());
+    Assert.assertEquals(expected.getMetaData(), actual.getMetaData());
+  }
+
+  @Test
+  public void testReadWrite() throws IOException {
+    CrawlDatum datum = createDatum();
+    byte[] bytes = write(datum);
+    CrawlDatum result = read(bytes);
+    assertDatumEquals(datum, result);
+    // compact encoding is smaller than version 7
+    Assert.assertTrue(bytes.length < writeVersion7(datum).length);
+
+    // without metadata
+    CrawlDatum empty = new CrawlDatum(CrawlDatum.STATUS_DB_UNFETCHED, 60);
+    result = read(write(empty));
+    Assert.assertEquals(empty, result);
+    Assert.assertFalse(result.hasMetaData());
+
+    // the raw comparator is not affected by the metadata encoding
+    CrawlDatum.Comparator comparator = new CrawlDatum.Comparator();
+    byte[] emptyBytes = write(empty);
+    Assert.assertEquals(Integer.signum(datum.compareTo(empty)), Integer
+        .signum(comparator.compare(bytes, 0, bytes.length, emptyBytes, 0,
+            emptyBytes.length)));
+  }
+
+  @Test
+  public void testReadVersion7() throws IOException {
+    CrawlDatum datum = createDatum();
+    CrawlDatum result = read(writeVersion7(datum));
+    assertDatumEquals(datum, result);
+    // written again in the current version
+    assertDatumEquals(datum, read(write(result)));
+  }
+
+  @Test
+  public void testInternedKeys() throws IOException {
+    byte[] bytes = write(createDatum());
+    CrawlDatum datum1 = read(bytes);
+    CrawlDatum datum2 = read(bytes);
+    for (Writable key1 : datum1.getMetaData().keySet()) {
+      boolean found = false;
+      for (Writable key2 : datum2.getMetaData().keySet()) {
+        if (key1 == key2) {
+          found = true;
+        }
+      }
+      Assert.assertTrue("Key " + key1 + " not interned", found);
+    }
+  }
+
+  @Test
+  public void testLazyMetaData() throws IOException {
+    CrawlDatum datum = createDatum();
+    byte[] bytes = write(datum);
+    CrawlDatum result = read(bytes);
+    Assert.assertTrue(result.hasMetaData());
+
+    // written and copied without decoding
+    Assert.assertArrayEquals(bytes, write(result));
+    CrawlDatum copy = new CrawlDatum();
+    copy.set(result);
+    Assert.assertArrayEquals(bytes, write(copy));
+
+    // decoded on access, modifications are not visible in the copy
+    copy.getMetaData().put(new Text("copy"), new IntWritable(1));
+    Assert.assertFalse(result.getMetaData().containsKey(new Text("copy")));
+    assertDatumEquals(datum, result);
+    copy.getMetaData().remove(new Text("copy"));
+    assertDatumEquals(datum, copy);
+  }
+
+  @Test
+  public void testCopyOnWrite() {
+    CrawlDatum datum = createDatum();
+    CrawlDatum copy = new CrawlDatum();
+    copy.set(datum);
+    assertDatumEquals(datum, copy);
+
+    // modifications are not visible in the other instance
+    copy.getMetaData().put(new Text("copy"), new IntWritable(1));
+    Assert.assertFalse(datum.getMetaData().containsKey(new Text("copy")));
+    datum.getMetaData().remove(new Text("int"));
+    Assert.assertTrue(copy.getMetaData().containsKey(new Text("int")));
+
+    CrawlDatum clone = (CrawlDatum) copy.clone();
+    assertDatumEquals(copy, clone);
+    clone.getMetaData().clear();
+    Assert.assertFalse(copy.getMetaData().isEmpty());
+    Assert.assertTrue(clone.getMetaData().isEmpty());
+  }
+
+  @Test
+  public void testSetSharesWithDestination() {
+    CrawlDatum datum = createDatum();
+    MapWritable meta = datum.getMetaData();
+    CrawlDatum copy = new CrawlDatum();
+    copy.set(datum);
+
+    // the destination copies when modified, the source does not copy anymore
+    copy.getMetaData().put(new Text("copy"), new IntWritable(1));
+    Assert.assertSame(meta, datum.getMetaData());
+    Assert.assertFalse(meta.containsKey(new Text("copy")));
+
+    // reading does not copy
+    copy.set(datum);
+    Assert.assertTrue(copy.getMetaDataReadOnly().containsKey(new Text("int")));
+    datum.getMetaData().remove(new Text("int"));
+    Assert.assertNotSame(meta, datum.getMetaData());
+    Assert.assertTrue(copy.getMetaDataReadOnly().containsKey(new Text("int")));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testReadOnlyMetaData() {
+    CrawlDatum datum = createDatum();
+    Assert.assertTrue(new CrawlDatum().getMetaDataReadOnly().isEmpty());
+    datum.getMetaDataReadOnly().remove(new Text("int"));
+  }
+
+  @Test
+  public void testReadWithConf() throws IOException {
+    CrawlDatum datum = createDatum();
+    DataInputBuffer in = new DataInputBuffer();
+    byte[] bytes = write(datum);
+    in.reset(bytes, bytes.length);
+    CrawlDatum result = ReflectionUtils.newInstance(CrawlDatum.class,
+        new Configuration());
+    result.readFields(in);
+    assertDatumEquals(datum, result);
+  }
+
+}
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BloomMapFile;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.scoring.ScoringFilters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for Bloom filters of CrawlDb partitions. */
+public class TestCrawlDbBloomFilter {
+
+  private Configuration conf;
+  private FileSystem fs;
+  private final Path testdir = new Path("build/test/crawldb-bloom-test");
+
+  @Before
+  public void setUp() throws Exception {
+    conf = CrawlDBTestUtil.createContext().getConfiguration();
+    conf.setBoolean(CrawlDb.CRAWLDB_BLOOM_FILTER, true);
+    conf.setInt("io.mapfile.bloom.size", 1000);
+    fs = FileSystem.get(conf);
+    fs.delete(testdir, true);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.delete(testdir, true);
+  }
+
+  private static Text url(String path) {
+    return new Text("http://www.example.com/" + path);
+  }
+
+  /** Write a segment with links to the given URLs */
+  private Path createSegment(String name, Iterable<Text> urls)
+      throws IOException {
+    Path segment = new Path(testdir, "segments/" + name);
+    TreeMap<Text, CrawlDatum> linked = new TreeMap<>();
+    for (Text url : urls) {
+      linked.put(url, new CrawlDatum(CrawlDatum.STATUS_LINKED, 3600, 0.5f));
+    }
+    MapFile.Writer writer = new MapFile.Writer(conf, new Path(segment,
+        CrawlDatum.FETCH_DIR_NAME + "/part-r-00000"),
+        MapFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(CrawlDatum.class));
+    writer.close();
+    writer = new MapFile.Writer(conf, new Path(segment,
+        CrawlDatum.PARSE_DIR_NAME + "/part-r-00000"),
+        MapFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(CrawlDatum.class));
+    for (Map.Entry<Text, CrawlDatum> e : linked.entrySet()) {
+      writer.append(e.getKey(), e.getValue());
+    }
+    writer.close();
+    return segment;
+  }
+
+  @Test
+  public void testDropKnownLinks() throws Exception {
+    Path crawlDb = new Path(testdir, "crawldb");
+    Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
+    Assert.assertNull(CrawlDbBloomFilter.load(current, conf));
+
+    TreeMap<Text, CrawlDatum> known = new TreeMap<>();
+    for (int i = 0; i < 100; i++) {
+      known.put(url("known/" + i), null);
+    }
+    Path segment1 = createSegment("20170101000000", known.keySet());
+    new CrawlDb(conf).update(crawlDb, new Path[] { segment1 }, false, false);
+
+    Path[] parts = IncrementalCrawlDbReducer.getPartitions(fs, current);
+    Assert.assertTrue(parts.length > 0);
+    for (Path part : parts) {
+      Assert.assertTrue(fs.exists(new Path(part,
+          BloomMapFile.BLOOM_FILE_NAME)));
+    }
+    CrawlDbBloomFilter filter = CrawlDbBloomFilter.load(current, conf);
+    Assert.assertNotNull(filter);
+    for (Text url : known.keySet()) {
+      Assert.assertTrue(filter.probablyContains(url));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (filter.probablyContains(url("unknown/" + i))) {
+        falsePositives++;
+      }
+    }
+    Assert.assertTrue("Too many false positives: " + falsePositives,
+        falsePositives < 50);
+
+    // links to known URLs are dropped, new URLs are added
+    CrawlDbReader dbReader = new CrawlDbReader();
+    CrawlDatum before = dbReader.get(crawlDb.toString(),
+        url("known/0").toString(), conf);
+    // readers are cached, reopen them after the update
+    dbReader.close();
+    Text newUrl = url("new");
+    while (filter.probablyContains(newUrl)) {
+      newUrl = url(newUrl.toString() + "/");
+    }
+    Configuration dropConf = new Configuration(conf);
+    dropConf.setBoolean(CrawlDb.CRAWLDB_UPDATE_DROP_KNOWN_LINKS, true);
+    // no scoring filter needs the inlinks
+    dropConf.set("plugin.includes", "nutch-extensionpoints");
+    TreeMap<Text, CrawlDatum> links = new TreeMap<>(known);
+    links.put(newUrl, null);
+    Path segment2 = createSegment("20170102000000", links.keySet());
+    new CrawlDb(dropConf).update(crawlDb, new Path[] { segment2 }, false,
+        false);
+
+    Assert.assertNotNull(dbReader.get(crawlDb.toString(), newUrl.toString(),
+        conf));
+    Assert.assertEquals(before, dbReader.get(crawlDb.toString(),
+        url("known/0").toString(), conf));
+    dbReader.close();
+    filter = CrawlDbBloomFilter.load(current, conf);
+    Assert.assertTrue(filter.probablyContains(newUrl));
+  }
+
+  @Test
+  public void testKeepLinksNeededByScoring() throws Exception {
+    Path crawlDb = new Path(testdir, "crawldb");
+    TreeMap<Text, CrawlDatum> known = new TreeMap<>();
+    for (int i = 0; i < 10; i++) {
+      known.put(url("known/" + i), null);
+    }
+    Path segment1 = createSegment("20170101000000", known.keySet());
+    new CrawlDb(conf).update(crawlDb, new Path[] { segment1 }, false, false);
+
+    // scoring-opic adds the scores of inlinks: links are not dropped
+    CrawlDbReader dbReader = new CrawlDbReader();
+    CrawlDatum before = dbReader.get(crawlDb.toString(),
+        url("known/0").toString(), conf);
+    dbReader.close();
+    Configuration dropConf = new Configuration(conf);
+    dropConf.setBoolean(CrawlDb.CRAWLDB_UPDATE_DROP_KNOWN_LINKS, true);
+    Assert.assertTrue(new ScoringFilters(dropConf).needsInlinks());
+    Path segment2 = createSegment("20170102000000", known.keySet());
+    new CrawlDb(dropConf).update(crawlDb, new Path[] { segment2 }, false,
+        false);
+    CrawlDatum after = dbReader.get(crawlDb.toString(),
+        url("known/0").toString(), conf);
+    dbReader.close();
+    Assert.assertEquals(before.getScore() + 0.5f, after.getScore(), 0.0001f);
+  }
+
+}
@@ -106,6 +106,46 @@ public class TestGenerator {
     Assert.assertEquals("http://aaa/099", (l.get(1).url.toString()));
   }
 
+  /**
+   * Test that generator selects the highest scoring urls if the top urls are
+   * selected in the mapper.
+   * 
+   * @throws Exception
+   */
+  @Test
+  public void testGenerateHighestInMapper() throws Exception {
+
+    final int NUM_RESULTS = 2;
+
+    ArrayList<URLCrawlDatum> list = new ArrayList<URLCrawlDatum>();
+
+    for (int i = 0; i <= 100; i++) {
+      list.add(createURLCrawlDatum("http://aaa/" + pad(i), 1, i));
+    }
+
+    createCrawlDB(list);
+
+    Configuration myConfiguration = new Configuration(conf);
+    myConfiguration.setBoolean(Generator.GENERATOR_MAPPER_TOP_N, true);
+    Path generatedSegment = generateFetchlist(NUM_RESULTS, myConfiguration,
+        false);
+
+    Path fetchlist = new Path(new Path(generatedSegment,
+        CrawlDatum.GENERATE_DIR_NAME), "part-r-00000");
+
+    ArrayList<URLCrawlDatum> l = readContents(fetchlist);
+
+    // sort urls by score desc
+    Collections.sort(l, new ScoreComparator());
+
+    // verify we got right amount of records
+    Assert.assertEquals(NUM_RESULTS, l.size());
+
+    // verify we have the highest scoring urls
+    Assert.assertEquals("http://aaa/100", (l.get(0).url.toString()));
+    Assert.assertEquals("http://aaa/099", (l.get(1).url.toString()));
+  }
+
   private String pad(int i) {
     String s = Integer.toString(i);
     while (s.length() < 3) {
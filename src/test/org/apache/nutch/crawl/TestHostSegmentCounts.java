@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for HostSegmentCounts. */
+public class TestHostSegmentCounts {
+
+  @Test
+  public void testSlot() {
+    HostSegmentCounts counts = new HostSegmentCounts(2);
+    int slot = counts.slot("example.com");
+    Assert.assertEquals(1, counts.getSegment(slot));
+    Assert.assertEquals(0, counts.getCount(slot));
+    counts.setSegment(slot, 3);
+    counts.setCount(slot, 7);
+    slot = counts.slot("example.com");
+    Assert.assertEquals(3, counts.getSegment(slot));
+    Assert.assertEquals(7, counts.getCount(slot));
+    Assert.assertEquals(1, counts.size());
+
+    // key 0 is stored separately
+    slot = counts.slot(0L);
+    Assert.assertEquals(1, counts.getSegment(slot));
+    counts.setCount(slot, 2);
+    Assert.assertEquals(2, counts.getCount(counts.slot(0L)));
+    Assert.assertEquals(2, counts.size());
+  }
+
+  @Test
+  public void testAgainstHashMap() {
+    Random random = new Random(42);
+    HostSegmentCounts counts = new HostSegmentCounts(4);
+    Map<String, int[]> expected = new HashMap<>();
+    for (int i = 0; i < 100000; i++) {
+      String host = "host" + random.nextInt(20000) + ".example.com";
+      if (i == 50000) {
+        counts.slot(0L);
+      }
+      int[] value = expected.get(host);
+      if (value == null) {
+        value = new int[] { 1, 0 };
+        expected.put(host, value);
+      }
+      int slot = counts.slot(host);
+      Assert.assertEquals(host, value[0], counts.getSegment(slot));
+      Assert.assertEquals(host, value[1], counts.getCount(slot));
+      value[1]++;
+      if (value[1] % 3 == 0) {
+        value[0]++;
+      }
+      counts.setSegment(slot, value[0]);
+      counts.setCount(slot, value[1]);
+    }
+    Assert.assertEquals(expected.size() + 1, counts.size());
+    for (Map.Entry<String, int[]> e : expected.entrySet()) {
+      int slot = counts.slot(e.getKey());
+      Assert.assertEquals(e.getValue()[0], counts.getSegment(slot));
+      Assert.assertEquals(e.getValue()[1], counts.getCount(slot));
+    }
+  }
+
+}
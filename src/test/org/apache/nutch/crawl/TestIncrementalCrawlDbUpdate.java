@@ -0,0 +1,214 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the incremental CrawlDb update. */
+public class TestIncrementalCrawlDbUpdate {
+
+  private static final int NUM_PARTITIONS = 4;
+  private static final long NOW = 1500000000000L;
+
+  private Configuration conf;
+  private FileSystem fs;
+  private final Path testdir = new Path("build/test/incremental-crawldb-test");
+  private final HashPartitioner<Text, CrawlDatum> partitioner = new HashPartitioner<>();
+
+  @Before
+  public void setUp() throws Exception {
+    conf = CrawlDBTestUtil.createContext().getConfiguration();
+    fs = FileSystem.get(conf);
+    fs.delete(testdir, true);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.delete(testdir, true);
+  }
+
+  private int getPartition(Text url) {
+    return partitioner.getPartition(url, null, NUM_PARTITIONS);
+  }
+
+  private static void writeMapFile(Configuration conf, Path dir,
+      Map<Text, CrawlDatum> entries) throws IOException {
+    MapFile.Writer writer = new MapFile.Writer(conf, dir,
+        MapFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(CrawlDatum.class));
+    for (Map.Entry<Text, CrawlDatum> e : entries.entrySet()) {
+      writer.append(e.getKey(), e.getValue());
+    }
+    writer.close();
+  }
+
+  /** Write a CrawlDb with {@link #NUM_PARTITIONS} partitions */
+  private void createCrawlDb(Path crawlDb, List<Text> urls) throws IOException {
+    List<TreeMap<Text, CrawlDatum>> partitions = new ArrayList<>();
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      partitions.add(new TreeMap<>());
+    }
+    for (Text url : urls) {
+      CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_DB_UNFETCHED, 3600,
+          1.0f);
+      datum.setFetchTime(NOW);
+      partitions.get(getPartition(url)).put(url, datum);
+    }
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      writeMapFile(conf, new Path(crawlDb, String.format(
+          CrawlDb.CURRENT_NAME + "/part-r-%05d", i)), partitions.get(i));
+    }
+  }
+
+  private Map<String, CrawlDatum> readCrawlDb(Path crawlDb) throws IOException {
+    Map<String, CrawlDatum> entries = new TreeMap<>();
+    for (Path part : IncrementalCrawlDbReducer.getPartitions(fs, new Path(
+        crawlDb, CrawlDb.CURRENT_NAME))) {
+      MapFile.Reader reader = new MapFile.Reader(part, conf);
+      Text url = new Text();
+      CrawlDatum datum = new CrawlDatum();
+      while (reader.next(url, datum)) {
+        entries.put(url.toString(), datum);
+        datum = new CrawlDatum();
+      }
+      reader.close();
+    }
+    return entries;
+  }
+
+  @Test
+  public void testIncrementalUpdate() throws Exception {
+    List<Text> urls = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      urls.add(new Text("http://www.example.com/" + i));
+    }
+    Path crawlDbFull = new Path(testdir, "crawldb-full");
+    Path crawlDbIncremental = new Path(testdir, "crawldb-incremental");
+    createCrawlDb(crawlDbFull, urls);
+    createCrawlDb(crawlDbIncremental, urls);
+
+    // segment touches only partitions 0 and 2: fetched URLs and a new link
+    Path segment = new Path(testdir, "segments/20170101000000");
+    TreeMap<Text, CrawlDatum> fetched = new TreeMap<>();
+    for (Text url : urls) {
+      int partition = getPartition(url);
+      if ((partition == 0 || partition == 2) && fetched.size() < 10) {
+        CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_FETCH_SUCCESS,
+            3600, 1.0f);
+        datum.setFetchTime(NOW + 1000);
+        fetched.put(url, datum);
+      }
+    }
+    TreeMap<Text, CrawlDatum> linked = new TreeMap<>();
+    for (int i = 0; linked.isEmpty(); i++) {
+      Text url = new Text("http://www.example.com/new/" + i);
+      if (getPartition(url) == 0) {
+        linked.put(url, new CrawlDatum(CrawlDatum.STATUS_LINKED, 3600, 0.5f));
+      }
+    }
+    writeMapFile(conf, new Path(segment, CrawlDatum.FETCH_DIR_NAME
+        + "/part-r-00000"), fetched);
+    writeMapFile(conf, new Path(segment, CrawlDatum.PARSE_DIR_NAME
+        + "/part-r-00000"), linked);
+
+    new CrawlDb(conf).update(crawlDbFull, new Path[] { segment }, false,
+        false);
+    Configuration incrementalConf = new Configuration(conf);
+    incrementalConf.setBoolean(CrawlDb.CRAWLDB_UPDATE_INCREMENTAL, true);
+    new CrawlDb(incrementalConf).update(crawlDbIncremental,
+        new Path[] { segment }, false, false);
+
+    Map<String, CrawlDatum> expected = readCrawlDb(crawlDbFull);
+    Map<String, CrawlDatum> result = readCrawlDb(crawlDbIncremental);
+    Assert.assertEquals(urls.size() + 1, expected.size());
+    // fetch time of new URLs is initialized with the current time
+    String newUrl = linked.firstKey().toString();
+    Assert.assertNotNull(result.get(newUrl));
+    expected.get(newUrl).setFetchTime(result.get(newUrl).getFetchTime());
+    Assert.assertEquals(expected, result);
+    for (Text url : fetched.keySet()) {
+      // rescheduled
+      Assert.assertNotEquals(NOW, result.get(url.toString()).getFetchTime());
+    }
+
+    // only the touched partitions are replaced
+    Path[] parts = IncrementalCrawlDbReducer.getPartitions(fs, new Path(
+        crawlDbIncremental, CrawlDb.CURRENT_NAME));
+    Assert.assertEquals(NUM_PARTITIONS, parts.length);
+    Path[] replaced = IncrementalCrawlDbReducer.getPartitions(fs, new Path(
+        crawlDbIncremental, "old"));
+    Assert.assertEquals(2, replaced.length);
+    Assert.assertEquals("part-r-00000", replaced[0].getName());
+    Assert.assertEquals("part-r-00002", replaced[1].getName());
+    // entries are found by partition
+    CrawlDbReader dbReader = new CrawlDbReader();
+    CrawlDatum datum = dbReader.get(crawlDbIncremental.toString(), newUrl,
+        conf);
+    Assert.assertNotNull(datum);
+    Assert.assertEquals(CrawlDatum.STATUS_DB_UNFETCHED, datum.getStatus());
+    dbReader.close();
+  }
+
+  @Test
+  public void testFallbackOrphanedScore() throws Exception {
+    List<Text> urls = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      urls.add(new Text("http://www.example.com/" + i));
+    }
+    Path crawlDb = new Path(testdir, "crawldb");
+    createCrawlDb(crawlDb, urls);
+    Path segment = new Path(testdir, "segments/20170101000000");
+    TreeMap<Text, CrawlDatum> linked = new TreeMap<>();
+    linked.put(new Text("http://www.example.com/new"), new CrawlDatum(
+        CrawlDatum.STATUS_LINKED, 3600, 0.5f));
+    writeMapFile(conf, new Path(segment, CrawlDatum.FETCH_DIR_NAME
+        + "/part-r-00000"), new TreeMap<Text, CrawlDatum>());
+    writeMapFile(conf, new Path(segment, CrawlDatum.PARSE_DIR_NAME
+        + "/part-r-00000"), linked);
+
+    // scoring-orphan must see all entries, incremental update not possible
+    Configuration incrementalConf = new Configuration(conf);
+    incrementalConf.setBoolean(CrawlDb.CRAWLDB_UPDATE_INCREMENTAL, true);
+    incrementalConf.set("plugin.includes",
+        "nutch-extensionpoints|scoring-opic|scoring-orphan");
+    new CrawlDb(incrementalConf).update(crawlDb, new Path[] { segment }, false,
+        false);
+
+    Assert.assertEquals(urls.size() + 1, readCrawlDb(crawlDb).size());
+    // full update: all partitions replaced
+    Path[] replaced = IncrementalCrawlDbReducer.getPartitions(fs, new Path(
+        crawlDb, "old"));
+    Assert.assertEquals(NUM_PARTITIONS, replaced.length);
+  }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for SelectorTopK. */
+public class TestSelectorTopK {
+
+  private static List<String> select(SelectorTopK topK) {
+    List<String> urls = new ArrayList<>();
+    float last = Float.MAX_VALUE;
+    for (SelectorTopK.Candidate candidate : topK.candidates()) {
+      Assert.assertTrue(candidate.sortValue <= last);
+      last = candidate.sortValue;
+      urls.add(candidate.url.toString());
+    }
+    return urls;
+  }
+
+  @Test
+  public void testTopK() {
+    SelectorTopK topK = new SelectorTopK(3, 0);
+    CrawlDatum datum = new CrawlDatum();
+    Text url = new Text();
+    for (int i = 0; i < 10; i++) {
+      url.set("http://example.com/" + i);
+      datum.setScore(i);
+      topK.add(i % 2 == 0 ? i : 10 - i, url, datum, null);
+    }
+    Assert.assertEquals(3, topK.size());
+    List<String> urls = select(topK);
+    Assert.assertEquals("http://example.com/1", urls.get(0));
+    Assert.assertEquals("http://example.com/8", urls.get(1));
+    Assert.assertEquals("http://example.com/3", urls.get(2));
+    // entries are copied
+    for (SelectorTopK.Candidate candidate : topK.candidates()) {
+      Assert.assertEquals(candidate.url.toString(),
+          "http://example.com/" + (int) candidate.datum.getScore());
+    }
+  }
+
+  @Test
+  public void testMaxPerHost() {
+    Random random = new Random(42);
+    int maxSize = 50;
+    int maxPerHost = 3;
+    SelectorTopK topK = new SelectorTopK(maxSize, maxPerHost);
+    List<Object[]> entries = new ArrayList<>();
+    CrawlDatum datum = new CrawlDatum();
+    Text url = new Text();
+    for (int i = 0; i < 5000; i++) {
+      String host = "host" + random.nextInt(100);
+      float score = random.nextInt(1000);
+      url.set("http://" + host + "/" + i);
+      topK.add(score, url, datum, host);
+      entries.add(new Object[] { score, (long) i, url.toString(), host });
+    }
+
+    // expected: sort by decreasing score (first added first), then take
+    // entries until maxSize, skipping hosts with maxPerHost entries
+    entries.sort((a, b) -> {
+      int c = Float.compare((Float) b[0], (Float) a[0]);
+      return c != 0 ? c : Long.compare((Long) a[1], (Long) b[1]);
+    });
+    List<String> expected = new ArrayList<>();
+    Map<String, Integer> hostCounts = new HashMap<>();
+    for (Object[] e : entries) {
+      if (expected.size() == maxSize) {
+        break;
+      }
+      int count = hostCounts.getOrDefault(e[3], 0);
+      if (count < maxPerHost) {
+        hostCounts.put((String) e[3], count + 1);
+        expected.add((String) e[2]);
+      }
+    }
+    Assert.assertEquals(expected, select(topK));
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.fetcher;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test scheduling of items in {@link FetchItemQueues}. */
+public class TestFetchItemQueues {
+
+  private Configuration conf;
+
+  @Before
+  public void setUp() {
+    conf = NutchConfiguration.create();
+    conf.setFloat("fetcher.server.delay", 0.5f);
+    conf.setInt("fetcher.threads.per.queue", 1);
+  }
+
+  private void add(FetchItemQueues queues, String url) {
+    queues.addFetchItem(new Text(url), new CrawlDatum());
+  }
+
+  @Test
+  public void testOneItemPerQueueInProgress() {
+    FetchItemQueues queues = new FetchItemQueues(conf);
+    add(queues, "http://a.example.com/1");
+    add(queues, "http://a.example.com/2");
+    add(queues, "http://b.example.com/1");
+    Assert.assertEquals(3, queues.getTotalSize());
+    Assert.assertEquals(2, queues.getQueueCount());
+
+    FetchItem first = queues.getFetchItem();
+    FetchItem second = queues.getFetchItem();
+    Assert.assertNotNull(first);
+    Assert.assertNotNull(second);
+    Assert.assertNotEquals(first.getQueueID(), second.getQueueID());
+    // both queues have an item in progress
+    Assert.assertNull(queues.getFetchItem());
+    Assert.assertEquals(1, queues.getTotalSize());
+  }
+
+  @Test
+  public void testCrawlDelay() throws InterruptedException {
+    FetchItemQueues queues = new FetchItemQueues(conf);
+    add(queues, "http://a.example.com/1");
+    add(queues, "http://a.example.com/2");
+
+    FetchItem fit = queues.getFetchItem();
+    Assert.assertNotNull(fit);
+    long finished = System.currentTimeMillis();
+    queues.finishFetchItem(fit);
+    // crawl delay not yet elapsed
+    Assert.assertNull(queues.getFetchItem());
+
+    // woken up when the queue becomes eligible
+    queues.awaitFetchItem(5000);
+    fit = queues.getFetchItem();
+    Assert.assertNotNull(fit);
+    Assert.assertTrue(System.currentTimeMillis() - finished >= 500);
+    Assert.assertEquals("http://a.example.com/2", fit.getUrl().toString());
+  }
+
+  @Test
+  public void testFinishAsap() {
+    FetchItemQueues queues = new FetchItemQueues(conf);
+    add(queues, "http://a.example.com/1");
+    add(queues, "http://a.example.com/2");
+
+    FetchItem fit = queues.getFetchItem();
+    queues.finishFetchItem(fit, true);
+    Assert.assertNotNull(queues.getFetchItem());
+  }
+
+  @Test
+  public void testReapEmptyQueues() throws InterruptedException {
+    conf.setFloat("fetcher.server.delay", 0.0f);
+    FetchItemQueues queues = new FetchItemQueues(conf);
+    add(queues, "http://a.example.com/1");
+    FetchItem fit = queues.getFetchItem();
+    queues.finishFetchItem(fit);
+    Assert.assertEquals(1, queues.getQueueCount());
+    Thread.sleep(10);
+    Assert.assertNull(queues.getFetchItem());
+    Assert.assertEquals(0, queues.getQueueCount());
+  }
+
+  @Test
+  public void testEmptyQueues() {
+    FetchItemQueues queues = new FetchItemQueues(conf);
+    add(queues, "http://a.example.com/1");
+    add(queues, "http://a.example.com/2");
+    add(queues, "http://b.example.com/1");
+    Assert.assertEquals(3, queues.emptyQueues());
+    Assert.assertEquals(0, queues.getTotalSize());
+    Assert.assertNull(queues.getFetchItem());
+  }
+
+  @Test
+  public void testAwaitCapacity() throws InterruptedException {
+    final FetchItemQueues queues = new FetchItemQueues(conf);
+    add(queues, "http://a.example.com/1");
+    add(queues, "http://b.example.com/1");
+    Assert.assertTrue(queues.awaitCapacity(3, 0));
+    Assert.assertFalse(queues.awaitCapacity(2, 10));
+
+    Thread consumer = new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+        }
+        queues.getFetchItem();
+      }
+    };
+    consumer.start();
+    // woken up when an item is taken
+    Assert.assertTrue(queues.awaitCapacity(2, 5000));
+    Assert.assertEquals(1, queues.getTotalSize());
+    consumer.join();
+  }
+}
@@ -80,6 +80,20 @@ public class TestFetcher {
 
   @Test
   public void testFetch() throws IOException, ClassNotFoundException, InterruptedException {
+    fetch();
+  }
+
+  @Test
+  public void testFetchParseThreads() throws IOException,
+      ClassNotFoundException, InterruptedException {
+    // parse in separate threads
+    conf.setInt("fetcher.parse.threads", 2);
+    conf.setInt("fetcher.parse.queue.size", 1);
+    fetch();
+  }
+
+  private void fetch() throws IOException, ClassNotFoundException,
+      InterruptedException {
 
     // generate seedlist
     ArrayList<String> urls = new ArrayList<String>();
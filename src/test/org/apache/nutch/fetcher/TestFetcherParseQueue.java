@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.fetcher;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests for {@link FetcherParseQueue}. */
+public class TestFetcherParseQueue {
+
+  @Test
+  public void testFinish() throws Exception {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt("fetcher.parse.threads", 2);
+    FetcherParseQueue queue = new FetcherParseQueue(conf, null);
+    final AtomicInteger parsed = new AtomicInteger();
+    for (int i = 0; i < 4; i++) {
+      queue.put("http://example.com/" + i, plugins -> {
+        Assert.assertNotNull(plugins.parseUtil);
+        parsed.incrementAndGet();
+      });
+    }
+    Assert.assertEquals(0, queue.finish(10000));
+    Assert.assertEquals(4, parsed.get());
+    Assert.assertFalse(queue.isBusy());
+  }
+
+  @Test
+  public void testFinishTimeout() throws Exception {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt("fetcher.parse.threads", 1);
+    FetcherParseQueue queue = new FetcherParseQueue(conf, null);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch hung = new CountDownLatch(1);
+    final AtomicInteger parsed = new AtomicInteger();
+    queue.put("http://example.com/hung", plugins -> {
+      started.countDown();
+      hung.await();
+    });
+    queue.put("http://example.com/queued", plugins -> parsed.incrementAndGet());
+    started.await();
+    long lastProgress = queue.getLastProgress();
+
+    // one page still parsed, one dropped from the queue
+    Assert.assertEquals(2, queue.finish(100));
+    hung.countDown();
+    Thread.sleep(1000);
+    Assert.assertEquals(0, parsed.get());
+    Assert.assertFalse(queue.isBusy());
+    Assert.assertTrue(queue.getLastProgress() >= lastProgress);
+
+    // no pages are accepted after the parser threads have been stopped
+    queue.put("http://example.com/late", plugins -> parsed.incrementAndGet());
+    Assert.assertEquals(0, queue.size());
+  }
+
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.net;
+
+import java.net.MalformedURLException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.util.NutchConfiguration;
+import org.apache.nutch.util.URLUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests for {@link ParsedURL}. */
+public class TestParsedURL {
+
+  private static final String[] URLS = { "http://www.Example.com/",
+      "http://www.example.co.uk/a/b.html?q=1#top", "https://a.b.apache.org",
+      "http://www.example.com:8080?x=y", "http://192.168.0.1/index.html",
+      "http://localhost/a?b?c", "file:/etc/hosts", "ftp://ftp.example.org/#x?y",
+      "http://example.com./" };
+
+  @Test
+  public void testComponents() throws MalformedURLException {
+    for (String url : URLS) {
+      ParsedURL u = ParsedURL.parse(url);
+      Assert.assertEquals(url, u.toString());
+      Assert.assertEquals(url, URLUtil.getHost(url), u.getHost());
+      Assert.assertEquals(url, URLUtil.getDomainName(url), u.getDomainName());
+      Assert.assertEquals(url, URLUtil.getDomainSuffix(url),
+          u.getDomainSuffix());
+      String query = u.getQuery();
+      if (query == null) {
+        Assert.assertEquals(url, -1, u.getQueryStart());
+      } else {
+        Assert.assertTrue(url, url.startsWith(query, u.getQueryStart()));
+      }
+      Assert.assertTrue(url, url.startsWith(u.getPath(), u.getPathStart()));
+    }
+    ParsedURL u = ParsedURL.parse(URLS[1]);
+    Assert.assertEquals(URLS[1].indexOf("/a/b.html"), u.getPathStart());
+    Assert.assertEquals(URLS[1].indexOf("q=1"), u.getQueryStart());
+  }
+
+  @Test
+  public void testDerive() throws MalformedURLException {
+    ParsedURL u = ParsedURL.parse("http://example.com/");
+    Assert.assertSame(u, u.derive(new String("http://example.com/")));
+    Assert.assertEquals("http://example.com/a",
+        u.derive("http://example.com/a").toString());
+    try {
+      u.derive("no url");
+      Assert.fail("MalformedURLException expected");
+    } catch (MalformedURLException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testNormalizeAndFilter() throws Exception {
+    Configuration conf = NutchConfiguration.create();
+    URLNormalizers normalizers = new URLNormalizers(conf,
+        URLNormalizers.SCOPE_DEFAULT);
+    URLFilters filters = new URLFilters(conf);
+    for (String url : URLS) {
+      String expected = normalizers.normalize(url,
+          URLNormalizers.SCOPE_DEFAULT);
+      ParsedURL u = normalizers.normalize(ParsedURL.parse(url),
+          URLNormalizers.SCOPE_DEFAULT);
+      Assert.assertEquals(expected, u == null ? null : u.toString());
+      if (u != null) {
+        expected = filters.filter(u.toString());
+        u = filters.filter(u);
+        Assert.assertEquals(expected, u == null ? null : u.toString());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.net;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests for {@link URLCache}. */
+public class TestURLCache {
+
+  private static Configuration createConf() {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt(URLCache.CACHE_SIZE, 100);
+    return conf;
+  }
+
+  @Test
+  public void testDisabled() {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt(URLCache.CACHE_SIZE, 0);
+    Assert.assertNull(URLCache.get(conf));
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    URLCache cache = URLCache.get(createConf());
+    cache.clear();
+    AtomicInteger calls = new AtomicInteger();
+    URLCache.URLFunction<MalformedURLException> function = url -> {
+      calls.incrementAndGet();
+      if (url.startsWith("ftp:")) {
+        return null;
+      } else if (url.startsWith("bad:")) {
+        throw new MalformedURLException(url);
+      }
+      return url.toLowerCase();
+    };
+
+    Assert.assertEquals("http://a.com/",
+        cache.get("test", "http://A.com/", function));
+    Assert.assertEquals("http://a.com/",
+        cache.get("test", "http://A.com/", function));
+    Assert.assertEquals(1, calls.get());
+
+    // rejected URLs are cached
+    Assert.assertNull(cache.get("test", "ftp://a.com/", function));
+    Assert.assertNull(cache.get("test", "ftp://a.com/", function));
+    Assert.assertEquals(2, calls.get());
+
+    // scopes are cached separately
+    Assert.assertEquals("http://a.com/",
+        cache.get("other", "http://A.com/", function));
+    Assert.assertEquals(3, calls.get());
+
+    // exceptions are not cached
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.get("test", "bad://a.com/", function);
+        Assert.fail("MalformedURLException expected");
+      } catch (MalformedURLException e) {
+        // expected
+      }
+    }
+    Assert.assertEquals(5, calls.get());
+  }
+
+  @Test
+  public void testConfigurationChange() throws Exception {
+    Configuration conf = createConf();
+    URLCache cache = URLCache.get(conf);
+    Assert.assertSame(cache, URLCache.get(createConf()));
+    cache.clear();
+    cache.get("test", "http://a.com/", url -> url);
+    Assert.assertEquals(1, cache.size());
+
+    conf.set("urlfilter.regex.rules", "-.");
+    URLCache changed = URLCache.get(conf);
+    Assert.assertNotSame(cache, changed);
+    Assert.assertEquals(0, changed.size());
+  }
+
+  @Test
+  public void testURLFiltersAndNormalizers() throws Exception {
+    Configuration conf = createConf();
+    Configuration uncachedConf = NutchConfiguration.create();
+    uncachedConf.setInt(URLCache.CACHE_SIZE, 0);
+    String url = "http://www.example.com/";
+    String expected = new URLFilters(uncachedConf).filter(url);
+    URLFilters filters = new URLFilters(conf);
+    URLNormalizers normalizers = new URLNormalizers(conf,
+        URLNormalizers.SCOPE_DEFAULT);
+    URLCache cache = URLCache.get(conf);
+    cache.clear();
+    for (int i = 0; i < 2; i++) {
+      Assert.assertEquals("http://www.example.com/path/to/somewhere.html",
+          normalizers.normalize(
+              "http://www.example.com//path/to//somewhere.html",
+              URLNormalizers.SCOPE_DEFAULT));
+      Assert.assertEquals(expected, filters.filter(url));
+    }
+    Assert.assertEquals(2, cache.size());
+  }
+
+}
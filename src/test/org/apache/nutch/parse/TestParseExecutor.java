@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.protocol.Content;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests for {@link ParseExecutor} and {@link ParseCallable}. */
+public class TestParseExecutor {
+
+  /** Parser which ignores interrupts until released. */
+  private static class StuckParser implements Parser {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    private Configuration conf;
+
+    @Override
+    public ParseResult getParse(Content c) {
+      started.countDown();
+      while (true) {
+        try {
+          release.await();
+          break;
+        } catch (InterruptedException e) {
+          // stuck, ignore interrupt
+        }
+      }
+      return new ParseStatus(ParseStatus.SUCCESS).getEmptyParseResult(
+          c.getUrl(), conf);
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+      this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+      return conf;
+    }
+  }
+
+  private static Content content(String url) {
+    Configuration conf = NutchConfiguration.create();
+    return new Content(url, url, new byte[0], "text/plain", new Metadata(),
+        conf);
+  }
+
+  @Test
+  public void testAbandon() throws Exception {
+    ParseExecutor executor = new ParseExecutor(1, 2, 1);
+    StuckParser parser = new StuckParser();
+    parser.setConf(NutchConfiguration.create());
+    ParseCallable pc = new ParseCallable(parser, content("http://a.com/"));
+    Future<ParseResult> task = executor.submit(pc);
+    Assert.assertTrue(parser.started.await(10, TimeUnit.SECONDS));
+    Assert.assertTrue(pc.getStartTime() > 0);
+
+    task.cancel(true);
+    executor.abandon(pc);
+    Assert.assertEquals(1, executor.getStuckThreads());
+
+    // the stuck thread is replaced
+    ParseCallable pc2 = new ParseCallable(new StuckParser() {
+      {
+        release.countDown();
+      }
+    }, content("http://b.com/"));
+    Assert.assertNotNull(executor.submit(pc2).get(10, TimeUnit.SECONDS));
+    Assert.assertEquals(2, executor.getPoolSize());
+
+    // not started, abandon is a no-op
+    ParseCallable pc3 = new ParseCallable(parser, content("http://c.com/"));
+    Assert.assertNull(pc3.abandon(executor));
+    Assert.assertNull(pc3.call());
+
+    // stuck parser finishes, pool shrinks again
+    parser.release.countDown();
+    for (int i = 0; i < 100 && executor.getStuckThreads() > 0; i++) {
+      Thread.sleep(50);
+    }
+    Assert.assertEquals(0, executor.getStuckThreads());
+  }
+
+  @Test
+  public void testAbandonFinished() throws Exception {
+    ParseExecutor executor = new ParseExecutor(1, 1, 1);
+    StuckParser parser = new StuckParser();
+    parser.setConf(NutchConfiguration.create());
+    parser.release.countDown();
+    ParseCallable pc = new ParseCallable(parser, content("http://a.com/"));
+    Assert.assertNotNull(executor.submit(pc).get(10, TimeUnit.SECONDS));
+    executor.abandon(pc);
+    Assert.assertEquals(0, executor.getStuckThreads());
+  }
+
+}
@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import crawlercommons.robots.BaseRobotRules;
+import crawlercommons.robots.SimpleRobotRulesParser;
+
+/** Tests for {@link RobotRulesCache}. */
+public class TestRobotRulesCache {
+
+  private static final String ROBOTS_TXT = "User-agent: *\r\n"
+      + "Disallow: /private/\r\n" + "Crawl-delay: 5\r\n";
+
+  private Configuration conf;
+  private File cacheDir;
+
+  @Before
+  public void setUp() {
+    conf = NutchConfiguration.create();
+    cacheDir = new File(System.getProperty("test.build.data", "/tmp"),
+        "robots-cache-" + System.currentTimeMillis());
+    conf.set(RobotRulesCache.CACHE_DIR, cacheDir.getAbsolutePath());
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(cacheDir);
+  }
+
+  private static BaseRobotRules parse(String url) {
+    return new SimpleRobotRulesParser().parseContent(url,
+        ROBOTS_TXT.getBytes(), "text/plain", "nutch");
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    RobotRulesCache cache = new RobotRulesCache(10, 60000);
+    cache.put("http:a.com:80", RobotRulesParser.EMPTY_RULES);
+    cache.put("http:b.com:80", RobotRulesParser.EMPTY_RULES, 1);
+    Thread.sleep(10);
+    Assert.assertSame(RobotRulesParser.EMPTY_RULES,
+        cache.get("http:a.com:80"));
+    Assert.assertNull(cache.get("http:b.com:80"));
+    Assert.assertNull(cache.get("http:c.com:80"));
+  }
+
+  @Test
+  public void testBounded() {
+    RobotRulesCache cache = new RobotRulesCache(10, 60000);
+    for (int i = 0; i < 100; i++) {
+      cache.put("http:host" + i + ".com:80", RobotRulesParser.EMPTY_RULES);
+    }
+    Assert.assertTrue(cache.size() <= 10);
+  }
+
+  @Test
+  public void testConcurrentLoad() throws Exception {
+    final RobotRulesCache cache = new RobotRulesCache(10, 60000);
+    final AtomicInteger loads = new AtomicInteger();
+    final String key = "http:a.com:80";
+    final BaseRobotRules[] results = new BaseRobotRules[10];
+    Thread[] threads = new Thread[results.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int n = i;
+      threads[i] = new Thread() {
+        public void run() {
+          try {
+            results[n] = cache.get(key, () -> {
+              loads.incrementAndGet();
+              Thread.sleep(200);
+              BaseRobotRules rules = parse("http://a.com/robots.txt");
+              cache.put(key, rules);
+              return rules;
+            });
+          } catch (Exception e) {
+            // result stays null
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertEquals(1, loads.get());
+    for (BaseRobotRules rules : results) {
+      Assert.assertSame(results[0], rules);
+    }
+    Assert.assertSame(results[0], cache.get(key));
+  }
+
+  @Test
+  public void testFailedLoad() throws Exception {
+    RobotRulesCache cache = new RobotRulesCache(10, 60000);
+    try {
+      cache.get("http:a.com:80", () -> {
+        throw new IOException("connection refused");
+      });
+      Assert.fail("ExecutionException expected");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+    // not cached, next call loads again
+    Assert.assertSame(RobotRulesParser.EMPTY_RULES,
+        cache.get("http:a.com:80", () -> RobotRulesParser.EMPTY_RULES));
+  }
+
+  @Test
+  public void testStoreLoad() {
+    RobotRulesCache cache = new RobotRulesCache(conf);
+    BaseRobotRules rules = parse("http://a.com/robots.txt");
+    cache.put("http:a.com:80", rules);
+    cache.put("http:b.com:80", RobotRulesParser.FORBID_ALL_RULES);
+    Assert.assertEquals(2, cache.store(conf, "attempt_1"));
+
+    RobotRulesCache loaded = new RobotRulesCache(conf);
+    Assert.assertEquals(2, loaded.load(conf));
+    BaseRobotRules loadedRules = loaded.get("http:a.com:80");
+    Assert.assertNotNull(loadedRules);
+    Assert.assertFalse(loadedRules.isAllowed("http://a.com/private/x.html"));
+    Assert.assertTrue(loadedRules.isAllowed("http://a.com/public/x.html"));
+    Assert.assertEquals(5000, loadedRules.getCrawlDelay());
+    Assert.assertTrue(loaded.get("http:b.com:80").isAllowNone());
+
+    // rules loaded from the store are not stored again
+    loaded.put("http:c.com:80", RobotRulesParser.EMPTY_RULES);
+    Assert.assertEquals(1, loaded.store(conf, "attempt_2"));
+    Assert.assertEquals(2, cacheDir.list(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.startsWith("robots-");
+      }
+    }).length);
+  }
+
+  @Test
+  public void testCompact() {
+    RobotRulesCache cache = new RobotRulesCache(conf);
+    cache.put("http:a.com:80", parse("http://a.com/robots.txt"));
+    Assert.assertEquals(1, cache.store(conf, "attempt_1"));
+    cache = new RobotRulesCache(conf);
+    cache.put("http:b.com:80", RobotRulesParser.FORBID_ALL_RULES);
+    cache.put("http:c.com:80", RobotRulesParser.EMPTY_RULES, -1);
+    Assert.assertEquals(1, cache.store(conf, "attempt_2"));
+
+    // expired rules are dropped
+    Assert.assertEquals(2, RobotRulesCache.compact(conf));
+    String[] files = cacheDir.list(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.startsWith("robots-");
+      }
+    });
+    Assert.assertEquals(1, files.length);
+    Assert.assertTrue(files[0].startsWith("robots-merged-"));
+
+    RobotRulesCache loaded = new RobotRulesCache(conf);
+    Assert.assertEquals(2, loaded.load(conf));
+    Assert.assertFalse(
+        loaded.get("http:a.com:80").isAllowed("http://a.com/private/x.html"));
+    Assert.assertTrue(loaded.get("http:b.com:80").isAllowNone());
+
+    // nothing to merge
+    Assert.assertEquals(0, RobotRulesCache.compact(conf));
+  }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.util;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for IntHashSet. */
+public class TestIntHashSet {
+
+  @Test
+  public void testAddContains() {
+    IntHashSet set = new IntHashSet(2);
+    Assert.assertTrue(set.isEmpty());
+    Assert.assertTrue(set.add(0));
+    Assert.assertFalse(set.add(0));
+    Assert.assertTrue(set.add(-1));
+    Assert.assertTrue(set.add(Integer.MIN_VALUE));
+    Assert.assertTrue(set.contains(0));
+    Assert.assertTrue(set.contains(-1));
+    Assert.assertTrue(set.contains(Integer.MIN_VALUE));
+    Assert.assertFalse(set.contains(1));
+    Assert.assertEquals(3, set.size());
+
+    set.clear();
+    Assert.assertTrue(set.isEmpty());
+    Assert.assertFalse(set.contains(0));
+    Assert.assertFalse(set.contains(-1));
+  }
+
+  @Test
+  public void testAgainstHashSet() {
+    Random random = new Random(42);
+    IntHashSet set = new IntHashSet();
+    Set<Integer> expected = new HashSet<>();
+    for (int i = 0; i < 100000; i++) {
+      // small range to get duplicates
+      int value = random.nextInt(50000) - 25000;
+      Assert.assertEquals(expected.add(value), set.add(value));
+    }
+    Assert.assertEquals(expected.size(), set.size());
+    for (int value = -26000; value < 26000; value++) {
+      Assert.assertEquals(expected.contains(value), set.contains(value));
+    }
+  }
+}
@@ -19,6 +19,7 @@ package org.apache.nutch.util;
 
 import java.net.URL;
 
+import org.apache.nutch.util.domain.DomainSuffixes;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -269,6 +270,42 @@ public class TestURLUtil {
                 .toASCII("http://www.medizin.uni-tübingen.de:8080/search.php?q=abc#p1"));
   }
 
+  /** Domain name determined by trying all suffixes of the host name */
+  private static String getDomainNameBySuffixes(String host) {
+    DomainSuffixes tlds = DomainSuffixes.getInstance();
+    if (host.endsWith("."))
+      host = host.substring(0, host.length() - 1);
+    if (host.matches("(\\d{1,3}\\.){3}(\\d{1,3})"))
+      return host;
+    int index = 0;
+    String candidate = host;
+    for (; index >= 0;) {
+      index = candidate.indexOf('.');
+      String subCandidate = candidate.substring(index + 1);
+      if (tlds.isDomainSuffix(subCandidate)) {
+        return candidate;
+      }
+      candidate = subCandidate;
+    }
+    return candidate;
+  }
+
+  @Test
+  public void testGetDomainNameFromHost() throws Exception {
+    String[] hosts = { "", ".", "com", "com.", ".com", "a..com",
+        "www.example.com", "www.example.com.", "WWW.EXAMPLE.COM",
+        "example..co.uk", "x.y.example.co.uk", "co.uk", "a.b.c.2000.hu",
+        "1.2.3.4", "1.2.3.4.", "1.2.3.4.5", "1234.1.1.1", "1.2.3.com",
+        "a.plc.co.im", "www.example.co.uk.com", "www.edu.tr.xyz", "localhost",
+        "example.商業.tw" };
+    for (String host : hosts) {
+      Assert.assertEquals(host, getDomainNameBySuffixes(host),
+          URLUtil.getDomainNameFromHost(host));
+      Assert.assertEquals(host, getDomainNameBySuffixes(host),
+          URLUtil.getDomainNameFromHost(new StringBuilder(host)));
+    }
+  }
+
   @Test
   public void testFileProtocol() throws Exception {
     // keep one single slash NUTCH-XXX